@@ -0,0 +1,101 @@
+package model;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Version of the {@link ColorTransformer} that uses the Java Vector API, so one instruction works
+ * on as many pixels as fit in a vector register of the machine. The channels are worked out with
+ * the same multiplications and additions in the same order as the one pixel at a time version,
+ * and rounded the same way as {@link Math#round(double)}, so the result is exactly the same. This
+ * is loaded with reflection by {@link ColorTransformer#vectorized()}, which is why nothing else
+ * refers to it.
+ *
+ * <p>Converting lanes between ints and doubles changes the size of the vector, which the JDK 17
+ * compiler doesn't turn into vector instructions. So every vector here has the same size: the
+ * pixels are loaded as ints and looked at as longs holding two pixels each, and channel values
+ * are turned into doubles and back by adding 2^52, which puts a whole number straight into the
+ * low bits of a double.
+ */
+final class VectorColorTransformer extends ColorTransformer {
+  private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED;
+  private static final VectorSpecies<Double> DOUBLES = DoubleVector.SPECIES_PREFERRED;
+  // A double whose low mantissa bits hold a whole number below 2^52 exactly
+  private static final double MAGIC = 0x1p52;
+  private static final long MAGIC_BITS = Double.doubleToRawLongBits(MAGIC);
+  // Matrices with weights bigger than this could make sums that don't fit in an int, those are
+  // left to the one pixel at a time version so the overflow behaves the same
+  private static final double MAX_WEIGHT = 1 << 20;
+
+  VectorColorTransformer() {
+    // makes sure the module is really there before this transformer is handed out
+    if (INTS.vectorShape() != DOUBLES.vectorShape()) {
+      throw new IllegalStateException("Int and double vectors have different sizes");
+    }
+  }
+
+  @Override
+  public boolean isVectorized() {
+    return true;
+  }
+
+  @Override
+  public void transform(int[] pixels, int[] result, int start, int end, double[][] matrix)
+          throws IllegalArgumentException {
+    checkMatrix(matrix);
+    for (double[] row : matrix) {
+      for (double weight : row) {
+        if (!(Math.abs(weight) <= MAX_WEIGHT)) {
+          super.transform(pixels, result, start, end, matrix);
+          return;
+        }
+      }
+    }
+    int bound = start + INTS.loopBound(end - start);
+    int i = start;
+    for (; i < bound; i += INTS.length()) {
+      LongVector pairs = IntVector.fromArray(INTS, pixels, i).reinterpretAsLongs();
+      LongVector low = transformLanes(pairs.and(0xFFFFFFFFL), matrix);
+      LongVector high = transformLanes(pairs.lanewise(VectorOperators.LSHR, 32), matrix);
+      low.or(high.lanewise(VectorOperators.LSHL, 32)).reinterpretAsInts().intoArray(result, i);
+    }
+    for (; i < end; i++) {
+      result[i] = transformPixel(pixels[i], matrix);
+    }
+  }
+
+  // Transforms the packed pixel held in the low 32 bits of every lane.
+  private static LongVector transformLanes(LongVector rgb, double[][] matrix) {
+    DoubleVector r = toDoubles(rgb.lanewise(VectorOperators.LSHR, 16).and(0xFF));
+    DoubleVector g = toDoubles(rgb.lanewise(VectorOperators.LSHR, 8).and(0xFF));
+    DoubleVector b = toDoubles(rgb.and(0xFF));
+    return channel(r, g, b, matrix[0]).lanewise(VectorOperators.LSHL, 16)
+            .or(channel(r, g, b, matrix[1]).lanewise(VectorOperators.LSHL, 8))
+            .or(channel(r, g, b, matrix[2]));
+  }
+
+  // Turns lanes holding whole numbers below 2^52 into doubles.
+  private static DoubleVector toDoubles(LongVector values) {
+    return values.or(MAGIC_BITS).reinterpretAsDoubles().sub(MAGIC);
+  }
+
+  // Works out one channel for every lane, rounded and clamped between 0 and 255.
+  private static LongVector channel(DoubleVector r, DoubleVector g, DoubleVector b,
+                                    double[] weights) {
+    DoubleVector sum = r.mul(weights[0]).add(g.mul(weights[1])).add(b.mul(weights[2]));
+    // Math.round is floor(sum + 0.5). Anything outside 0 to 255 is clamped anyway, and inside
+    // that range adding and taking away 2^52 rounds to the nearest whole number, which is
+    // moved down by one where it went up
+    DoubleVector shifted = sum.add(0.5).max(0).min(255.75);
+    DoubleVector nearest = shifted.add(MAGIC).sub(MAGIC);
+    DoubleVector floor = nearest.lanewise(VectorOperators.SUB, 1,
+            nearest.compare(VectorOperators.GT, shifted));
+    // sum + 0.5 itself can round up to the next whole number when sum is just below a half
+    floor = floor.lanewise(VectorOperators.SUB, 1,
+            sum.compare(VectorOperators.LT, floor.sub(0.5)));
+    return floor.max(0).add(MAGIC).reinterpretAsLongs().and(0xFF);
+  }
+}
@@ -36,11 +36,15 @@ public class ImageUtil {
     listOfOperations.add("darken");
     listOfOperations.add("horizontal-flip");
     listOfOperations.add("vertical-flip");
+    listOfOperations.add("rotate");
+    listOfOperations.add("transpose");
+    listOfOperations.add("thumbnail");
     listOfOperations.add("blur");
     listOfOperations.add("sharpen");
     listOfOperations.add("sepia");
     listOfOperations.add("greyscale");
     listOfOperations.add("save");
+    listOfOperations.add("save-raw");
     listOfOperations.add("quit");
     if (args.length > 2) {
       throw new IllegalArgumentException("Sorry, we can't support more than one script file :(");
@@ -66,6 +70,7 @@ public class ImageUtil {
           controller.performOperation(operation);
         }
       }
+      controller.closeImages();
       System.out.println("Script file has been executed");
       return;
     }
@@ -94,6 +99,7 @@ public class ImageUtil {
                   "save. See the README files for more details");
         }
       }
+      controller.closeImages();
     } else {
       new GUIManager();
     }
@@ -20,6 +20,13 @@ public interface ImageController {
    */
   boolean performOperation(Operation operation) throws IOException;
 
+  /**
+   * Closes every image the controller keeps and forgets them. Images too big for memory give
+   * back the files they keep open, and their temporary files are deleted. This is done by the
+   * quit command, and should be done when the commands run out without one.
+   */
+  void closeImages();
+
   /**
    * Takes in a line of commands the user enters and parses it so our controller can perform
    * the operations the user wants.
@@ -38,9 +45,24 @@ public interface ImageController {
    *
    * @param originalImageName file path
    * @return String builder representing the image
-   * @throws IOException if an IO error occurs
+   * @throws IOException              if an IO error occurs
+   * @throws IllegalArgumentException if the file isn't an image ImageIO can read
+   */
+  StringBuilder getImageAsStringBuilder(String originalImageName) throws IOException,
+          IllegalArgumentException;
+
+  /**
+   * Loads in the image file with the given name. Ppm files (plain or raw) are read straight
+   * into the image, every other format is read through the ImageIO class. Ppm files too big for
+   * the heap are mapped where they are as a {@link model.MappedImageModel} if they are raw, or
+   * opened as a {@link model.TiledImageModel}, which only reads the tiles it needs.
+   *
+   * @param fileName the path of the image file
+   * @return an image for us to work on
+   * @throws IOException              if the file can't be read
+   * @throws IllegalArgumentException if the file isn't a valid image
    */
-  StringBuilder getImageAsStringBuilder(String originalImageName) throws IOException;
+  ImageModel loadImageFile(String fileName) throws IOException, IllegalArgumentException;
 
   /**
    * Loads in an image.
@@ -1,12 +1,9 @@
 package controller;
 
-import java.awt.Color;
 import java.awt.image.BufferedImage;
-import java.io.BufferedWriter;
+import java.io.Closeable;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.util.HashMap;
 import java.util.InputMismatchException;
@@ -16,26 +13,113 @@ import java.util.Scanner;
 
 import javax.imageio.ImageIO;
 
+import model.BufferedImageConverter;
 import model.ImageModel;
 import model.ImageModelImpl;
+import model.ImagePyramid;
+import model.LazyImageModel;
+import model.MappedImageModel;
 import model.Matrix;
+import model.Orientation;
+import model.PPMReader;
+import model.PackedImageModel;
+import model.TiledImageModel;
 import view.ImageView;
 import view.ImageViewImpl;
 
 /**
  * Represents the image controller implementation class. This controller allows users to interact
  * with our code and edit an image.The operations that can be performed include:
- * grey scaling, horizontal flip, vertical flip, changing the exposure,
- * loading and saving the image.
+ * grey scaling, horizontal flip, vertical flip, rotating, transposing, changing the exposure,
+ * making a thumbnail, loading and saving the image.
  */
 public class ImageControllerImpl implements ImageController {
   private final Map<String, ImageModel> images = new HashMap<>();
+  private final boolean usePackedRaster;
+  private final boolean deferred;
 
   /**
-   * Empty constructor, view is initialized to null and is set in a later method.
+   * Empty constructor, view is initialized to null and is set in a later method. Images are
+   * loaded into a {@link PackedImageModel}. Operations are deferred (see
+   * {@link #ImageControllerImpl(boolean, boolean)}) if the {@code imageeditor.deferred} system
+   * property is true.
    */
   public ImageControllerImpl() {
-    // Creates a Controller.
+    this(true, deferredByDefault());
+  }
+
+  /**
+   * Constructor that lets the user pick how loaded images are stored.
+   *
+   * @param usePackedRaster true to store images in a {@link PackedImageModel} (one int per
+   *                        pixel), false to store them in an {@link ImageModelImpl} (one
+   *                        {@link model.Pixel} per pixel)
+   */
+  public ImageControllerImpl(boolean usePackedRaster) {
+    this(usePackedRaster, false);
+  }
+
+  /**
+   * Constructor that lets the user pick how loaded images are stored, and if operations are
+   * deferred. When they are, every loaded image is wrapped in a {@link LazyImageModel}, so
+   * brighten, darken, greyscale, sepia and the flips only record what to do, and a chain of them
+   * is worked out in one pass when the image is saved.
+   *
+   * @param usePackedRaster true to store images in a {@link PackedImageModel}, false to store
+   *                        them in an {@link ImageModelImpl}
+   * @param deferred        true to defer operations until an image is needed
+   */
+  public ImageControllerImpl(boolean usePackedRaster, boolean deferred) {
+    this.usePackedRaster = usePackedRaster;
+    this.deferred = deferred;
+  }
+
+  // Says how many passes over the image deferring saved, before a deferred image is saved.
+  private void reportPasses(ImageModel image) {
+    if (!(image instanceof LazyImageModel) || ((LazyImageModel) image).isEvaluated()) {
+      return;
+    }
+    LazyImageModel lazy = (LazyImageModel) image;
+    int recorded = lazy.getRecordedSteps();
+    if (recorded > 1) {
+      System.out.println(recorded + " operations were done in one pass ("
+              + (recorded - 1) + " passes eliminated, "
+              + (recorded - lazy.getPendingSteps()) + " folded into other steps)");
+    }
+  }
+
+  // Keeps an image under a name. The image that had the name before is closed if it keeps a
+  // file open (like an image too big for memory) and no other name has it.
+  private void store(String name, ImageModel image) {
+    ImageModel old = this.images.put(name, image);
+    if (old != image && !this.images.containsValue(old)) {
+      closeQuietly(old);
+    }
+  }
+
+  // Closes an image if it keeps a file open, so its file is given back right away.
+  private static void closeQuietly(ImageModel image) {
+    if (image instanceof Closeable) {
+      try {
+        ((Closeable) image).close();
+      } catch (IOException e) {
+        // its temporary file is deleted when the program ends anyway
+      }
+    }
+  }
+
+  // Checks if a file is so big that its image would take more than a quarter of the heap.
+  private static boolean isTooBigForMemory(String fileName) {
+    return new File(fileName).length() > Runtime.getRuntime().maxMemory() / 4;
+  }
+
+  // Reads if operations should be deferred from the system property.
+  private static boolean deferredByDefault() {
+    try {
+      return Boolean.getBoolean("imageeditor.deferred");
+    } catch (SecurityException e) {
+      return false;
+    }
   }
 
   /**
@@ -52,57 +136,47 @@ public class ImageControllerImpl implements ImageController {
     return booleanToReturn;
   }
 
+  @Override
+  public void closeImages() {
+    for (ImageModel image : this.images.values()) {
+      closeQuietly(image);
+    }
+    this.images.clear();
+  }
+
   @Override
   public boolean performOperation(Operation operation) throws IOException {
     String operationName = operation.getOperationType().toLowerCase();
     int enhanceType = operation.getEnhanceType();
     String originalImageName = operation.getOriginalImageName();
     String newImage = operation.getNewImageName();
-    StringBuilder stringBuilderToAdd = new StringBuilder();
     switch (operationName) {
       case "load":
-        String[] fileTypeOfImage = originalImageName.split("\\.");
-        String strToCheck = fileTypeOfImage[fileTypeOfImage.length - 1];
-        if (!strToCheck.equals("ppm")) {
-          stringBuilderToAdd = this.getImageAsStringBuilder(originalImageName);
-          Scanner scToAdd = new Scanner(stringBuilderToAdd.toString());
-          ImageModel image = this.loadImage(scToAdd);
-          this.images.put(newImage, image);
-          break;
-        }
-        Scanner sc;
+        ImageModel image;
         try {
-          sc = new Scanner(new FileInputStream(originalImageName));
+          image = this.loadImageFile(originalImageName);
         } catch (FileNotFoundException e) {
           System.out.println("File " + originalImageName + " not found!");
           break;
         }
-        StringBuilder builder = new StringBuilder();
-        while (sc.hasNextLine()) {
-          String s = sc.nextLine();
-          if (s.charAt(0) != '#') {
-            builder.append(s + System.lineSeparator());
-          }
-        }
-        Scanner scNew = new Scanner(builder.toString());
-        ImageModel image = this.loadImage(scNew);
-        this.images.put(newImage, image);
+        this.store(newImage, image);
         break;
       case "save":
+      case "save-raw":
         ImageModel imageToSave = this.images.get(newImage);
-        BufferedWriter writer = new BufferedWriter(new FileWriter(originalImageName));
         String[] fileTypeOfImageSave = originalImageName.split("\\.");
         String strToCheckSave = fileTypeOfImageSave[fileTypeOfImageSave.length - 1];
         if (!this.images.containsKey(newImage)) {
           System.out.println("File you're saving needs to have been previously loaded.");
           break;
         }
+        this.reportPasses(imageToSave);
         ImageView view = new ImageViewImpl(imageToSave);
         if (checkIfNotPPM(strToCheckSave)) {
           view.saveBufferedImage(strToCheckSave, originalImageName);
           break;
         }
-        view.saveFile(writer);
+        view.savePPM(originalImageName, operationName.equals("save-raw"));
         break;
       case "brighten":
         ImageModel imageToBrighten = this.images.get(originalImageName);
@@ -117,7 +191,7 @@ public class ImageControllerImpl implements ImageController {
           System.out.println("Please specify by how much you want to brighten or darken an image");
           break;
         }
-        this.images.put(newImage, brighterImage);
+        this.store(newImage, brighterImage);
         break;
       case "darken":
         ImageModel imageToDarken = this.images.get(originalImageName);
@@ -129,34 +203,62 @@ public class ImageControllerImpl implements ImageController {
           System.out.println("You must input a positive integer");
           break;
         }
-        this.images.put(newImage, darkerImage);
+        this.store(newImage, darkerImage);
         break;
       case "horizontal-flip":
         ImageModel imageToFlipH = this.images.get(originalImageName);
         ImageModel hFlippedImage = imageToFlipH.horizontalFlip();
-        this.images.put(newImage, hFlippedImage);
+        this.store(newImage, hFlippedImage);
         break;
       case "vertical-flip":
         ImageModel imageToFlipV = this.images.get(originalImageName);
         ImageModel vFlippedImage = imageToFlipV.verticalFlip();
-        this.images.put(newImage, vFlippedImage);
+        this.store(newImage, vFlippedImage);
+        break;
+      case "rotate":
+        ImageModel imageToRotate = this.images.get(originalImageName);
+        ImageModel rotatedImage;
+        try {
+          rotatedImage = imageToRotate.orient(Orientation.rotation(enhanceType));
+        } catch (IllegalArgumentException e) {
+          System.out.println("You can only rotate an image by 90, 180 or 270 degrees");
+          break;
+        }
+        this.store(newImage, rotatedImage);
+        break;
+      case "transpose":
+        ImageModel imageToTranspose = this.images.get(originalImageName);
+        ImageModel transposedImage = imageToTranspose.orient(Orientation.TRANSPOSE);
+        this.store(newImage, transposedImage);
         break;
       case "blur":
         ImageModel imageToBlur = this.images.get(originalImageName);
         ImageModel blurredImage = imageToBlur.filter(Matrix.GAUSSIAN_BLUR);
-        this.images.put(newImage, blurredImage);
+        this.store(newImage, blurredImage);
         break;
       case "sharpen":
         ImageModel imageToSharpen = this.images.get(originalImageName);
         ImageModel sharpenedImage = imageToSharpen.filter(Matrix.SHARPEN);
-        this.images.put(newImage, sharpenedImage);
+        this.store(newImage, sharpenedImage);
         break;
       case "sepia":
         ImageModel sepiaImage = this.images.get(originalImageName);
         ImageModel sepiaImageToAdd = sepiaImage.colorTransformation(Matrix.SEPIA);
-        this.images.put(newImage, sepiaImageToAdd);
+        this.store(newImage, sepiaImageToAdd);
+        break;
+      case "thumbnail":
+        ImageModel imageToShrink = this.images.get(originalImageName);
+        ImageModel thumbnail;
+        try {
+          thumbnail = ImagePyramid.of(imageToShrink).thumbnail(enhanceType);
+        } catch (IllegalArgumentException e) {
+          System.out.println("You must give the size of the thumbnail as a positive integer");
+          break;
+        }
+        this.store(newImage, thumbnail);
         break;
       case "quit":
+        this.closeImages();
         return true;
       default:
         performGreyscale(operation);
@@ -177,37 +279,37 @@ public class ImageControllerImpl implements ImageController {
       case "greyscale-red":
         ImageModel imageGSR = this.images.get(originalImageName);
         ImageModel greyScaleRedImage = imageGSR.greyScale("red");
-        this.images.put(newImage, greyScaleRedImage);
+        this.store(newImage, greyScaleRedImage);
         break;
       case "greyscale-green":
         ImageModel imageGSG = this.images.get(originalImageName);
         ImageModel greyScaleGreenImage = imageGSG.greyScale("green");
-        this.images.put(newImage, greyScaleGreenImage);
+        this.store(newImage, greyScaleGreenImage);
         break;
       case "greyscale-blue":
         ImageModel imageGSB = this.images.get(originalImageName);
         ImageModel greyScaleBlueImage = imageGSB.greyScale("blue");
-        this.images.put(newImage, greyScaleBlueImage);
+        this.store(newImage, greyScaleBlueImage);
         break;
       case "greyscale-value":
         ImageModel imageGSV = this.images.get(originalImageName);
         ImageModel greyScaleValueImage = imageGSV.greyScale("value");
-        this.images.put(newImage, greyScaleValueImage);
+        this.store(newImage, greyScaleValueImage);
         break;
       case "greyscale-intensity":
         ImageModel imageGSI = this.images.get(originalImageName);
         ImageModel greyScaleIntensityImage = imageGSI.greyScale("intensity");
-        this.images.put(newImage, greyScaleIntensityImage);
+        this.store(newImage, greyScaleIntensityImage);
         break;
       case "greyscale-luma":
         ImageModel imageGSL = this.images.get(originalImageName);
         ImageModel greyScaleLumaImage = imageGSL.greyScale("luma");
-        this.images.put(newImage, greyScaleLumaImage);
+        this.store(newImage, greyScaleLumaImage);
         break;
       case "greyscale":
         ImageModel imageGSLCT = this.images.get(originalImageName);
         ImageModel imageGSLCTtoReturn = imageGSLCT.colorTransformation(Matrix.LUMA);
-        this.images.put(newImage, imageGSLCTtoReturn);
+        this.store(newImage, imageGSLCTtoReturn);
         break;
       default:
         // do nothing
@@ -275,35 +377,43 @@ public class ImageControllerImpl implements ImageController {
 
   @Override
   public StringBuilder getImageAsStringBuilder(String originalImageName) throws IOException {
-    StringBuilder stringBuilderToReturn = new StringBuilder();
-    File file = new File(originalImageName);
-    BufferedImage img = ImageIO.read(file);
-    stringBuilderToReturn.append("P3" + "\n");
-    stringBuilderToReturn.append(img.getWidth() + " ");
-    stringBuilderToReturn.append(img.getHeight() + "\n");
-    stringBuilderToReturn.append(255 + "\n");
-    for (int y = 0; y < img.getHeight(); y++) {
-      for (int x = 0; x < img.getWidth(); x++) {
-        //Retrieving contents of a pixel
-        int pixel = img.getRGB(x, y);
-        //Creating a Color object from pixel value
-        Color color = new Color(pixel, true);
-        //Retrieving the R G B values
-        int red = color.getRed();
-        int green = color.getGreen();
-        int blue = color.getBlue();
-        stringBuilderToReturn.append(red + "\n");
-        stringBuilderToReturn.append(green + "\n");
-        stringBuilderToReturn.append(blue + "\n");
-      }
+    BufferedImage img = ImageIO.read(new File(originalImageName));
+    if (img == null) {
+      throw new IllegalArgumentException("We can't read the image " + originalImageName);
     }
-    return stringBuilderToReturn;
+    // the whole raster is copied at once instead of looking up one pixel at a time
+    return BufferedImageConverter.toPackedImage(img).toStringBuilder().insert(0, "P3\n");
   }
 
 
+  @Override
+  public ImageModel loadImageFile(String fileName) throws IOException, IllegalArgumentException {
+    String[] fileTypeOfImage = fileName.split("\\.");
+    String strToCheck = fileTypeOfImage[fileTypeOfImage.length - 1];
+    PackedImageModel image;
+    if (strToCheck.equals("ppm") && isTooBigForMemory(fileName)) {
+      // a file this big is never deferred or copied to pixels. Raw files are mapped where they
+      // are, the others are read a tile at a time
+      return MappedImageModel.canMap(fileName) ? MappedImageModel.open(fileName)
+              : TiledImageModel.open(fileName);
+    }
+    if (strToCheck.equals("ppm")) {
+      image = PPMReader.read(fileName);
+    } else {
+      BufferedImage img = ImageIO.read(new File(fileName));
+      if (img == null) {
+        throw new IllegalArgumentException("We can't read the image " + fileName);
+      }
+      image = BufferedImageConverter.toPackedImage(img);
+    }
+    ImageModel loaded = this.usePackedRaster ? image : ImageModelImpl.fromPackedImage(image);
+    return this.deferred ? new LazyImageModel(loaded) : loaded;
+  }
+
   @Override
   public ImageModel loadImage(Scanner sc) {
-    return new ImageModelImpl(sc);
+    ImageModel loaded = this.usePackedRaster ? new PackedImageModel(sc) : new ImageModelImpl(sc);
+    return this.deferred ? new LazyImageModel(loaded) : loaded;
   }
 
 }
@@ -0,0 +1,210 @@
+package model;
+
+/**
+ * Represents a color transformation matrix together with any exposure changes (and other shifts
+ * of the channels) that come after it, folded into one 3x4 matrix. Every channel of the result
+ * is the matching row of the 3x3 part times the red, green and blue values of the pixel, rounded
+ * with {@link Math#round(double)}, plus the whole number in the 4th column, and then clamped
+ * between a low and a high bound.
+ *
+ * <p>Doing a matrix and then brightening clamps the matrix result to 0-255 before the brighten
+ * adds to it, and that can matter (a pixel that the matrix took below 0 ends up at the brighten
+ * amount, not below it). Keeping a low and a high bound for every channel, instead of always
+ * clamping to 0-255, is what lets any number of shifts be folded in with exactly the same result
+ * as doing them one at a time. Matrices that come after other matrices are not folded in, since
+ * the rounding in between would be lost.
+ */
+public final class AffineColorMap {
+  private final double[][] matrix;
+  private final int[] offsets;
+  private final int[] low;
+  private final int[] high;
+
+  // Makes a map from arrays that won't be changed afterwards.
+  private AffineColorMap(double[][] matrix, int[] offsets, int[] low, int[] high) {
+    this.matrix = matrix;
+    this.offsets = offsets;
+    this.low = low;
+    this.high = high;
+  }
+
+  /**
+   * Makes a map that only applies a color transformation matrix.
+   *
+   * @param matrix the 3x3 matrix, the first row makes the red value, the second the green value
+   *               and the third the blue value
+   * @return the map
+   * @throws IllegalArgumentException if the matrix isn't 3x3
+   */
+  public static AffineColorMap of(double[][] matrix) throws IllegalArgumentException {
+    ColorTransformer.checkMatrix(matrix);
+    double[][] copy = new double[3][];
+    for (int i = 0; i < 3; i++) {
+      copy[i] = matrix[i].clone();
+    }
+    return new AffineColorMap(copy, new int[3], new int[3], new int[]{255, 255, 255});
+  }
+
+  /**
+   * Folds a point operation that comes after this map into it, which works when every table of
+   * the operation just adds a number to the value and clamps it (like brighten and darken), and
+   * the operation doesn't reduce the pixel or only picks its red, green or blue value.
+   *
+   * @param next the operation that comes after this map
+   * @return the folded map, or null if the operation can't be folded in
+   * @throws IllegalArgumentException if the operation is null
+   */
+  public AffineColorMap then(PointOperation next) throws IllegalArgumentException {
+    if (next == null) {
+      throw new IllegalArgumentException("Operation can't be null");
+    }
+    int source;
+    switch (next.getReducer()) {
+      case NONE:
+        source = -1;
+        break;
+      case RED:
+        source = 0;
+        break;
+      case GREEN:
+        source = 1;
+        break;
+      case BLUE:
+        source = 2;
+        break;
+      default:
+        return null;
+    }
+    double[][] newMatrix = new double[3][];
+    int[] newOffsets = new int[3];
+    int[] newLow = new int[3];
+    int[] newHigh = new int[3];
+    for (int c = 0; c < 3; c++) {
+      // the channel of this map that the table of channel c reads
+      int from = source < 0 ? c : source;
+      Integer shift = clampedShift(next, c);
+      if (shift == null) {
+        return null;
+      }
+      newMatrix[c] = this.matrix[from];
+      newOffsets[c] = this.offsets[from] + shift;
+      // the table never goes down, so clamping and then looking up is the same as looking up the
+      // bounds and clamping to those
+      newLow[c] = next.lookUp(c, this.low[from]);
+      newHigh[c] = next.lookUp(c, this.high[from]);
+    }
+    return new AffineColorMap(newMatrix, newOffsets, newLow, newHigh);
+  }
+
+  /**
+   * Checks if this map is just a color transformation matrix, with nothing folded in after it.
+   *
+   * @return true if the map has no shifts or extra bounds
+   */
+  public boolean isPlainMatrix() {
+    for (int c = 0; c < 3; c++) {
+      if (this.offsets[c] != 0 || this.low[c] != 0 || this.high[c] != 255) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Gets the map as a 3x4 matrix, the last column is the number added to each channel after the
+   * matrix is applied and rounded.
+   *
+   * @return a copy of the 3x4 matrix
+   */
+  public double[][] getMatrix() {
+    double[][] result = new double[3][4];
+    for (int c = 0; c < 3; c++) {
+      System.arraycopy(this.matrix[c], 0, result[c], 0, 3);
+      result[c][3] = this.offsets[c];
+    }
+    return result;
+  }
+
+  /**
+   * Gets the lowest value a channel can have after the map.
+   *
+   * @param channel 0 for red, 1 for green and 2 for blue
+   * @return the low bound of the channel
+   */
+  public int getLow(int channel) {
+    return this.low[channel];
+  }
+
+  /**
+   * Gets the highest value a channel can have after the map.
+   *
+   * @param channel 0 for red, 1 for green and 2 for blue
+   * @return the high bound of the channel
+   */
+  public int getHigh(int channel) {
+    return this.high[channel];
+  }
+
+  /**
+   * Applies this map to part of a packed raster, writing into another one (they can be the same
+   * array). A plain matrix goes through the shared {@link ColorTransformer}.
+   *
+   * @param pixels the packed 0xRRGGBB values to read
+   * @param result the array to write the new pixels into
+   * @param start  the first index to change
+   * @param end    the index after the last one to change
+   */
+  public void apply(int[] pixels, int[] result, int start, int end) {
+    if (this.isPlainMatrix()) {
+      ColorTransformer.getShared().transform(pixels, result, start, end, this.matrix);
+      return;
+    }
+    for (int i = start; i < end; i++) {
+      result[i] = this.applyToPixel(pixels[i]);
+    }
+  }
+
+  /**
+   * Applies this map to one packed pixel.
+   *
+   * @param rgb the packed 0xRRGGBB value
+   * @return the new packed value
+   */
+  public int applyToPixel(int rgb) {
+    int r = PackedImageModel.red(rgb);
+    int g = PackedImageModel.green(rgb);
+    int b = PackedImageModel.blue(rgb);
+    int result = 0;
+    for (int c = 0; c < 3; c++) {
+      double[] row = this.matrix[c];
+      // rounded the same way as the color transformation, then shifted in a long so nothing
+      // wraps around
+      long value = (long) (int) Math.round((r * row[0]) + (g * row[1]) + (b * row[2]))
+              + this.offsets[c];
+      result = (result << 8) | (int) Math.min(Math.max(value, this.low[c]), this.high[c]);
+    }
+    return result;
+  }
+
+  // Finds the number that one table of the operation adds to the value, if the table adds a
+  // number and clamps the result between its first and last entry, or gives null if it doesn't.
+  private static Integer clampedShift(PointOperation operation, int channel) {
+    int low = operation.lookUp(channel, 0);
+    int high = operation.lookUp(channel, 255);
+    int shift = 0;
+    for (int i = 0; i < 256; i++) {
+      int value = operation.lookUp(channel, i);
+      if (value > low) {
+        shift = value - i;
+        break;
+      }
+    }
+    for (int i = 0; i < 256; i++) {
+      int expected = Math.min(Math.max(i + shift, low), high);
+      if (low > high || operation.lookUp(channel, i) != expected) {
+        return null;
+      }
+    }
+    return shift;
+  }
+}
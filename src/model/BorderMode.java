@@ -0,0 +1,64 @@
+package model;
+
+/**
+ * Represents the ways a filter can treat the neighbours of a pixel that fall outside the image.
+ */
+public enum BorderMode {
+  /**
+   * Neighbours outside the image count as black (0). This is how our filters always worked.
+   */
+  ZERO {
+    @Override
+    public int map(int index, int size) {
+      return index >= 0 && index < size ? index : -1;
+    }
+  },
+
+  /**
+   * Neighbours outside the image take the value of the closest pixel on the edge.
+   */
+  CLAMP {
+    @Override
+    public int map(int index, int size) {
+      if (index < 0) {
+        return 0;
+      }
+      return Math.min(index, size - 1);
+    }
+  },
+
+  /**
+   * The image is mirrored around its edge pixels, so the neighbour just outside the image is
+   * the same as the one just inside it (the edge pixel itself isn't repeated).
+   */
+  MIRROR {
+    @Override
+    public int map(int index, int size) {
+      if (size == 1) {
+        return 0;
+      }
+      int period = 2 * (size - 1);
+      int position = Math.floorMod(index, period);
+      return position < size ? position : period - position;
+    }
+  },
+
+  /**
+   * The image repeats itself, so neighbours past one edge come from the opposite edge.
+   */
+  WRAP {
+    @Override
+    public int map(int index, int size) {
+      return Math.floorMod(index, size);
+    }
+  };
+
+  /**
+   * Finds the row or column of the image that a neighbour at the given index reads from.
+   *
+   * @param index the row or column of the neighbour, it can be outside the image
+   * @param size  the height or width of the image
+   * @return the row or column inside the image to read from, or -1 if the neighbour counts as 0
+   */
+  public abstract int map(int index, int size);
+}
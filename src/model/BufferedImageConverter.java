@@ -0,0 +1,205 @@
+package model;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DirectColorModel;
+import java.awt.image.Raster;
+import java.awt.image.SampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+
+/**
+ * Copies pixels between packed rasters and buffered images. Instead of going through
+ * {@code getRGB}/{@code setRGB} one pixel at a time, the arrays behind the buffered image are read
+ * and written directly for the image types ImageIO usually hands back (int RGB/ARGB/BGR and
+ * byte BGR/ABGR). Any other type is copied with the bulk {@code getRGB} call, which gives the same
+ * values the old per pixel code did.
+ *
+ * <p>For showing an image on screen the pixels don't have to be copied at all. A packed raster
+ * already has the layout of {@link BufferedImage#TYPE_INT_RGB}, so a buffered image can be made
+ * around the same array (see {@link #view(ImageModel)}).
+ */
+public final class BufferedImageConverter {
+
+  private BufferedImageConverter() {
+    // Only has static methods.
+  }
+
+  /**
+   * Copies a buffered image into a new packed image. Transparency is dropped, just like when
+   * images were loaded one pixel at a time.
+   *
+   * @param image the image to copy
+   * @return the image as a packed image with a max value of 255
+   * @throws IllegalArgumentException if the image is null
+   */
+  public static PackedImageModel toPackedImage(BufferedImage image)
+          throws IllegalArgumentException {
+    if (image == null) {
+      throw new IllegalArgumentException("Image can't be null");
+    }
+    int width = image.getWidth();
+    int height = image.getHeight();
+    int[] pixels = new int[width * height];
+    if (!copyFromDataBuffer(image, pixels)) {
+      image.getRGB(0, 0, width, height, pixels, 0, width);
+      for (int i = 0; i < pixels.length; i++) {
+        pixels[i] &= 0xFFFFFF;
+      }
+    }
+    return new PackedImageModel(width, height, 255, pixels);
+  }
+
+  /**
+   * Makes a new RGB buffered image out of a packed raster. The raster is copied in one go into
+   * the array behind the image.
+   *
+   * @param width  the width of the image
+   * @param height the height of the image
+   * @param pixels the packed 0xRRGGBB values of the image in row-major order
+   * @return the new buffered image
+   */
+  public static BufferedImage toBufferedImage(int width, int height, int[] pixels) {
+    BufferedImage imageToReturn = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+    int[] data = ((DataBufferInt) imageToReturn.getRaster().getDataBuffer()).getData();
+    System.arraycopy(pixels, 0, data, 0, width * height);
+    return imageToReturn;
+  }
+
+  /**
+   * Makes a new RGB buffered image out of any image, copying it one row at a time.
+   *
+   * @param model the image to copy
+   * @return the new buffered image
+   */
+  public static BufferedImage toBufferedImage(ImageModel model) {
+    int width = model.getWidth();
+    int height = model.getHeight();
+    BufferedImage imageToReturn = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+    int[] data = ((DataBufferInt) imageToReturn.getRaster().getDataBuffer()).getData();
+    int[] row = new int[width];
+    for (int i = 0; i < height; i++) {
+      model.getRow(i, row);
+      System.arraycopy(row, 0, data, i * width, width);
+    }
+    return imageToReturn;
+  }
+
+  /**
+   * Makes an RGB buffered image around a packed raster, without copying it. The buffered image
+   * and the raster share their array, so nothing must draw on the buffered image.
+   *
+   * @param width  the width of the image
+   * @param height the height of the image
+   * @param pixels the packed 0xRRGGBB values of the image in row-major order
+   * @return a buffered image showing the raster
+   * @throws IllegalArgumentException if the raster doesn't match the dimensions
+   */
+  public static BufferedImage wrap(int width, int height, int[] pixels)
+          throws IllegalArgumentException {
+    if (width < 1 || height < 1 || pixels == null || pixels.length != width * height) {
+      throw new IllegalArgumentException("Raster doesn't match the image dimensions");
+    }
+    DirectColorModel colorModel = new DirectColorModel(24, 0xFF0000, 0xFF00, 0xFF);
+    WritableRaster raster = Raster.createPackedRaster(new DataBufferInt(pixels, pixels.length),
+            width, height, width, colorModel.getMasks(), null);
+    return new BufferedImage(colorModel, raster, false, null);
+  }
+
+  /**
+   * Gets a buffered image to show an image on screen, sharing the raster of the image when it
+   * has one. A flipped or turned view is laid out in order first (which it keeps), and any other
+   * kind of image is copied. Since the array may be shared, nothing must draw on the result.
+   *
+   * @param model the image to show
+   * @return a buffered image of the image
+   * @throws IllegalArgumentException if the image is null
+   */
+  public static BufferedImage view(ImageModel model) throws IllegalArgumentException {
+    if (model == null) {
+      throw new IllegalArgumentException("Image can't be null");
+    }
+    ImageModel image = model;
+    if (image instanceof OrientedImageModel) {
+      image = ((OrientedImageModel) image).materialize();
+    }
+    if (image instanceof PackedImageModel && image.getWidth() > 0 && image.getHeight() > 0) {
+      return wrap(image.getWidth(), image.getHeight(), ((PackedImageModel) image).raster());
+    }
+    return toBufferedImage(image);
+  }
+
+  // Copies the pixels straight out of the array behind the image if its type is one we know.
+  // Returns false if the pixels have to be copied some other way.
+  private static boolean copyFromDataBuffer(BufferedImage image, int[] pixels) {
+    WritableRaster raster = image.getRaster();
+    if (raster.getSampleModelTranslateX() != 0 || raster.getSampleModelTranslateY() != 0
+            || raster.getParent() != null) {
+      return false;
+    }
+    SampleModel sampleModel = raster.getSampleModel();
+    DataBuffer dataBuffer = raster.getDataBuffer();
+    if (dataBuffer.getNumBanks() != 1) {
+      return false;
+    }
+    int width = image.getWidth();
+    int height = image.getHeight();
+    switch (image.getType()) {
+      case BufferedImage.TYPE_INT_RGB:
+      case BufferedImage.TYPE_INT_ARGB:
+      case BufferedImage.TYPE_INT_BGR:
+        if (!(sampleModel instanceof SinglePixelPackedSampleModel)) {
+          return false;
+        }
+        int stride = ((SinglePixelPackedSampleModel) sampleModel).getScanlineStride();
+        int offset = dataBuffer.getOffset();
+        int[] ints = ((DataBufferInt) dataBuffer).getData();
+        boolean bgr = image.getType() == BufferedImage.TYPE_INT_BGR;
+        for (int y = 0; y < height; y++) {
+          int from = offset + y * stride;
+          int to = y * width;
+          if (bgr) {
+            for (int x = 0; x < width; x++) {
+              int value = ints[from + x];
+              pixels[to + x] = ((value & 0xFF) << 16) | (value & 0xFF00) | ((value >> 16) & 0xFF);
+            }
+          } else {
+            for (int x = 0; x < width; x++) {
+              pixels[to + x] = ints[from + x] & 0xFFFFFF;
+            }
+          }
+        }
+        return true;
+      case BufferedImage.TYPE_3BYTE_BGR:
+      case BufferedImage.TYPE_4BYTE_ABGR:
+        if (!(sampleModel instanceof ComponentSampleModel)) {
+          return false;
+        }
+        ComponentSampleModel componentModel = (ComponentSampleModel) sampleModel;
+        int[] bandOffsets = componentModel.getBandOffsets();
+        int pixelStride = componentModel.getPixelStride();
+        int scanlineStride = componentModel.getScanlineStride();
+        int start = dataBuffer.getOffset();
+        byte[] bytes = ((DataBufferByte) dataBuffer).getData();
+        int redOffset = bandOffsets[0];
+        int greenOffset = bandOffsets[1];
+        int blueOffset = bandOffsets[2];
+        for (int y = 0; y < height; y++) {
+          int from = start + y * scanlineStride;
+          int to = y * width;
+          for (int x = 0; x < width; x++) {
+            pixels[to + x] = ((bytes[from + redOffset] & 0xFF) << 16)
+                    | ((bytes[from + greenOffset] & 0xFF) << 8)
+                    | (bytes[from + blueOffset] & 0xFF);
+            from += pixelStride;
+          }
+        }
+        return true;
+      default:
+        return false;
+    }
+  }
+}
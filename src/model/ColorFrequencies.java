@@ -0,0 +1,412 @@
+package model;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Holds the red, green, blue and intensity histograms of an image, as arrays of 256 counts. All
+ * four are counted in one pass over the image. Big images are split into bands of rows that are
+ * counted at the same time on the common fork join pool, every band into its own histograms, and
+ * the histograms of the bands are added up at the end, so threads never write to the same array.
+ *
+ * <p>After a point operation the histograms can often be worked out from the ones before it,
+ * without looking at the image again (see {@link #after(PointOperation)}).
+ *
+ * <p>For very big images the histograms can also be estimated from a sample of the pixels (see
+ * {@link #sample(ImageModel, double)}), which is quick enough to show while the exact ones are
+ * still being counted.
+ */
+public final class ColorFrequencies {
+  // Bands smaller than this many pixels are not split any further
+  private static final int MIN_BAND_PIXELS = 1 << 16;
+  // Where each histogram starts in the one array a band counts into
+  private static final int RED = 0;
+  private static final int GREEN = 256;
+  private static final int BLUE = 512;
+  private static final int INTENSITY = 768;
+  // How often a sample may be off by more than its error, if the pixels were picked at random
+  private static final double FAILURE_CHANCE = 0.001;
+  // Steps between sampled columns of consecutive sampled rows are moved along by this fraction,
+  // so the samples don't all fall in the same columns
+  private static final double GOLDEN_RATIO = 0.6180339887498949;
+
+  private final int maxValue;
+  private final int[] counts;
+  private final double error;
+
+  // Makes the histograms from one array holding all four of them, which won't be changed
+  // afterwards. The error is 0 for histograms that were counted exactly.
+  private ColorFrequencies(int maxValue, int[] counts, double error) {
+    this.maxValue = maxValue;
+    this.counts = counts;
+    this.error = error;
+  }
+
+  /**
+   * Counts the histograms of any image, reading it one row at a time.
+   *
+   * @param image the image to count
+   * @return the histograms of the image
+   * @throws IllegalArgumentException if the image is null
+   */
+  public static ColorFrequencies of(ImageModel image) throws IllegalArgumentException {
+    if (image == null) {
+      throw new IllegalArgumentException("Image can't be null");
+    }
+    return count(image, null, image.getWidth(), image.getHeight(), image.getMaxValue());
+  }
+
+  /**
+   * Counts the histograms of a packed raster.
+   *
+   * @param pixels   the packed 0xRRGGBB values of the image in row-major order
+   * @param width    the width of the image
+   * @param height   the height of the image
+   * @param maxValue the max value of a color channel
+   * @return the histograms of the image
+   * @throws IllegalArgumentException if the raster doesn't match the dimensions
+   */
+  public static ColorFrequencies of(int[] pixels, int width, int height, int maxValue)
+          throws IllegalArgumentException {
+    if (width < 0 || height < 0 || pixels == null || pixels.length != width * height) {
+      throw new IllegalArgumentException("Raster doesn't match the image dimensions");
+    }
+    return count(null, pixels, width, height, maxValue);
+  }
+
+  /**
+   * Estimates the histograms of an image from a sample of its pixels. The pixels are picked on a
+   * grid with the same step every time, so the same image always gives the same estimate, and
+   * only the rows that have samples on them are read. Enough pixels are taken that every count
+   * should be within the error times the number of pixels in the image of the exact count. That
+   * comes from the Dvoretzky-Kiefer-Wolfowitz bound, which holds with a chance of 99.9% for
+   * pixels picked at random. A grid gives the same result unless the image has a pattern that
+   * repeats in step with the grid. Images small enough that the sample would be most of the image
+   * are just counted exactly.
+   *
+   * @param image the image to estimate the histograms of
+   * @param error how far off each count may be, as a fraction of the number of pixels
+   * @return the estimated histograms, or the exact ones for small images
+   * @throws IllegalArgumentException if the image is null or the error isn't between 0 and 1
+   */
+  public static ColorFrequencies sample(ImageModel image, double error)
+          throws IllegalArgumentException {
+    if (image == null) {
+      throw new IllegalArgumentException("Image can't be null");
+    }
+    if (!(error > 0 && error < 1)) {
+      throw new IllegalArgumentException("Error must be between 0 and 1");
+    }
+    int width = image.getWidth();
+    int height = image.getHeight();
+    long pixels = (long) width * height;
+    // each bar is the difference of two points of the distribution, and there are four of them
+    double wanted = Math.ceil(2 * Math.log(8 / FAILURE_CHANCE) / (error * error));
+    if (pixels <= 2 * wanted) {
+      return of(image);
+    }
+    int columnStep = (int) Math.max(1, Math.min(width, Math.sqrt(pixels / wanted)));
+    int rowStep = (int) Math.max(1, pixels / (wanted * columnStep));
+    int[] counts = new int[1024];
+    int[] row = new int[width];
+    long samples = 0;
+    for (int i = 0, k = 0; i < height; i += rowStep, k++) {
+      image.getRow(i, row);
+      int start = (int) ((k * GOLDEN_RATIO) % 1 * columnStep);
+      for (int j = start; j < width; j += columnStep) {
+        int rgb = row[j];
+        int r = (rgb >> 16) & 0xFF;
+        int g = (rgb >> 8) & 0xFF;
+        int b = rgb & 0xFF;
+        counts[RED + r]++;
+        counts[GREEN + g]++;
+        counts[BLUE + b]++;
+        counts[INTENSITY + (r + g + b) / 3]++;
+        samples++;
+      }
+    }
+    // every sampled pixel stands for the pixels around it
+    double scale = (double) pixels / samples;
+    for (int i = 0; i < counts.length; i++) {
+      counts[i] = (int) Math.round(counts[i] * scale);
+    }
+    return new ColorFrequencies(image.getMaxValue(), counts, error);
+  }
+
+  /**
+   * Works out the histograms of an image after a point operation from the histograms before it,
+   * when that can be done exactly. Every value of a channel goes to one new value, so the red,
+   * green and blue histograms just have their counts moved. Greyscale operations that pick the
+   * red, green or blue value, or the intensity, make all three channels from one value whose
+   * histogram is already known, so the new intensity is known too. For other operations the
+   * new intensity depends on the three channels of each pixel together. It is only known when
+   * the operation adds the same number to every channel and no pixel of the image gets clamped
+   * (which the histograms show), since then every intensity goes up by that number. Estimated
+   * histograms can't show if some pixel gets clamped, so nothing is worked out from them.
+   *
+   * @param operation the operation done to the image
+   * @return the histograms after the operation, or null if the image has to be counted again
+   * @throws IllegalArgumentException if the operation is null
+   */
+  public ColorFrequencies after(PointOperation operation) throws IllegalArgumentException {
+    if (operation == null) {
+      throw new IllegalArgumentException("Operation can't be null");
+    }
+    if (!this.isExact()) {
+      return null;
+    }
+    switch (operation.getReducer()) {
+      case NONE:
+        Integer shift = this.commonShift(operation);
+        if (shift == null) {
+          return null;
+        }
+        int[] result = new int[1024];
+        for (int i = 0; i < 256; i++) {
+          result[RED + operation.lookUp(0, i)] += this.counts[RED + i];
+          result[GREEN + operation.lookUp(1, i)] += this.counts[GREEN + i];
+          result[BLUE + operation.lookUp(2, i)] += this.counts[BLUE + i];
+          if (this.counts[INTENSITY + i] != 0) {
+            result[INTENSITY + i + shift] += this.counts[INTENSITY + i];
+          }
+        }
+        return new ColorFrequencies(this.maxValue, result, 0);
+      case RED:
+        return this.reduced(RED, operation);
+      case GREEN:
+        return this.reduced(GREEN, operation);
+      case BLUE:
+        return this.reduced(BLUE, operation);
+      case INTENSITY:
+        return this.reduced(INTENSITY, operation);
+      default:
+        return null;
+    }
+  }
+
+  /**
+   * Gets one of the histograms.
+   *
+   * @param type red, green, blue or intensity
+   * @return a copy of the 256 counts of the histogram
+   * @throws IllegalArgumentException if the type isn't one of those
+   */
+  public int[] get(String type) throws IllegalArgumentException {
+    int[] result = new int[256];
+    System.arraycopy(this.counts, offset(type), result, 0, 256);
+    return result;
+  }
+
+  /**
+   * Gets how many pixels have a value in one of the histograms.
+   *
+   * @param type  red, green, blue or intensity
+   * @param value the value, between 0 and 255
+   * @return the number of pixels with that value
+   * @throws IllegalArgumentException if the type isn't one of those or the value is outside
+   *                                  0-255
+   */
+  public int getCount(String type, int value) throws IllegalArgumentException {
+    if (value < 0 || value > 255) {
+      throw new IllegalArgumentException("Value must be between 0 and 255");
+    }
+    return this.counts[offset(type) + value];
+  }
+
+  /**
+   * Gets the biggest count of one of the histograms, which is how tall it has to be drawn.
+   *
+   * @param type red, green, blue or intensity
+   * @return the biggest count
+   * @throws IllegalArgumentException if the type isn't one of those
+   */
+  public int getMaxCount(String type) throws IllegalArgumentException {
+    int start = offset(type);
+    int max = 0;
+    for (int i = start; i < start + 256; i++) {
+      max = Math.max(max, this.counts[i]);
+    }
+    return max;
+  }
+
+  /**
+   * Gets the max value of a color channel of the image that was counted.
+   *
+   * @return the max value of the image
+   */
+  public int getMaxValue() {
+    return this.maxValue;
+  }
+
+  /**
+   * Checks if these histograms were counted from every pixel, rather than estimated from some.
+   *
+   * @return true if the histograms are exact
+   */
+  public boolean isExact() {
+    return this.error == 0;
+  }
+
+  /**
+   * Gets how far off each count may be, as a fraction of the number of pixels in the image.
+   *
+   * @return the error the histograms were estimated with, or 0 if they are exact
+   */
+  public double getError() {
+    return this.error;
+  }
+
+  /**
+   * Turns one of the histograms into the map that {@link ImageModel#returnColorFrequencies}
+   * gives. It has every value from 0 to the max value of the image, and any value above that
+   * which some pixel has.
+   *
+   * @param type red, green, blue or intensity
+   * @return a map from every value to how many pixels have it
+   * @throws IllegalArgumentException if the type isn't one of those
+   */
+  public Map<Integer, Integer> toMap(String type) throws IllegalArgumentException {
+    int start = offset(type);
+    Map<Integer, Integer> mapToReturn = new HashMap<>();
+    for (int i = 0; i < 256; i++) {
+      if (i <= this.maxValue || this.counts[start + i] != 0) {
+        mapToReturn.put(i, this.counts[start + i]);
+      }
+    }
+    return mapToReturn;
+  }
+
+  // Makes the histograms after a greyscale that reduces every pixel to the value counted by the
+  // histogram starting at the offset.
+  private ColorFrequencies reduced(int offset, PointOperation operation) {
+    int[] result = new int[1024];
+    for (int i = 0; i < 256; i++) {
+      int count = this.counts[offset + i];
+      int r = operation.lookUp(0, i);
+      int g = operation.lookUp(1, i);
+      int b = operation.lookUp(2, i);
+      result[RED + r] += count;
+      result[GREEN + g] += count;
+      result[BLUE + b] += count;
+      result[INTENSITY + (r + g + b) / 3] += count;
+    }
+    return new ColorFrequencies(this.maxValue, result, 0);
+  }
+
+  // Finds the number the operation adds to every value of every channel that some pixel has,
+  // or gives null if it doesn't add the same number to all of them.
+  private Integer commonShift(PointOperation operation) {
+    Integer shift = null;
+    for (int channel = 0; channel < 3; channel++) {
+      int start = channel * 256;
+      for (int i = 0; i < 256; i++) {
+        if (this.counts[start + i] == 0) {
+          continue;
+        }
+        int difference = operation.lookUp(channel, i) - i;
+        if (shift == null) {
+          shift = difference;
+        } else if (shift != difference) {
+          return null;
+        }
+      }
+    }
+    return shift == null ? 0 : shift;
+  }
+
+  // Finds where a histogram starts in the array of counts.
+  private static int offset(String type) throws IllegalArgumentException {
+    if (type == null) {
+      throw new IllegalArgumentException("We can't support that type of histogram");
+    }
+    switch (type) {
+      case "red":
+        return RED;
+      case "green":
+        return GREEN;
+      case "blue":
+        return BLUE;
+      case "intensity":
+        return INTENSITY;
+      default:
+        throw new IllegalArgumentException("We can't support that type of histogram");
+    }
+  }
+
+  // Counts either the rows of the image or the raster, whichever isn't null.
+  private static ColorFrequencies count(ImageModel image, int[] pixels, int width, int height,
+                                        int maxValue) {
+    Band band = new Band(image, pixels, width, 0, height);
+    int[] counts = (long) width * height <= MIN_BAND_PIXELS ? band.compute() : band.invoke();
+    return new ColorFrequencies(maxValue, counts, 0);
+  }
+
+  // Counts the pixels of some rows into the four histograms.
+  private static void countRows(ImageModel image, int[] pixels, int width, int firstRow,
+                                int lastRow, int[] counts) {
+    int[] row = image == null ? null : new int[width];
+    for (int i = firstRow; i < lastRow; i++) {
+      int start = 0;
+      int[] source = pixels;
+      if (image != null) {
+        image.getRow(i, row);
+        source = row;
+      } else {
+        start = i * width;
+      }
+      for (int j = start; j < start + width; j++) {
+        int rgb = source[j];
+        int r = (rgb >> 16) & 0xFF;
+        int g = (rgb >> 8) & 0xFF;
+        int b = rgb & 0xFF;
+        counts[RED + r]++;
+        counts[GREEN + g]++;
+        counts[BLUE + b]++;
+        counts[INTENSITY + (r + g + b) / 3]++;
+      }
+    }
+  }
+
+  /**
+   * A band of rows of the image. Big bands are split in half, and the halves are counted into
+   * their own histograms which are then added together.
+   */
+  private static final class Band extends RecursiveTask<int[]> {
+    private static final long serialVersionUID = 1L;
+
+    private final ImageModel image;
+    private final int[] pixels;
+    private final int width;
+    private final int firstRow;
+    private final int lastRow;
+
+    Band(ImageModel image, int[] pixels, int width, int firstRow, int lastRow) {
+      this.image = image;
+      this.pixels = pixels;
+      this.width = width;
+      this.firstRow = firstRow;
+      this.lastRow = lastRow;
+    }
+
+    @Override
+    protected int[] compute() {
+      int rows = this.lastRow - this.firstRow;
+      if (rows < 2 || (long) rows * this.width <= MIN_BAND_PIXELS) {
+        int[] counts = new int[1024];
+        countRows(this.image, this.pixels, this.width, this.firstRow, this.lastRow, counts);
+        return counts;
+      }
+      int middle = this.firstRow + rows / 2;
+      Band top = new Band(this.image, this.pixels, this.width, this.firstRow, middle);
+      Band bottom = new Band(this.image, this.pixels, this.width, middle, this.lastRow);
+      top.fork();
+      int[] counts = bottom.compute();
+      int[] other = top.join();
+      for (int i = 0; i < counts.length; i++) {
+        counts[i] += other[i];
+      }
+      return counts;
+    }
+  }
+}
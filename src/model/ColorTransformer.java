@@ -0,0 +1,139 @@
+package model;
+
+/**
+ * Applies 3x3 color transformation matrices (like sepia and luma greyscale) to packed rasters.
+ * Every channel of the result is the matching row of the matrix times the red, green and blue
+ * values of the pixel, rounded with {@link Math#round(double)} and clamped between 0 and 255.
+ * This class does that one pixel at a time. There is also a version built on the Java Vector API
+ * that works on several pixels with one instruction. It lives in the src-incubator folder because
+ * it needs the jdk.incubator.vector module, and it is only used when it is asked for (see
+ * {@link #vectorized()}), so the program still works on Java installs without that module.
+ */
+public class ColorTransformer {
+  private static ColorTransformer shared = defaultTransformer();
+
+  /**
+   * Gets the transformer that the image models use. It is the one pixel at a time version,
+   * unless the {@code imageeditor.vector} system property is true and the vector version could
+   * be loaded.
+   *
+   * @return the shared transformer
+   */
+  public static synchronized ColorTransformer getShared() {
+    return shared;
+  }
+
+  /**
+   * Changes the transformer that the image models use.
+   *
+   * @param transformer the transformer to use
+   * @throws IllegalArgumentException if the transformer is null
+   */
+  public static synchronized void setShared(ColorTransformer transformer)
+          throws IllegalArgumentException {
+    if (transformer == null) {
+      throw new IllegalArgumentException("Transformer can't be null");
+    }
+    shared = transformer;
+  }
+
+  /**
+   * Loads the version of the transformer that uses the Java Vector API. For it to load, the
+   * classes in src-incubator have to be compiled and on the classpath, and the program has to be
+   * run with {@code --add-modules jdk.incubator.vector}.
+   *
+   * @return the vector transformer, or null if it can't be loaded here
+   */
+  public static ColorTransformer vectorized() {
+    try {
+      return (ColorTransformer) Class.forName("model.VectorColorTransformer")
+              .getDeclaredConstructor().newInstance();
+    } catch (ReflectiveOperationException | LinkageError | ClassCastException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Checks if this transformer works on several pixels at once with the Vector API.
+   *
+   * @return true if this is the vector version
+   */
+  public boolean isVectorized() {
+    return false;
+  }
+
+  /**
+   * Applies a color transformation matrix to every pixel of a packed raster.
+   *
+   * @param pixels the packed 0xRRGGBB values of the image
+   * @param matrix the 3x3 matrix, the first row makes the red value, the second the green value
+   *               and the third the blue value
+   * @return a new raster with the transformation applied
+   * @throws IllegalArgumentException if the matrix isn't 3x3
+   */
+  public int[] transform(int[] pixels, double[][] matrix) throws IllegalArgumentException {
+    int[] result = new int[pixels.length];
+    this.transform(pixels, result, 0, pixels.length, matrix);
+    return result;
+  }
+
+  /**
+   * Applies a color transformation matrix to part of a packed raster, writing into another one
+   * (they can be the same array).
+   *
+   * @param pixels the packed 0xRRGGBB values to read
+   * @param result the array to write the new pixels into
+   * @param start  the first index to change
+   * @param end    the index after the last one to change
+   * @param matrix the 3x3 matrix, the first row makes the red value, the second the green value
+   *               and the third the blue value
+   * @throws IllegalArgumentException if the matrix isn't 3x3
+   */
+  public void transform(int[] pixels, int[] result, int start, int end, double[][] matrix)
+          throws IllegalArgumentException {
+    checkMatrix(matrix);
+    for (int i = start; i < end; i++) {
+      result[i] = transformPixel(pixels[i], matrix);
+    }
+  }
+
+  // Makes sure the matrix is 3x3.
+  static void checkMatrix(double[][] matrix) throws IllegalArgumentException {
+    if (matrix == null || matrix.length != 3) {
+      throw new IllegalArgumentException("Color transformation matrix must have 3x3 dimensions");
+    }
+    for (double[] row : matrix) {
+      if (row == null || row.length != 3) {
+        throw new IllegalArgumentException(
+                "Color transformation matrix must have 3x3 dimensions");
+      }
+    }
+  }
+
+  // Applies the matrix to one packed pixel.
+  static int transformPixel(int rgb, double[][] matrix) {
+    int r = PackedImageModel.red(rgb);
+    int g = PackedImageModel.green(rgb);
+    int b = PackedImageModel.blue(rgb);
+    int finalRedColor = (int) Math.round((r * matrix[0][0]) + (g * matrix[0][1])
+            + (b * matrix[0][2]));
+    int finalGreenColor = (int) Math.round((r * matrix[1][0]) + (g * matrix[1][1])
+            + (b * matrix[1][2]));
+    int finalBlueColor = (int) Math.round((r * matrix[2][0]) + (g * matrix[2][1])
+            + (b * matrix[2][2]));
+    return PackedImageModel.pack(PackedImageModel.clamp(finalRedColor),
+            PackedImageModel.clamp(finalGreenColor), PackedImageModel.clamp(finalBlueColor));
+  }
+
+  // Uses the vector version if the system property asks for it and it can be loaded.
+  private static ColorTransformer defaultTransformer() {
+    boolean wanted;
+    try {
+      wanted = Boolean.getBoolean("imageeditor.vector");
+    } catch (SecurityException e) {
+      wanted = false;
+    }
+    ColorTransformer vector = wanted ? vectorized() : null;
+    return vector == null ? new ColorTransformer() : vector;
+  }
+}
@@ -0,0 +1,467 @@
+package model;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Applies filter matrices (like blur and sharpen) to packed rasters. The image is split into
+ * bands of rows that are filtered at the same time on a {@link ForkJoinPool}, and every band
+ * writes straight into the one output raster of the image, so nothing is allocated per pixel.
+ * How many threads are used is set by the parallelism level of the engine. The engine that the
+ * models use is shared, its parallelism starts at the number of cores (or the value of the
+ * {@code imageeditor.parallelism} system property) and can be changed with
+ * {@link #setSharedParallelism(int)}.
+ */
+public class FilterEngine {
+  // Bands smaller than this many pixels are not split any further
+  private static final int MIN_BAND_PIXELS = 1 << 15;
+  // Bands aren't split below this many rows either, so that the extra rows a separable band
+  // has to run its first pass over stay small next to the band itself
+  private static final int MIN_BAND_ROWS = 16;
+
+  private static FilterEngine shared = new FilterEngine(defaultParallelism());
+
+  private final int parallelism;
+  private final ForkJoinPool pool;
+
+  /**
+   * Constructor that takes in how many threads the engine can filter with.
+   *
+   * @param parallelism the number of threads to use, 1 filters on the calling thread only
+   * @throws IllegalArgumentException if the parallelism is less than 1
+   */
+  public FilterEngine(int parallelism) throws IllegalArgumentException {
+    if (parallelism < 1) {
+      throw new IllegalArgumentException("Parallelism must be at least 1");
+    }
+    this.parallelism = parallelism;
+    this.pool = parallelism == 1 ? null : new ForkJoinPool(parallelism);
+  }
+
+  /**
+   * Gets the engine that the image models filter with.
+   *
+   * @return the shared engine
+   */
+  public static synchronized FilterEngine getShared() {
+    return shared;
+  }
+
+  /**
+   * Changes how many threads the shared engine filters with.
+   *
+   * @param parallelism the number of threads to use, 1 filters on the calling thread only
+   * @throws IllegalArgumentException if the parallelism is less than 1
+   */
+  public static synchronized void setSharedParallelism(int parallelism)
+          throws IllegalArgumentException {
+    FilterEngine old = shared;
+    shared = new FilterEngine(parallelism);
+    old.shutdown();
+  }
+
+  /**
+   * Gets how many threads this engine filters with.
+   *
+   * @return the parallelism of this engine
+   */
+  public int getParallelism() {
+    return this.parallelism;
+  }
+
+  /**
+   * Stops the threads of this engine once the filters that are running are done.
+   */
+  public void shutdown() {
+    if (this.pool != null) {
+      this.pool.shutdown();
+    }
+  }
+
+  /**
+   * Applies a filter matrix to a packed raster. Neighbours outside the image count as 0, and
+   * every channel is truncated to an int and clamped between 0 and 255.
+   *
+   * @param pixels the packed 0xRRGGBB values of the image in row-major order
+   * @param width  the width of the image
+   * @param height the height of the image
+   * @param matrix the filter matrix, it must have an odd number of rows and columns
+   * @return a new raster with the filter applied
+   * @throws IllegalArgumentException if the matrix has an even number of rows and/or columns
+   */
+  public int[] filter(int[] pixels, int width, int height, double[][] matrix)
+          throws IllegalArgumentException {
+    return this.filter(pixels, width, height, matrix, BorderMode.ZERO);
+  }
+
+  /**
+   * Applies a filter matrix to a packed raster, treating the neighbours outside the image the
+   * way the border mode says. Every channel is truncated to an int and clamped between 0 and
+   * 255.
+   *
+   * @param pixels     the packed 0xRRGGBB values of the image in row-major order
+   * @param width      the width of the image
+   * @param height     the height of the image
+   * @param matrix     the filter matrix, it must have an odd number of rows and columns
+   * @param borderMode how neighbours outside the image are treated
+   * @return a new raster with the filter applied
+   * @throws IllegalArgumentException if the matrix has an even number of rows and/or columns,
+   *                                  or the border mode is null
+   */
+  public int[] filter(int[] pixels, int width, int height, double[][] matrix,
+                      BorderMode borderMode) throws IllegalArgumentException {
+    return this.filter(pixels, width, height, Kernel.of(matrix), borderMode);
+  }
+
+  /**
+   * Applies a prepared kernel to a packed raster, treating the neighbours outside the image the
+   * way the border mode says. Separable kernels whose whole number weights multiply back to
+   * exactly the matrix are applied as a pass along the rows and then a pass along the columns,
+   * other kernels are applied directly, so the
+   * result is always the same as adding up the whole matrix. Every channel is truncated to an
+   * int and clamped between 0 and 255.
+   *
+   * @param pixels     the packed 0xRRGGBB values of the image in row-major order
+   * @param width      the width of the image
+   * @param height     the height of the image
+   * @param kernel     the kernel to apply
+   * @param borderMode how neighbours outside the image are treated
+   * @return a new raster with the filter applied
+   * @throws IllegalArgumentException if the kernel or the border mode is null
+   */
+  public int[] filter(int[] pixels, int width, int height, Kernel kernel,
+                      BorderMode borderMode) throws IllegalArgumentException {
+    if (kernel == null) {
+      throw new IllegalArgumentException("Kernel can't be null");
+    }
+    if (borderMode == null) {
+      throw new IllegalArgumentException("Border mode can't be null");
+    }
+    int[] result = new int[width * height];
+    if (this.pool == null || (long) width * height <= MIN_BAND_PIXELS) {
+      filterBand(pixels, result, width, height, kernel, borderMode, 0, height);
+    } else {
+      this.pool.invoke(new Band(pixels, result, width, height, kernel, borderMode, 0, height));
+    }
+    return result;
+  }
+
+  // Filters a band of rows with whichever path suits the kernel. Separable kernels only take two
+  // passes when their weights are whole numbers that multiply back to exactly the matrix, since
+  // splitting other weights rounds the sums differently and can change pixels.
+  private static void filterBand(int[] pixels, int[] result, int width, int height,
+                                 Kernel kernel, BorderMode borderMode,
+                                 int firstRow, int lastRow) {
+    if (kernel.fixedColumnWeights() != null) {
+      filterRowsSeparableFixed(pixels, result, width, height, kernel.fixedColumnWeights(),
+              kernel.fixedRowWeights(), kernel.fixedSeparableShift(), borderMode, firstRow,
+              lastRow);
+    } else if (kernel.fixedMatrix() != null) {
+      filterRowsFixed(pixels, result, width, height, kernel, borderMode, firstRow, lastRow);
+    } else {
+      filterRows(pixels, result, width, height, kernel.matrix(), borderMode, firstRow, lastRow);
+    }
+  }
+
+  // Filters the rows from firstRow (inclusive) to lastRow (exclusive) of the image. Pixels whose
+  // whole neighbourhood is inside the image go through a loop without any bounds checks, only
+  // the strip along the border has to look up where its neighbours come from.
+  private static void filterRows(int[] pixels, int[] result, int width, int height,
+                                 double[][] matrix, BorderMode borderMode,
+                                 int firstRow, int lastRow) {
+    int rowRadius = matrix.length / 2;
+    int colRadius = matrix[0].length / 2;
+    int interiorStart = Math.min(colRadius, width);
+    int interiorEnd = Math.max(width - colRadius, interiorStart);
+    for (int row = firstRow; row < lastRow; row++) {
+      if (row < rowRadius || row >= height - rowRadius) {
+        for (int col = 0; col < width; col++) {
+          result[row * width + col] = filterBorderPixel(pixels, width, height, matrix,
+                  borderMode, row, col);
+        }
+        continue;
+      }
+      for (int col = 0; col < interiorStart; col++) {
+        result[row * width + col] = filterBorderPixel(pixels, width, height, matrix,
+                borderMode, row, col);
+      }
+      for (int col = interiorStart; col < interiorEnd; col++) {
+        double redColor = 0;
+        double greenColor = 0;
+        double blueColor = 0;
+        int start = (row - rowRadius) * width + col - colRadius;
+        for (int i = 0; i < matrix.length; i++) {
+          double[] matrixRow = matrix[i];
+          int rowStart = start + i * width;
+          for (int j = 0; j < matrixRow.length; j++) {
+            int rgb = pixels[rowStart + j];
+            double filterColor = matrixRow[j];
+            redColor += filterColor * ((rgb >> 16) & 0xFF);
+            greenColor += filterColor * ((rgb >> 8) & 0xFF);
+            blueColor += filterColor * (rgb & 0xFF);
+          }
+        }
+        result[row * width + col] = toPixel(redColor, greenColor, blueColor);
+      }
+      for (int col = interiorEnd; col < width; col++) {
+        result[row * width + col] = filterBorderPixel(pixels, width, height, matrix,
+                borderMode, row, col);
+      }
+    }
+  }
+
+  // Does the same as filterRows for a kernel with whole number weights. The interior adds up
+  // ints and shifts the sums right by the kernel's shift, which is the same as the double sum
+  // truncated, since the double sum is exact and anything below 0 is clamped to 0 either way.
+  // The border strip is small so it goes through the double version.
+  private static void filterRowsFixed(int[] pixels, int[] result, int width, int height,
+                                      Kernel kernel, BorderMode borderMode,
+                                      int firstRow, int lastRow) {
+    double[][] matrix = kernel.matrix();
+    int[][] fixedMatrix = kernel.fixedMatrix();
+    int shift = kernel.fixedShift();
+    int rowRadius = matrix.length / 2;
+    int colRadius = matrix[0].length / 2;
+    int interiorStart = Math.min(colRadius, width);
+    int interiorEnd = Math.max(width - colRadius, interiorStart);
+    for (int row = firstRow; row < lastRow; row++) {
+      if (row < rowRadius || row >= height - rowRadius) {
+        for (int col = 0; col < width; col++) {
+          result[row * width + col] = filterBorderPixel(pixels, width, height, matrix,
+                  borderMode, row, col);
+        }
+        continue;
+      }
+      for (int col = 0; col < interiorStart; col++) {
+        result[row * width + col] = filterBorderPixel(pixels, width, height, matrix,
+                borderMode, row, col);
+      }
+      for (int col = interiorStart; col < interiorEnd; col++) {
+        int redSum = 0;
+        int greenSum = 0;
+        int blueSum = 0;
+        int start = (row - rowRadius) * width + col - colRadius;
+        for (int i = 0; i < fixedMatrix.length; i++) {
+          int[] matrixRow = fixedMatrix[i];
+          int rowStart = start + i * width;
+          for (int j = 0; j < matrixRow.length; j++) {
+            int rgb = pixels[rowStart + j];
+            int weight = matrixRow[j];
+            redSum += weight * ((rgb >> 16) & 0xFF);
+            greenSum += weight * ((rgb >> 8) & 0xFF);
+            blueSum += weight * (rgb & 0xFF);
+          }
+        }
+        result[row * width + col] = toPixel(redSum >> shift, greenSum >> shift,
+                blueSum >> shift);
+      }
+      for (int col = interiorEnd; col < width; col++) {
+        result[row * width + col] = filterBorderPixel(pixels, width, height, matrix,
+                borderMode, row, col);
+      }
+    }
+  }
+
+  // Filters the rows from firstRow (inclusive) to lastRow (exclusive) with a separable kernel
+  // that has whole number weights. Every source row the band needs (the band plus rowRadius rows
+  // above and below it) is filtered along the row with the row weights into a ring of int
+  // buffers that holds only columnWeights.length rows, and every output row adds up the rows in
+  // the ring with the column weights and shifts the sums right by the shift of both passes. The
+  // int sums are exact, so this is the same as the whole matrix.
+  private static void filterRowsSeparableFixed(int[] pixels, int[] result, int width,
+                                               int height, int[] columnWeights,
+                                               int[] rowWeights, int shift,
+                                               BorderMode borderMode, int firstRow,
+                                               int lastRow) {
+    int ringRows = columnWeights.length;
+    int rowRadius = ringRows / 2;
+    int[] reds = new int[ringRows * width];
+    int[] greens = new int[ringRows * width];
+    int[] blues = new int[ringRows * width];
+    boolean[] present = new boolean[ringRows];
+    // the k-th row the band needs is source row firstRow - rowRadius + k, kept in slot k % ringRows
+    for (int k = 0; k < ringRows - 1; k++) {
+      bufferRowFixed(pixels, width, height, rowWeights, borderMode, firstRow - rowRadius + k,
+              reds, greens, blues, present, k);
+    }
+    int[] redSums = new int[width];
+    int[] greenSums = new int[width];
+    int[] blueSums = new int[width];
+    for (int row = firstRow; row < lastRow; row++) {
+      int newest = row - firstRow + ringRows - 1;
+      bufferRowFixed(pixels, width, height, rowWeights, borderMode, row + rowRadius, reds,
+              greens, blues, present, newest % ringRows);
+      Arrays.fill(redSums, 0);
+      Arrays.fill(greenSums, 0);
+      Arrays.fill(blueSums, 0);
+      for (int i = 0; i < ringRows; i++) {
+        int slot = (row - firstRow + i) % ringRows;
+        if (!present[slot]) {
+          continue;
+        }
+        int weight = columnWeights[i];
+        int start = slot * width;
+        for (int col = 0; col < width; col++) {
+          redSums[col] += weight * reds[start + col];
+          greenSums[col] += weight * greens[start + col];
+          blueSums[col] += weight * blues[start + col];
+        }
+      }
+      int rowStart = row * width;
+      for (int col = 0; col < width; col++) {
+        result[rowStart + col] = toPixel(redSums[col] >> shift, greenSums[col] >> shift,
+                blueSums[col] >> shift);
+      }
+    }
+  }
+
+  // Puts a row of the image filtered along the row into a slot of the ring, or marks the slot
+  // empty if the border mode says the row counts as 0.
+  private static void bufferRowFixed(int[] pixels, int width, int height, int[] rowWeights,
+                                     BorderMode borderMode, int row, int[] reds, int[] greens,
+                                     int[] blues, boolean[] present, int slot) {
+    int sourceRow = borderMode.map(row, height);
+    present[slot] = sourceRow >= 0;
+    if (sourceRow >= 0) {
+      filterAlongRowFixed(pixels, width, sourceRow, rowWeights, borderMode, reds, greens, blues,
+              slot * width);
+    }
+  }
+
+  // Filters one source row along the row with the whole number row weights and stores the
+  // channel sums in the buffers starting at offset.
+  private static void filterAlongRowFixed(int[] pixels, int width, int sourceRow,
+                                          int[] rowWeights, BorderMode borderMode, int[] reds,
+                                          int[] greens, int[] blues, int offset) {
+    int colRadius = rowWeights.length / 2;
+    int interiorStart = Math.min(colRadius, width);
+    int interiorEnd = Math.max(width - colRadius, interiorStart);
+    int rowStart = sourceRow * width;
+    for (int col = 0; col < width; col++) {
+      int redSum = 0;
+      int greenSum = 0;
+      int blueSum = 0;
+      if (col >= interiorStart && col < interiorEnd) {
+        int start = rowStart + col - colRadius;
+        for (int j = 0; j < rowWeights.length; j++) {
+          int rgb = pixels[start + j];
+          int weight = rowWeights[j];
+          redSum += weight * ((rgb >> 16) & 0xFF);
+          greenSum += weight * ((rgb >> 8) & 0xFF);
+          blueSum += weight * (rgb & 0xFF);
+        }
+      } else {
+        for (int j = 0; j < rowWeights.length; j++) {
+          int sourceCol = borderMode.map(col - colRadius + j, width);
+          if (sourceCol < 0) {
+            continue;
+          }
+          int rgb = pixels[rowStart + sourceCol];
+          int weight = rowWeights[j];
+          redSum += weight * ((rgb >> 16) & 0xFF);
+          greenSum += weight * ((rgb >> 8) & 0xFF);
+          blueSum += weight * (rgb & 0xFF);
+        }
+      }
+      reds[offset + col] = redSum;
+      greens[offset + col] = greenSum;
+      blues[offset + col] = blueSum;
+    }
+  }
+
+  // Filters one pixel whose neighbourhood goes past the edge of the image.
+  private static int filterBorderPixel(int[] pixels, int width, int height, double[][] matrix,
+                                       BorderMode borderMode, int row, int col) {
+    int rowRadius = matrix.length / 2;
+    int colRadius = matrix[0].length / 2;
+    double redColor = 0;
+    double greenColor = 0;
+    double blueColor = 0;
+    for (int i = 0; i < matrix.length; i++) {
+      int sourceRow = borderMode.map(row - rowRadius + i, height);
+      if (sourceRow < 0) {
+        continue;
+      }
+      double[] matrixRow = matrix[i];
+      int rowStart = sourceRow * width;
+      for (int j = 0; j < matrixRow.length; j++) {
+        int sourceCol = borderMode.map(col - colRadius + j, width);
+        if (sourceCol < 0) {
+          continue;
+        }
+        int rgb = pixels[rowStart + sourceCol];
+        double filterColor = matrixRow[j];
+        redColor += filterColor * ((rgb >> 16) & 0xFF);
+        greenColor += filterColor * ((rgb >> 8) & 0xFF);
+        blueColor += filterColor * (rgb & 0xFF);
+      }
+    }
+    return toPixel(redColor, greenColor, blueColor);
+  }
+
+  // Truncates and clamps the filtered channels and packs them into one pixel.
+  private static int toPixel(double redColor, double greenColor, double blueColor) {
+    return toPixel((int) redColor, (int) greenColor, (int) blueColor);
+  }
+
+  // Clamps the filtered channels and packs them into one pixel.
+  private static int toPixel(int redColor, int greenColor, int blueColor) {
+    return PackedImageModel.pack(PackedImageModel.clamp(redColor),
+            PackedImageModel.clamp(greenColor), PackedImageModel.clamp(blueColor));
+  }
+
+  // Reads the default parallelism from the system property, or uses the number of cores.
+  private static int defaultParallelism() {
+    int cores = Runtime.getRuntime().availableProcessors();
+    try {
+      return Math.max(1, Integer.getInteger("imageeditor.parallelism", cores));
+    } catch (SecurityException e) {
+      return cores;
+    }
+  }
+
+  /**
+   * A band of rows of the image. Big bands are split in half until they are small enough to be
+   * filtered by one thread.
+   */
+  private static final class Band extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private final int[] pixels;
+    private final int[] result;
+    private final int width;
+    private final int height;
+    private final Kernel kernel;
+    private final BorderMode borderMode;
+    private final int firstRow;
+    private final int lastRow;
+
+    Band(int[] pixels, int[] result, int width, int height, Kernel kernel,
+         BorderMode borderMode, int firstRow, int lastRow) {
+      this.pixels = pixels;
+      this.result = result;
+      this.width = width;
+      this.height = height;
+      this.kernel = kernel;
+      this.borderMode = borderMode;
+      this.firstRow = firstRow;
+      this.lastRow = lastRow;
+    }
+
+    @Override
+    protected void compute() {
+      int rows = this.lastRow - this.firstRow;
+      if (rows < 2 * MIN_BAND_ROWS || (long) rows * this.width <= MIN_BAND_PIXELS) {
+        filterBand(this.pixels, this.result, this.width, this.height, this.kernel,
+                this.borderMode, this.firstRow, this.lastRow);
+        return;
+      }
+      int middle = this.firstRow + rows / 2;
+      invokeAll(new Band(this.pixels, this.result, this.width, this.height, this.kernel,
+                      this.borderMode, this.firstRow, middle),
+              new Band(this.pixels, this.result, this.width, this.height, this.kernel,
+                      this.borderMode, middle, this.lastRow));
+    }
+  }
+}
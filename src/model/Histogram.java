@@ -3,32 +3,48 @@ package model;
 import java.awt.Color;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
-import java.awt.geom.AffineTransform;
-import java.util.Collection;
-import java.util.Collections;
-import java.util.Map;
+import java.awt.image.BufferedImage;
 
 import javax.swing.JPanel;
 
 /**
- * Represents a single Histogram. It contains a Map of values and how frequently they appear,
- * and draws a bar graph based on that on a JPanel.
+ * Represents a single Histogram. It keeps the 256 counts of one histogram of an image in an
+ * array, and draws a bar graph of them on a JPanel. The graph is drawn once into an image that
+ * is kept, and a repaint just copies that image, so it is only drawn again when the counts or
+ * the size of the panel change. The counts can be changed in place with
+ * {@link #setFrequencies(ColorFrequencies)}, so the GUI doesn't have to make new panels for
+ * every image.
  */
 public class Histogram extends JPanel {
-  private static double SCALING_FACTOR;
-  private final Map<Integer, Integer> valueAndFrequencyTable;
+  private final String type;
   private final Color histogramColor;
+  private final int[] counts;
+  private int maxValue;
+  private int maxCount;
+  // How many pixels tall a bar is for every pixel of the image that has its value
+  private double scalingFactor;
+  private BufferedImage rendered;
 
   /**
-   * Constructor that takes in a model and a type and initializes the valueAndFrequencyTable field
-   * and the color of the histogram with the method in the model class.
+   * Constructor that takes in a model and a type and initializes the counts and the color of the
+   * histogram with the method in the model class.
    *
    * @param imageModel the image that will be represented with in the histogram
    * @param type       the type of color that the histogram will be
    */
   public Histogram(ImageModel imageModel, String type) {
+    this(imageModel.colorFrequencies(), type);
+  }
+
+  /**
+   * Constructor that takes histograms that were already counted, so the red, green, blue and
+   * intensity histograms of an image can all be shown after one pass over it.
+   *
+   * @param frequencies the histograms of the image
+   * @param type        the type of color that the histogram will be
+   */
+  public Histogram(ColorFrequencies frequencies, String type) {
     super();
-    this.valueAndFrequencyTable = imageModel.returnColorFrequencies(type);
     switch (type) {
       case "red":
         this.histogramColor = Color.RED;
@@ -45,39 +61,88 @@ public class Histogram extends JPanel {
       default:
         throw new IllegalArgumentException("Invalid color type");
     }
+    this.type = type;
+    this.counts = new int[256];
+    this.setFrequencies(frequencies);
+  }
 
+  /**
+   * Shows the histogram of another image (or the exact one of the same image) in this panel.
+   *
+   * @param frequencies the histograms of the image, which this one takes its type from
+   * @throws IllegalArgumentException if the histograms are null
+   */
+  public void setFrequencies(ColorFrequencies frequencies) throws IllegalArgumentException {
+    if (frequencies == null) {
+      throw new IllegalArgumentException("Histograms can't be null");
+    }
+    int[] newCounts = frequencies.get(this.type);
+    System.arraycopy(newCounts, 0, this.counts, 0, 256);
+    this.maxValue = frequencies.getMaxValue();
+    this.maxCount = frequencies.getMaxCount(this.type);
+    this.rendered = null;
+    this.repaint();
+  }
+
+  /**
+   * Gets the type of histogram this panel shows.
+   *
+   * @return red, green, blue or intensity
+   */
+  public String getType() {
+    return this.type;
   }
 
-  // Helper method that sets the scaling factor based on the max value of the map
-  private void graphDimensions() {
-    Collection<Integer> frequency = this.valueAndFrequencyTable.values();
-    int maxValue = Collections.max(frequency);
-    SCALING_FACTOR = (this.getHeight() * 0.3) / maxValue;
+  /**
+   * Gets how many pixels tall a bar is drawn for every pixel with its value, which is set so
+   * the tallest bar is 30% of the height of the panel.
+   *
+   * @return the scaling factor of the last drawing, or 0 if it hasn't been drawn yet
+   */
+  public double getScalingFactor() {
+    return this.scalingFactor;
   }
 
   /**
-   * Draws the graph by going through the map and drawing lines that start from the bottom
-   * and go as tall as the frequency (which is multiplied by the scaling factor so that the
-   * histogram never goes off-screen).
+   * Draws the graph, drawing the bars again first if the counts or the size have changed since
+   * the last time.
    *
    * @param g the <code>Graphics</code> object to protect
    */
   @Override
   public void paintComponent(Graphics g) {
     super.paintComponent(g);
-    Graphics2D g2d = (Graphics2D) g;
-    this.graphDimensions();
-    AffineTransform originalTransform = g2d.getTransform();
-    g2d.translate(0, this.getPreferredSize().getHeight());
-    g2d.scale(1, -1);
-
-    for (Integer value : this.valueAndFrequencyTable.keySet()) {
-      int barHeight = this.valueAndFrequencyTable.get(value);
-      g2d.setColor(this.histogramColor);
-      g2d.drawLine(value, 0, value, (int) (barHeight * SCALING_FACTOR));
+    if (this.getWidth() <= 0 || this.getHeight() <= 0) {
+      return;
+    }
+    if (this.rendered == null || this.rendered.getWidth() != this.getWidth()
+            || this.rendered.getHeight() != this.getHeight()) {
+      this.rendered = this.render(this.getWidth(), this.getHeight());
     }
-    g2d.setTransform(originalTransform);
+    g.drawImage(this.rendered, 0, 0, null);
   }
 
-
-}
\ No newline at end of file
+  /**
+   * Draws the bars into a new transparent image. Every value that is at most the max value of
+   * the image, or that some pixel has, gets a bar 1 pixel wide that starts at the bottom and is
+   * as tall as its count times the scaling factor (plus the pixel it starts on).
+   *
+   * @param width  the width of the image
+   * @param height the height of the image
+   * @return the image of the bars
+   */
+  BufferedImage render(int width, int height) {
+    this.scalingFactor = this.maxCount == 0 ? 0 : (height * 0.3) / this.maxCount;
+    BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+    Graphics2D g2d = image.createGraphics();
+    g2d.setColor(this.histogramColor);
+    for (int value = 0; value < Math.min(256, width); value++) {
+      if (value <= this.maxValue || this.counts[value] != 0) {
+        int barHeight = (int) (this.counts[value] * this.scalingFactor);
+        g2d.fillRect(value, height - 1 - barHeight, 1, barHeight + 1);
+      }
+    }
+    g2d.dispose();
+    return image;
+  }
+}
@@ -14,6 +14,7 @@ import javax.swing.JPanel;
  * in the histogram class, but this remains unchanged).
  */
 public class HistogramPanel extends JPanel {
+  private final Histogram[] histograms;
 
   /**
    * Constructor that takes in an array of histograms and sets the panel accordingly.
@@ -21,11 +22,24 @@ public class HistogramPanel extends JPanel {
    * @param histograms an array of histograms to be added
    */
   public HistogramPanel(Histogram[] histograms) {
+    this.histograms = histograms.clone();
     for (Histogram h : histograms) {
       this.add(h);
     }
     this.setLayout(new GridLayout(2, 2));
   }
 
+  /**
+   * Shows the histograms of another image in the histograms that are already in this panel, so
+   * nothing has to be laid out again.
+   *
+   * @param frequencies the histograms of the image
+   */
+  public void update(ColorFrequencies frequencies) {
+    for (Histogram h : this.histograms) {
+      h.setFrequencies(frequencies);
+    }
+  }
+
 
 }
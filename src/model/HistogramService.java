@@ -0,0 +1,122 @@
+package model;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+/**
+ * Gets the histograms of images for something that has to show them without waiting, like the
+ * GUI. It can count them exactly, which splits the image into bands of rows that are counted at
+ * the same time, or estimate them from a sample of the pixels, which takes about the same time
+ * however big the image is. A request gives the estimate right away and the exact histograms
+ * later, counted in the background, so the estimate can be swapped out when they are ready.
+ */
+public class HistogramService {
+  /**
+   * The default error of estimated histograms, as a fraction of the number of pixels.
+   */
+  public static final double DEFAULT_ERROR = 0.01;
+
+  private final double error;
+
+  /**
+   * Constructor that makes a service that estimates histograms with the default error.
+   */
+  public HistogramService() {
+    this(DEFAULT_ERROR);
+  }
+
+  /**
+   * Constructor that makes a service that estimates histograms with the given error.
+   *
+   * @param error how far off each estimated count may be, as a fraction of the number of pixels
+   * @throws IllegalArgumentException if the error isn't between 0 and 1
+   */
+  public HistogramService(double error) throws IllegalArgumentException {
+    if (!(error > 0 && error < 1)) {
+      throw new IllegalArgumentException("Error must be between 0 and 1");
+    }
+    this.error = error;
+  }
+
+  /**
+   * Gets the error this service estimates histograms with.
+   *
+   * @return how far off each estimated count may be, as a fraction of the number of pixels
+   */
+  public double getError() {
+    return this.error;
+  }
+
+  /**
+   * Counts the histograms of an image exactly.
+   *
+   * @param image the image to count
+   * @return the exact histograms of the image
+   * @throws IllegalArgumentException if the image is null
+   */
+  public ColorFrequencies exact(ImageModel image) throws IllegalArgumentException {
+    if (image == null) {
+      throw new IllegalArgumentException("Image can't be null");
+    }
+    return image.colorFrequencies();
+  }
+
+  /**
+   * Estimates the histograms of an image from a sample of its pixels. If the exact histograms
+   * are already known they are given instead, and so are the exact ones of small images.
+   *
+   * @param image the image to estimate the histograms of
+   * @return the estimated histograms, or the exact ones if those are just as quick
+   * @throws IllegalArgumentException if the image is null
+   */
+  public ColorFrequencies approximate(ImageModel image) throws IllegalArgumentException {
+    if (image == null) {
+      throw new IllegalArgumentException("Image can't be null");
+    }
+    ColorFrequencies known = known(image);
+    if (known != null) {
+      return known;
+    }
+    return ColorFrequencies.sample(image, this.error);
+  }
+
+  /**
+   * Gets the histograms of an image in two steps. The listener is given the estimated histograms
+   * before this returns, on the thread that called it. If those weren't exact, the exact
+   * histograms are then counted in the background and given to the listener on that thread,
+   * unless the request has been cancelled before the counting starts.
+   *
+   * @param image    the image to get the histograms of
+   * @param listener what to give the histograms to, once or twice
+   * @return the exact histograms, which may still be being counted
+   * @throws IllegalArgumentException if the image or the listener is null
+   */
+  public Future<ColorFrequencies> request(ImageModel image, Consumer<ColorFrequencies> listener)
+          throws IllegalArgumentException {
+    if (listener == null) {
+      throw new IllegalArgumentException("Listener can't be null");
+    }
+    ColorFrequencies quick = this.approximate(image);
+    listener.accept(quick);
+    if (quick.isExact()) {
+      return CompletableFuture.completedFuture(quick);
+    }
+    return CompletableFuture.supplyAsync(() -> {
+      ColorFrequencies exact = image.colorFrequencies();
+      listener.accept(exact);
+      return exact;
+    });
+  }
+
+  // Gets the exact histograms of an image if it already has them, without counting anything.
+  private static ColorFrequencies known(ImageModel image) {
+    if (image instanceof PackedImageModel) {
+      return ((PackedImageModel) image).getKnownColorFrequencies();
+    }
+    if (image instanceof OrientedImageModel) {
+      return ((OrientedImageModel) image).getKnownColorFrequencies();
+    }
+    return null;
+  }
+}
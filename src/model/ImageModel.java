@@ -43,6 +43,18 @@ public interface ImageModel {
    */
   ImageModel filter(double[][] matrix) throws IllegalArgumentException;
 
+  /**
+   * Applies a filter to an image, treating the neighbours that fall outside the image the way
+   * the border mode says.
+   *
+   * @param matrix     the filter matrix that the user wants to call
+   * @param borderMode how neighbours outside the image are treated
+   * @return a new Image that has the filter applied to it
+   * @throws IllegalArgumentException if the matrix has an even number of rows and/or columns, or
+   *                                  the border mode is null
+   */
+  ImageModel filter(double[][] matrix, BorderMode borderMode) throws IllegalArgumentException;
+
   /**
    * Applies a color transformation to an image.
    *
@@ -53,6 +65,15 @@ public interface ImageModel {
    */
   ImageModel colorTransformation(double[][] matrix) throws IllegalArgumentException;
 
+  /**
+   * Applies a point operation (lookup tables for every channel) to every pixel of an image.
+   *
+   * @param operation the operation to apply
+   * @return a new Image that has the operation applied to it
+   * @throws IllegalArgumentException if the operation is null
+   */
+  ImageModel pointOperation(PointOperation operation) throws IllegalArgumentException;
+
   /**
    * If the type of image the user wants to save is not a ppm, this method converts the current
    * image into a buffered image so the ImageIO class can export files to a local directory.
@@ -75,6 +96,48 @@ public interface ImageModel {
    */
   ImageModel horizontalFlip();
 
+  /**
+   * Flips and/or turns an image by quarter turns, for example rotating it by 90 degrees or
+   * transposing it (flipping it over the diagonal from the top left corner).
+   *
+   * @param orientation how to flip and turn the image
+   * @return the new image
+   * @throws IllegalArgumentException if the orientation is null
+   */
+  ImageModel orient(Orientation orientation) throws IllegalArgumentException;
+
+  /**
+   * Gets the width of the image.
+   *
+   * @return the width of the image in pixels
+   */
+  int getWidth();
+
+  /**
+   * Gets the height of the image.
+   *
+   * @return the height of the image in pixels
+   */
+  int getHeight();
+
+  /**
+   * Gets the max value a color channel of the image can have.
+   *
+   * @return the max value of the image
+   */
+  int getMaxValue();
+
+  /**
+   * Copies one row of the image into the given array. Every pixel is written as a single int
+   * with the red value in bits 16-23, the green value in bits 8-15 and the blue value in bits
+   * 0-7. This lets other classes go over an image row by row without knowing how it is stored.
+   *
+   * @param row the row to copy, starting at 0 at the top of the image
+   * @param rgb the array to copy into, it must hold at least {@link #getWidth()} ints
+   * @throws IllegalArgumentException if the row is outside the image or the array is too small
+   */
+  void getRow(int row, int[] rgb) throws IllegalArgumentException;
+
   /**
    * Converts to a string builder that is used to store the contents of the image and
    * make it easier to export.
@@ -92,4 +155,11 @@ public interface ImageModel {
    *         the value representing how often that color value appears in an image.
    */
   Map<Integer, Integer> returnColorFrequencies(String type);
+
+  /**
+   * Counts the red, green, blue and intensity histograms of the image, all in one pass.
+   *
+   * @return the histograms of the image
+   */
+  ColorFrequencies colorFrequencies();
 }
\ No newline at end of file
@@ -1,10 +1,7 @@
 package model;
 
-import java.awt.Color;
 import java.awt.image.BufferedImage;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 import java.util.Scanner;
 
@@ -30,6 +27,49 @@ public class ImageModelImpl implements ImageModel {
     this.image = this.loadImage(scanner);
   }
 
+  /**
+   * Constructor that takes in an image that has already been built pixel by pixel. This is used
+   * by the operations so their results don't have to be written out as a ppm and read back in.
+   *
+   * @param image    the rows of pixels of the image
+   * @param width    the width of the image
+   * @param height   the height of the image
+   * @param maxValue the max value of a color channel
+   */
+  private ImageModelImpl(ArrayList<ArrayList<Pixel>> image, int width, int height,
+                         int maxValue) {
+    this.image = image;
+    this.width = width;
+    this.height = height;
+    this.maxValue = maxValue;
+  }
+
+  /**
+   * Copies a packed image into a new image made of pixels.
+   *
+   * @param packedImage the image to copy
+   * @return the image as an image made of pixels
+   * @throws IllegalArgumentException if the image is null
+   */
+  public static ImageModelImpl fromPackedImage(PackedImageModel packedImage)
+          throws IllegalArgumentException {
+    if (packedImage == null) {
+      throw new IllegalArgumentException("Image can't be null");
+    }
+    return new ImageModelImpl(packedImage.getImage(), packedImage.getWidth(),
+            packedImage.getHeight(), packedImage.getMaxValue());
+  }
+
+  /**
+   * Makes a new image with the same dimensions as this one from the given rows of pixels.
+   *
+   * @param imageList the rows of pixels of the new image
+   * @return the new image
+   */
+  private ImageModel withPixels(ArrayList<ArrayList<Pixel>> imageList) {
+    return new ImageModelImpl(imageList, this.width, this.height, this.maxValue);
+  }
+
   /**
    * Loads the image so it can be modified.
    *
@@ -76,13 +116,11 @@ public class ImageModelImpl implements ImageModel {
     }
     String stringToCompare = enhanceType.toLowerCase();
     if (stringToCompare.equals("brighten")) {
-      Scanner enhancedImageScanner = new Scanner(this.enhanceImage(colorToAdjust).toString());
-      return new ImageModelImpl(enhancedImageScanner);
+      return this.withPixels(this.enhanceImage(colorToAdjust));
     }
     if (stringToCompare.equals("darken")) {
       colorToAdjust = colorToAdjust * -1;
-      Scanner enhancedImageScanner = new Scanner(this.enhanceImage(colorToAdjust).toString());
-      return new ImageModelImpl(enhancedImageScanner);
+      return this.withPixels(this.enhanceImage(colorToAdjust));
     } else {
       throw new IllegalArgumentException("Please specify if you want to brighten or "
               + "darken the image by entering 'brighten' or 'darken'");
@@ -94,15 +132,12 @@ public class ImageModelImpl implements ImageModel {
    * Allows us to enhance our image by adjusting its exposure to whatever the given adjustment is.
    *
    * @param colorAdjust specifies the value we are adjusting by
-   * @return the enhanced image in the form of a string builder
+   * @return the rows of pixels of the enhanced image
    */
-  private StringBuilder enhanceImage(int colorAdjust) {
-    StringBuilder enhanceImageStringBuilder = new StringBuilder();
-    enhanceImageStringBuilder.append("P3\n");
-    enhanceImageStringBuilder.append(this.width).append("\n");
-    enhanceImageStringBuilder.append(this.height).append("\n");
-    enhanceImageStringBuilder.append(this.maxValue).append("\n");
+  private ArrayList<ArrayList<Pixel>> enhanceImage(int colorAdjust) {
+    ArrayList<ArrayList<Pixel>> enhancedImageList = new ArrayList<>();
     for (ArrayList<Pixel> rowList : this.image) {
+      ArrayList<Pixel> enhancedRowList = new ArrayList<>();
       for (Pixel pixel : rowList) {
         int redColor = pixel.getRedColorValue();
         int greenColor = pixel.getGreenColorValue();
@@ -125,25 +160,22 @@ public class ImageModelImpl implements ImageModel {
         } else if (enhancedBlue < 0) {
           enhancedBlue = 0;
         }
-        enhanceImageStringBuilder.append(enhancedRed).append("\n");
-        enhanceImageStringBuilder.append(enhancedGreen).append("\n");
-        enhanceImageStringBuilder.append(enhancedBlue).append("\n");
+        enhancedRowList.add(new Pixel(pixel.getPixelRow(), pixel.getPixelCol(), enhancedRed,
+                enhancedGreen, enhancedBlue));
       }
+      enhancedImageList.add(enhancedRowList);
     }
-    return enhanceImageStringBuilder;
+    return enhancedImageList;
   }
 
   @Override
   public ImageModel greyScale(String greyScaleType) {
-    StringBuilder greyImageStringBuilder = new StringBuilder();
-    greyImageStringBuilder.append("P3").append(System.lineSeparator());
-    greyImageStringBuilder.append(this.width).append(" ");
-    greyImageStringBuilder.append(this.height).append(System.lineSeparator());
-    greyImageStringBuilder.append(this.maxValue).append(System.lineSeparator());
+    ArrayList<ArrayList<Pixel>> greyImageList = new ArrayList<>();
     int redColor = -1;
     int greenColor = -1;
     int blueColor = -1;
     for (ArrayList<Pixel> rowList : this.image) {
+      ArrayList<Pixel> greyRowList = new ArrayList<>();
       for (Pixel pixel : rowList) {
         int pixelRedColorValue = pixel.getRedColorValue();
         int pixelGreenColorValue = pixel.getGreenColorValue();
@@ -189,140 +221,67 @@ public class ImageModelImpl implements ImageModel {
           default:
             // do nothing
         }
-        greyImageStringBuilder.append(redColor);
-        greyImageStringBuilder.append(System.lineSeparator());
-        greyImageStringBuilder.append(greenColor);
-        greyImageStringBuilder.append(System.lineSeparator());
-        greyImageStringBuilder.append(blueColor);
-        greyImageStringBuilder.append(System.lineSeparator());
+        greyRowList.add(new Pixel(pixel.getPixelRow(), pixel.getPixelCol(), redColor,
+                greenColor, blueColor));
       }
+      greyImageList.add(greyRowList);
     }
-    Scanner greyImageScanner = new Scanner(greyImageStringBuilder.toString());
-    ImageModel imageToReturn = new ImageModelImpl(greyImageScanner);
-    return imageToReturn;
+    return this.withPixels(greyImageList);
   }
 
   @Override
   public ImageModel filter(double[][] matrix) throws IllegalArgumentException {
-    if (matrix.length % 2 == 0 || matrix[1].length % 2 == 0) {
-      throw new IllegalArgumentException("Can't have an even amount of rows and/or columns!");
-    }
-    StringBuilder blurStringBuilder = new StringBuilder();
-    blurStringBuilder.append("P3\n");
-    blurStringBuilder.append(this.width).append("\n");
-    blurStringBuilder.append(this.height).append("\n");
-    blurStringBuilder.append(this.maxValue).append("\n");
-    for (int i = 0; i < this.height; i++) {
-      ArrayList<Pixel> rowList = this.image.get(i);
-      for (int j = 0; j < this.width; j++) {
-        Pixel pixelToStartAt = rowList.get(j);
-        ArrayList<ArrayList<Pixel>> pixelList = this.getPixelList(pixelToStartAt, matrix);
-        int[] updatedPixelColors = this.getNewPixelColors(pixelList, matrix);
-        int newRedColor = updatedPixelColors[0];
-        if (newRedColor > 255) {
-          newRedColor = 255;
-        }
-        if (newRedColor < 0) {
-          newRedColor = 0;
-        }
-        int newGreenColor = updatedPixelColors[1];
-        if (newGreenColor > 255) {
-          newGreenColor = 255;
-        }
-        if (newGreenColor < 0) {
-          newGreenColor = 0;
-        }
-        int newBlueColor = updatedPixelColors[2];
-        if (newBlueColor > 255) {
-          newBlueColor = 255;
-        }
-        if (newBlueColor < 0) {
-          newBlueColor = 0;
-        }
-        blurStringBuilder.append(newRedColor).append("\n");
-        blurStringBuilder.append(newGreenColor).append("\n");
-        blurStringBuilder.append(newBlueColor).append("\n");
+    return this.filter(matrix, BorderMode.ZERO);
+  }
 
-      }
+  @Override
+  public ImageModel filter(double[][] matrix, BorderMode borderMode)
+          throws IllegalArgumentException {
+    int[] result = FilterEngine.getShared().filter(this.toPackedRaster(), this.width,
+            this.height, matrix, borderMode);
+    return this.withPixels(this.toPixels(result));
+  }
+
+  @Override
+  public ImageModel pointOperation(PointOperation operation) throws IllegalArgumentException {
+    if (operation == null) {
+      throw new IllegalArgumentException("Operation can't be null");
     }
-    Scanner scanner = new Scanner(blurStringBuilder.toString());
-    return new ImageModelImpl(scanner);
+    return this.withPixels(this.toPixels(operation.apply(this.toPackedRaster())));
   }
 
   /**
-   * This method applies a filter to one pixel. It handles all operations and returns an array
-   * containing the final red, green, and blue color values for a pixel.
+   * Copies this image into a packed raster, one int per pixel (0xRRGGBB) in row-major order.
    *
-   * @param pixelList a pixel list the same size of the filter to perform operations on
-   * @param matrix    a filter that will be used to adjust the color values of the pixel
-   * @return an array containing the new red, green, and blue color values for a pixel.
+   * @return the packed raster
    */
-  private int[] getNewPixelColors(ArrayList<ArrayList<Pixel>> pixelList,
-                                  double[][] matrix) {
-    double redColorToReturn = 0;
-    double greenColorToReturn = 0;
-    double blueColorToReturn = 0;
-    for (int i = 0; i < pixelList.size(); i++) {
-      ArrayList<Pixel> rowList = pixelList.get(i);
-      for (int j = 0; j < rowList.size(); j++) {
-        int redColorToAdjust = 0;
-        int greenColorToAdjust = 0;
-        int blueColorToAdjust = 0;
-        Pixel pixel = null;
-        try {
-          pixel = rowList.get(j);
-          redColorToAdjust = pixel.getRedColorValue();
-          greenColorToAdjust = pixel.getGreenColorValue();
-          blueColorToAdjust = pixel.getBlueColorValue();
-        } catch (NullPointerException e) {
-          // Do nothing, null pixels have no colors so their values will be ignored
-        }
-        double filterColor = matrix[i][j];
-        redColorToReturn += filterColor * redColorToAdjust;
-        greenColorToReturn += filterColor * greenColorToAdjust;
-        blueColorToReturn += filterColor * blueColorToAdjust;
-      }
-
+  private int[] toPackedRaster() {
+    int[] raster = new int[this.width * this.height];
+    int[] row = new int[this.width];
+    for (int i = 0; i < this.height; i++) {
+      this.getRow(i, row);
+      System.arraycopy(row, 0, raster, i * this.width, this.width);
     }
-    return new int[]{(int) redColorToReturn, (int) greenColorToReturn, (int) blueColorToReturn};
+    return raster;
   }
 
   /**
-   * The way we decided to approach this method is to make a brand-new mini arraylist that has the
-   * exact same dimensions as the filter. All the values in the pixel will correspond to the exact
-   * same location as the number in the matrix (i.e. the center pixel, or the one taken in as a
-   * parameter, corresponds 1/4 in guasian blur, the pixel top left to the inputted one corresponds
-   * with 1/16, and so on).
+   * Turns a packed raster with the dimensions of this image into rows of pixels.
    *
-   * @param pixel  the pixel that whose values need to be changed
-   * @param matrix the filter that will edit the picture
-   * @return a 2d array list the same size as the filter
+   * @param raster the packed raster
+   * @return the rows of pixels
    */
-  private ArrayList<ArrayList<Pixel>> getPixelList(Pixel pixel, double[][] matrix) {
-    ArrayList<ArrayList<Pixel>> listToReturn = new ArrayList<>();
-    ArrayList<Pixel> listToAdd = new ArrayList<>();
-    for (int i = (pixel.getPixelRow() - (matrix.length / 2));
-         i < (pixel.getPixelRow() + (matrix.length / 2) + 1); i++) {
-      ArrayList<Pixel> rowList;
-      try {
-        rowList = this.image.get(i);
-      } catch (IndexOutOfBoundsException e) {
-        rowList = null;
-      }
-      for (int j = (pixel.getPixelCol() - (matrix[0].length / 2));
-           j < (pixel.getPixelCol() + (matrix[0].length / 2) + 1); j++) {
-        Pixel pixelToAdd = null;
-        try {
-          pixelToAdd = rowList.get(j);
-        } catch (NullPointerException | IndexOutOfBoundsException e) {
-          // do nothing
-        }
-        listToAdd.add(pixelToAdd);
+  private ArrayList<ArrayList<Pixel>> toPixels(int[] raster) {
+    ArrayList<ArrayList<Pixel>> imageList = new ArrayList<>();
+    for (int i = 0; i < this.height; i++) {
+      ArrayList<Pixel> rowList = new ArrayList<>();
+      for (int j = 0; j < this.width; j++) {
+        int rgb = raster[i * this.width + j];
+        rowList.add(new Pixel(i, j, (rgb >> 16) & 0xFF, (rgb >> 8) & 0xFF, rgb & 0xFF));
       }
-      listToReturn.add(listToAdd);
-      listToAdd = new ArrayList<>();
+      imageList.add(rowList);
     }
-    return listToReturn;
+    return imageList;
   }
 
   @Override
@@ -330,13 +289,10 @@ public class ImageModelImpl implements ImageModel {
     if (matrix.length != 3 && matrix[1].length != 3) {
       throw new IllegalArgumentException("Color transformation matrix must have 3x3 dimensions");
     }
-    StringBuilder colorTransFormationBuilder = new StringBuilder();
-    colorTransFormationBuilder.append("P3\n");
-    colorTransFormationBuilder.append(this.width).append("\n");
-    colorTransFormationBuilder.append(this.height).append("\n");
-    colorTransFormationBuilder.append(this.maxValue).append("\n");
+    ArrayList<ArrayList<Pixel>> transformedImageList = new ArrayList<>();
     for (int i = 0; i < this.height; i++) {
       ArrayList<Pixel> rowList = this.image.get(i);
+      ArrayList<Pixel> transformedRowList = new ArrayList<>();
       for (int j = 0; j < this.width; j++) {
         Pixel pixel = rowList.get(j);
         double[] matrixToMultiplyRedBy = matrix[0];
@@ -361,103 +317,113 @@ public class ImageModelImpl implements ImageModel {
         if (finalBlueColor > 255) {
           finalBlueColor = 255;
         }
-        colorTransFormationBuilder.append(finalRedColor).append("\n");
-        colorTransFormationBuilder.append(finalBlueColor).append("\n");
-        colorTransFormationBuilder.append(finalGreenColor).append("\n");
+        // finalBlueColor holds the result of the second row and finalGreenColor the third
+        transformedRowList.add(new Pixel(i, j, finalRedColor, finalBlueColor, finalGreenColor));
       }
+      transformedImageList.add(transformedRowList);
     }
-    Scanner scanner = new Scanner(colorTransFormationBuilder.toString());
-    return new ImageModelImpl(scanner);
+    return this.withPixels(transformedImageList);
   }
 
   @Override
   public BufferedImage returnAsBufferedImage() {
-    BufferedImage imageToReturn = new BufferedImage(this.width, this.height,
-            BufferedImage.TYPE_INT_RGB);
-    for (int i = 0; i < this.height; i++) {
-      ArrayList<Pixel> rowList = this.image.get(i);
-      for (int j = 0; j < this.width; j++) {
-        Pixel pixel = rowList.get(j);
-        Color pixelColor = pixel.getColor();
-        int rgb = pixelColor.getRGB();
-        imageToReturn.setRGB(j, i, rgb);
-      }
-    }
-    return imageToReturn;
+    return BufferedImageConverter.toBufferedImage(this);
   }
 
   @Override
   public ImageModel verticalFlip() {
-    StringBuilder verticalStringBuilder = new StringBuilder();
-    verticalStringBuilder.append("P3\n");
-    verticalStringBuilder.append(this.width).append("\n");
-    verticalStringBuilder.append(this.height).append("\n");
-    verticalStringBuilder.append(this.maxValue).append("\n");
+    ArrayList<ArrayList<Pixel>> flippedImageList = new ArrayList<>();
     for (int i = this.height - 1; i >= 0; i--) {
       ArrayList<Pixel> rowList = this.image.get(i);
+      ArrayList<Pixel> flippedRowList = new ArrayList<>();
+      int newRow = this.height - 1 - i;
       for (int j = 0; j < this.width; j++) {
         Pixel pixel = rowList.get(j);
         int redPixelColor = pixel.getRedColorValue();
         int greenPixelColor = pixel.getGreenColorValue();
         int bluePixelColor = pixel.getBlueColorValue();
-        verticalStringBuilder.append(redPixelColor).append("\n");
-        verticalStringBuilder.append(greenPixelColor).append("\n");
-        verticalStringBuilder.append(bluePixelColor).append("\n");
+        flippedRowList.add(new Pixel(newRow, j, redPixelColor, greenPixelColor,
+                bluePixelColor));
       }
+      flippedImageList.add(flippedRowList);
     }
-    Scanner scanner = new Scanner(verticalStringBuilder.toString());
-    return new ImageModelImpl(scanner);
+    return this.withPixels(flippedImageList);
   }
 
   @Override
   public ImageModel horizontalFlip() {
-    StringBuilder horizontalStringBuilder = new StringBuilder();
-    horizontalStringBuilder.append("P3\n");
-    horizontalStringBuilder.append(this.width).append("\n");
-    horizontalStringBuilder.append(this.height).append("\n");
-    horizontalStringBuilder.append(this.maxValue).append("\n");
+    ArrayList<ArrayList<Pixel>> flippedImageList = new ArrayList<>();
     for (int i = 0; i < this.height; i++) {
       ArrayList<Pixel> rowList = this.image.get(i);
+      ArrayList<Pixel> flippedRowList = new ArrayList<>();
       for (int j = this.width - 1; j >= 0; j--) {
         Pixel pixel = rowList.get(j);
         int redPixelColor = pixel.getRedColorValue();
         int greenPixelColor = pixel.getGreenColorValue();
         int bluePixelColor = pixel.getBlueColorValue();
-        horizontalStringBuilder.append(redPixelColor).append("\n");
-        horizontalStringBuilder.append(greenPixelColor).append("\n");
-        horizontalStringBuilder.append(bluePixelColor).append("\n");
+        flippedRowList.add(new Pixel(i, this.width - 1 - j, redPixelColor, greenPixelColor,
+                bluePixelColor));
       }
+      flippedImageList.add(flippedRowList);
     }
-    Scanner scanner = new Scanner(horizontalStringBuilder.toString());
-    return new ImageModelImpl(scanner);
+    return this.withPixels(flippedImageList);
+  }
+
+  @Override
+  public ImageModel orient(Orientation orientation) throws IllegalArgumentException {
+    if (orientation == null) {
+      throw new IllegalArgumentException("Orientation can't be null");
+    }
+    int[] result = orientation.apply(this.toPackedRaster(), this.width, this.height);
+    return fromPackedImage(new PackedImageModel(orientation.getWidth(this.width, this.height),
+            orientation.getHeight(this.width, this.height), this.maxValue, result));
   }
 
   public ArrayList<ArrayList<Pixel>> getImage() {
     return this.image;
   }
 
+  @Override
+  public int getWidth() {
+    return this.width;
+  }
+
+  @Override
+  public int getHeight() {
+    return this.height;
+  }
+
+  @Override
+  public int getMaxValue() {
+    return this.maxValue;
+  }
+
+  @Override
+  public void getRow(int row, int[] rgb) throws IllegalArgumentException {
+    if (row < 0 || row >= this.height || rgb == null || rgb.length < this.width) {
+      throw new IllegalArgumentException("Row is outside the image or the array is too small");
+    }
+    ArrayList<Pixel> rowList = this.image.get(row);
+    for (int j = 0; j < this.width; j++) {
+      Pixel pixel = rowList.get(j);
+      rgb[j] = (pixel.getRedColorValue() << 16) | (pixel.getGreenColorValue() << 8)
+              | pixel.getBlueColorValue();
+    }
+  }
+
   @Override
   public StringBuilder toStringBuilder() {
     StringBuilder stringBufferToReturn = new StringBuilder();
-    String stringToReturn = "" + this.image.get(0).size() + " ";
-    stringToReturn += this.image.size() + "\n";
-    stringToReturn += this.maxValue + "\n";
-    stringBufferToReturn.append(stringToReturn);
-    stringToReturn = "";
+    stringBufferToReturn.append(this.image.get(0).size()).append(" ");
+    stringBufferToReturn.append(this.image.size()).append("\n");
+    stringBufferToReturn.append(this.maxValue).append("\n");
     for (int i = 0; i < this.height; i++) {
       ArrayList<Pixel> rowList = this.image.get(i);
       for (int j = 0; j < this.width; j++) {
         Pixel pixelToAdd = rowList.get(j);
-        //        System.out.println("Saving Model.Pixel: " + pixelToAdd.getPixelRow() + " " +
-        //                pixelToAdd.getPixelCol());
-        int redColor = pixelToAdd.getRedColorValue();
-        stringToReturn += redColor + "\n";
-        int greenColor = pixelToAdd.getGreenColorValue();
-        stringToReturn += greenColor + "\n";
-        int blueColor = pixelToAdd.getBlueColorValue();
-        stringToReturn += blueColor + "\n";
-        stringBufferToReturn.append(stringToReturn);
-        stringToReturn = "";
+        stringBufferToReturn.append(pixelToAdd.getRedColorValue()).append("\n");
+        stringBufferToReturn.append(pixelToAdd.getGreenColorValue()).append("\n");
+        stringBufferToReturn.append(pixelToAdd.getBlueColorValue()).append("\n");
       }
     }
     return stringBufferToReturn;
@@ -465,44 +431,11 @@ public class ImageModelImpl implements ImageModel {
 
   @Override
   public Map<Integer, Integer> returnColorFrequencies(String type) {
-    Map<Integer, Integer> mapToReturn = this.makeMap();
-    for (int i = 0; i < this.height; i++) {
-      ArrayList<Pixel> rowList = this.image.get(i);
-      for (int j = 0; j < this.width; j++) {
-        Pixel pixel = rowList.get(j);
-        int keyToGet = -1;
-        switch (type) {
-          case "red":
-            keyToGet = pixel.getRedColorValue();
-            break;
-          case "green":
-            keyToGet = pixel.getGreenColorValue();
-            break;
-          case "blue":
-            keyToGet = pixel.getBlueColorValue();
-            break;
-          case "intensity":
-            keyToGet = (pixel.getRedColorValue() +
-                    pixel.getGreenColorValue() + pixel.getBlueColorValue()) / 3;
-            break;
-          default:
-            throw new IllegalArgumentException("We can't support that type of histogram");
-        }
-        int valueToIncrement = mapToReturn.get(keyToGet);
-        valueToIncrement += 1;
-        mapToReturn.put(keyToGet, valueToIncrement);
-      }
-    }
-
-    return mapToReturn;
+    return this.colorFrequencies().toMap(type);
   }
 
-  // Helper that creates a hashmap with values between 0 and 255.
-  private Map<Integer, Integer> makeMap() {
-    Map<Integer, Integer> mapToReturn = new HashMap<>();
-    for (int i = 0; i < this.maxValue + 1; i++) {
-      mapToReturn.put(i, 0);
-    }
-    return mapToReturn;
+  @Override
+  public ColorFrequencies colorFrequencies() {
+    return ColorFrequencies.of(this);
   }
 }
@@ -0,0 +1,162 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The smaller copies of an image at every half size, down to 1 by 1 (a mipmap). Level 0 is the
+ * image itself, and every level after it is the one before it shrunk by 2 with a box filter (see
+ * {@link ImageScaler#shrink(ImageModel, int)}), so making a level only reads the level before it
+ * instead of the whole image. Levels are only made the first time they are asked for, and are
+ * kept after that.
+ *
+ * <p>Operations never change an image, they make a new image, and the new image gets a new
+ * pyramid. Packed images keep their pyramid (see {@link PackedImageModel#pyramid()}), so zooming
+ * out and making thumbnails of the same image again only shrinks it once. The only way to change
+ * an image is to load another one into it with {@link ImageModel#loadImage(java.util.Scanner)},
+ * and a packed image drops its pyramid when that happens.
+ */
+public final class ImagePyramid {
+  private final ImageModel image;
+  private final List<ImageModel> levels;
+  private final int levelCount;
+
+  /**
+   * Constructor that makes the pyramid of an image. No level is made until it is asked for.
+   *
+   * @param image the image at the bottom of the pyramid
+   * @throws IllegalArgumentException if the image is null
+   */
+  public ImagePyramid(ImageModel image) throws IllegalArgumentException {
+    if (image == null) {
+      throw new IllegalArgumentException("Image can't be null");
+    }
+    this.image = image;
+    this.levels = new ArrayList<>();
+    this.levels.add(image);
+    int count = 1;
+    int width = image.getWidth();
+    int height = image.getHeight();
+    while (width > 1 || height > 1) {
+      width = (width + 1) / 2;
+      height = (height + 1) / 2;
+      count++;
+    }
+    this.levelCount = count;
+  }
+
+  /**
+   * Gets the pyramid of an image, which is the one the image keeps if it keeps one, and a new one
+   * otherwise.
+   *
+   * @param image the image
+   * @return its pyramid
+   * @throws IllegalArgumentException if the image is null
+   */
+  public static ImagePyramid of(ImageModel image) throws IllegalArgumentException {
+    if (image instanceof OrientedImageModel) {
+      // a turned view shrinks its laid out copy, which it keeps anyway
+      image = ((OrientedImageModel) image).materialize();
+    }
+    if (image instanceof PackedImageModel) {
+      return ((PackedImageModel) image).pyramid();
+    }
+    return new ImagePyramid(image);
+  }
+
+  /**
+   * Gets how many levels the pyramid has, counting the image itself.
+   *
+   * @return the number of levels, the last of which is 1 by 1
+   */
+  public int getLevelCount() {
+    return this.levelCount;
+  }
+
+  /**
+   * Gets how many levels have been made so far, counting the image itself.
+   *
+   * @return the number of levels that are kept
+   */
+  public synchronized int getBuiltLevels() {
+    return this.levels.size();
+  }
+
+  /**
+   * Gets one level of the pyramid, making it and the levels above it first if they haven't been
+   * made yet.
+   *
+   * @param level 0 for the image, 1 for half its size, 2 for a quarter and so on
+   * @return the image at that level, which is rounded up so no pixels are left out
+   * @throws IllegalArgumentException if the level is negative or past the last one
+   */
+  public synchronized ImageModel getLevel(int level) throws IllegalArgumentException {
+    if (level < 0 || level >= this.levelCount) {
+      throw new IllegalArgumentException("Level must be between 0 and " + (this.levelCount - 1));
+    }
+    while (this.levels.size() <= level) {
+      this.levels.add(ImageScaler.shrink(this.levels.get(this.levels.size() - 1), 2));
+    }
+    return this.levels.get(level);
+  }
+
+  /**
+   * Finds the smallest level that is still at least as big as the image drawn at a scale, which
+   * is the one to draw from when zooming out so no detail is skipped over.
+   *
+   * @param scale how big the image is drawn, like 0.25 for a quarter of its size
+   * @return the level to draw from, which is 0 when the scale is 1 or more
+   * @throws IllegalArgumentException if the scale isn't positive
+   */
+  public int levelForScale(double scale) throws IllegalArgumentException {
+    if (!(scale > 0)) {
+      throw new IllegalArgumentException("Scale must be positive");
+    }
+    int level = 0;
+    while (level + 1 < this.levelCount && scale <= 1.0 / (1L << (level + 1))) {
+      level++;
+    }
+    return level;
+  }
+
+  /**
+   * Shrinks the image to fit in a box, starting from the smallest level that is still at least
+   * as big as it needs to be, so only that level is shrunk again (by at most a factor of 2, see
+   * {@link ImageScaler#fit(ImageModel, int, int)}). Images that already fit are given back as
+   * they are.
+   *
+   * @param maxWidth  the width of the box
+   * @param maxHeight the height of the box
+   * @return the image, or a smaller copy of it that fits in the box
+   * @throws IllegalArgumentException if the box is empty
+   */
+  public ImageModel fit(int maxWidth, int maxHeight) throws IllegalArgumentException {
+    if (maxWidth < 1 || maxHeight < 1) {
+      throw new IllegalArgumentException("The box must be at least 1 by 1");
+    }
+    double scale = Math.min((double) maxWidth / this.image.getWidth(),
+            (double) maxHeight / this.image.getHeight());
+    if (scale >= 1) {
+      return this.image;
+    }
+    if (this.image instanceof TiledImageModel || this.image instanceof MappedImageModel) {
+      // the first levels of an image that doesn't fit in memory wouldn't fit either
+      return ImageScaler.fit(this.image, maxWidth, maxHeight);
+    }
+    return ImageScaler.fit(this.getLevel(this.levelForScale(scale)), maxWidth, maxHeight);
+  }
+
+  /**
+   * Makes a thumbnail of the image, which is the image shrunk to fit in a square.
+   *
+   * @param size the width and height of the square
+   * @return the thumbnail, or the image itself if it already fits
+   * @throws IllegalArgumentException if the size is less than 1
+   */
+  public ImageModel thumbnail(int size) throws IllegalArgumentException {
+    if (size < 1) {
+      throw new IllegalArgumentException("Thumbnail size must be at least 1");
+    }
+    return this.fit(size, size);
+  }
+}
@@ -0,0 +1,97 @@
+package model;
+
+/**
+ * Makes smaller copies of images. Every pixel of the copy is the average of a square block of
+ * pixels of the image (a box filter), so fine detail is smoothed out instead of skipped over, and
+ * the blocks at the right and bottom edges are averaged over the pixels they have. The image is
+ * read one row at a time, so any image model can be shrunk without copying it first.
+ */
+public final class ImageScaler {
+
+  // Nothing to make, this class only has static methods.
+  private ImageScaler() {
+  }
+
+  /**
+   * Shrinks an image just enough for it to fit in a box, by the smallest whole factor that makes
+   * it fit. Images that already fit are given back as they are.
+   *
+   * @param image     the image to fit
+   * @param maxWidth  the width of the box
+   * @param maxHeight the height of the box
+   * @return the image, or a smaller copy of it that fits in the box
+   * @throws IllegalArgumentException if the image is null or the box is empty
+   */
+  public static ImageModel fit(ImageModel image, int maxWidth, int maxHeight)
+          throws IllegalArgumentException {
+    if (image == null) {
+      throw new IllegalArgumentException("Image can't be null");
+    }
+    if (maxWidth < 1 || maxHeight < 1) {
+      throw new IllegalArgumentException("The box must be at least 1 by 1");
+    }
+    int factor = Math.max(factorToFit(image.getWidth(), maxWidth),
+            factorToFit(image.getHeight(), maxHeight));
+    if (factor == 1) {
+      return image;
+    }
+    return shrink(image, factor);
+  }
+
+  /**
+   * Shrinks an image by a whole factor, averaging every factor by factor block of pixels into one.
+   *
+   * @param image  the image to shrink
+   * @param factor how many times smaller the width and height should be
+   * @return the smaller copy, which is rounded up so no pixels are left out
+   * @throws IllegalArgumentException if the image is null or the factor is less than 1
+   */
+  public static PackedImageModel shrink(ImageModel image, int factor)
+          throws IllegalArgumentException {
+    if (image == null) {
+      throw new IllegalArgumentException("Image can't be null");
+    }
+    if (factor < 1) {
+      throw new IllegalArgumentException("Factor must be at least 1");
+    }
+    int width = image.getWidth();
+    int height = image.getHeight();
+    int newWidth = (width + factor - 1) / factor;
+    int newHeight = (height + factor - 1) / factor;
+    int[] result = new int[newWidth * newHeight];
+    int[] row = new int[width];
+    long[] red = new long[newWidth];
+    long[] green = new long[newWidth];
+    long[] blue = new long[newWidth];
+    for (int i = 0; i < newHeight; i++) {
+      int firstRow = i * factor;
+      int lastRow = Math.min(height, firstRow + factor);
+      for (int r = firstRow; r < lastRow; r++) {
+        image.getRow(r, row);
+        for (int j = 0; j < width; j++) {
+          int rgb = row[j];
+          int block = j / factor;
+          red[block] += PackedImageModel.red(rgb);
+          green[block] += PackedImageModel.green(rgb);
+          blue[block] += PackedImageModel.blue(rgb);
+        }
+      }
+      for (int j = 0; j < newWidth; j++) {
+        long count = (long) (lastRow - firstRow) * (Math.min(width, (j + 1) * factor) - j * factor);
+        result[i * newWidth + j] = PackedImageModel.pack(
+                (int) ((red[j] + count / 2) / count),
+                (int) ((green[j] + count / 2) / count),
+                (int) ((blue[j] + count / 2) / count));
+        red[j] = 0;
+        green[j] = 0;
+        blue[j] = 0;
+      }
+    }
+    return new PackedImageModel(newWidth, newHeight, image.getMaxValue(), result);
+  }
+
+  // Finds the smallest whole factor that makes a length no longer than the most it can be.
+  private static int factorToFit(int length, int most) {
+    return Math.max(1, (length + most - 1) / most);
+  }
+}
@@ -0,0 +1,308 @@
+package model;
+
+/**
+ * Represents a filter matrix that has been checked and prepared for the {@link FilterEngine}.
+ * When a kernel is made, the matrix is tested for being separable, which means it is the outer
+ * product of one column of weights and one row of weights (it has a rank of 1). Our gaussian
+ * blur is like that. The kernel is also turned into whole number weights when every weight is a
+ * binary fraction (like the 1/16ths of the blur and the 1/8ths of sharpen). The filter can then
+ * add up ints and shift the sums right instead of adding up doubles, and it gives exactly the
+ * same result. A separable k x k kernel with whole number weights is applied as a pass along
+ * the rows followed by a pass along the columns, which takes 2k multiply-adds per pixel instead
+ * of k * k. Other separable kernels (like a 1/9 box blur) are applied as a whole matrix, since
+ * their sums would be rounded differently in two passes.
+ */
+public final class Kernel {
+  // How far a weight can be from the product of its column and row weight, relative to the
+  // biggest weight, for the matrix to still count as separable
+  private static final double SEPARABLE_TOLERANCE = 1e-12;
+  // The most bits the whole number weights can be shifted by
+  private static final int MAX_SHIFT = 30;
+
+  private final double[][] matrix;
+  private final double[] columnWeights;
+  private final int[][] fixedMatrix;
+  private final int fixedShift;
+  private final int[] fixedColumnWeights;
+  private final int[] fixedRowWeights;
+  private final int fixedSeparableShift;
+
+  // Makes a kernel, the weights are null if the matrix isn't separable. The whole number
+  // versions of the matrix and of the weights are worked out here, and are null if they can't
+  // be made exactly.
+  private Kernel(double[][] matrix, double[] columnWeights, double[] rowWeights) {
+    this.matrix = matrix;
+    this.columnWeights = columnWeights;
+    int shift = fixedShift(matrix);
+    this.fixedShift = Math.max(shift, 0);
+    this.fixedMatrix = shift < 0 ? null : toFixed(matrix, shift);
+    if (columnWeights == null) {
+      this.fixedColumnWeights = null;
+      this.fixedRowWeights = null;
+      this.fixedSeparableShift = 0;
+      return;
+    }
+    int columnShift = fixedShift(new double[][]{columnWeights});
+    int rowShift = fixedShift(new double[][]{rowWeights});
+    int[] fixedColumns = columnShift < 0 ? null : toFixed(new double[][]{columnWeights},
+            columnShift)[0];
+    int[] fixedRows = rowShift < 0 ? null : toFixed(new double[][]{rowWeights}, rowShift)[0];
+    if (fixedColumns == null || fixedRows == null || columnShift + rowShift > MAX_SHIFT
+            || (double) absoluteSum(fixedColumns) * absoluteSum(fixedRows) * 255
+            > Integer.MAX_VALUE
+            || !isExactProduct(matrix, fixedColumns, fixedRows, columnShift + rowShift)) {
+      this.fixedColumnWeights = null;
+      this.fixedRowWeights = null;
+      this.fixedSeparableShift = 0;
+    } else {
+      this.fixedColumnWeights = fixedColumns;
+      this.fixedRowWeights = fixedRows;
+      this.fixedSeparableShift = columnShift + rowShift;
+    }
+  }
+
+  /**
+   * Prepares a filter matrix, finding out if it is separable.
+   *
+   * @param matrix the filter matrix, it must have an odd number of rows and columns and every
+   *               row must be the same length
+   * @return the kernel for the matrix
+   * @throws IllegalArgumentException if the matrix has an even number of rows and/or columns
+   */
+  public static Kernel of(double[][] matrix) throws IllegalArgumentException {
+    if (matrix == null || matrix.length % 2 == 0 || matrix[0] == null
+            || matrix[0].length % 2 == 0) {
+      throw new IllegalArgumentException("Can't have an even amount of rows and/or columns!");
+    }
+    double[][] copy = new double[matrix.length][];
+    for (int i = 0; i < matrix.length; i++) {
+      if (matrix[i] == null || matrix[i].length != matrix[0].length) {
+        throw new IllegalArgumentException("Every row of the matrix must be the same length");
+      }
+      copy[i] = matrix[i].clone();
+    }
+    if (copy.length == 1 || copy[0].length == 1) {
+      // a single row or column is already one pass
+      return new Kernel(copy, null, null);
+    }
+    // use the biggest weight as the pivot of the rank 1 decomposition
+    int pivotRow = 0;
+    int pivotCol = 0;
+    double biggest = 0;
+    for (int i = 0; i < copy.length; i++) {
+      for (int j = 0; j < copy[i].length; j++) {
+        if (Math.abs(copy[i][j]) > biggest) {
+          biggest = Math.abs(copy[i][j]);
+          pivotRow = i;
+          pivotCol = j;
+        }
+      }
+    }
+    if (biggest == 0) {
+      return new Kernel(copy, null, null);
+    }
+    // the row weights are the pivot row divided by the odd factor its weights all share, and
+    // the column weights are the pivot column divided by what is left of the pivot. That way
+    // kernels made of binary fractions (like the blur) split into binary fractions too, which
+    // can be made whole numbers for the two passes
+    long common = 0;
+    for (int j = 0; j < copy[0].length; j++) {
+      common = gcd(common, oddPart(copy[pivotRow][j]));
+    }
+    double rowScale = common == 0 ? 1 : common;
+    double columnScale = copy[pivotRow][pivotCol] / rowScale;
+    double[] columnWeights = new double[copy.length];
+    double[] rowWeights = new double[copy[0].length];
+    for (int i = 0; i < copy.length; i++) {
+      columnWeights[i] = copy[i][pivotCol] / columnScale;
+    }
+    for (int j = 0; j < copy[0].length; j++) {
+      rowWeights[j] = copy[pivotRow][j] / rowScale;
+    }
+    for (int i = 0; i < copy.length; i++) {
+      for (int j = 0; j < copy[i].length; j++) {
+        if (Math.abs(copy[i][j] - columnWeights[i] * rowWeights[j])
+                > SEPARABLE_TOLERANCE * biggest) {
+          return new Kernel(copy, null, null);
+        }
+      }
+    }
+    return new Kernel(copy, columnWeights, rowWeights);
+  }
+
+  // Gets the odd whole number that the weight is made of, the weight is that number times a
+  // power of 2. Gives 0 for a weight of 0.
+  private static long oddPart(double weight) {
+    if (weight == 0 || Double.isNaN(weight) || Double.isInfinite(weight)) {
+      return 0;
+    }
+    long bits = Double.doubleToLongBits(weight);
+    long mantissa = bits & ((1L << 52) - 1);
+    if (((bits >> 52) & 0x7FF) != 0) {
+      mantissa |= 1L << 52;
+    }
+    return mantissa >> Long.numberOfTrailingZeros(mantissa);
+  }
+
+  // Finds the smallest shift that turns every weight into a whole number, or -1 if the weights
+  // need more than MAX_SHIFT bits or the sums of a channel could overflow an int.
+  private static int fixedShift(double[][] weights) {
+    int shift = 0;
+    double total = 0;
+    for (double[] row : weights) {
+      for (double weight : row) {
+        if (Double.isNaN(weight) || Double.isInfinite(weight)) {
+          return -1;
+        }
+        if (weight == 0) {
+          continue;
+        }
+        // the weight is oddPart * 2^power
+        long bits = Double.doubleToLongBits(weight);
+        long mantissa = bits & ((1L << 52) - 1);
+        int exponent = (int) ((bits >> 52) & 0x7FF);
+        if (exponent != 0) {
+          mantissa |= 1L << 52;
+        } else {
+          exponent = 1;
+        }
+        int power = exponent - 1075 + Long.numberOfTrailingZeros(mantissa);
+        shift = Math.max(shift, -power);
+        total += Math.abs(weight);
+      }
+    }
+    if (shift > MAX_SHIFT || Math.scalb(total, shift) * 255 > Integer.MAX_VALUE) {
+      return -1;
+    }
+    return shift;
+  }
+
+  // Multiplies every weight by 2^shift, which gives whole numbers when the shift came from
+  // fixedShift.
+  private static int[][] toFixed(double[][] weights, int shift) {
+    int[][] fixed = new int[weights.length][];
+    for (int i = 0; i < weights.length; i++) {
+      fixed[i] = new int[weights[i].length];
+      for (int j = 0; j < weights[i].length; j++) {
+        fixed[i][j] = (int) Math.scalb(weights[i][j], shift);
+      }
+    }
+    return fixed;
+  }
+
+  // Checks that every entry of the matrix is exactly its whole number column weight times its
+  // row weight, shifted back down. A matrix that is only separable within the tolerance isn't,
+  // and two passes over the weights would add up a slightly different matrix.
+  private static boolean isExactProduct(double[][] matrix, int[] columns, int[] rows,
+                                        int shift) {
+    for (int i = 0; i < matrix.length; i++) {
+      for (int j = 0; j < matrix[i].length; j++) {
+        // the product is below 2^31, so it is exact as a double
+        if (Math.scalb((double) ((long) columns[i] * rows[j]), -shift) != matrix[i][j]) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  // Adds up the sizes of the weights.
+  private static long absoluteSum(int[] weights) {
+    long sum = 0;
+    for (int weight : weights) {
+      sum += Math.abs(weight);
+    }
+    return sum;
+  }
+
+  // The greatest common divisor of two whole numbers, where 0 divides nothing.
+  private static long gcd(long a, long b) {
+    while (b != 0) {
+      long next = a % b;
+      a = b;
+      b = next;
+    }
+    return a;
+  }
+
+  /**
+   * Gets the number of rows of the kernel.
+   *
+   * @return the number of rows
+   */
+  public int getRows() {
+    return this.matrix.length;
+  }
+
+  /**
+   * Gets the number of columns of the kernel.
+   *
+   * @return the number of columns
+   */
+  public int getColumns() {
+    return this.matrix[0].length;
+  }
+
+  /**
+   * Checks if the kernel is the outer product of a column and a row of weights, to within a
+   * tiny tolerance. The engine only applies it as two one dimensional passes if the weights are
+   * whole numbers whose products give back exactly every entry of the matrix.
+   *
+   * @return true if the kernel is separable
+   */
+  public boolean isSeparable() {
+    return this.columnWeights != null;
+  }
+
+  /**
+   * Checks if the kernel can be applied with whole number weights, which happens when every
+   * weight is a binary fraction that isn't too small.
+   *
+   * @return true if the kernel has whole number weights
+   */
+  public boolean isFixedPoint() {
+    return this.fixedMatrix != null || this.fixedColumnWeights != null;
+  }
+
+  /**
+   * Gets the weight of one entry of the kernel.
+   *
+   * @param row the row of the entry
+   * @param col the column of the entry
+   * @return the weight
+   */
+  public double getWeight(int row, int col) {
+    return this.matrix[row][col];
+  }
+
+  // The matrix of the kernel, shared with the engine so it must not be changed.
+  double[][] matrix() {
+    return this.matrix;
+  }
+
+  // The matrix times 2^fixedShift() as whole numbers, or null if that isn't exact.
+  int[][] fixedMatrix() {
+    return this.fixedMatrix;
+  }
+
+  // How many bits the sums of fixedMatrix() are shifted right by.
+  int fixedShift() {
+    return this.fixedShift;
+  }
+
+  // The column weights as whole numbers, or null if the kernel isn't separable or the whole
+  // number column and row weights don't multiply back to exactly the matrix.
+  int[] fixedColumnWeights() {
+    return this.fixedColumnWeights;
+  }
+
+  // The row weights as whole numbers, or null if they aren't separable or exact.
+  int[] fixedRowWeights() {
+    return this.fixedRowWeights;
+  }
+
+  // How many bits the sums of both whole number passes are shifted right by.
+  int fixedSeparableShift() {
+    return this.fixedSeparableShift;
+  }
+}
@@ -0,0 +1,356 @@
+package model;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Scanner;
+
+/**
+ * Image that doesn't work anything out until it has to. Brighten, darken, greyscale, color
+ * transformations, flips and rotations only add a step to a plan that starts from an image that
+ * has already been worked out (the base). The plan is run the first time the pixels are needed,
+ * which is when the image is saved, shown, or its histogram is made, and the result is kept
+ * after that.
+ *
+ * <p>All the steps in a plan change every pixel on its own, so flips and rotations can be done
+ * while the base is read no matter where they were in the plan, and all the color steps are done
+ * one after the other on each row while it is still in the cache. That way the whole plan is one
+ * pass over the image however long it is, instead of one pass (and one new image) per step.
+ * Point operations in a row are composed into one table when that is possible, and brighten,
+ * darken and red, green or blue greyscale steps right after a color transformation are folded
+ * into its matrix (see {@link AffineColorMap}). Filters need the neighbours of a pixel, so
+ * filtering works out this image and filters it, and the filtered image is the base of the new
+ * plan.
+ */
+public class LazyImageModel implements ImageModel {
+  private ImageModel base;
+  private Orientation orientation;
+  private List<Stage> stages;
+  private int recordedSteps;
+
+  /**
+   * Constructor that starts a plan from an image that is already worked out.
+   *
+   * @param base the image to start from
+   * @throws IllegalArgumentException if the image is null
+   */
+  public LazyImageModel(ImageModel base) throws IllegalArgumentException {
+    this(base, Orientation.IDENTITY, Collections.emptyList(), 0);
+    if (base == null) {
+      throw new IllegalArgumentException("Image can't be null");
+    }
+  }
+
+  // Makes an image with a plan, the list of steps must not be changed afterwards.
+  private LazyImageModel(ImageModel base, Orientation orientation, List<Stage> stages,
+                         int recordedSteps) {
+    this.base = base;
+    this.orientation = orientation;
+    this.stages = stages;
+    this.recordedSteps = recordedSteps;
+  }
+
+  /**
+   * Checks if the plan of this image has been run yet.
+   *
+   * @return true if the pixels of this image have been worked out
+   */
+  public synchronized boolean isEvaluated() {
+    return this.isPlanEmpty();
+  }
+
+  /**
+   * Gets how many steps are waiting in the plan of this image. All the flips and rotations
+   * together count as one step, since they are composed into one orientation.
+   *
+   * @return the number of steps that haven't been run yet
+   */
+  public synchronized int getPendingSteps() {
+    return this.stages.size() + (this.orientation == Orientation.IDENTITY ? 0 : 1);
+  }
+
+  /**
+   * Gets how many steps were asked for to make the plan of this image, counting the ones that
+   * were composed or folded into other steps. Done one at a time, every one of them would be a
+   * pass over the image, and the plan does them all in one pass.
+   *
+   * @return the number of steps asked for on top of the base, 0 once the plan has been run
+   */
+  public synchronized int getRecordedSteps() {
+    return this.recordedSteps;
+  }
+
+  @Override
+  public synchronized ArrayList<ArrayList<Pixel>> loadImage(Scanner sc)
+          throws IllegalArgumentException {
+    PackedImageModel image = new PackedImageModel(sc);
+    this.base = image;
+    this.orientation = Orientation.IDENTITY;
+    this.stages = Collections.emptyList();
+    this.recordedSteps = 0;
+    return image.getImage();
+  }
+
+  @Override
+  public ImageModel changeExposure(String enhanceType, int colorToAdjust)
+          throws IllegalArgumentException {
+    if (enhanceType == null) {
+      throw new IllegalArgumentException("Please specify if you want to brighten or "
+              + "darken the image by entering 'brighten' or 'darken'");
+    }
+    if (colorToAdjust < 0) {
+      throw new IllegalArgumentException("You must input a positive integer");
+    }
+    String stringToCompare = enhanceType.toLowerCase();
+    if (stringToCompare.equals("brighten")) {
+      return this.pointOperation(PointOperation.exposure(colorToAdjust));
+    }
+    if (stringToCompare.equals("darken")) {
+      return this.pointOperation(PointOperation.exposure(colorToAdjust * -1));
+    }
+    throw new IllegalArgumentException("Please specify if you want to brighten or "
+            + "darken the image by entering 'brighten' or 'darken'");
+  }
+
+  @Override
+  public ImageModel greyScale(String greyScaleType) {
+    return this.pointOperation(PointOperation.greyScale(greyScaleType));
+  }
+
+  @Override
+  public ImageModel pointOperation(PointOperation operation) throws IllegalArgumentException {
+    if (operation == null) {
+      throw new IllegalArgumentException("Operation can't be null");
+    }
+    return this.withStage(new PointStage(operation));
+  }
+
+  @Override
+  public ImageModel colorTransformation(double[][] matrix) throws IllegalArgumentException {
+    if (matrix == null || matrix.length != 3 || matrix[0].length != 3) {
+      throw new IllegalArgumentException("Color transformation matrix must have 3x3 dimensions");
+    }
+    // the map keeps its own copy of the matrix, since the step runs later
+    return this.withStage(new AffineStage(AffineColorMap.of(matrix)));
+  }
+
+  @Override
+  public synchronized ImageModel orient(Orientation next) throws IllegalArgumentException {
+    if (next == null) {
+      throw new IllegalArgumentException("Orientation can't be null");
+    }
+    return new LazyImageModel(this.base, this.orientation.then(next), this.stages,
+            this.recordedSteps + 1);
+  }
+
+  @Override
+  public ImageModel verticalFlip() {
+    return this.orient(Orientation.FLIP_VERTICAL);
+  }
+
+  @Override
+  public ImageModel horizontalFlip() {
+    return this.orient(Orientation.FLIP_HORIZONTAL);
+  }
+
+  @Override
+  public ImageModel filter(double[][] matrix) throws IllegalArgumentException {
+    return this.filter(matrix, BorderMode.ZERO);
+  }
+
+  @Override
+  public ImageModel filter(double[][] matrix, BorderMode borderMode)
+          throws IllegalArgumentException {
+    return new LazyImageModel(this.evaluate().filter(matrix, borderMode));
+  }
+
+  @Override
+  public BufferedImage returnAsBufferedImage() {
+    return this.evaluate().returnAsBufferedImage();
+  }
+
+  @Override
+  public synchronized int getWidth() {
+    return this.orientation.getWidth(this.base.getWidth(), this.base.getHeight());
+  }
+
+  @Override
+  public synchronized int getHeight() {
+    return this.orientation.getHeight(this.base.getWidth(), this.base.getHeight());
+  }
+
+  @Override
+  public int getMaxValue() {
+    return this.base().getMaxValue();
+  }
+
+  @Override
+  public void getRow(int row, int[] rgb) throws IllegalArgumentException {
+    this.evaluate().getRow(row, rgb);
+  }
+
+  @Override
+  public StringBuilder toStringBuilder() {
+    return this.evaluate().toStringBuilder();
+  }
+
+  @Override
+  public Map<Integer, Integer> returnColorFrequencies(String type) {
+    return this.evaluate().returnColorFrequencies(type);
+  }
+
+  @Override
+  public ColorFrequencies colorFrequencies() {
+    return this.evaluate().colorFrequencies();
+  }
+
+  // Gets the base under the lock, since loadImage can replace it.
+  private synchronized ImageModel base() {
+    return this.base;
+  }
+
+  // Checks if there is nothing to run, so the base is already this image.
+  private boolean isPlanEmpty() {
+    return this.stages.isEmpty() && this.orientation == Orientation.IDENTITY;
+  }
+
+  // Makes a new image whose plan is this plan with one more step, composing the step into the
+  // last one when they can be composed.
+  private synchronized ImageModel withStage(Stage stage) {
+    List<Stage> newStages = new ArrayList<>(this.stages);
+    Stage composed = newStages.isEmpty() ? null
+            : newStages.get(newStages.size() - 1).then(stage);
+    if (composed != null) {
+      newStages.set(newStages.size() - 1, composed);
+    } else {
+      newStages.add(stage);
+    }
+    return new LazyImageModel(this.base, this.orientation,
+            Collections.unmodifiableList(newStages), this.recordedSteps + 1);
+  }
+
+  /**
+   * Runs the plan of this image if it hasn't been run yet. Every row is read from the base
+   * (flipped or turned if needed) straight into the new raster, and then every step is done on
+   * that row before going on to the next one.
+   *
+   * @return the worked out image
+   */
+  synchronized ImageModel evaluate() {
+    if (this.isPlanEmpty()) {
+      return this.base;
+    }
+    // for a packed base this is a view, so flipped rows are read straight from the base
+    ImageModel source = this.orientation == Orientation.IDENTITY ? this.base
+            : this.base.orient(this.orientation);
+    int width = source.getWidth();
+    int height = source.getHeight();
+    int[] result = new int[width * height];
+    int[] row = new int[width];
+    for (int i = 0; i < height; i++) {
+      int start = i * width;
+      source.getRow(i, row);
+      System.arraycopy(row, 0, result, start, width);
+      for (Stage stage : this.stages) {
+        stage.apply(result, start, start + width);
+      }
+    }
+    // the result becomes the base of an empty plan, which lets the old base be garbage collected
+    this.base = new PackedImageModel(width, height, this.base.getMaxValue(), result,
+            this.knownFrequencies());
+    this.orientation = Orientation.IDENTITY;
+    this.stages = Collections.emptyList();
+    this.recordedSteps = 0;
+    return this.base;
+  }
+
+  // Works out the histograms after the plan from the ones of the base, if they are known and
+  // every step allows it. Flips and rotations don't change the histograms at all.
+  private ColorFrequencies knownFrequencies() {
+    ColorFrequencies frequencies = this.base instanceof PackedImageModel
+            ? ((PackedImageModel) this.base).getKnownColorFrequencies() : null;
+    for (Stage stage : this.stages) {
+      if (frequencies == null) {
+        return null;
+      }
+      frequencies = stage.after(frequencies);
+    }
+    return frequencies;
+  }
+
+  /**
+   * One step of a plan that changes every pixel on its own.
+   */
+  private interface Stage {
+    // Does the step on part of a raster, in place.
+    void apply(int[] pixels, int start, int end);
+
+    // Composes this step with the next one, or gives null if they can't be composed.
+    Stage then(Stage next);
+
+    // Works out the histograms after this step, or gives null if the image has to be counted.
+    ColorFrequencies after(ColorFrequencies frequencies);
+  }
+
+  /**
+   * A step that is a point operation.
+   */
+  private static final class PointStage implements Stage {
+    private final PointOperation operation;
+
+    PointStage(PointOperation operation) {
+      this.operation = operation;
+    }
+
+    @Override
+    public void apply(int[] pixels, int start, int end) {
+      this.operation.apply(pixels, pixels, start, end);
+    }
+
+    @Override
+    public Stage then(Stage next) {
+      if (!(next instanceof PointStage)) {
+        return null;
+      }
+      PointOperation composed = this.operation.then(((PointStage) next).operation);
+      return composed == null ? null : new PointStage(composed);
+    }
+
+    @Override
+    public ColorFrequencies after(ColorFrequencies frequencies) {
+      return frequencies.after(this.operation);
+    }
+  }
+
+  /**
+   * A step that is a color transformation matrix, with any shifts that came after it folded in.
+   */
+  private static final class AffineStage implements Stage {
+    private final AffineColorMap map;
+
+    AffineStage(AffineColorMap map) {
+      this.map = map;
+    }
+
+    @Override
+    public void apply(int[] pixels, int start, int end) {
+      this.map.apply(pixels, pixels, start, end);
+    }
+
+    @Override
+    public Stage then(Stage next) {
+      if (!(next instanceof PointStage)) {
+        return null;
+      }
+      AffineColorMap folded = this.map.then(((PointStage) next).operation);
+      return folded == null ? null : new AffineStage(folded);
+    }
+
+    @Override
+    public ColorFrequencies after(ColorFrequencies frequencies) {
+      return null;
+    }
+  }
+}
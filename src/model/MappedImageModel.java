@@ -0,0 +1,576 @@
+package model;
+
+import java.awt.image.BufferedImage;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.Scanner;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Image whose raster is a memory mapped file instead of an array on the heap, so it can be
+ * bigger than the heap and bigger than the 2GB an array can hold. Every pixel takes 3 bytes (red,
+ * green and blue) in row-major order, which is the same layout as the data of a raw ppm file, so
+ * a raw 8 bit ppm is mapped where it is and nothing is copied to open it. The operating system
+ * reads the pages of the file that are used and drops them again when memory gets tight.
+ *
+ * <p>A mapped buffer can't be bigger than 2GB, so the file is mapped in chunks of whole rows.
+ * Every operation writes its result to a new temporary file that is mapped the same way, a band
+ * of rows at a time, and filters read a few rows above and below every band (filled the way the
+ * border mode says past the top and bottom of the image) so they give exactly the same result as
+ * filtering the whole image. {@link #close()} unmaps the file right away and deletes the
+ * temporary file, instead of waiting for the garbage collector to find the buffers.
+ */
+public class MappedImageModel implements ImageModel, Closeable {
+  // The most bytes one mapped buffer holds
+  private static final int CHUNK_BYTES = Integer.MAX_VALUE - 8;
+  // How many pixels an operation works out at a time
+  private static final int BAND_PIXELS = 1 << 22;
+  // How many pixels on a side a block of an image being turned is
+  private static final int BLOCK_SIZE = 1024;
+
+  private final int width;
+  private final int height;
+  private final int maxValue;
+  private final int rowsPerChunk;
+  private final FileChannel channel;
+  // The temporary file behind the raster, or null if it is a file the user opened
+  private final Path temporary;
+  private final MappedByteBuffer[] chunks;
+  // Reading holds the read lock, so close can't unmap a buffer while it is being read
+  private final ReadWriteLock lock;
+  private boolean closed;
+  private volatile ColorFrequencies frequencies;
+
+  // Maps a file whose raster starts at the given offset.
+  private MappedImageModel(int width, int height, int maxValue, FileChannel channel,
+                           long offset, Path temporary, FileChannel.MapMode mode)
+          throws IOException {
+    if ((long) width * 3 > CHUNK_BYTES) {
+      throw new IllegalArgumentException("Rows of the image are too long to be mapped");
+    }
+    this.width = width;
+    this.height = height;
+    this.maxValue = maxValue;
+    this.channel = channel;
+    this.temporary = temporary;
+    this.lock = new ReentrantReadWriteLock();
+    this.rowsPerChunk = width == 0 ? Math.max(1, height) : CHUNK_BYTES / (width * 3);
+    int chunkCount = height == 0 ? 0 : (height + this.rowsPerChunk - 1) / this.rowsPerChunk;
+    this.chunks = new MappedByteBuffer[chunkCount];
+    for (int i = 0; i < chunkCount; i++) {
+      int rows = Math.min(this.rowsPerChunk, height - i * this.rowsPerChunk);
+      this.chunks[i] = channel.map(mode, offset + (long) i * this.rowsPerChunk * width * 3,
+              (long) rows * width * 3);
+    }
+  }
+
+  /**
+   * Checks if a ppm file can be mapped where it is, which is when it is raw with 8 bit channels.
+   *
+   * @param fileName the path of the file
+   * @return true if the file can be opened without copying it
+   * @throws IOException              if the file can't be read
+   * @throws IllegalArgumentException if the header of the file isn't valid
+   */
+  public static boolean canMap(String fileName) throws IOException, IllegalArgumentException {
+    if (fileName == null) {
+      throw new IllegalArgumentException("File name can't be null");
+    }
+    PPMReader.Header header = PPMReader.readHeader(fileName);
+    return header.dataOffset >= 0 && header.maxValue <= 255;
+  }
+
+  /**
+   * Opens a ppm file as a mapped image. A raw file with 8 bit channels is mapped read only where
+   * it is, and has to stay there while the image is used. Other ppm files are read once, one row
+   * at a time, and copied to a temporary file.
+   *
+   * @param fileName the path of the file
+   * @return the image in the file
+   * @throws IOException              if the file can't be read or mapped
+   * @throws IllegalArgumentException if the file isn't a valid ppm
+   */
+  public static MappedImageModel open(String fileName)
+          throws IOException, IllegalArgumentException {
+    if (fileName == null) {
+      throw new IllegalArgumentException("File name can't be null");
+    }
+    PPMReader.Header header = PPMReader.readHeader(fileName);
+    if (header.dataOffset < 0 || header.maxValue > 255) {
+      try (PPMReader.RowReader reader = new PPMReader.RowReader(fileName)) {
+        return copy(header.width, header.height, Math.min(header.maxValue, 255),
+                (i, row) -> reader.readRow(row));
+      }
+    }
+    FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ);
+    try {
+      if (channel.size() < header.dataOffset + (long) header.width * header.height * 3) {
+        throw new IllegalArgumentException("Invalid PPM file: not enough pixel data");
+      }
+      return new MappedImageModel(header.width, header.height, header.maxValue, channel,
+              header.dataOffset, null, FileChannel.MapMode.READ_ONLY);
+    } catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Copies an image into a new temporary mapped file. The image is read one row at a time, so
+   * it doesn't have to fit in memory either.
+   *
+   * @param image the image to copy
+   * @return the mapped copy
+   * @throws IllegalArgumentException if the image is null
+   * @throws UncheckedIOException     if the temporary file can't be made
+   */
+  public static MappedImageModel of(ImageModel image) throws IllegalArgumentException {
+    if (image == null) {
+      throw new IllegalArgumentException("Image can't be null");
+    }
+    try {
+      return copy(image.getWidth(), image.getHeight(), image.getMaxValue(), image::getRow);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  // Copies the rows of an image into a new temporary mapped file, one row at a time, so only
+  // one row is in memory at once.
+  private static MappedImageModel copy(int width, int height, int maxValue, RowSource rows)
+          throws IOException {
+    MappedImageModel copy = create(width, height, maxValue);
+    int[] row = new int[width];
+    try {
+      for (int i = 0; i < height; i++) {
+        rows.readRow(i, row);
+        copy.writeRows(i, 1, row);
+      }
+    } catch (IOException | RuntimeException e) {
+      copy.closeQuietly();
+      throw e;
+    }
+    return copy;
+  }
+
+  // Makes a black image backed by a new temporary file, which is deleted when the image is
+  // closed or the program ends.
+  private static MappedImageModel create(int width, int height, int maxValue) {
+    Path path = null;
+    FileChannel channel = null;
+    try {
+      path = Files.createTempFile("raster", ".rgb");
+      File file = path.toFile();
+      file.deleteOnExit();
+      channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+      return new MappedImageModel(width, height, maxValue, channel, 0, path,
+              FileChannel.MapMode.READ_WRITE);
+    } catch (IOException e) {
+      try {
+        if (channel != null) {
+          channel.close();
+        }
+        if (path != null) {
+          Files.deleteIfExists(path);
+        }
+      } catch (IOException ignored) {
+        // the file is deleted when the program ends anyway
+      }
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Checks if the file is mapped in place, rather than being a temporary copy.
+   *
+   * @return true if the raster is the file that was opened
+   */
+  public boolean isMappedInPlace() {
+    return this.temporary == null;
+  }
+
+  /**
+   * Checks if the image has been closed.
+   *
+   * @return true if the image can't be read anymore
+   */
+  public boolean isClosed() {
+    this.lock.readLock().lock();
+    try {
+      return this.closed;
+    } finally {
+      this.lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Mapped images are opened from a file with {@link #open(String)}, they can't be loaded from a
+   * scanner.
+   *
+   * @param sc the scanner
+   * @return nothing
+   * @throws UnsupportedOperationException always
+   */
+  @Override
+  public ArrayList<ArrayList<Pixel>> loadImage(Scanner sc) throws UnsupportedOperationException {
+    throw new UnsupportedOperationException("Mapped images are opened from a file");
+  }
+
+  @Override
+  public ImageModel changeExposure(String enhanceType, int colorToAdjust)
+          throws IllegalArgumentException {
+    if (enhanceType == null) {
+      throw new IllegalArgumentException("Please specify if you want to brighten or "
+              + "darken the image by entering 'brighten' or 'darken'");
+    }
+    if (colorToAdjust < 0) {
+      throw new IllegalArgumentException("You must input a positive integer");
+    }
+    String stringToCompare = enhanceType.toLowerCase();
+    if (stringToCompare.equals("brighten")) {
+      return this.pointOperation(PointOperation.exposure(colorToAdjust));
+    }
+    if (stringToCompare.equals("darken")) {
+      return this.pointOperation(PointOperation.exposure(-colorToAdjust));
+    }
+    throw new IllegalArgumentException("Please specify if you want to brighten or "
+            + "darken the image by entering 'brighten' or 'darken'");
+  }
+
+  @Override
+  public ImageModel greyScale(String greyScaleType) {
+    return this.pointOperation(PointOperation.greyScale(greyScaleType));
+  }
+
+  @Override
+  public ImageModel pointOperation(PointOperation operation) throws IllegalArgumentException {
+    if (operation == null) {
+      throw new IllegalArgumentException("Operation can't be null");
+    }
+    MappedImageModel result = this.derive(this.width, this.height,
+            (first, rows) -> operation.apply(this.readRegion(0, first, this.width, rows)));
+    ColorFrequencies known = this.frequencies;
+    result.frequencies = known == null ? null : known.after(operation);
+    return result;
+  }
+
+  @Override
+  public ImageModel filter(double[][] matrix) throws IllegalArgumentException {
+    return this.filter(matrix, BorderMode.ZERO);
+  }
+
+  @Override
+  public ImageModel filter(double[][] matrix, BorderMode borderMode)
+          throws IllegalArgumentException {
+    if (borderMode == null) {
+      throw new IllegalArgumentException("Border mode can't be null");
+    }
+    Kernel kernel = Kernel.of(matrix);
+    int halo = kernel.getRows() / 2;
+    return this.derive(this.width, this.height, (first, rows) -> {
+      int windowRows = rows + 2 * halo;
+      int[] window = new int[windowRows * this.width];
+      int[] row = new int[this.width];
+      for (int k = 0; k < windowRows; k++) {
+        // rows past the top and bottom are filled the way the border mode says, so only the
+        // rows of the band are ever filtered with the border mode of the window
+        int sourceRow = borderMode.map(first - halo + k, this.height);
+        if (sourceRow >= 0) {
+          this.getRow(sourceRow, row);
+          System.arraycopy(row, 0, window, k * this.width, this.width);
+        }
+      }
+      int[] filtered = FilterEngine.getShared().filter(window, this.width, windowRows, kernel,
+              borderMode);
+      int[] band = new int[rows * this.width];
+      System.arraycopy(filtered, halo * this.width, band, 0, band.length);
+      return band;
+    });
+  }
+
+  @Override
+  public ImageModel colorTransformation(double[][] matrix) throws IllegalArgumentException {
+    if (matrix.length != 3 || matrix[0].length != 3) {
+      throw new IllegalArgumentException("Color transformation matrix must have 3x3 dimensions");
+    }
+    return this.derive(this.width, this.height,
+            (first, rows) -> ColorTransformer.getShared().transform(
+                    this.readRegion(0, first, this.width, rows), matrix));
+  }
+
+  /**
+   * Makes a buffered image of the whole image, which has to fit in memory.
+   *
+   * @return this image as a buffered image
+   */
+  @Override
+  public BufferedImage returnAsBufferedImage() {
+    return BufferedImageConverter.toBufferedImage(this);
+  }
+
+  @Override
+  public ImageModel verticalFlip() {
+    return this.orient(Orientation.FLIP_VERTICAL);
+  }
+
+  @Override
+  public ImageModel horizontalFlip() {
+    return this.orient(Orientation.FLIP_HORIZONTAL);
+  }
+
+  @Override
+  public ImageModel orient(Orientation orientation) throws IllegalArgumentException {
+    if (orientation == null) {
+      throw new IllegalArgumentException("Orientation can't be null");
+    }
+    if (orientation == Orientation.IDENTITY) {
+      return this;
+    }
+    if (this.width == 0 || this.height == 0) {
+      return create(orientation.getWidth(this.width, this.height),
+              orientation.getHeight(this.width, this.height), this.maxValue);
+    }
+    MappedImageModel result = create(orientation.getWidth(this.width, this.height),
+            orientation.getHeight(this.width, this.height), this.maxValue);
+    try {
+      // a square block of the result comes from one square block of this image, which only has
+      // to be turned the same way. Going by blocks instead of bands of whole rows means a
+      // transposed result doesn't read a column of every page of the mapping for each band.
+      for (int y = 0; y < result.height; y += BLOCK_SIZE) {
+        int h = Math.min(BLOCK_SIZE, result.height - y);
+        for (int x = 0; x < result.width; x += BLOCK_SIZE) {
+          int w = Math.min(BLOCK_SIZE, result.width - x);
+          int sourceX = Math.min(orientation.sourceColumn(y, x, this.width),
+                  orientation.sourceColumn(y + h - 1, x + w - 1, this.width));
+          int sourceY = Math.min(orientation.sourceRow(y, x, this.height),
+                  orientation.sourceRow(y + h - 1, x + w - 1, this.height));
+          int sourceWidth = orientation.isTransposed() ? h : w;
+          int sourceHeight = orientation.isTransposed() ? w : h;
+          result.writeRegion(x, y, w, h, orientation.apply(this.readRegion(sourceX, sourceY,
+                  sourceWidth, sourceHeight), sourceWidth, sourceHeight));
+        }
+      }
+    } catch (RuntimeException e) {
+      result.closeQuietly();
+      throw e;
+    }
+    return result;
+  }
+
+  @Override
+  public int getWidth() {
+    return this.width;
+  }
+
+  @Override
+  public int getHeight() {
+    return this.height;
+  }
+
+  @Override
+  public int getMaxValue() {
+    return this.maxValue;
+  }
+
+  @Override
+  public void getRow(int row, int[] rgb) throws IllegalArgumentException {
+    if (row < 0 || row >= this.height || rgb == null || rgb.length < this.width) {
+      throw new IllegalArgumentException("Row is outside the image or the array is too small");
+    }
+    this.read(row, 0, this.width, rgb, 0);
+  }
+
+  @Override
+  public StringBuilder toStringBuilder() {
+    StringBuilder stringBufferToReturn = new StringBuilder();
+    stringBufferToReturn.append(this.width).append(" ").append(this.height).append("\n");
+    stringBufferToReturn.append(this.maxValue).append("\n");
+    int[] row = new int[this.width];
+    for (int i = 0; i < this.height; i++) {
+      this.getRow(i, row);
+      for (int rgb : row) {
+        stringBufferToReturn.append(PackedImageModel.red(rgb)).append("\n");
+        stringBufferToReturn.append(PackedImageModel.green(rgb)).append("\n");
+        stringBufferToReturn.append(PackedImageModel.blue(rgb)).append("\n");
+      }
+    }
+    return stringBufferToReturn;
+  }
+
+  @Override
+  public Map<Integer, Integer> returnColorFrequencies(String type) {
+    return this.colorFrequencies().toMap(type);
+  }
+
+  @Override
+  public ColorFrequencies colorFrequencies() {
+    ColorFrequencies known = this.frequencies;
+    if (known == null) {
+      known = ColorFrequencies.of(this);
+      this.frequencies = known;
+    }
+    return known;
+  }
+
+  /**
+   * Unmaps the file and closes it, and deletes it if it is a temporary file. This waits for
+   * reads that have already started, and the image can't be read afterwards. Closing an image
+   * twice does nothing.
+   *
+   * @throws IOException if the file can't be closed or deleted
+   */
+  @Override
+  public void close() throws IOException {
+    this.lock.writeLock().lock();
+    try {
+      if (this.closed) {
+        return;
+      }
+      this.closed = true;
+      for (int i = 0; i < this.chunks.length; i++) {
+        unmap(this.chunks[i]);
+        this.chunks[i] = null;
+      }
+      this.channel.close();
+      if (this.temporary != null) {
+        Files.deleteIfExists(this.temporary);
+      }
+    } finally {
+      this.lock.writeLock().unlock();
+    }
+  }
+
+  // Makes a new image of the given size a band of rows at a time. The result is closed again if
+  // making it fails, so its temporary file doesn't stay around.
+  private MappedImageModel derive(int newWidth, int newHeight, BandMaker maker) {
+    MappedImageModel result = create(newWidth, newHeight, this.maxValue);
+    int bandRows = Math.max(1, BAND_PIXELS / Math.max(1, newWidth));
+    try {
+      for (int first = 0; first < newHeight; first += bandRows) {
+        int rows = Math.min(bandRows, newHeight - first);
+        result.writeRows(first, rows, maker.make(first, rows));
+      }
+    } catch (RuntimeException e) {
+      result.closeQuietly();
+      throw e;
+    }
+    return result;
+  }
+
+  // Closes this image after something went wrong, when its own errors don't matter.
+  private void closeQuietly() {
+    try {
+      this.close();
+    } catch (IOException e) {
+      // the file is deleted when the program ends anyway
+    }
+  }
+
+  // Reads a rectangle of the image into a new packed raster.
+  private int[] readRegion(int x, int y, int w, int h) {
+    int[] region = new int[w * h];
+    for (int i = 0; i < h; i++) {
+      this.read(y + i, x, w, region, i * w);
+    }
+    return region;
+  }
+
+  // Reads count pixels of a row, starting at column from, into an array.
+  private void read(int row, int from, int count, int[] rgb, int offset) {
+    byte[] bytes = new byte[count * 3];
+    this.lock.readLock().lock();
+    try {
+      if (this.closed) {
+        throw new IllegalStateException("Image has been closed");
+      }
+      MappedByteBuffer chunk = this.chunks[row / this.rowsPerChunk];
+      // absolute gets don't move the position, so threads can read the same buffer together
+      chunk.get(((row % this.rowsPerChunk) * this.width + from) * 3, bytes);
+    } finally {
+      this.lock.readLock().unlock();
+    }
+    for (int j = 0; j < count; j++) {
+      int r = bytes[j * 3] & 0xFF;
+      int g = bytes[j * 3 + 1] & 0xFF;
+      int b = bytes[j * 3 + 2] & 0xFF;
+      if (this.temporary == null
+              && (r > this.maxValue || g > this.maxValue || b > this.maxValue)) {
+        throw new IllegalArgumentException("Invalid PPM file: value above the max value");
+      }
+      rgb[offset + j] = PackedImageModel.pack(r, g, b);
+    }
+  }
+
+  // Writes whole rows of packed pixels into a temporary raster.
+  private void writeRows(int first, int rows, int[] pixels) {
+    this.writeRegion(0, first, this.width, rows, pixels);
+  }
+
+  // Writes a rectangle of packed pixels into a temporary raster.
+  private void writeRegion(int x, int y, int w, int h, int[] pixels) {
+    byte[] bytes = new byte[w * 3];
+    this.lock.readLock().lock();
+    try {
+      if (this.closed) {
+        throw new IllegalStateException("Image has been closed");
+      }
+      for (int i = 0; i < h; i++) {
+        int start = i * w;
+        for (int j = 0; j < w; j++) {
+          int rgb = pixels[start + j];
+          bytes[j * 3] = (byte) (rgb >> 16);
+          bytes[j * 3 + 1] = (byte) (rgb >> 8);
+          bytes[j * 3 + 2] = (byte) rgb;
+        }
+        int row = y + i;
+        this.chunks[row / this.rowsPerChunk].put(((row % this.rowsPerChunk) * this.width + x) * 3,
+                bytes);
+      }
+    } finally {
+      this.lock.readLock().unlock();
+    }
+  }
+
+  // Unmaps a buffer right away. Java has no public way to do that, so this uses the cleaner of
+  // the buffer through sun.misc.Unsafe when it is there, and otherwise leaves the buffer for the
+  // garbage collector, which unmaps it once nothing uses it anymore.
+  private static void unmap(MappedByteBuffer buffer) {
+    try {
+      Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+      Field field = unsafeClass.getDeclaredField("theUnsafe");
+      field.setAccessible(true);
+      Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+      invokeCleaner.invoke(field.get(null), buffer);
+    } catch (ReflectiveOperationException | RuntimeException e) {
+      // the garbage collector unmaps it instead
+    }
+  }
+
+  /**
+   * Gives the rows of an image that is copied into a mapped image, from the top.
+   */
+  private interface RowSource {
+    void readRow(int row, int[] pixels) throws IOException;
+  }
+
+  /**
+   * Makes a band of rows of a new image.
+   */
+  private interface BandMaker {
+    int[] make(int first, int rows);
+  }
+}
@@ -0,0 +1,258 @@
+package model;
+
+/**
+ * Represents the eight ways an image can be flipped and turned by quarter turns without changing
+ * any pixel: the two flips, the three rotations, the two transposes (flips over a diagonal) and
+ * leaving it as it is. Doing one of these after another always gives another one of them, so any
+ * chain of flips and rotations is stored as just one orientation (see {@link #then}).
+ *
+ * <p>Every orientation is kept as three flags. The pixel at row r and column c of the result is
+ * read from row r and column c of the source, with row and column swapped first if the
+ * orientation is transposed, and then with the rows and/or the columns of the source counted
+ * from the other end.
+ */
+public enum Orientation {
+  IDENTITY(false, false, false),
+  FLIP_HORIZONTAL(false, true, false),
+  FLIP_VERTICAL(false, false, true),
+  ROTATE_180(false, true, true),
+  TRANSPOSE(true, false, false),
+  ROTATE_90(true, false, true),
+  ROTATE_270(true, true, false),
+  TRANSVERSE(true, true, true);
+
+  // Pixels per side of the square tiles a transposed raster is copied in. Two 64x64 int tiles
+  // are 32KB, so the tile being read and the tile being written both stay in the cache.
+  private static final int TILE = 64;
+
+  private final boolean transposed;
+  private final boolean reverseColumns;
+  private final boolean reverseRows;
+
+  Orientation(boolean transposed, boolean reverseColumns, boolean reverseRows) {
+    this.transposed = transposed;
+    this.reverseColumns = reverseColumns;
+    this.reverseRows = reverseRows;
+  }
+
+  /**
+   * Gets the orientation that turns an image clockwise by the given angle.
+   *
+   * @param degrees the angle, which must be a multiple of 90 (it can be negative to turn the
+   *                image counterclockwise)
+   * @return the rotation
+   * @throws IllegalArgumentException if the angle isn't a multiple of 90
+   */
+  public static Orientation rotation(int degrees) throws IllegalArgumentException {
+    if (degrees % 90 != 0) {
+      throw new IllegalArgumentException("Images can only be rotated by multiples of 90 degrees");
+    }
+    switch (Math.floorMod(degrees, 360)) {
+      case 90:
+        return ROTATE_90;
+      case 180:
+        return ROTATE_180;
+      case 270:
+        return ROTATE_270;
+      default:
+        return IDENTITY;
+    }
+  }
+
+  /**
+   * Checks if this orientation swaps the rows and the columns, which makes the width of the
+   * result the height of the source.
+   *
+   * @return true for the quarter turns and the transposes
+   */
+  public boolean isTransposed() {
+    return this.transposed;
+  }
+
+  /**
+   * Gets the width of an image after this orientation is applied to it.
+   *
+   * @param width  the width of the source
+   * @param height the height of the source
+   * @return the width of the result
+   */
+  public int getWidth(int width, int height) {
+    return this.transposed ? height : width;
+  }
+
+  /**
+   * Gets the height of an image after this orientation is applied to it.
+   *
+   * @param width  the width of the source
+   * @param height the height of the source
+   * @return the height of the result
+   */
+  public int getHeight(int width, int height) {
+    return this.transposed ? width : height;
+  }
+
+  /**
+   * Composes this orientation with one that is applied after it.
+   *
+   * @param next the orientation that is applied to the result of this one
+   * @return the orientation that does both
+   * @throws IllegalArgumentException if the orientation is null
+   */
+  public Orientation then(Orientation next) throws IllegalArgumentException {
+    if (next == null) {
+      throw new IllegalArgumentException("Orientation can't be null");
+    }
+    if (!this.transposed) {
+      return of(next.transposed, this.reverseColumns ^ next.reverseColumns,
+              this.reverseRows ^ next.reverseRows);
+    }
+    // this orientation swaps rows and columns, so the flips of the next one end up on the other
+    // side of the source
+    return of(!next.transposed, this.reverseColumns ^ next.reverseRows,
+            this.reverseRows ^ next.reverseColumns);
+  }
+
+  /**
+   * Gets the orientation that undoes this one.
+   *
+   * @return the orientation that gives back the source when it is applied after this one
+   */
+  public Orientation inverse() {
+    // the two quarter turns undo each other, and every other orientation undoes itself
+    switch (this) {
+      case ROTATE_90:
+        return ROTATE_270;
+      case ROTATE_270:
+        return ROTATE_90;
+      default:
+        return this;
+    }
+  }
+
+  /**
+   * Gets where a pixel of the result is read from in the raster of the source.
+   *
+   * @param row    the row of the pixel in the result
+   * @param col    the column of the pixel in the result
+   * @param width  the width of the source
+   * @param height the height of the source
+   * @return the index of the pixel in the row-major raster of the source
+   */
+  public int sourceIndex(int row, int col, int width, int height) {
+    return this.sourceRow(row, col, height) * width + this.sourceColumn(row, col, width);
+  }
+
+  /**
+   * Gets which row of the source a pixel of the result is read from. Unlike
+   * {@link #sourceIndex(int, int, int, int)} this works for images with more than 2^31 pixels.
+   *
+   * @param row    the row of the pixel in the result
+   * @param col    the column of the pixel in the result
+   * @param height the height of the source
+   * @return the row of the source
+   */
+  public int sourceRow(int row, int col, int height) {
+    int sourceRow = this.transposed ? col : row;
+    return this.reverseRows ? height - 1 - sourceRow : sourceRow;
+  }
+
+  /**
+   * Gets which column of the source a pixel of the result is read from.
+   *
+   * @param row   the row of the pixel in the result
+   * @param col   the column of the pixel in the result
+   * @param width the width of the source
+   * @return the column of the source
+   */
+  public int sourceColumn(int row, int col, int width) {
+    int sourceCol = this.transposed ? row : col;
+    return this.reverseColumns ? width - 1 - sourceCol : sourceCol;
+  }
+
+  /**
+   * Copies one row of the result straight from the raster of the source, without working out
+   * the rest of the image.
+   *
+   * @param pixels the packed 0xRRGGBB values of the source in row-major order
+   * @param width  the width of the source
+   * @param height the height of the source
+   * @param row    the row of the result to copy
+   * @param rgb    the array to copy into, it must hold a whole row of the result
+   */
+  public void copyRow(int[] pixels, int width, int height, int row, int[] rgb) {
+    int length = this.getWidth(width, height);
+    int index = this.sourceIndex(row, 0, width, height);
+    int step = this.step(width);
+    if (step == 1) {
+      System.arraycopy(pixels, index, rgb, 0, length);
+      return;
+    }
+    for (int col = 0; col < length; col++, index += step) {
+      rgb[col] = pixels[index];
+    }
+  }
+
+  /**
+   * Makes the raster of the result. Orientations that keep rows as rows copy one row at a time.
+   * Transposed ones read the source down its columns, which would miss the cache on every
+   * pixel of a big image, so they copy square tiles instead, and both the tile being read and
+   * the one being written stay in the cache.
+   *
+   * @param pixels the packed 0xRRGGBB values of the source in row-major order
+   * @param width  the width of the source
+   * @param height the height of the source
+   * @return a new raster with this orientation applied
+   * @throws IllegalArgumentException if the raster doesn't match the dimensions
+   */
+  public int[] apply(int[] pixels, int width, int height) throws IllegalArgumentException {
+    if (width < 0 || height < 0 || pixels == null || pixels.length != width * height) {
+      throw new IllegalArgumentException("Raster doesn't match the image dimensions");
+    }
+    int resultWidth = this.getWidth(width, height);
+    int resultHeight = this.getHeight(width, height);
+    int[] result = new int[pixels.length];
+    if (!this.transposed) {
+      int[] row = new int[resultWidth];
+      for (int i = 0; i < resultHeight; i++) {
+        this.copyRow(pixels, width, height, i, row);
+        System.arraycopy(row, 0, result, i * resultWidth, resultWidth);
+      }
+      return result;
+    }
+    int step = this.step(width);
+    for (int rowStart = 0; rowStart < resultHeight; rowStart += TILE) {
+      int rowEnd = Math.min(rowStart + TILE, resultHeight);
+      for (int colStart = 0; colStart < resultWidth; colStart += TILE) {
+        int colEnd = Math.min(colStart + TILE, resultWidth);
+        for (int i = rowStart; i < rowEnd; i++) {
+          int index = this.sourceIndex(i, colStart, width, height);
+          int target = i * resultWidth;
+          for (int j = colStart; j < colEnd; j++, index += step) {
+            result[target + j] = pixels[index];
+          }
+        }
+      }
+    }
+    return result;
+  }
+
+  // Gets how far apart in the source two pixels next to each other in a row of the result are.
+  private int step(int width) {
+    if (this.transposed) {
+      return this.reverseRows ? -width : width;
+    }
+    return this.reverseColumns ? -1 : 1;
+  }
+
+  // Finds the orientation with the given flags.
+  private static Orientation of(boolean transposed, boolean reverseColumns,
+                                boolean reverseRows) {
+    for (Orientation orientation : values()) {
+      if (orientation.transposed == transposed && orientation.reverseColumns == reverseColumns
+              && orientation.reverseRows == reverseRows) {
+        return orientation;
+      }
+    }
+    throw new IllegalStateException("Every combination of flags is an orientation");
+  }
+}
@@ -0,0 +1,239 @@
+package model;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.Scanner;
+
+/**
+ * Image that is a flipped, rotated or transposed view of the raster of a
+ * {@link PackedImageModel}. Making one copies nothing, it only keeps the raster of the source and
+ * an {@link Orientation}, and flipping or rotating it again just changes the orientation. Rows of
+ * flipped images (and of upside down ones) are read straight from the source. The pixels are
+ * only copied into a new raster of their own when another operation needs the whole image laid
+ * out in order, or when rows of a transposed image are asked for, since reading those one at a
+ * time would go down the columns of the source. That copy is made once and kept. Flipping and
+ * turning don't change how many pixels have each color, so the histograms of the source are
+ * the histograms of the view, and they are passed on when they are already known.
+ */
+public class OrientedImageModel implements ImageModel {
+  private int[] pixels;
+  private int sourceWidth;
+  private int sourceHeight;
+  private int maxValue;
+  private Orientation orientation;
+  private PackedImageModel materialized;
+  private ColorFrequencies frequencies;
+
+  /**
+   * Constructor that makes a view of an image with an orientation applied.
+   *
+   * @param source      the image to look at
+   * @param orientation how the image is flipped and turned
+   * @throws IllegalArgumentException if the image or the orientation is null
+   */
+  public OrientedImageModel(PackedImageModel source, Orientation orientation)
+          throws IllegalArgumentException {
+    if (source == null || orientation == null) {
+      throw new IllegalArgumentException("Image and orientation can't be null");
+    }
+    this.setSource(source, orientation);
+  }
+
+  // Makes a view of a raster that won't be changed afterwards.
+  private OrientedImageModel(int[] pixels, int sourceWidth, int sourceHeight, int maxValue,
+                             Orientation orientation, ColorFrequencies frequencies) {
+    this.pixels = pixels;
+    this.sourceWidth = sourceWidth;
+    this.sourceHeight = sourceHeight;
+    this.maxValue = maxValue;
+    this.orientation = orientation;
+    this.frequencies = frequencies;
+  }
+
+  /**
+   * Gets how this view flips and turns its source.
+   *
+   * @return the orientation of the view
+   */
+  public synchronized Orientation getOrientation() {
+    return this.orientation;
+  }
+
+  /**
+   * Checks if the pixels of this view have been copied into a raster of their own yet.
+   *
+   * @return true if the view has been materialized
+   */
+  public synchronized boolean isMaterialized() {
+    return this.materialized != null;
+  }
+
+  @Override
+  public synchronized ArrayList<ArrayList<Pixel>> loadImage(Scanner sc)
+          throws IllegalArgumentException {
+    PackedImageModel image = new PackedImageModel(sc);
+    this.setSource(image, Orientation.IDENTITY);
+    this.materialized = image;
+    return image.getImage();
+  }
+
+  @Override
+  public ImageModel changeExposure(String enhanceType, int colorToAdjust)
+          throws IllegalArgumentException {
+    return this.materialize().changeExposure(enhanceType, colorToAdjust);
+  }
+
+  @Override
+  public ImageModel greyScale(String greyScaleType) {
+    return this.materialize().greyScale(greyScaleType);
+  }
+
+  @Override
+  public ImageModel filter(double[][] matrix) throws IllegalArgumentException {
+    return this.materialize().filter(matrix);
+  }
+
+  @Override
+  public ImageModel filter(double[][] matrix, BorderMode borderMode)
+          throws IllegalArgumentException {
+    return this.materialize().filter(matrix, borderMode);
+  }
+
+  @Override
+  public ImageModel colorTransformation(double[][] matrix) throws IllegalArgumentException {
+    return this.materialize().colorTransformation(matrix);
+  }
+
+  @Override
+  public ImageModel pointOperation(PointOperation operation) throws IllegalArgumentException {
+    return this.materialize().pointOperation(operation);
+  }
+
+  @Override
+  public synchronized ImageModel orient(Orientation next) throws IllegalArgumentException {
+    if (next == null) {
+      throw new IllegalArgumentException("Orientation can't be null");
+    }
+    // a view of a view is still a view of the same raster
+    Orientation composed = this.orientation.then(next);
+    if (composed == Orientation.IDENTITY) {
+      return new PackedImageModel(this.sourceWidth, this.sourceHeight, this.maxValue,
+              this.pixels, this.frequencies);
+    }
+    return new OrientedImageModel(this.pixels, this.sourceWidth, this.sourceHeight,
+            this.maxValue, composed, this.frequencies);
+  }
+
+  @Override
+  public ImageModel verticalFlip() {
+    return this.orient(Orientation.FLIP_VERTICAL);
+  }
+
+  @Override
+  public ImageModel horizontalFlip() {
+    return this.orient(Orientation.FLIP_HORIZONTAL);
+  }
+
+  @Override
+  public BufferedImage returnAsBufferedImage() {
+    return BufferedImageConverter.toBufferedImage(this);
+  }
+
+  @Override
+  public synchronized int getWidth() {
+    return this.orientation.getWidth(this.sourceWidth, this.sourceHeight);
+  }
+
+  @Override
+  public synchronized int getHeight() {
+    return this.orientation.getHeight(this.sourceWidth, this.sourceHeight);
+  }
+
+  @Override
+  public synchronized int getMaxValue() {
+    return this.maxValue;
+  }
+
+  @Override
+  public void getRow(int row, int[] rgb) throws IllegalArgumentException {
+    int[] source;
+    int width;
+    int height;
+    Orientation current;
+    synchronized (this) {
+      if (this.materialized != null || this.orientation.isTransposed()) {
+        this.materialize().getRow(row, rgb);
+        return;
+      }
+      source = this.pixels;
+      width = this.sourceWidth;
+      height = this.sourceHeight;
+      current = this.orientation;
+    }
+    if (row < 0 || row >= height || rgb == null || rgb.length < width) {
+      throw new IllegalArgumentException("Row is outside the image or the array is too small");
+    }
+    current.copyRow(source, width, height, row, rgb);
+  }
+
+  @Override
+  public StringBuilder toStringBuilder() {
+    return this.materialize().toStringBuilder();
+  }
+
+  @Override
+  public Map<Integer, Integer> returnColorFrequencies(String type) {
+    return this.colorFrequencies().toMap(type);
+  }
+
+  @Override
+  public synchronized ColorFrequencies colorFrequencies() {
+    if (this.frequencies == null) {
+      // counting doesn't care where the pixels are, so the source is counted as it is
+      this.frequencies = ColorFrequencies.of(this.pixels, this.sourceWidth, this.sourceHeight,
+              this.maxValue);
+    }
+    return this.frequencies;
+  }
+
+  /**
+   * Gets the histograms of this view if they are already known, without counting them.
+   *
+   * @return the histograms, or null if they haven't been counted yet
+   */
+  public synchronized ColorFrequencies getKnownColorFrequencies() {
+    return this.frequencies;
+  }
+
+  /**
+   * Copies the pixels of this view into a raster of their own, the first time it is needed.
+   *
+   * @return the image this view shows, laid out in order
+   */
+  synchronized PackedImageModel materialize() {
+    if (this.materialized == null) {
+      int[] result = this.orientation.apply(this.pixels, this.sourceWidth, this.sourceHeight);
+      this.materialized = new PackedImageModel(this.getWidth(), this.getHeight(), this.maxValue,
+              result, this.frequencies);
+    } else if (this.frequencies != null
+            && this.materialized.getKnownColorFrequencies() == null) {
+      // the histograms were counted after the copy was made, so they are passed on too
+      this.materialized = new PackedImageModel(this.getWidth(), this.getHeight(), this.maxValue,
+              this.materialized.raster(), this.frequencies);
+    }
+    return this.materialized;
+  }
+
+  // Points this view at the raster of an image. The raster is kept, not copied, which is safe
+  // since loading a packed image again gives it a new raster instead of changing the old one.
+  private void setSource(PackedImageModel source, Orientation orientation) {
+    this.pixels = source.raster();
+    this.sourceWidth = source.getWidth();
+    this.sourceHeight = source.getHeight();
+    this.maxValue = source.getMaxValue();
+    this.orientation = orientation;
+    this.materialized = null;
+    this.frequencies = source.getKnownColorFrequencies();
+  }
+}
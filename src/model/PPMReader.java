@@ -0,0 +1,330 @@
+package model;
+
+import java.io.Closeable;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads ppm files straight into a {@link PackedImageModel}. The file is read in big blocks of
+ * bytes and parsed by hand, so no lines, strings or scanners are made along the way. Both the
+ * plain (P3) and the raw (P6) formats are supported, and comments (a '#' until the end of the
+ * line) can show up anywhere between the tokens of the header and, for P3 files, the body.
+ * Images with a max value above 255 are scaled down to 8 bits per channel. Images that are too
+ * big for memory can be read one row at a time with a {@link RowReader}.
+ */
+public final class PPMReader {
+  private static final int BUFFER_SIZE = 1 << 16;
+
+  private final InputStream in;
+  private final byte[] buffer = new byte[BUFFER_SIZE];
+  private int position = 0;
+  private int limit = 0;
+  // How many bytes of the stream came before the first byte in the buffer
+  private long skipped = 0;
+
+  // Makes a reader over the given stream, the stream is not closed by the reader.
+  private PPMReader(InputStream in) {
+    this.in = in;
+  }
+
+  /**
+   * Reads the ppm file with the given name.
+   *
+   * @param fileName the path of the file
+   * @return the image in the file
+   * @throws IOException              if the file can't be read
+   * @throws IllegalArgumentException if the file isn't a valid ppm
+   */
+  public static PackedImageModel read(String fileName)
+          throws IOException, IllegalArgumentException {
+    try (InputStream in = new FileInputStream(fileName)) {
+      return read(in);
+    }
+  }
+
+  /**
+   * Reads a ppm image from the given stream. The stream is read up to the end of the image and
+   * is not closed.
+   *
+   * @param in the stream to read from
+   * @return the image in the stream
+   * @throws IOException              if the stream can't be read
+   * @throws IllegalArgumentException if the stream doesn't hold a valid ppm
+   */
+  public static PackedImageModel read(InputStream in)
+          throws IOException, IllegalArgumentException {
+    if (in == null) {
+      throw new IllegalArgumentException("Input stream can't be null");
+    }
+    return new PPMReader(in).readImage();
+  }
+
+  /**
+   * Reads only the header of a ppm file, so the pixels of a raw file can be read straight from
+   * the file later without loading the whole image.
+   *
+   * @param fileName the path of the file
+   * @return the header, and where the pixel data starts if the file is raw
+   * @throws IOException              if the file can't be read
+   * @throws IllegalArgumentException if the header isn't valid
+   */
+  static Header readHeader(String fileName) throws IOException, IllegalArgumentException {
+    try (InputStream in = new FileInputStream(fileName)) {
+      return new PPMReader(in).readHeaderFields();
+    }
+  }
+
+  // Reads the magic number, the size and the max value, and for a raw file the one whitespace
+  // byte after them, so the next byte is the first byte of the pixel data.
+  private Header readHeaderFields() throws IOException {
+    if (this.next() != 'P') {
+      throw new IllegalArgumentException("Invalid PPM file: it should begin with P3 or P6");
+    }
+    int format = this.next();
+    if (format != '3' && format != '6') {
+      throw new IllegalArgumentException("Invalid PPM file: it should begin with P3 or P6");
+    }
+    int width = this.readInt();
+    int height = this.readInt();
+    int maxValue = this.readInt();
+    if (maxValue < 1 || maxValue > 65535) {
+      throw new IllegalArgumentException("Invalid PPM file: max value must be from 1 to 65535");
+    }
+    long dataOffset = -1;
+    if (format == '6') {
+      // exactly one whitespace byte separates the max value from the raw data
+      if (!isWhitespace(this.next())) {
+        throw new IllegalArgumentException("Invalid PPM file: missing whitespace after header");
+      }
+      dataOffset = this.skipped + this.position;
+    }
+    return new Header(width, height, maxValue, dataOffset);
+  }
+
+  // Reads the header and then the body in the format the magic number asks for.
+  private PackedImageModel readImage() throws IOException {
+    Header header = this.readHeaderFields();
+    if ((long) header.width * header.height > Integer.MAX_VALUE - 8) {
+      throw new IllegalArgumentException("Image is too big to be loaded in memory");
+    }
+    int[] pixels = new int[header.width * header.height];
+    this.readBody(header, pixels, 0, pixels.length);
+    return new PackedImageModel(header.width, header.height, Math.min(header.maxValue, 255),
+            pixels);
+  }
+
+  // Reads the next count pixels of the body into the array starting at offset, in the format
+  // the header says.
+  private void readBody(Header header, int[] pixels, int offset, int count) throws IOException {
+    if (header.dataOffset < 0) {
+      this.readPlainBody(pixels, offset, count, header.maxValue);
+    } else if (header.maxValue < 256) {
+      this.readRawBody(pixels, offset, count, header.maxValue);
+    } else {
+      this.readWideRawBody(pixels, offset, count, header.maxValue);
+    }
+  }
+
+  // Reads the ascii channel values of a P3 file.
+  private void readPlainBody(int[] pixels, int offset, int count, int maxValue)
+          throws IOException {
+    for (int i = offset; i < offset + count; i++) {
+      int r = this.scale(this.readInt(), maxValue);
+      int g = this.scale(this.readInt(), maxValue);
+      int b = this.scale(this.readInt(), maxValue);
+      pixels[i] = PackedImageModel.pack(r, g, b);
+    }
+  }
+
+  // Reads the one byte per channel data of a P6 file straight out of the buffer.
+  private void readRawBody(int[] pixels, int offset, int count, int maxValue)
+          throws IOException {
+    int i = offset;
+    int last = offset + count;
+    while (i < last) {
+      if (this.limit - this.position < 3) {
+        this.compact();
+        if (this.limit - this.position < 3) {
+          throw new IllegalArgumentException("Invalid PPM file: not enough pixel data");
+        }
+      }
+      byte[] buf = this.buffer;
+      int pos = this.position;
+      int end = i + Math.min(last - i, (this.limit - pos) / 3);
+      for (; i < end; i++) {
+        int r = buf[pos] & 0xFF;
+        int g = buf[pos + 1] & 0xFF;
+        int b = buf[pos + 2] & 0xFF;
+        if (r > maxValue || g > maxValue || b > maxValue) {
+          throw new IllegalArgumentException("Invalid PPM file: value above the max value");
+        }
+        pixels[i] = (r << 16) | (g << 8) | b;
+        pos += 3;
+      }
+      this.position = pos;
+    }
+  }
+
+  // Reads the two bytes (big endian) per channel data of a 16 bit P6 file.
+  private void readWideRawBody(int[] pixels, int offset, int count, int maxValue)
+          throws IOException {
+    for (int i = offset; i < offset + count; i++) {
+      int r = this.scale((this.next() << 8) | this.next(), maxValue);
+      int g = this.scale((this.next() << 8) | this.next(), maxValue);
+      int b = this.scale((this.next() << 8) | this.next(), maxValue);
+      pixels[i] = PackedImageModel.pack(r, g, b);
+    }
+  }
+
+  // Checks a channel value against the max value and brings it down to 8 bits if needed.
+  private int scale(int value, int maxValue) {
+    if (value < 0 || value > maxValue) {
+      throw new IllegalArgumentException("Invalid PPM file: value above the max value");
+    }
+    if (maxValue < 256) {
+      return value;
+    }
+    return (value * 255 + maxValue / 2) / maxValue;
+  }
+
+  // Reads a non-negative decimal number, skipping any whitespace and comments in front of it.
+  private int readInt() throws IOException {
+    int c = this.next();
+    while (isWhitespace(c) || c == '#') {
+      if (c == '#') {
+        while (c != '\n' && c != '\r') {
+          c = this.next();
+        }
+      }
+      c = this.next();
+    }
+    if (c < '0' || c > '9') {
+      throw new IllegalArgumentException("Invalid PPM file: expected a number");
+    }
+    long value = 0;
+    while (c >= '0' && c <= '9') {
+      value = value * 10 + (c - '0');
+      if (value > Integer.MAX_VALUE) {
+        throw new IllegalArgumentException("Invalid PPM file: number is too big");
+      }
+      c = this.peek();
+      if (c >= '0' && c <= '9') {
+        this.position++;
+      }
+    }
+    return (int) value;
+  }
+
+  // Returns the next byte without consuming it, or -1 at the end of the stream.
+  private int peek() throws IOException {
+    if (this.position == this.limit && !this.fill()) {
+      return -1;
+    }
+    return this.buffer[this.position] & 0xFF;
+  }
+
+  // Consumes the next byte, failing if the stream has ended.
+  private int next() throws IOException {
+    if (this.position == this.limit && !this.fill()) {
+      throw new IllegalArgumentException("Invalid PPM file: file ended too early");
+    }
+    return this.buffer[this.position++] & 0xFF;
+  }
+
+  // Refills the empty buffer, returning false at the end of the stream.
+  private boolean fill() throws IOException {
+    this.skipped += this.limit;
+    this.position = 0;
+    this.limit = 0;
+    int read = this.in.read(this.buffer, 0, this.buffer.length);
+    if (read <= 0) {
+      return false;
+    }
+    this.limit = read;
+    return true;
+  }
+
+  // Moves the unread bytes to the front of the buffer and fills the rest of it.
+  private void compact() throws IOException {
+    int remaining = this.limit - this.position;
+    this.skipped += this.position;
+    System.arraycopy(this.buffer, this.position, this.buffer, 0, remaining);
+    this.position = 0;
+    this.limit = remaining;
+    while (this.limit < this.buffer.length) {
+      int read = this.in.read(this.buffer, this.limit, this.buffer.length - this.limit);
+      if (read <= 0) {
+        return;
+      }
+      this.limit += read;
+    }
+  }
+
+  // Whitespace as defined by the ppm format.
+  private static boolean isWhitespace(int c) {
+    return c == ' ' || c == '\n' || c == '\r' || c == '\t' || c == 0x0B || c == '\f';
+  }
+
+  /**
+   * Reads the pixels of a ppm file one row at a time, from the top, so an image that doesn't fit
+   * in memory can be copied somewhere else without loading all of it. Every format the reader
+   * supports can be read this way, and channels above 8 bits are scaled down like they are when
+   * the whole file is read.
+   */
+  static final class RowReader implements Closeable {
+    private final InputStream in;
+    private final PPMReader reader;
+    private final Header header;
+    private int nextRow;
+
+    // Opens the file and reads its header.
+    RowReader(String fileName) throws IOException, IllegalArgumentException {
+      this.in = new FileInputStream(fileName);
+      try {
+        this.reader = new PPMReader(this.in);
+        this.header = this.reader.readHeaderFields();
+      } catch (IOException | RuntimeException e) {
+        this.in.close();
+        throw e;
+      }
+    }
+
+    // The header of the file, its max value is the one in the file and can be above 255.
+    Header getHeader() {
+      return this.header;
+    }
+
+    // Reads the next row into the array, which must be at least as long as the width.
+    void readRow(int[] row) throws IOException, IllegalArgumentException {
+      if (this.nextRow >= this.header.height) {
+        throw new IllegalStateException("Every row of the image has been read");
+      }
+      this.reader.readBody(this.header, row, 0, this.header.width);
+      this.nextRow++;
+    }
+
+    @Override
+    public void close() throws IOException {
+      this.in.close();
+    }
+  }
+
+  /**
+   * The header of a ppm file.
+   */
+  static final class Header {
+    final int width;
+    final int height;
+    final int maxValue;
+    // Where the pixel data of a raw file starts, or -1 for a plain file
+    final long dataOffset;
+
+    Header(int width, int height, int maxValue, long dataOffset) {
+      this.width = width;
+      this.height = height;
+      this.maxValue = maxValue;
+      this.dataOffset = dataOffset;
+    }
+  }
+}
@@ -0,0 +1,339 @@
+package model;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.Scanner;
+
+/**
+ * Class that represents an image using a single packed raster. Every pixel is stored as one int
+ * in row-major order, with the red value in bits 16-23, the green value in bits 8-15 and the blue
+ * value in bits 0-7 (the same layout as {@link BufferedImage#TYPE_INT_RGB}). Compared to
+ * {@link ImageModelImpl}, which keeps a {@link Pixel} object (and a {@link java.awt.Color}) for
+ * every pixel, this uses 4 bytes per pixel and creates no garbage per pixel, so big photos fit in
+ * the heap. Pixels are only created when someone asks for {@link #getImage()}.
+ *
+ * <p>The histograms of the image are kept once they are counted. Flips and point operations
+ * pass them on to the image they make (worked out from these ones, see
+ * {@link ColorFrequencies#after(PointOperation)}), so showing the histograms after those
+ * operations doesn't need another pass over the image.
+ */
+public class PackedImageModel implements ImageModel {
+  private int[] pixels = new int[0];
+  private int height = 0;
+  private int width = 0;
+  private int maxValue = 0;
+  // The histograms once they are known. Two threads may both count them, which is harmless
+  // since they get the same result.
+  private volatile ColorFrequencies frequencies;
+  // The smaller copies of this image, made the first time they are asked for
+  private ImagePyramid pyramid;
+
+  /**
+   * Constructor that takes in a scanner to initialize the image.
+   *
+   * @param scanner represents the scanner for the image
+   * @throws IllegalArgumentException if the scanner is null or the ppm is invalid
+   */
+  public PackedImageModel(Scanner scanner) throws IllegalArgumentException {
+    if (scanner == null) {
+      throw new IllegalArgumentException("Scanner can't be null");
+    }
+    this.readRaster(scanner);
+  }
+
+  /**
+   * Constructor that takes in an already packed raster. The array is used as is (it is not
+   * copied), so the caller must not change it afterwards.
+   *
+   * @param width    the width of the image
+   * @param height   the height of the image
+   * @param maxValue the max value of a color channel
+   * @param pixels   the packed 0xRRGGBB values of the image in row-major order
+   * @throws IllegalArgumentException if the raster doesn't match the dimensions
+   */
+  public PackedImageModel(int width, int height, int maxValue, int[] pixels)
+          throws IllegalArgumentException {
+    if (width < 0 || height < 0 || pixels == null || pixels.length != width * height) {
+      throw new IllegalArgumentException("Raster doesn't match the image dimensions");
+    }
+    this.width = width;
+    this.height = height;
+    this.maxValue = maxValue;
+    this.pixels = pixels;
+  }
+
+  // Makes an image from a packed raster whose histograms are already known (or null if they
+  // aren't).
+  PackedImageModel(int width, int height, int maxValue, int[] pixels,
+                   ColorFrequencies frequencies) {
+    this(width, height, maxValue, pixels);
+    this.frequencies = frequencies;
+  }
+
+  /**
+   * Loads the image so it can be modified. The raster is read straight from the scanner, the
+   * returned list is only a compatibility view of it.
+   *
+   * @param sc represents the scanner for the image
+   * @return an array list of an array list of pixels
+   * @throws IllegalArgumentException if the ppm is invalid
+   */
+  @Override
+  public ArrayList<ArrayList<Pixel>> loadImage(Scanner sc) throws IllegalArgumentException {
+    this.readRaster(sc);
+    return this.getImage();
+  }
+
+  // Reads a P3 image from the scanner into the packed raster.
+  private void readRaster(Scanner sc) throws IllegalArgumentException {
+    String token = sc.next();
+    if (!token.equals("P3")) {
+      throw new IllegalArgumentException("Invalid PPM file: plain RAW file should begin with P3");
+    }
+    this.width = sc.nextInt();
+    this.height = sc.nextInt();
+    this.maxValue = sc.nextInt();
+    this.frequencies = null;
+    synchronized (this) {
+      // the levels of the old image don't belong to the new one
+      this.pyramid = null;
+    }
+    this.pixels = new int[this.width * this.height];
+    for (int i = 0; i < this.pixels.length; i++) {
+      int r = sc.nextInt();
+      int g = sc.nextInt();
+      int b = sc.nextInt();
+      if (r < 0 || g < 0 || b < 0 || r > 255 || g > 255 || b > 255) {
+        throw new IllegalArgumentException("Color values must be between 0 and 255");
+      }
+      this.pixels[i] = pack(r, g, b);
+    }
+  }
+
+  @Override
+  public ImageModel changeExposure(String enhanceType, int colorToAdjust)
+          throws IllegalArgumentException {
+    if (enhanceType == null) {
+      throw new IllegalArgumentException("Please specify if you want to brighten or "
+              + "darken the image by entering 'brighten' or 'darken'");
+    }
+    if (colorToAdjust < 0) {
+      throw new IllegalArgumentException("You must input a positive integer");
+    }
+    String stringToCompare = enhanceType.toLowerCase();
+    if (stringToCompare.equals("brighten")) {
+      return this.enhanceImage(colorToAdjust);
+    }
+    if (stringToCompare.equals("darken")) {
+      return this.enhanceImage(colorToAdjust * -1);
+    } else {
+      throw new IllegalArgumentException("Please specify if you want to brighten or "
+              + "darken the image by entering 'brighten' or 'darken'");
+    }
+  }
+
+  // Adds the adjustment to every channel and clamps the result between 0 and 255.
+  private ImageModel enhanceImage(int colorAdjust) {
+    return this.pointOperation(PointOperation.exposure(colorAdjust));
+  }
+
+  @Override
+  public ImageModel greyScale(String greyScaleType) {
+    return this.pointOperation(PointOperation.greyScale(greyScaleType));
+  }
+
+  @Override
+  public ImageModel pointOperation(PointOperation operation) throws IllegalArgumentException {
+    if (operation == null) {
+      throw new IllegalArgumentException("Operation can't be null");
+    }
+    ColorFrequencies known = this.frequencies;
+    return new PackedImageModel(this.width, this.height, this.maxValue,
+            operation.apply(this.pixels), known == null ? null : known.after(operation));
+  }
+
+  @Override
+  public ImageModel filter(double[][] matrix) throws IllegalArgumentException {
+    return this.filter(matrix, BorderMode.ZERO);
+  }
+
+  @Override
+  public ImageModel filter(double[][] matrix, BorderMode borderMode)
+          throws IllegalArgumentException {
+    int[] result = FilterEngine.getShared().filter(this.pixels, this.width, this.height, matrix,
+            borderMode);
+    return new PackedImageModel(this.width, this.height, this.maxValue, result);
+  }
+
+  @Override
+  public ImageModel colorTransformation(double[][] matrix) throws IllegalArgumentException {
+    if (matrix.length != 3 || matrix[0].length != 3) {
+      throw new IllegalArgumentException("Color transformation matrix must have 3x3 dimensions");
+    }
+    int[] result = ColorTransformer.getShared().transform(this.pixels, matrix);
+    return new PackedImageModel(this.width, this.height, this.maxValue, result);
+  }
+
+  @Override
+  public BufferedImage returnAsBufferedImage() {
+    return BufferedImageConverter.toBufferedImage(this.width, this.height, this.pixels);
+  }
+
+  @Override
+  public ImageModel verticalFlip() {
+    return this.orient(Orientation.FLIP_VERTICAL);
+  }
+
+  @Override
+  public ImageModel horizontalFlip() {
+    return this.orient(Orientation.FLIP_HORIZONTAL);
+  }
+
+  /**
+   * Flips and/or turns this image. Nothing is copied, the result is an
+   * {@link OrientedImageModel} that reads the pixels of this image where they are.
+   *
+   * @param orientation how to flip and turn the image
+   * @return a view of this image with the orientation applied
+   * @throws IllegalArgumentException if the orientation is null
+   */
+  @Override
+  public ImageModel orient(Orientation orientation) throws IllegalArgumentException {
+    if (orientation == null) {
+      throw new IllegalArgumentException("Orientation can't be null");
+    }
+    if (orientation == Orientation.IDENTITY) {
+      return this;
+    }
+    // the view takes the histograms of this image too, if they are known
+    return new OrientedImageModel(this, orientation);
+  }
+
+  @Override
+  public int getWidth() {
+    return this.width;
+  }
+
+  @Override
+  public int getHeight() {
+    return this.height;
+  }
+
+  @Override
+  public int getMaxValue() {
+    return this.maxValue;
+  }
+
+  @Override
+  public void getRow(int row, int[] rgb) throws IllegalArgumentException {
+    if (row < 0 || row >= this.height || rgb == null || rgb.length < this.width) {
+      throw new IllegalArgumentException("Row is outside the image or the array is too small");
+    }
+    System.arraycopy(this.pixels, row * this.width, rgb, 0, this.width);
+  }
+
+  // Gets the raster itself, not a copy, for the views in this package that read it.
+  int[] raster() {
+    return this.pixels;
+  }
+
+  /**
+   * Builds the image as a 2d list of pixels. This is only a compatibility view for code that
+   * still works with pixels, a new list is made every time this is called and changing it does
+   * not change this image.
+   *
+   * @return the image as a 2d array list of pixels
+   */
+  public ArrayList<ArrayList<Pixel>> getImage() {
+    ArrayList<ArrayList<Pixel>> imageList = new ArrayList<>();
+    for (int i = 0; i < this.height; i++) {
+      ArrayList<Pixel> pixelArrayList = new ArrayList<>();
+      for (int j = 0; j < this.width; j++) {
+        int rgb = this.pixels[i * this.width + j];
+        pixelArrayList.add(new Pixel(i, j, red(rgb), green(rgb), blue(rgb)));
+      }
+      imageList.add(pixelArrayList);
+    }
+    return imageList;
+  }
+
+  @Override
+  public StringBuilder toStringBuilder() {
+    StringBuilder stringBufferToReturn = new StringBuilder();
+    stringBufferToReturn.append(this.width).append(" ").append(this.height).append("\n");
+    stringBufferToReturn.append(this.maxValue).append("\n");
+    for (int rgb : this.pixels) {
+      stringBufferToReturn.append(red(rgb)).append("\n");
+      stringBufferToReturn.append(green(rgb)).append("\n");
+      stringBufferToReturn.append(blue(rgb)).append("\n");
+    }
+    return stringBufferToReturn;
+  }
+
+  @Override
+  public Map<Integer, Integer> returnColorFrequencies(String type) {
+    return this.colorFrequencies().toMap(type);
+  }
+
+  @Override
+  public ColorFrequencies colorFrequencies() {
+    ColorFrequencies known = this.frequencies;
+    if (known == null) {
+      known = ColorFrequencies.of(this.pixels, this.width, this.height, this.maxValue);
+      this.frequencies = known;
+    }
+    return known;
+  }
+
+  /**
+   * Gets the histograms of this image if they are already known, without counting them.
+   *
+   * @return the histograms, or null if they haven't been counted or worked out yet
+   */
+  public ColorFrequencies getKnownColorFrequencies() {
+    return this.frequencies;
+  }
+
+  /**
+   * Gets the smaller copies of this image at every half size. The same pyramid is given back
+   * every time, so each level is only made once, until a new image is loaded into this one with
+   * {@link #loadImage(Scanner)}.
+   *
+   * @return the pyramid of this image
+   */
+  public synchronized ImagePyramid pyramid() {
+    if (this.pyramid == null) {
+      this.pyramid = new ImagePyramid(this);
+    }
+    return this.pyramid;
+  }
+
+  // Packs the three channels into one int.
+  static int pack(int red, int green, int blue) {
+    return (red << 16) | (green << 8) | blue;
+  }
+
+  // Gets the red channel of a packed pixel.
+  static int red(int rgb) {
+    return (rgb >> 16) & 0xFF;
+  }
+
+  // Gets the green channel of a packed pixel.
+  static int green(int rgb) {
+    return (rgb >> 8) & 0xFF;
+  }
+
+  // Gets the blue channel of a packed pixel.
+  static int blue(int rgb) {
+    return rgb & 0xFF;
+  }
+
+  // Clamps a channel value between 0 and 255.
+  static int clamp(int value) {
+    if (value > 255) {
+      return 255;
+    }
+    return Math.max(value, 0);
+  }
+}
@@ -0,0 +1,440 @@
+package model;
+
+import java.util.Arrays;
+
+/**
+ * Represents an operation that changes every pixel on its own, without looking at its
+ * neighbours (brighten, darken, every kind of greyscale, or a curve/levels adjustment). It is
+ * kept as lookup tables with 256 entries, one for each channel, so applying it is just reading
+ * three tables per pixel, and nothing is clamped or rounded per pixel. Greyscale operations
+ * first reduce the pixel to one value (like its luma) and then look that value up in all three
+ * tables. Two point operations in a row can usually be composed into one, so a whole chain of
+ * them takes a single pass over the image.
+ */
+public final class PointOperation {
+
+  /**
+   * The ways a pixel can be reduced to one value before the tables are used.
+   */
+  public enum Reducer {
+    /**
+     * The pixel isn't reduced, every channel is looked up in its own table.
+     */
+    NONE,
+    /**
+     * The red value of the pixel.
+     */
+    RED,
+    /**
+     * The green value of the pixel.
+     */
+    GREEN,
+    /**
+     * The blue value of the pixel.
+     */
+    BLUE,
+    /**
+     * The biggest of the three values of the pixel.
+     */
+    VALUE,
+    /**
+     * The average of the three values of the pixel, rounded down.
+     */
+    INTENSITY,
+    /**
+     * 0.2126 red + 0.7152 green + 0.0722 blue, with every term rounded on its own the way our
+     * luma greyscale always did it.
+     */
+    LUMA
+  }
+
+  // The rounded luma terms of every channel value
+  private static final int[] LUMA_RED = new int[256];
+  private static final int[] LUMA_GREEN = new int[256];
+  private static final int[] LUMA_BLUE = new int[256];
+
+  static {
+    for (int i = 0; i < 256; i++) {
+      LUMA_RED[i] = (int) Math.round(i * 0.2126);
+      LUMA_GREEN[i] = (int) Math.round(0.7152 * i);
+      LUMA_BLUE[i] = (int) Math.round(0.0722 * i);
+    }
+  }
+
+  private final Reducer reducer;
+  private final int[] redTable;
+  private final int[] greenTable;
+  private final int[] blueTable;
+  // The tables with the values already moved to where they go in a packed pixel
+  private final int[] packedRed;
+  private final int[] packedGreen;
+  private final int[] packedBlue;
+
+  // Makes an operation from tables that are already checked and won't be changed.
+  private PointOperation(Reducer reducer, int[] redTable, int[] greenTable, int[] blueTable) {
+    this.reducer = reducer;
+    this.redTable = redTable;
+    this.greenTable = greenTable;
+    this.blueTable = blueTable;
+    this.packedRed = new int[256];
+    this.packedGreen = new int[256];
+    this.packedBlue = new int[256];
+    for (int i = 0; i < 256; i++) {
+      this.packedRed[i] = redTable[i] << 16;
+      this.packedGreen[i] = greenTable[i] << 8;
+      this.packedBlue[i] = blueTable[i];
+    }
+  }
+
+  /**
+   * Makes an operation that leaves every pixel as it is.
+   *
+   * @return the identity operation
+   */
+  public static PointOperation identity() {
+    int[] table = new int[256];
+    for (int i = 0; i < 256; i++) {
+      table[i] = i;
+    }
+    return new PointOperation(Reducer.NONE, table, table, table);
+  }
+
+  /**
+   * Makes an operation that adds the same amount to every channel and clamps the result between
+   * 0 and 255, like brighten (a positive amount) and darken (a negative amount).
+   *
+   * @param adjustment the amount to add
+   * @return the exposure operation
+   */
+  public static PointOperation exposure(int adjustment) {
+    int[] table = new int[256];
+    for (int i = 0; i < 256; i++) {
+      table[i] = PackedImageModel.clamp(i + adjustment);
+    }
+    return new PointOperation(Reducer.NONE, table, table, table);
+  }
+
+  /**
+   * Makes an operation that turns the image into a greyscale image.
+   *
+   * @param greyScaleType the type of greyscale (red, green, blue, value, intensity or luma)
+   * @return the greyscale operation
+   * @throws IllegalArgumentException if the type is null or not one we support
+   */
+  public static PointOperation greyScale(String greyScaleType) throws IllegalArgumentException {
+    if (greyScaleType == null) {
+      throw new IllegalArgumentException("Please specify the type of greyscale");
+    }
+    Reducer reducer;
+    switch (greyScaleType) {
+      case "red":
+        reducer = Reducer.RED;
+        break;
+      case "green":
+        reducer = Reducer.GREEN;
+        break;
+      case "blue":
+        reducer = Reducer.BLUE;
+        break;
+      case "value":
+        reducer = Reducer.VALUE;
+        break;
+      case "intensity":
+        reducer = Reducer.INTENSITY;
+        break;
+      case "luma":
+        reducer = Reducer.LUMA;
+        break;
+      default:
+        throw new IllegalArgumentException("We can't support that type of greyscale");
+    }
+    int[] table = identity().redTable;
+    return new PointOperation(reducer, table, table, table);
+  }
+
+  /**
+   * Makes an operation from a table for every channel, which can be any curve or levels
+   * adjustment. Entry i of a table is what a channel value of i becomes.
+   *
+   * @param redTable   the table for the red channel
+   * @param greenTable the table for the green channel
+   * @param blueTable  the table for the blue channel
+   * @return the operation
+   * @throws IllegalArgumentException if a table doesn't have 256 entries between 0 and 255
+   */
+  public static PointOperation of(int[] redTable, int[] greenTable, int[] blueTable)
+          throws IllegalArgumentException {
+    return of(Reducer.NONE, redTable, greenTable, blueTable);
+  }
+
+  /**
+   * Makes an operation that reduces every pixel to one value and then looks it up in a table
+   * for every channel.
+   *
+   * @param reducer    how the pixel is reduced to one value
+   * @param redTable   the table for the red channel
+   * @param greenTable the table for the green channel
+   * @param blueTable  the table for the blue channel
+   * @return the operation
+   * @throws IllegalArgumentException if the reducer is null or a table doesn't have 256 entries
+   *                                  between 0 and 255
+   */
+  public static PointOperation of(Reducer reducer, int[] redTable, int[] greenTable,
+                                  int[] blueTable) throws IllegalArgumentException {
+    if (reducer == null) {
+      throw new IllegalArgumentException("Reducer can't be null");
+    }
+    return new PointOperation(reducer, checkTable(redTable), checkTable(greenTable),
+            checkTable(blueTable));
+  }
+
+  // Copies a table, making sure it has 256 entries between 0 and 255.
+  private static int[] checkTable(int[] table) throws IllegalArgumentException {
+    if (table == null || table.length != 256) {
+      throw new IllegalArgumentException("A lookup table must have 256 entries");
+    }
+    for (int value : table) {
+      if (value < 0 || value > 255) {
+        throw new IllegalArgumentException("Color values must be between 0 and 255");
+      }
+    }
+    return table.clone();
+  }
+
+  /**
+   * Gets how this operation reduces a pixel before using the tables.
+   *
+   * @return the reducer
+   */
+  public Reducer getReducer() {
+    return this.reducer;
+  }
+
+  /**
+   * Gets what a value becomes in one channel.
+   *
+   * @param channel 0 for red, 1 for green and 2 for blue
+   * @param value   the value that is looked up, between 0 and 255
+   * @return the new value of the channel
+   * @throws IllegalArgumentException if the channel or the value is out of range
+   */
+  public int lookUp(int channel, int value) throws IllegalArgumentException {
+    if (channel < 0 || channel > 2 || value < 0 || value > 255) {
+      throw new IllegalArgumentException("Channel or value out of range");
+    }
+    return (channel == 0 ? this.redTable : channel == 1 ? this.greenTable : this.blueTable)[value];
+  }
+
+  /**
+   * Gets the operation that undoes this one, when there is one. That needs every table to send
+   * different values to different values, so no two values are merged, and the pixels must not
+   * be reduced to one value first. Brighten and darken merge the values they clamp, so they only
+   * have an inverse when they change nothing.
+   *
+   * @return the operation that undoes this one, or null if this one loses information
+   */
+  public PointOperation inverse() {
+    if (this.reducer != Reducer.NONE) {
+      return null;
+    }
+    int[] red = invert(this.redTable);
+    int[] green = invert(this.greenTable);
+    int[] blue = invert(this.blueTable);
+    if (red == null || green == null || blue == null) {
+      return null;
+    }
+    return new PointOperation(Reducer.NONE, red, green, blue);
+  }
+
+  /**
+   * Composes this operation with the one that comes after it, so that applying the result once
+   * is the same as applying this and then the next one. This works unless the next operation
+   * reduces pixels to intensity, luma or value (or value when the tables of this operation are
+   * different or go down somewhere) while this one doesn't reduce them, because those mix the
+   * channels in a way that one set of tables can't hold.
+   *
+   * @param next the operation that comes after this one
+   * @return the composed operation, or null if the two can't be composed
+   * @throws IllegalArgumentException if the next operation is null
+   */
+  public PointOperation then(PointOperation next) throws IllegalArgumentException {
+    if (next == null) {
+      throw new IllegalArgumentException("Operation can't be null");
+    }
+    if (next.reducer == Reducer.NONE) {
+      return new PointOperation(this.reducer, compose(this.redTable, next.redTable),
+              compose(this.greenTable, next.greenTable), compose(this.blueTable, next.blueTable));
+    }
+    if (this.reducer != Reducer.NONE) {
+      // every pixel of this result is a function of the one reduced value, so reducing it again
+      // is a function of that value too
+      int[] reduced = new int[256];
+      for (int i = 0; i < 256; i++) {
+        reduced[i] = reduce(next.reducer, this.redTable[i], this.greenTable[i],
+                this.blueTable[i]);
+      }
+      return new PointOperation(this.reducer, compose(reduced, next.redTable),
+              compose(reduced, next.greenTable), compose(reduced, next.blueTable));
+    }
+    switch (next.reducer) {
+      case RED:
+        return new PointOperation(Reducer.RED, compose(this.redTable, next.redTable),
+                compose(this.redTable, next.greenTable), compose(this.redTable, next.blueTable));
+      case GREEN:
+        return new PointOperation(Reducer.GREEN, compose(this.greenTable, next.redTable),
+                compose(this.greenTable, next.greenTable),
+                compose(this.greenTable, next.blueTable));
+      case BLUE:
+        return new PointOperation(Reducer.BLUE, compose(this.blueTable, next.redTable),
+                compose(this.blueTable, next.greenTable), compose(this.blueTable, next.blueTable));
+      case VALUE:
+        // the max of a table that never goes down is the table of the max
+        if (this.hasSameTables() && isMonotonic(this.redTable)) {
+          return new PointOperation(Reducer.VALUE, compose(this.redTable, next.redTable),
+                  compose(this.redTable, next.greenTable),
+                  compose(this.redTable, next.blueTable));
+        }
+        return null;
+      default:
+        return null;
+    }
+  }
+
+  /**
+   * Applies this operation to every pixel of a packed raster in one pass.
+   *
+   * @param pixels the packed 0xRRGGBB values of the image
+   * @return a new raster with the operation applied
+   */
+  public int[] apply(int[] pixels) {
+    int[] result = new int[pixels.length];
+    this.apply(pixels, result, 0, pixels.length);
+    return result;
+  }
+
+  /**
+   * Applies this operation to part of a packed raster, writing into another one (they can be
+   * the same array).
+   *
+   * @param pixels the packed 0xRRGGBB values to read
+   * @param result the array to write the new pixels into
+   * @param start  the first index to change
+   * @param end    the index after the last one to change
+   */
+  public void apply(int[] pixels, int[] result, int start, int end) {
+    int[] red = this.packedRed;
+    int[] green = this.packedGreen;
+    int[] blue = this.packedBlue;
+    switch (this.reducer) {
+      case NONE:
+        for (int i = start; i < end; i++) {
+          int rgb = pixels[i];
+          result[i] = red[(rgb >> 16) & 0xFF] | green[(rgb >> 8) & 0xFF] | blue[rgb & 0xFF];
+        }
+        break;
+      case RED:
+        for (int i = start; i < end; i++) {
+          int value = (pixels[i] >> 16) & 0xFF;
+          result[i] = red[value] | green[value] | blue[value];
+        }
+        break;
+      case GREEN:
+        for (int i = start; i < end; i++) {
+          int value = (pixels[i] >> 8) & 0xFF;
+          result[i] = red[value] | green[value] | blue[value];
+        }
+        break;
+      case BLUE:
+        for (int i = start; i < end; i++) {
+          int value = pixels[i] & 0xFF;
+          result[i] = red[value] | green[value] | blue[value];
+        }
+        break;
+      default:
+        for (int i = start; i < end; i++) {
+          int rgb = pixels[i];
+          int value = reduce(this.reducer, (rgb >> 16) & 0xFF, (rgb >> 8) & 0xFF, rgb & 0xFF);
+          result[i] = red[value] | green[value] | blue[value];
+        }
+    }
+  }
+
+  /**
+   * Applies this operation to one packed pixel.
+   *
+   * @param rgb the packed 0xRRGGBB value
+   * @return the new packed value
+   */
+  public int applyToPixel(int rgb) {
+    int r = (rgb >> 16) & 0xFF;
+    int g = (rgb >> 8) & 0xFF;
+    int b = rgb & 0xFF;
+    if (this.reducer == Reducer.NONE) {
+      return this.packedRed[r] | this.packedGreen[g] | this.packedBlue[b];
+    }
+    int value = reduce(this.reducer, r, g, b);
+    return this.packedRed[value] | this.packedGreen[value] | this.packedBlue[value];
+  }
+
+  // Reduces the three values of a pixel to one.
+  private static int reduce(Reducer reducer, int r, int g, int b) {
+    switch (reducer) {
+      case RED:
+        return r;
+      case GREEN:
+        return g;
+      case BLUE:
+        return b;
+      case VALUE:
+        return Math.max(Math.max(r, g), b);
+      case INTENSITY:
+        return (r + g + b) / 3;
+      case LUMA:
+        return LUMA_RED[r] + LUMA_GREEN[g] + LUMA_BLUE[b];
+      default:
+        throw new IllegalArgumentException("This reducer doesn't give one value");
+    }
+  }
+
+  // Looks up every entry of the first table in the second one.
+  private static int[] compose(int[] first, int[] second) {
+    int[] result = new int[256];
+    for (int i = 0; i < 256; i++) {
+      result[i] = second[first[i]];
+    }
+    return result;
+  }
+
+  // Turns a table around, or gives null if it sends two values to the same value.
+  private static int[] invert(int[] table) {
+    int[] result = new int[256];
+    Arrays.fill(result, -1);
+    for (int i = 0; i < 256; i++) {
+      if (result[table[i]] != -1) {
+        return null;
+      }
+      result[table[i]] = i;
+    }
+    return result;
+  }
+
+  // Checks if a table never goes down.
+  private static boolean isMonotonic(int[] table) {
+    for (int i = 1; i < table.length; i++) {
+      if (table[i] < table[i - 1]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  // Checks if all three tables are the same.
+  private boolean hasSameTables() {
+    for (int i = 0; i < 256; i++) {
+      if (this.redTable[i] != this.greenTable[i] || this.redTable[i] != this.blueTable[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
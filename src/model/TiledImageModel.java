@@ -0,0 +1,746 @@
+package model;
+
+import java.awt.image.BufferedImage;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Scanner;
+
+/**
+ * Image that is too big to keep in memory, like a scanned map. The image is split into square
+ * tiles, and only the tiles that were used last are kept in memory (at most a fixed number of
+ * them, the least recently used one is dropped first). The others are read again from disk when
+ * they are needed: from the ppm file itself for raw 8 bit files, and from a tile cache file
+ * otherwise. Reading a row doesn't load whole tiles, the parts of the row are read straight from
+ * the file unless their tile is already in memory, so going over the image row by row (to save
+ * it, count its histograms or shrink it) only reads every pixel once.
+ *
+ * <p>Every operation makes a new tiled image with its own tile cache file, one tile at a time.
+ * A filter needs the neighbours of the pixels at the edge of a tile, so every tile is filtered
+ * with a halo of extra pixels around it (half the size of the matrix on each side). The halo is
+ * filled the way the border mode says where it goes past the edge of the image, so the result is
+ * exactly the same as filtering the whole image at once. Flips and rotations move every tile to
+ * where it goes and turn it. Close an image once it isn't needed to delete its cache file, or it
+ * is deleted when the program ends.
+ */
+public class TiledImageModel implements ImageModel, Closeable {
+  /**
+   * The default width and height of a tile.
+   */
+  public static final int DEFAULT_TILE_SIZE = 256;
+  /**
+   * The default number of tiles kept in memory, which is 16MB of tiles of the default size.
+   */
+  public static final int DEFAULT_CACHED_TILES = 64;
+
+  private final int width;
+  private final int height;
+  private final int maxValue;
+  private final int tileSize;
+  private final int tileColumns;
+  private final int cachedTiles;
+  private final TileStore store;
+  // The tiles in memory by index, from the least recently used to the most recently used
+  private final LinkedHashMap<Integer, int[]> cache;
+  private int tileLoads;
+  private volatile ColorFrequencies frequencies;
+
+  // Makes an image whose tiles come from the given store.
+  private TiledImageModel(int width, int height, int maxValue, int tileSize, int cachedTiles,
+                          TileStore store) {
+    this.width = width;
+    this.height = height;
+    this.maxValue = maxValue;
+    this.tileSize = tileSize;
+    this.tileColumns = (width + tileSize - 1) / tileSize;
+    this.cachedTiles = cachedTiles;
+    this.store = store;
+    this.cache = new LinkedHashMap<Integer, int[]>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Integer, int[]> eldest) {
+        return this.size() > TiledImageModel.this.cachedTiles;
+      }
+    };
+  }
+
+  /**
+   * Opens a ppm file as a tiled image with the default tile size and number of cached tiles.
+   *
+   * @param fileName the path of the file
+   * @return the image in the file
+   * @throws IOException              if the file can't be read
+   * @throws IllegalArgumentException if the file isn't a valid ppm
+   */
+  public static TiledImageModel open(String fileName)
+          throws IOException, IllegalArgumentException {
+    return open(fileName, DEFAULT_TILE_SIZE, DEFAULT_CACHED_TILES);
+  }
+
+  /**
+   * Opens a ppm file as a tiled image. The pixels of a raw file with 8 bit channels are read
+   * from the file when they are needed, and the file has to stay where it is while the image is
+   * used. Other ppm files can't be read from the middle, so they are read once, one row at a
+   * time, and copied to a tile cache file.
+   *
+   * @param fileName    the path of the file
+   * @param tileSize    the width and height of a tile
+   * @param cachedTiles how many tiles can be kept in memory
+   * @return the image in the file
+   * @throws IOException              if the file can't be read
+   * @throws IllegalArgumentException if the file isn't a valid ppm, or the tile size or number
+   *                                  of cached tiles is less than 1
+   */
+  public static TiledImageModel open(String fileName, int tileSize, int cachedTiles)
+          throws IOException, IllegalArgumentException {
+    checkTiles(tileSize, cachedTiles);
+    if (fileName == null) {
+      throw new IllegalArgumentException("File name can't be null");
+    }
+    PPMReader.Header header = PPMReader.readHeader(fileName);
+    if (header.dataOffset < 0 || header.maxValue > 255) {
+      try (PPMReader.RowReader reader = new PPMReader.RowReader(fileName)) {
+        return copy(header.width, header.height, Math.min(header.maxValue, 255), tileSize,
+                cachedTiles, (i, row) -> reader.readRow(row));
+      }
+    }
+    FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ);
+    if (channel.size() < header.dataOffset + (long) header.width * header.height * 3) {
+      channel.close();
+      throw new IllegalArgumentException("Invalid PPM file: not enough pixel data");
+    }
+    return new TiledImageModel(header.width, header.height, header.maxValue, tileSize,
+            cachedTiles, new RawFileStore(channel, header));
+  }
+
+  /**
+   * Copies an image into a tiled image with the default tile size and number of cached tiles.
+   *
+   * @param image the image to copy
+   * @return the tiled copy
+   * @throws IllegalArgumentException if the image is null
+   */
+  public static TiledImageModel of(ImageModel image) throws IllegalArgumentException {
+    return of(image, DEFAULT_TILE_SIZE, DEFAULT_CACHED_TILES);
+  }
+
+  /**
+   * Copies an image into the tile cache file of a new tiled image. The image is read one row at
+   * a time, so it doesn't have to fit in memory either.
+   *
+   * @param image       the image to copy
+   * @param tileSize    the width and height of a tile
+   * @param cachedTiles how many tiles can be kept in memory
+   * @return the tiled copy
+   * @throws IllegalArgumentException if the image is null, or the tile size or number of cached
+   *                                  tiles is less than 1
+   * @throws UncheckedIOException     if the tile cache file can't be written
+   */
+  public static TiledImageModel of(ImageModel image, int tileSize, int cachedTiles)
+          throws IllegalArgumentException {
+    if (image == null) {
+      throw new IllegalArgumentException("Image can't be null");
+    }
+    checkTiles(tileSize, cachedTiles);
+    try {
+      return copy(image.getWidth(), image.getHeight(), image.getMaxValue(), tileSize,
+              cachedTiles, image::getRow);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  // Copies the rows of an image into the tile cache file of a new tiled image, one row at a
+  // time, so only one row is in memory at once.
+  private static TiledImageModel copy(int width, int height, int maxValue, int tileSize,
+                                      int cachedTiles, RowSource rows) throws IOException {
+    CacheFileStore store = CacheFileStore.create(tileSize);
+    try {
+      int[] row = new int[width];
+      int tileColumns = (width + tileSize - 1) / tileSize;
+      for (int i = 0; i < height; i++) {
+        rows.readRow(i, row);
+        for (int x = 0; x < width; x += tileSize) {
+          int tileWidth = Math.min(tileSize, width - x);
+          store.writeRow((i / tileSize) * tileColumns + x / tileSize, tileWidth, i % tileSize,
+                  row, x);
+        }
+      }
+    } catch (IOException | RuntimeException e) {
+      store.closeQuietly();
+      throw e;
+    }
+    return new TiledImageModel(width, height, maxValue, tileSize, cachedTiles, store);
+  }
+
+  /**
+   * Gets the width and height of a tile.
+   *
+   * @return the tile size
+   */
+  public int getTileSize() {
+    return this.tileSize;
+  }
+
+  /**
+   * Gets how many tiles are in memory now.
+   *
+   * @return the number of tiles in memory, which is at most the number that can be cached
+   */
+  public synchronized int getCachedTileCount() {
+    return this.cache.size();
+  }
+
+  /**
+   * Gets how many times a whole tile was read from disk.
+   *
+   * @return the number of tiles that were loaded
+   */
+  public synchronized int getTileLoads() {
+    return this.tileLoads;
+  }
+
+  /**
+   * Tiled images are opened from a file with {@link #open(String)}, they can't be loaded from a
+   * scanner.
+   *
+   * @param sc the scanner
+   * @return nothing
+   * @throws UnsupportedOperationException always
+   */
+  @Override
+  public ArrayList<ArrayList<Pixel>> loadImage(Scanner sc) throws UnsupportedOperationException {
+    throw new UnsupportedOperationException("Tiled images are opened from a file");
+  }
+
+  @Override
+  public ImageModel changeExposure(String enhanceType, int colorToAdjust)
+          throws IllegalArgumentException {
+    if (enhanceType == null) {
+      throw new IllegalArgumentException("Please specify if you want to brighten or "
+              + "darken the image by entering 'brighten' or 'darken'");
+    }
+    if (colorToAdjust < 0) {
+      throw new IllegalArgumentException("You must input a positive integer");
+    }
+    String stringToCompare = enhanceType.toLowerCase();
+    if (stringToCompare.equals("brighten")) {
+      return this.pointOperation(PointOperation.exposure(colorToAdjust));
+    }
+    if (stringToCompare.equals("darken")) {
+      return this.pointOperation(PointOperation.exposure(-colorToAdjust));
+    }
+    throw new IllegalArgumentException("Please specify if you want to brighten or "
+            + "darken the image by entering 'brighten' or 'darken'");
+  }
+
+  @Override
+  public ImageModel greyScale(String greyScaleType) {
+    return this.pointOperation(PointOperation.greyScale(greyScaleType));
+  }
+
+  @Override
+  public ImageModel pointOperation(PointOperation operation) throws IllegalArgumentException {
+    if (operation == null) {
+      throw new IllegalArgumentException("Operation can't be null");
+    }
+    TiledImageModel result = this.derive(this.width, this.height,
+            (x, y, w, h) -> operation.apply(this.readRegion(x, y, w, h)));
+    ColorFrequencies known = this.frequencies;
+    result.frequencies = known == null ? null : known.after(operation);
+    return result;
+  }
+
+  @Override
+  public ImageModel filter(double[][] matrix) throws IllegalArgumentException {
+    return this.filter(matrix, BorderMode.ZERO);
+  }
+
+  @Override
+  public ImageModel filter(double[][] matrix, BorderMode borderMode)
+          throws IllegalArgumentException {
+    if (borderMode == null) {
+      throw new IllegalArgumentException("Border mode can't be null");
+    }
+    Kernel kernel = Kernel.of(matrix);
+    int rowHalo = kernel.getRows() / 2;
+    int colHalo = kernel.getColumns() / 2;
+    return this.derive(this.width, this.height, (x, y, w, h) -> {
+      int windowWidth = w + 2 * colHalo;
+      int windowHeight = h + 2 * rowHalo;
+      int[] window = this.readWindow(x - colHalo, y - rowHalo, windowWidth, windowHeight,
+              borderMode);
+      // the halo is already filled, so the border mode of the window itself never matters to
+      // the pixels of the tile
+      int[] filtered = FilterEngine.getShared().filter(window, windowWidth, windowHeight, kernel,
+              BorderMode.CLAMP);
+      int[] tile = new int[w * h];
+      for (int i = 0; i < h; i++) {
+        System.arraycopy(filtered, (i + rowHalo) * windowWidth + colHalo, tile, i * w, w);
+      }
+      return tile;
+    });
+  }
+
+  @Override
+  public ImageModel colorTransformation(double[][] matrix) throws IllegalArgumentException {
+    if (matrix.length != 3 || matrix[0].length != 3) {
+      throw new IllegalArgumentException("Color transformation matrix must have 3x3 dimensions");
+    }
+    return this.derive(this.width, this.height,
+            (x, y, w, h) -> ColorTransformer.getShared().transform(this.readRegion(x, y, w, h),
+                    matrix));
+  }
+
+  /**
+   * Makes a buffered image of the whole image, which has to fit in memory.
+   *
+   * @return this image as a buffered image
+   */
+  @Override
+  public BufferedImage returnAsBufferedImage() {
+    return BufferedImageConverter.toBufferedImage(this);
+  }
+
+  @Override
+  public ImageModel verticalFlip() {
+    return this.orient(Orientation.FLIP_VERTICAL);
+  }
+
+  @Override
+  public ImageModel horizontalFlip() {
+    return this.orient(Orientation.FLIP_HORIZONTAL);
+  }
+
+  @Override
+  public ImageModel orient(Orientation orientation) throws IllegalArgumentException {
+    if (orientation == null) {
+      throw new IllegalArgumentException("Orientation can't be null");
+    }
+    if (orientation == Orientation.IDENTITY) {
+      return this;
+    }
+    return this.derive(orientation.getWidth(this.width, this.height),
+            orientation.getHeight(this.width, this.height), (x, y, w, h) -> {
+              // the pixels of a tile of the result come from one rectangle of this image,
+              // which only has to be turned the same way
+              int sourceX = Math.min(orientation.sourceColumn(y, x, this.width),
+                      orientation.sourceColumn(y + h - 1, x + w - 1, this.width));
+              int sourceY = Math.min(orientation.sourceRow(y, x, this.height),
+                      orientation.sourceRow(y + h - 1, x + w - 1, this.height));
+              int sourceWidth = orientation.isTransposed() ? h : w;
+              int sourceHeight = orientation.isTransposed() ? w : h;
+              return orientation.apply(this.readRegion(sourceX, sourceY, sourceWidth,
+                      sourceHeight), sourceWidth, sourceHeight);
+            });
+  }
+
+  @Override
+  public int getWidth() {
+    return this.width;
+  }
+
+  @Override
+  public int getHeight() {
+    return this.height;
+  }
+
+  @Override
+  public int getMaxValue() {
+    return this.maxValue;
+  }
+
+  @Override
+  public void getRow(int row, int[] rgb) throws IllegalArgumentException {
+    if (row < 0 || row >= this.height || rgb == null || rgb.length < this.width) {
+      throw new IllegalArgumentException("Row is outside the image or the array is too small");
+    }
+    this.copyRow(row, 0, this.width, rgb, 0);
+  }
+
+  @Override
+  public StringBuilder toStringBuilder() {
+    StringBuilder stringBufferToReturn = new StringBuilder();
+    stringBufferToReturn.append(this.width).append(" ").append(this.height).append("\n");
+    stringBufferToReturn.append(this.maxValue).append("\n");
+    int[] row = new int[this.width];
+    for (int i = 0; i < this.height; i++) {
+      this.getRow(i, row);
+      for (int rgb : row) {
+        stringBufferToReturn.append(PackedImageModel.red(rgb)).append("\n");
+        stringBufferToReturn.append(PackedImageModel.green(rgb)).append("\n");
+        stringBufferToReturn.append(PackedImageModel.blue(rgb)).append("\n");
+      }
+    }
+    return stringBufferToReturn;
+  }
+
+  @Override
+  public Map<Integer, Integer> returnColorFrequencies(String type) {
+    return this.colorFrequencies().toMap(type);
+  }
+
+  @Override
+  public ColorFrequencies colorFrequencies() {
+    ColorFrequencies known = this.frequencies;
+    if (known == null) {
+      known = ColorFrequencies.of(this);
+      this.frequencies = known;
+    }
+    return known;
+  }
+
+  /**
+   * Drops the tiles in memory and closes the file the tiles are read from. The tile cache file
+   * of the image is deleted. The image can't be read anymore afterwards.
+   *
+   * @throws IOException if the file can't be closed
+   */
+  @Override
+  public void close() throws IOException {
+    synchronized (this) {
+      this.cache.clear();
+    }
+    this.store.close();
+  }
+
+  // Checks the size of the tiles and how many of them can be kept.
+  private static void checkTiles(int tileSize, int cachedTiles) throws IllegalArgumentException {
+    if (tileSize < 1 || cachedTiles < 1) {
+      throw new IllegalArgumentException("Tile size and cached tiles must be at least 1");
+    }
+  }
+
+  // Makes a new tiled image of the given size one tile at a time, writing every tile to its
+  // cache file as soon as it is made.
+  private TiledImageModel derive(int newWidth, int newHeight, TileMaker maker) {
+    CacheFileStore result = CacheFileStore.create(this.tileSize);
+    int columns = (newWidth + this.tileSize - 1) / this.tileSize;
+    try {
+      for (int y = 0; y < newHeight; y += this.tileSize) {
+        for (int x = 0; x < newWidth; x += this.tileSize) {
+          int w = Math.min(this.tileSize, newWidth - x);
+          int h = Math.min(this.tileSize, newHeight - y);
+          int index = (y / this.tileSize) * columns + x / this.tileSize;
+          result.writeTile(index, maker.make(x, y, w, h), w, h);
+        }
+      }
+    } catch (IOException e) {
+      result.closeQuietly();
+      throw new UncheckedIOException(e);
+    } catch (RuntimeException e) {
+      result.closeQuietly();
+      throw e;
+    }
+    return new TiledImageModel(newWidth, newHeight, this.maxValue, this.tileSize,
+            this.cachedTiles, result);
+  }
+
+  // Gets a tile from memory, or reads it from disk and keeps it.
+  private synchronized int[] tile(int tileX, int tileY) {
+    int index = tileY * this.tileColumns + tileX;
+    int[] tile = this.cache.get(index);
+    if (tile == null) {
+      int x = tileX * this.tileSize;
+      int y = tileY * this.tileSize;
+      int w = Math.min(this.tileSize, this.width - x);
+      int h = Math.min(this.tileSize, this.height - y);
+      tile = new int[w * h];
+      try {
+        this.store.readTile(index, x, y, w, h, tile);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+      this.tileLoads++;
+      this.cache.put(index, tile);
+    }
+    return tile;
+  }
+
+  // Gets a tile if it is in memory, without reading it from disk if it isn't.
+  private synchronized int[] cachedTile(int tileX, int tileY) {
+    return this.cache.get(tileY * this.tileColumns + tileX);
+  }
+
+  // Copies the pixels from column from (inclusive) to column to (exclusive) of a row into an
+  // array. Tiles in memory are copied from, the rest is read straight from the file.
+  private void copyRow(int row, int from, int to, int[] rgb, int offset) {
+    int tileY = row / this.tileSize;
+    int rowInTile = row % this.tileSize;
+    int x = from;
+    while (x < to) {
+      int tileX = x / this.tileSize;
+      int tileStart = tileX * this.tileSize;
+      int tileWidth = Math.min(this.tileSize, this.width - tileStart);
+      int end = Math.min(to, tileStart + tileWidth);
+      int[] tile = this.cachedTile(tileX, tileY);
+      if (tile != null) {
+        System.arraycopy(tile, rowInTile * tileWidth + x - tileStart, rgb, offset + x - from,
+                end - x);
+      } else {
+        try {
+          this.store.readRow(tileY * this.tileColumns + tileX, tileStart, tileWidth, row,
+                  rowInTile, x - tileStart, end - x, rgb, offset + x - from);
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      }
+      x = end;
+    }
+  }
+
+  // Reads a rectangle of the image, loading the tiles it covers into memory.
+  private int[] readRegion(int x, int y, int w, int h) {
+    int[] region = new int[w * h];
+    for (int tileY = y / this.tileSize; tileY * this.tileSize < y + h; tileY++) {
+      for (int tileX = x / this.tileSize; tileX * this.tileSize < x + w; tileX++) {
+        int[] tile = this.tile(tileX, tileY);
+        int tileStartX = tileX * this.tileSize;
+        int tileStartY = tileY * this.tileSize;
+        int tileWidth = Math.min(this.tileSize, this.width - tileStartX);
+        int fromX = Math.max(x, tileStartX);
+        int toX = Math.min(x + w, tileStartX + tileWidth);
+        int fromY = Math.max(y, tileStartY);
+        int toY = Math.min(y + h, tileStartY + this.tileSize);
+        for (int i = fromY; i < toY; i++) {
+          System.arraycopy(tile, (i - tileStartY) * tileWidth + fromX - tileStartX, region,
+                  (i - y) * w + fromX - x, toX - fromX);
+        }
+      }
+    }
+    return region;
+  }
+
+  // Reads a rectangle that can go past the edges of the image, filling the pixels outside it
+  // the way the border mode says (0 where the border mode says the neighbour counts as 0).
+  private int[] readWindow(int x, int y, int w, int h, BorderMode borderMode) {
+    int insideX = Math.max(0, x);
+    int insideEnd = Math.min(this.width, x + w);
+    int insideY = Math.max(0, y);
+    int insideHeight = Math.min(this.height, y + h) - insideY;
+    int[] inside = insideEnd > insideX && insideHeight > 0
+            ? this.readRegion(insideX, insideY, insideEnd - insideX, insideHeight) : new int[0];
+    int[] window = new int[w * h];
+    int[] columns = new int[w];
+    for (int j = 0; j < w; j++) {
+      columns[j] = borderMode.map(x + j, this.width);
+    }
+    for (int i = 0; i < h; i++) {
+      int sourceRow = borderMode.map(y + i, this.height);
+      if (sourceRow < 0) {
+        continue;
+      }
+      boolean rowInside = sourceRow >= insideY && sourceRow < insideY + insideHeight;
+      for (int j = 0; j < w; j++) {
+        int sourceCol = columns[j];
+        if (sourceCol < 0) {
+          continue;
+        }
+        if (rowInside && sourceCol >= insideX && sourceCol < insideEnd) {
+          window[i * w + j] = inside[(sourceRow - insideY) * (insideEnd - insideX) + sourceCol
+                  - insideX];
+        } else {
+          // only wrapped neighbours come from further away than the window
+          window[i * w + j] = this.readRegion(sourceCol, sourceRow, 1, 1)[0];
+        }
+      }
+    }
+    return window;
+  }
+
+  /**
+   * Makes one tile of a new image.
+   */
+  private interface TileMaker {
+    int[] make(int x, int y, int w, int h);
+  }
+
+  /**
+   * Gives the rows of an image that is copied into a tiled image, from the top.
+   */
+  private interface RowSource {
+    void readRow(int row, int[] pixels) throws IOException;
+  }
+
+  /**
+   * Where the tiles of an image are read from.
+   */
+  private interface TileStore extends Closeable {
+    // Reads the tile with the given index, which starts at x and y and is w by h pixels.
+    void readTile(int index, int x, int y, int w, int h, int[] tile) throws IOException;
+
+    // Reads count pixels of one row of a tile, starting at column from of the tile.
+    void readRow(int index, int tileX, int tileWidth, int row, int rowInTile, int from,
+                 int count, int[] rgb, int offset) throws IOException;
+  }
+
+  /**
+   * Reads the tiles of a raw ppm file with 8 bit channels straight from the file, one row of a
+   * tile at a time.
+   */
+  private static final class RawFileStore implements TileStore {
+    private final FileChannel channel;
+    private final int width;
+    private final int maxValue;
+    private final long dataOffset;
+
+    RawFileStore(FileChannel channel, PPMReader.Header header) {
+      this.channel = channel;
+      this.width = header.width;
+      this.maxValue = header.maxValue;
+      this.dataOffset = header.dataOffset;
+    }
+
+    @Override
+    public void readTile(int index, int x, int y, int w, int h, int[] tile) throws IOException {
+      for (int i = 0; i < h; i++) {
+        this.readRow(index, x, w, y + i, i, 0, w, tile, i * w);
+      }
+    }
+
+    @Override
+    public void readRow(int index, int tileX, int tileWidth, int row, int rowInTile, int from,
+                        int count, int[] rgb, int offset) throws IOException {
+      ByteBuffer bytes = ByteBuffer.allocate(count * 3);
+      readFully(this.channel, bytes,
+              this.dataOffset + ((long) row * this.width + tileX + from) * 3);
+      byte[] data = bytes.array();
+      for (int j = 0; j < count; j++) {
+        int r = data[j * 3] & 0xFF;
+        int g = data[j * 3 + 1] & 0xFF;
+        int b = data[j * 3 + 2] & 0xFF;
+        if (r > this.maxValue || g > this.maxValue || b > this.maxValue) {
+          throw new IllegalArgumentException("Invalid PPM file: value above the max value");
+        }
+        rgb[offset + j] = PackedImageModel.pack(r, g, b);
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      this.channel.close();
+    }
+  }
+
+  /**
+   * Keeps tiles in a temporary file, 3 bytes a pixel. Every tile has a slot big enough for a
+   * whole tile, and the tiles at the right and bottom edges only use the start of theirs.
+   */
+  private static final class CacheFileStore implements TileStore {
+    private final Path path;
+    private final FileChannel channel;
+    private final long slotBytes;
+
+    private CacheFileStore(Path path, FileChannel channel, int tileSize) {
+      this.path = path;
+      this.channel = channel;
+      this.slotBytes = (long) tileSize * tileSize * 3;
+    }
+
+    // Makes an empty cache file, which is deleted when it is closed or the program ends.
+    static CacheFileStore create(int tileSize) {
+      try {
+        Path path = Files.createTempFile("tiles", ".cache");
+        File file = path.toFile();
+        file.deleteOnExit();
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        return new CacheFileStore(path, channel, tileSize);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+
+    // Writes a whole tile into its slot.
+    void writeTile(int index, int[] tile, int w, int h) throws IOException {
+      ByteBuffer bytes = ByteBuffer.allocate(w * h * 3);
+      for (int rgb : tile) {
+        bytes.put((byte) (rgb >> 16)).put((byte) (rgb >> 8)).put((byte) rgb);
+      }
+      bytes.flip();
+      writeFully(this.channel, bytes, index * this.slotBytes);
+    }
+
+    // Writes one row of a tile into its slot, from the pixels of a row of the image.
+    void writeRow(int index, int tileWidth, int rowInTile, int[] row, int from)
+            throws IOException {
+      ByteBuffer bytes = ByteBuffer.allocate(tileWidth * 3);
+      for (int j = 0; j < tileWidth; j++) {
+        int rgb = row[from + j];
+        bytes.put((byte) (rgb >> 16)).put((byte) (rgb >> 8)).put((byte) rgb);
+      }
+      bytes.flip();
+      writeFully(this.channel, bytes, index * this.slotBytes + (long) rowInTile * tileWidth * 3);
+    }
+
+    @Override
+    public void readTile(int index, int x, int y, int w, int h, int[] tile) throws IOException {
+      ByteBuffer bytes = ByteBuffer.allocate(w * h * 3);
+      readFully(this.channel, bytes, index * this.slotBytes);
+      unpack(bytes.array(), tile, 0, w * h);
+    }
+
+    @Override
+    public void readRow(int index, int tileX, int tileWidth, int row, int rowInTile, int from,
+                        int count, int[] rgb, int offset) throws IOException {
+      ByteBuffer bytes = ByteBuffer.allocate(count * 3);
+      readFully(this.channel, bytes,
+              index * this.slotBytes + ((long) rowInTile * tileWidth + from) * 3);
+      unpack(bytes.array(), rgb, offset, count);
+    }
+
+    @Override
+    public void close() throws IOException {
+      try {
+        this.channel.close();
+      } finally {
+        Files.deleteIfExists(this.path);
+      }
+    }
+
+    // Closes and deletes the file after something went wrong, when its own errors don't matter.
+    void closeQuietly() {
+      try {
+        this.close();
+      } catch (IOException e) {
+        // the file is deleted when the program ends anyway
+      }
+    }
+
+    // Unpacks 3 bytes a pixel into packed pixels.
+    private static void unpack(byte[] data, int[] rgb, int offset, int count) {
+      for (int j = 0; j < count; j++) {
+        rgb[offset + j] = PackedImageModel.pack(data[j * 3] & 0xFF, data[j * 3 + 1] & 0xFF,
+                data[j * 3 + 2] & 0xFF);
+      }
+    }
+  }
+
+  // Reads until the buffer is full, starting at a position in the file.
+  private static void readFully(FileChannel channel, ByteBuffer bytes, long position)
+          throws IOException {
+    while (bytes.hasRemaining()) {
+      int read = channel.read(bytes, position + bytes.position());
+      if (read < 0) {
+        throw new IOException("Tile file ended too early");
+      }
+    }
+  }
+
+  // Writes the whole buffer, starting at a position in the file.
+  private static void writeFully(FileChannel channel, ByteBuffer bytes, long position)
+          throws IOException {
+    while (bytes.hasRemaining()) {
+      channel.write(bytes, position + bytes.position());
+    }
+  }
+}
@@ -0,0 +1,380 @@
+package view;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import model.ImageModel;
+import model.PackedImageModel;
+
+/**
+ * The undo and redo history of the GUI, which is kept under a budget of bytes so editing for a
+ * long time can't use up the heap. Every entry is a job of the {@link OperationRunner}, so the
+ * operations that were done together are undone together.
+ *
+ * <p>Steps that can be undone cheaply, like flips and rotations (see
+ * {@link OperationRunner.Step#inverse()}), are undone by doing their inverse, and nothing else is
+ * kept for them. For every other entry the image from before it is kept as a snapshot. When the
+ * snapshots take more than the budget, the oldest ones are compressed first, and if that isn't
+ * enough the oldest entries are forgotten, so the oldest undo goes first and the newest stays the
+ * longest.
+ */
+public class EditHistory {
+  /**
+   * The default budget, which fits a few dozen snapshots of an image the size of the view.
+   */
+  public static final long DEFAULT_BUDGET = 64L << 20;
+
+  private final long budget;
+  // Newest first in both, so the next undo or redo is at the front and the oldest at the back
+  private final Deque<Entry> undoEntries;
+  private final Deque<Entry> redoEntries;
+  private long usedBytes;
+
+  /**
+   * Constructor that makes an empty history with the default budget.
+   */
+  public EditHistory() {
+    this(DEFAULT_BUDGET);
+  }
+
+  /**
+   * Constructor that makes an empty history with the given budget.
+   *
+   * @param budget the most bytes the snapshots can take
+   * @throws IllegalArgumentException if the budget isn't positive
+   */
+  public EditHistory(long budget) throws IllegalArgumentException {
+    if (budget <= 0) {
+      throw new IllegalArgumentException("Budget must be positive");
+    }
+    this.budget = budget;
+    this.undoEntries = new ArrayDeque<>();
+    this.redoEntries = new ArrayDeque<>();
+  }
+
+  /**
+   * Makes a step that knows how to undo itself.
+   *
+   * @param forward  the step
+   * @param backward the step that undoes it, or null if there isn't one
+   * @return the step, with the other one as its inverse
+   * @throws IllegalArgumentException if the step is null
+   */
+  public static OperationRunner.Step reversible(OperationRunner.Step forward,
+                                                OperationRunner.Step backward)
+          throws IllegalArgumentException {
+    if (forward == null) {
+      throw new IllegalArgumentException("Step can't be null");
+    }
+    return new OperationRunner.Step() {
+      @Override
+      public ImageModel apply(ImageModel image) throws IOException {
+        return forward.apply(image);
+      }
+
+      @Override
+      public OperationRunner.Step inverse() {
+        return backward;
+      }
+    };
+  }
+
+  /**
+   * Records a job that was done, which can't be redone anymore afterwards.
+   *
+   * @param before the image from before the job
+   * @param steps  the steps the job did
+   * @throws IllegalArgumentException if either is null
+   */
+  public void record(ImageModel before, List<OperationRunner.Step> steps)
+          throws IllegalArgumentException {
+    if (before == null || steps == null) {
+      throw new IllegalArgumentException("Image and steps can't be null");
+    }
+    for (Entry entry : this.redoEntries) {
+      this.usedBytes -= entry.bytes();
+    }
+    this.redoEntries.clear();
+    List<OperationRunner.Step> copy = Collections.unmodifiableList(new ArrayList<>(steps));
+    this.push(this.undoEntries, new Entry(copy, inverseOf(copy), before));
+  }
+
+  /**
+   * Undoes the newest job.
+   *
+   * @param current the image that is shown now, which the job made
+   * @return the image from before the job, and the steps that were undone
+   * @throws IOException           if undoing a step fails
+   * @throws IllegalStateException if there is nothing to undo
+   */
+  public Change undo(ImageModel current) throws IOException, IllegalStateException {
+    if (this.undoEntries.isEmpty()) {
+      throw new IllegalStateException("There is nothing to undo");
+    }
+    Entry entry = this.undoEntries.peekFirst();
+    ImageModel before = entry.inverse != null ? entry.inverse.apply(current)
+            : entry.snapshot.image();
+    this.remove(this.undoEntries);
+    this.push(this.redoEntries, new Entry(entry.steps, entry.inverse, current));
+    return new Change(before, entry.steps);
+  }
+
+  /**
+   * Redoes the job that was undone last.
+   *
+   * @param current the image that is shown now, from before the job
+   * @return the image the job made, and the steps that were redone
+   * @throws IOException           if redoing a step fails
+   * @throws IllegalStateException if there is nothing to redo
+   */
+  public Change redo(ImageModel current) throws IOException, IllegalStateException {
+    if (this.redoEntries.isEmpty()) {
+      throw new IllegalStateException("There is nothing to redo");
+    }
+    Entry entry = this.redoEntries.peekFirst();
+    ImageModel after = current;
+    if (entry.snapshot == null) {
+      // steps that can be undone cheaply are cheap to do again too
+      for (OperationRunner.Step step : entry.steps) {
+        after = step.apply(after);
+      }
+    } else {
+      after = entry.snapshot.image();
+    }
+    this.remove(this.redoEntries);
+    this.push(this.undoEntries, new Entry(entry.steps, entry.inverse, current));
+    return new Change(after, entry.steps);
+  }
+
+  /**
+   * Checks if there is a job to undo.
+   *
+   * @return true if there is something to undo
+   */
+  public boolean canUndo() {
+    return !this.undoEntries.isEmpty();
+  }
+
+  /**
+   * Checks if there is a job to redo.
+   *
+   * @return true if there is something to redo
+   */
+  public boolean canRedo() {
+    return !this.redoEntries.isEmpty();
+  }
+
+  /**
+   * Gets how many bytes the snapshots take now.
+   *
+   * @return the bytes used, which is at most the budget
+   */
+  public long getUsedBytes() {
+    return this.usedBytes;
+  }
+
+  /**
+   * Forgets everything, like after a new image is loaded.
+   */
+  public void clear() {
+    this.undoEntries.clear();
+    this.redoEntries.clear();
+    this.usedBytes = 0;
+  }
+
+  // Puts an entry at the front of one of the stacks and makes everything fit in the budget.
+  private void push(Deque<Entry> entries, Entry entry) {
+    entries.addFirst(entry);
+    this.usedBytes += entry.bytes();
+    this.trim();
+  }
+
+  // Takes the entry at the front of one of the stacks off it.
+  private void remove(Deque<Entry> entries) {
+    this.usedBytes -= entries.removeFirst().bytes();
+  }
+
+  // Compresses the oldest snapshots, and then forgets the oldest entries, until the history fits
+  // in its budget. Undo entries are older than redo entries, since redo entries were undone.
+  private void trim() {
+    Iterator<Entry> oldestUndo = this.undoEntries.descendingIterator();
+    Iterator<Entry> newestRedo = this.redoEntries.iterator();
+    while (this.usedBytes > this.budget && (oldestUndo.hasNext() || newestRedo.hasNext())) {
+      Entry entry = oldestUndo.hasNext() ? oldestUndo.next() : newestRedo.next();
+      if (entry.snapshot != null && !entry.snapshot.isCompressed()) {
+        this.usedBytes -= entry.bytes();
+        entry.snapshot.compress();
+        this.usedBytes += entry.bytes();
+      }
+    }
+    while (this.usedBytes > this.budget && !this.undoEntries.isEmpty()) {
+      this.usedBytes -= this.undoEntries.removeLast().bytes();
+    }
+    while (this.usedBytes > this.budget && !this.redoEntries.isEmpty()) {
+      this.usedBytes -= this.redoEntries.removeLast().bytes();
+    }
+  }
+
+  // Gets a step that undoes all the steps, by undoing them from the last to the first, or null
+  // if one of them can't be undone cheaply.
+  private static OperationRunner.Step inverseOf(List<OperationRunner.Step> steps) {
+    List<OperationRunner.Step> inverses = new ArrayList<>();
+    for (OperationRunner.Step step : steps) {
+      OperationRunner.Step inverse = step.inverse();
+      if (inverse == null) {
+        return null;
+      }
+      inverses.add(0, inverse);
+    }
+    return image -> {
+      ImageModel result = image;
+      for (OperationRunner.Step inverse : inverses) {
+        result = inverse.apply(result);
+      }
+      return result;
+    };
+  }
+
+  /**
+   * What an undo or a redo gives back.
+   */
+  public static final class Change {
+    private final ImageModel image;
+    private final List<OperationRunner.Step> steps;
+
+    // Makes a change from the image to show and the steps that were undone or redone.
+    private Change(ImageModel image, List<OperationRunner.Step> steps) {
+      this.image = image;
+      this.steps = steps;
+    }
+
+    /**
+     * Gets the image to show after the undo or redo.
+     *
+     * @return the image
+     */
+    public ImageModel getImage() {
+      return this.image;
+    }
+
+    /**
+     * Gets the steps that were undone or redone, in the order they were first done.
+     *
+     * @return the steps, which can't be changed
+     */
+    public List<OperationRunner.Step> getSteps() {
+      return this.steps;
+    }
+  }
+
+  /**
+   * One job in the history. It has either an inverse or a snapshot of the image on the other
+   * side of it (from before it on the undo stack, from after it on the redo stack).
+   */
+  private static final class Entry {
+    private final List<OperationRunner.Step> steps;
+    private final OperationRunner.Step inverse;
+    private final Snapshot snapshot;
+
+    Entry(List<OperationRunner.Step> steps, OperationRunner.Step inverse, ImageModel other) {
+      this.steps = steps;
+      this.inverse = inverse;
+      this.snapshot = inverse == null ? new Snapshot(other) : null;
+    }
+
+    // Gets how many bytes this entry counts against the budget.
+    long bytes() {
+      return this.snapshot == null ? 0 : this.snapshot.bytes();
+    }
+  }
+
+  /**
+   * A kept image. At first the image itself is kept, which is 4 bytes a pixel. Compressing it
+   * packs the red, green and blue values of every pixel into 3 bytes and deflates them, and the
+   * image is made again from those when it is needed.
+   */
+  private static final class Snapshot {
+    private final int width;
+    private final int height;
+    private final int maxValue;
+    private ImageModel image;
+    private byte[] compressed;
+
+    Snapshot(ImageModel image) {
+      this.image = image;
+      this.width = image.getWidth();
+      this.height = image.getHeight();
+      this.maxValue = image.getMaxValue();
+    }
+
+    boolean isCompressed() {
+      return this.image == null;
+    }
+
+    long bytes() {
+      return this.isCompressed() ? this.compressed.length : (long) this.width * this.height * 4;
+    }
+
+    void compress() {
+      Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      int[] row = new int[this.width];
+      byte[] bytes = new byte[this.width * 3];
+      byte[] buffer = new byte[1 << 16];
+      for (int i = 0; i < this.height; i++) {
+        this.image.getRow(i, row);
+        for (int j = 0; j < this.width; j++) {
+          bytes[j * 3] = (byte) (row[j] >> 16);
+          bytes[j * 3 + 1] = (byte) (row[j] >> 8);
+          bytes[j * 3 + 2] = (byte) row[j];
+        }
+        deflater.setInput(bytes);
+        while (!deflater.needsInput()) {
+          out.write(buffer, 0, deflater.deflate(buffer));
+        }
+      }
+      deflater.finish();
+      while (!deflater.finished()) {
+        out.write(buffer, 0, deflater.deflate(buffer));
+      }
+      deflater.end();
+      this.compressed = out.toByteArray();
+      this.image = null;
+    }
+
+    ImageModel image() {
+      if (!this.isCompressed()) {
+        return this.image;
+      }
+      byte[] bytes = new byte[this.width * this.height * 3];
+      Inflater inflater = new Inflater();
+      inflater.setInput(this.compressed);
+      try {
+        int read = 0;
+        while (read < bytes.length && !inflater.finished()) {
+          read += inflater.inflate(bytes, read, bytes.length - read);
+        }
+      } catch (DataFormatException e) {
+        // the bytes were made by compress, so they are always valid
+        throw new IllegalStateException("Snapshot is corrupted", e);
+      } finally {
+        inflater.end();
+      }
+      int[] pixels = new int[this.width * this.height];
+      for (int i = 0; i < pixels.length; i++) {
+        pixels[i] = ((bytes[i * 3] & 0xFF) << 16) | ((bytes[i * 3 + 1] & 0xFF) << 8)
+                | (bytes[i * 3 + 2] & 0xFF);
+      }
+      return new PackedImageModel(this.width, this.height, this.maxValue, pixels);
+    }
+  }
+}
@@ -5,17 +5,19 @@ import java.awt.Dimension;
 import java.awt.GridBagLayout;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
-import java.io.BufferedWriter;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.awt.image.BufferedImage;
+import java.io.Closeable;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Scanner;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
 
 import javax.swing.JPanel;
-import javax.swing.JLabel;
 import javax.swing.JScrollPane;
 import javax.swing.JButton;
 import javax.swing.JOptionPane;
@@ -23,31 +25,65 @@ import javax.swing.JFileChooser;
 import javax.swing.JComboBox;
 import javax.swing.JFrame;
 import javax.swing.BoxLayout;
-import javax.swing.ImageIcon;
+import javax.swing.JProgressBar;
+import javax.swing.SwingWorker;
 
 import controller.ImageControllerImpl;
+import model.ColorFrequencies;
 import model.Histogram;
 import model.HistogramPanel;
+import model.HistogramService;
 import model.ImageModel;
-import model.ImageModelImpl;
+import model.ImagePyramid;
 import model.Matrix;
+import model.Orientation;
+import model.PointOperation;
 
 /**
  * This class is our GUI. It extends JFrame and contains all the functionality required to
- * make a functional image editor with Java Swing.
+ * make a functional image editor with Java Swing. Loading and editing the image is done by an
+ * {@link OperationRunner} on worker threads, so the window keeps responding, and this class only
+ * asks for the operations and shows what comes back.
+ *
+ * <p>Images bigger than the view are edited as a proxy: a copy shrunk to fit the view, which the
+ * operations are done to while the user picks them, so they take the same time however big the
+ * image is. The operations that were done are recorded, and when the image is saved they are done
+ * again to the full size image. Filters work on 3 by 3 pixels, so sharpen and blur look stronger
+ * on the proxy than they will be on the saved image.
+ *
+ * <p>Every job the runner publishes can be undone and redone, through an {@link EditHistory}
+ * that keeps the images it needs under a budget of bytes.
  */
-public class GUIManager extends JFrame implements ActionListener {
+public class GUIManager extends JFrame implements ActionListener, OperationRunner.Listener {
+  // How big the view of the image is, and so the most the proxy can be in either direction
+  private static final int VIEW_SIZE = 600;
 
   private final JPanel imagePanel;
   private final JButton loadButton;
   private final JButton saveButton;
   private final JButton resetButton;
+  private final JButton undoButton;
+  private final JButton redoButton;
+  private final JButton cancelButton;
+  private final JProgressBar progressBar;
   private final JComboBox operations;
-  private final JLabel imageOnScreen;
+  private final ImageCanvas imageOnScreen;
+  private final JButton zoomInButton;
+  private final JButton zoomOutButton;
   private final ImageControllerImpl imageController;
+  private final OperationRunner runner;
+  private final List<OperationRunner.Step> recordedSteps;
+  private final EditHistory history;
   private Histogram[] histograms;
+  private HistogramPanel histogramPanel;
   private ImageModel originalImage;
+  private ImageModel originalProxy;
   private ImageModel imageToBeMutated;
+  // The load that is running or waiting to be shown, if there is one
+  private Loader pendingLoad;
+  // How many saves are replaying steps, and the full size images they may still be reading
+  private int savesRunning;
+  private final List<ImageModel> retiredImages;
 
   /**
    * This constructor initializes all of our class variables and adds all JPanels
@@ -65,9 +101,9 @@ public class GUIManager extends JFrame implements ActionListener {
     mainPanel.add(operationsPanel);
     this.imagePanel = new JPanel();
     imagePanel.setLayout(new FlowLayout());
-    imageOnScreen = new JLabel();
+    imageOnScreen = new ImageCanvas();
     JScrollPane imageScrollPane = new JScrollPane(imageOnScreen);
-    imageScrollPane.setPreferredSize(new Dimension(600, 600));
+    imageScrollPane.setPreferredSize(new Dimension(VIEW_SIZE, VIEW_SIZE));
     imagePanel.add(imageScrollPane);
     histograms = new Histogram[]{};
     mainPanel.add(imagePanel);
@@ -77,8 +113,23 @@ public class GUIManager extends JFrame implements ActionListener {
     this.loadButton.addActionListener(this);
     this.saveButton.addActionListener(this);
     this.resetButton.addActionListener(this);
+    this.zoomInButton = new JButton("Zoom in");
+    this.zoomOutButton = new JButton("Zoom out");
+    this.zoomInButton.addActionListener(this);
+    this.zoomOutButton.addActionListener(this);
+    this.undoButton = new JButton("Undo");
+    this.redoButton = new JButton("Redo");
+    this.undoButton.addActionListener(this);
+    this.redoButton.addActionListener(this);
+    this.undoButton.setEnabled(false);
+    this.redoButton.setEnabled(false);
+    this.cancelButton = new JButton("Cancel");
+    this.cancelButton.addActionListener(this);
+    this.cancelButton.setEnabled(false);
+    this.progressBar = new JProgressBar();
     String[] operationsThatTheUserCanPerform = {"sepia", "greyscale", "horizontal flip",
-        "vertical flip", "sharpen", "blur", "brighten", "darken",
+        "vertical flip", "rotate 90", "rotate 180", "rotate 270", "transpose", "sharpen", "blur",
+        "brighten", "darken",
         "greyscale-red-component", "greyscale-green-component", "greyscale-blue-component",
         "greyscale-value-component", "greyscale-intensity-component",
         "greyscale-luma-component"};
@@ -86,9 +137,25 @@ public class GUIManager extends JFrame implements ActionListener {
     operations.addActionListener(this);
     operationsPanel.add(operations);
     this.imageController = new ImageControllerImpl();
+    this.runner = new OperationRunner(new HistogramService(), this);
+    this.recordedSteps = new ArrayList<>();
+    this.history = new EditHistory();
+    this.retiredImages = new ArrayList<>();
+    this.addWindowListener(new WindowAdapter() {
+      @Override
+      public void windowClosing(WindowEvent e) {
+        GUIManager.this.closeImages();
+      }
+    });
     operationsPanel.add(loadButton);
     operationsPanel.add(saveButton);
     operationsPanel.add(resetButton);
+    operationsPanel.add(undoButton);
+    operationsPanel.add(redoButton);
+    operationsPanel.add(zoomInButton);
+    operationsPanel.add(zoomOutButton);
+    operationsPanel.add(progressBar);
+    operationsPanel.add(cancelButton);
     this.pack();
     this.setVisible(true);
     this.setResizable(false);
@@ -107,120 +174,248 @@ public class GUIManager extends JFrame implements ActionListener {
       }
     } else if (e.getSource() == resetButton) {
       if (imageToBeMutated != null && originalImage != null) {
-        imageOnScreen.setIcon(new ImageIcon(originalImage.returnAsBufferedImage()));
-        imageToBeMutated = originalImage;
-        this.setHistogram();
+        recordedSteps.clear();
+        history.clear();
+        this.updateHistoryButtons();
+        imageToBeMutated = originalProxy;
+        this.dropPendingLoad();
+        runner.restart(originalProxy);
+      }
+    } else if (e.getSource() == undoButton) {
+      if (history.canUndo()) {
+        this.undoOrRedo(true);
+      }
+    } else if (e.getSource() == redoButton) {
+      if (history.canRedo()) {
+        this.undoOrRedo(false);
+      }
+    } else if (e.getSource() == zoomInButton) {
+      imageOnScreen.setZoom(Math.min(ImageCanvas.MAX_ZOOM, imageOnScreen.getZoom() * 2));
+    } else if (e.getSource() == zoomOutButton) {
+      imageOnScreen.setZoom(Math.max(ImageCanvas.MIN_ZOOM, imageOnScreen.getZoom() / 2));
+    } else if (e.getSource() == cancelButton) {
+      runner.cancel();
+      this.dropPendingLoad();
+    }
+  }
+
+  // Undoes or redoes a job, taking its steps off the recorded ones or putting them back. The
+  // image is set right away, so another undo straight after this one starts from it, and the
+  // runner draws it and counts its histograms. Anything still running or waiting is cancelled,
+  // and a load that is cancelled this way closes its image as soon as it is read.
+  private void undoOrRedo(boolean undo) {
+    EditHistory.Change change;
+    try {
+      change = undo ? history.undo(imageToBeMutated) : history.redo(imageToBeMutated);
+    } catch (IOException ex) {
+      this.showIOError();
+      return;
+    }
+    if (undo) {
+      int size = recordedSteps.size();
+      recordedSteps.subList(size - change.getSteps().size(), size).clear();
+    } else {
+      recordedSteps.addAll(change.getSteps());
+    }
+    this.updateHistoryButtons();
+    imageToBeMutated = change.getImage();
+    this.dropPendingLoad();
+    runner.restart(imageToBeMutated);
+  }
+
+  // Only lets the undo and redo buttons be pressed when there is something to undo or redo.
+  private void updateHistoryButtons() {
+    undoButton.setEnabled(history.canUndo());
+    redoButton.setEnabled(history.canRedo());
+  }
+
+  @Override
+  public void progress(int done, int total) {
+    cancelButton.setEnabled(total > 0);
+    progressBar.setMaximum(Math.max(total, 1));
+    progressBar.setValue(done);
+  }
+
+  @Override
+  public void published(ImageModel image, BufferedImage picture, ColorFrequencies frequencies,
+                        List<OperationRunner.Step> steps, boolean loaded) {
+    if (loaded) {
+      Loader loader = (Loader) steps.get(0);
+      if (loader == pendingLoad) {
+        pendingLoad = null;
       }
+      this.retire(originalImage);
+      originalImage = loader.getFull();
+      originalProxy = image;
+      recordedSteps.clear();
+      history.clear();
+    } else if (!steps.isEmpty()) {
+      // a job with no steps is a reset, undo or redo, which have been dealt with already
+      recordedSteps.addAll(steps);
+      history.record(imageToBeMutated, steps);
     }
+    this.updateHistoryButtons();
+    imageToBeMutated = image;
+    imageOnScreen.setPicture(picture, ImagePyramid.of(image));
+    this.setHistogram(frequencies);
   }
 
-  // This method sets the histogram to be displayed based on the current images RGB values.
-  private void setHistogram() {
-    Histogram redHistogram = new Histogram(imageToBeMutated, "red");
+  @Override
+  public void histogramsCounted(ImageModel image, ColorFrequencies frequencies) {
+    // the image may have been changed again while these were being counted
+    if (image == imageToBeMutated) {
+      this.setHistogram(frequencies);
+    }
+  }
+
+  @Override
+  public void failed(Exception e) {
+    if (e instanceof FileNotFoundException) {
+      JOptionPane.showMessageDialog(GUIManager.this, e.getMessage(),
+              "File not found!", JOptionPane.ERROR_MESSAGE);
+    } else if (e instanceof IOException) {
+      this.showIOError();
+    } else {
+      JOptionPane.showMessageDialog(GUIManager.this, e.getMessage(),
+              "Operation failed", JOptionPane.ERROR_MESSAGE);
+    }
+  }
+
+  // This method sets the histogram to be displayed based on the current images RGB values. Big
+  // images are shown with histograms estimated from a sample first. The panels are only made
+  // the first time, after that the new counts are put into them.
+  private void setHistogram(ColorFrequencies frequencies) {
+    if (histogramPanel != null) {
+      histogramPanel.update(frequencies);
+      return;
+    }
+    Histogram redHistogram = new Histogram(frequencies, "red");
     redHistogram.setPreferredSize(new Dimension(300, 300));
-    Histogram greenHistogram = new Histogram(imageToBeMutated, "green");
+    Histogram greenHistogram = new Histogram(frequencies, "green");
     greenHistogram.setPreferredSize(new Dimension(300, 300));
-    Histogram blueHistogram = new Histogram(imageToBeMutated, "blue");
+    Histogram blueHistogram = new Histogram(frequencies, "blue");
     blueHistogram.setPreferredSize(new Dimension(300, 300));
-    Histogram intensityHistogram = new Histogram(imageToBeMutated, "intensity");
+    Histogram intensityHistogram = new Histogram(frequencies, "intensity");
     intensityHistogram.setPreferredSize(new Dimension(300, 300));
     histograms = new Histogram[]{redHistogram, greenHistogram, blueHistogram, intensityHistogram};
-    HistogramPanel histogramPanel = new HistogramPanel(histograms);
+    histogramPanel = new HistogramPanel(histograms);
     imagePanel.add(histogramPanel);
-    if (imagePanel.getComponentCount() > 2) {
-      imagePanel.remove(1);
-    }
     this.pack();
   }
 
   /**
-   * Takes in an operation and performs the methods accordingly.
+   * Takes in an operation and asks the runner to perform it.
    *
    * @param s The type of operation the user is performing
    */
   private void performGUIMethods(String s) {
+    OperationRunner.Step step;
     switch (s) {
       case "[sepia]":
-        imageToBeMutated = imageToBeMutated.colorTransformation(Matrix.SEPIA);
+        step = image -> image.colorTransformation(Matrix.SEPIA);
         break;
       case "[greyscale]":
-        imageToBeMutated = imageToBeMutated.colorTransformation(Matrix.LUMA);
+        step = image -> image.colorTransformation(Matrix.LUMA);
         break;
       case "[horizontal flip]":
-        imageToBeMutated = imageToBeMutated.horizontalFlip();
+        step = orientStep(Orientation.FLIP_HORIZONTAL);
         break;
       case "[vertical flip]":
-        imageToBeMutated = imageToBeMutated.verticalFlip();
+        step = orientStep(Orientation.FLIP_VERTICAL);
+        break;
+      case "[rotate 90]":
+        step = orientStep(Orientation.ROTATE_90);
+        break;
+      case "[rotate 180]":
+        step = orientStep(Orientation.ROTATE_180);
+        break;
+      case "[rotate 270]":
+        step = orientStep(Orientation.ROTATE_270);
+        break;
+      case "[transpose]":
+        step = orientStep(Orientation.TRANSPOSE);
         break;
       case "[sharpen]":
-        imageToBeMutated = imageToBeMutated.filter(Matrix.SHARPEN);
+        step = image -> image.filter(Matrix.SHARPEN);
         break;
       case "[blur]":
-        imageToBeMutated = imageToBeMutated.filter(Matrix.GAUSSIAN_BLUR);
+        step = image -> image.filter(Matrix.GAUSSIAN_BLUR);
         break;
       case "[brighten]":
-        this.enhanceColor("brighten");
+        step = this.enhanceColor("brighten");
         break;
       case "[darken]":
-        this.enhanceColor("darken");
+        step = this.enhanceColor("darken");
         break;
       case "[greyscale-red-component]":
-        imageToBeMutated = imageToBeMutated.greyScale("red");
+        step = image -> image.greyScale("red");
         break;
       case "[greyscale-green-component]":
-        imageToBeMutated = imageToBeMutated.greyScale("green");
+        step = image -> image.greyScale("green");
         break;
       case "[greyscale-blue-component]":
-        imageToBeMutated = imageToBeMutated.greyScale("blue");
+        step = image -> image.greyScale("blue");
         break;
       case "[greyscale-value-component]":
-        imageToBeMutated = imageToBeMutated.greyScale("value");
+        step = image -> image.greyScale("value");
         break;
       case "[greyscale-intensity-component]":
-        imageToBeMutated = imageToBeMutated.greyScale("intensity");
+        step = image -> image.greyScale("intensity");
         break;
       case "[greyscale-luma-component]":
-        imageToBeMutated = imageToBeMutated.greyScale("luma");
+        step = image -> image.greyScale("luma");
         break;
       default:
         JOptionPane.showMessageDialog(GUIManager.this,
                 "We can't do this, please try again",
                 "Dropdown error",
                 JOptionPane.INFORMATION_MESSAGE);
+        return;
+    }
+    if (step != null) {
+      runner.submit(step);
     }
-    this.setHistogram();
-    imageOnScreen.setIcon(new ImageIcon(imageToBeMutated.returnAsBufferedImage()));
   }
 
-  // Helper that performs the brighten and darken operations
-  private void enhanceColor(String enhanceType) {
+  // Helper that asks how much to brighten or darken by, and gives back the step that does it, or
+  // null if the user didn't give a good amount
+  private OperationRunner.Step enhanceColor(String enhanceType) {
     String resp = "Please enter a positive integer to specify " +
             "how much you want to enhance your image by";
     String input = JOptionPane.showInputDialog(this, resp);
-    if (input != null) {
-      int colorToAdjust = -1;
-      try {
-        colorToAdjust = Integer.parseInt(input);
-      } catch (NumberFormatException e) {
-        // Do nothing, since we initialized the value to be -1 it will pass the below if statement
-        // and show an error message.
-      }
-      if (colorToAdjust < 0) {
-        JOptionPane.showMessageDialog(GUIManager.this,
-                "Please enter a positive integer",
-                "Didn't enter a positive integer!", JOptionPane.ERROR_MESSAGE);
-        return;
-      }
-      imageToBeMutated = imageToBeMutated.changeExposure(enhanceType, colorToAdjust);
-      imageOnScreen.setIcon(new ImageIcon(imageToBeMutated.returnAsBufferedImage()));
+    if (input == null) {
+      return null;
+    }
+    int colorToAdjust = -1;
+    try {
+      colorToAdjust = Integer.parseInt(input);
+    } catch (NumberFormatException e) {
+      // Do nothing, since we initialized the value to be -1 it will pass the below if statement
+      // and show an error message.
     }
+    if (colorToAdjust < 0) {
+      JOptionPane.showMessageDialog(GUIManager.this,
+              "Please enter a positive integer",
+              "Didn't enter a positive integer!", JOptionPane.ERROR_MESSAGE);
+      return null;
+    }
+    PointOperation exposure = PointOperation.exposure(
+            enhanceType.equals("brighten") ? colorToAdjust : -colorToAdjust);
+    // clamping merges values, so only an amount of 0 can be undone without a snapshot
+    PointOperation inverse = exposure.inverse();
+    return EditHistory.reversible(image -> image.pointOperation(exposure),
+            inverse == null ? null : image -> image.pointOperation(inverse));
+  }
 
+  // Makes the step that flips or turns the image, which is undone by the opposite orientation.
+  private static OperationRunner.Step orientStep(Orientation orientation) {
+    return EditHistory.reversible(image -> image.orient(orientation),
+            image -> image.orient(orientation.inverse()));
   }
 
   // Helper method that saves the image to whatever directory the user specifies.
   private void saveImage() {
     if (imageToBeMutated != null && originalImage != null) {
-      ImageView view = new ImageViewImpl(imageToBeMutated);
       final JFileChooser fileChooser = new JFileChooser(".");
       int returnValue = fileChooser.showSaveDialog(GUIManager.this);
       if (returnValue == JFileChooser.APPROVE_OPTION) {
@@ -228,23 +423,17 @@ public class GUIManager extends JFrame implements ActionListener {
         String[] fileTypeOfImageSave = fileName.split("\\.");
         String strToCheckSave = fileTypeOfImageSave[fileTypeOfImageSave.length - 1];
         if (ImageControllerImpl.checkIfNotPPM(strToCheckSave)) {
-          try {
-            view.saveBufferedImage(strToCheckSave, fileName);
-          } catch (IOException ex) {
-            this.showIOError();
-          }
+          this.saveInBackground(view -> view.saveBufferedImage(strToCheckSave, fileName));
         } else if (strToCheckSave.equals("ppm")) {
-          BufferedWriter writer = null;
-          try {
-            writer = new BufferedWriter(new FileWriter(fileName));
-          } catch (IOException ex) {
-            this.showIOError();
-          }
-          try {
-            view.saveFile(writer);
-          } catch (IOException ex) {
-            this.showIOError();
+          int saveRaw = JOptionPane.showConfirmDialog(GUIManager.this,
+                  "Save as a raw (P6) ppm? Raw files are smaller and faster to load, "
+                          + "choose no for a plain text (P3) ppm.",
+                  "Ppm format", JOptionPane.YES_NO_OPTION);
+          if (saveRaw == JOptionPane.CLOSED_OPTION) {
+            return;
           }
+          boolean raw = saveRaw == JOptionPane.YES_OPTION;
+          this.saveInBackground(view -> view.savePPM(fileName, raw));
         } else {
           JOptionPane.showMessageDialog(GUIManager.this,
                   "Please make sure the file type you want to save is valid. " +
@@ -256,6 +445,122 @@ public class GUIManager extends JFrame implements ActionListener {
     }
   }
 
+  // Does the recorded operations again to the full size image and saves it, on a worker so the
+  // window keeps responding. Images that fit in the view were never shrunk, so those are saved
+  // as they are.
+  private void saveInBackground(Save save) {
+    final ImageModel original = originalImage;
+    final ImageModel edited = imageToBeMutated;
+    final boolean proxy = originalProxy != originalImage;
+    final List<OperationRunner.Step> steps = new ArrayList<>(recordedSteps);
+    saveButton.setEnabled(false);
+    savesRunning++;
+    new SwingWorker<Void, Void>() {
+      @Override
+      protected Void doInBackground() throws IOException {
+        ImageModel image = edited;
+        if (!proxy) {
+          save.to(new ImageViewImpl(image));
+          return null;
+        }
+        image = original;
+        try {
+          for (OperationRunner.Step step : steps) {
+            ImageModel next = step.apply(image);
+            if (next != image) {
+              GUIManager.release(image, original);
+            }
+            image = next;
+          }
+          save.to(new ImageViewImpl(image));
+        } finally {
+          GUIManager.release(image, original);
+        }
+        return null;
+      }
+
+      @Override
+      protected void done() {
+        saveButton.setEnabled(true);
+        GUIManager.this.saveDone();
+        try {
+          this.get();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+          if (e.getCause() instanceof IOException) {
+            GUIManager.this.showIOError();
+          } else {
+            JOptionPane.showMessageDialog(GUIManager.this, e.getCause().getMessage(),
+                    "Unable to save file", JOptionPane.ERROR_MESSAGE);
+          }
+        }
+      }
+    }.execute();
+  }
+
+  // Closes an image that was only made to be saved, so the file behind an image too big for
+  // memory is given back right away. The full size image itself is kept for the next save.
+  private static void release(ImageModel image, ImageModel original) throws IOException {
+    if (image != original && image instanceof Closeable) {
+      ((Closeable) image).close();
+    }
+  }
+
+  // Closes a full size image that isn't the current one anymore. If a save is still replaying
+  // steps on it, it is closed once the saves are done instead.
+  private void retire(ImageModel image) {
+    if (!(image instanceof Closeable)) {
+      return;
+    }
+    if (savesRunning > 0) {
+      retiredImages.add(image);
+    } else {
+      closeQuietly(image);
+    }
+  }
+
+  // Closes the images that were waiting for the saves to be done, once the last one is.
+  private void saveDone() {
+    savesRunning--;
+    if (savesRunning == 0) {
+      for (ImageModel image : retiredImages) {
+        closeQuietly(image);
+      }
+      retiredImages.clear();
+    }
+  }
+
+  // Drops the load that is running or waiting, so its image is closed as soon as it is loaded.
+  private void dropPendingLoad() {
+    if (pendingLoad != null) {
+      pendingLoad.drop();
+      pendingLoad = null;
+    }
+  }
+
+  // Closes every full size image when the window is closed, so their files are given back.
+  private void closeImages() {
+    runner.shutdown();
+    this.dropPendingLoad();
+    closeQuietly(originalImage);
+    for (ImageModel image : retiredImages) {
+      closeQuietly(image);
+    }
+    retiredImages.clear();
+  }
+
+  // Closes an image if it keeps a file open, like an image too big for memory does.
+  private static void closeQuietly(ImageModel image) {
+    if (image instanceof Closeable) {
+      try {
+        ((Closeable) image).close();
+      } catch (IOException e) {
+        // its temporary file is deleted when the program ends anyway
+      }
+    }
+  }
+
   // Abstracted helper to show an IO error so that we didn't have to type an error message 4
   // different times
   private void showIOError() {
@@ -274,56 +579,70 @@ public class GUIManager extends JFrame implements ActionListener {
       File file = fileChooser.getSelectedFile();
       String[] fileTypeOfImageSave = file.getAbsolutePath().split("\\.");
       String fileType = fileTypeOfImageSave[fileTypeOfImageSave.length - 1];
-      StringBuilder stringBuilder = new StringBuilder();
-      Scanner sc = null;
-      try {
-        if (ImageControllerImpl.checkIfNotPPM(fileType)) {
-          stringBuilder =
-                  this.imageController.getImageAsStringBuilder(fileChooser.
-                          getSelectedFile().getAbsolutePath());
-          this.setImage(sc, stringBuilder);
-        } else if (fileType.equals("ppm")) {
-
-          try {
-            sc = new Scanner(new FileInputStream(file));
-          } catch (FileNotFoundException ex) {
-            JOptionPane.showMessageDialog(GUIManager.this,
-                    ("File " + file + " not found!"),
-                    "File not found!", JOptionPane.ERROR_MESSAGE);
-            return;
-          }
+      if (!ImageControllerImpl.checkIfNotPPM(fileType) && !fileType.equals("ppm")) {
+        JOptionPane.showMessageDialog(GUIManager.this,
+                "The file you submitted is not supported by us, please see the USEME " +
+                        "for more details",
+                "Not a valid file", JOptionPane.ERROR_MESSAGE);
+        return;
+      }
+      // reading and shrinking the file is done on a worker too, and errors come back to failed
+      this.dropPendingLoad();
+      pendingLoad = new Loader(file.getAbsolutePath());
+      runner.load(pendingLoad);
+    }
+  }
 
-          while (sc.hasNextLine()) {
-            String s = sc.nextLine();
-            if (s.charAt(0) != '#') {
-              stringBuilder.append(s + System.lineSeparator());
-            }
-          }
-          this.setImage(sc, stringBuilder);
+  // Saves an image through a view, which is made once the image is ready.
+  private interface Save {
+    void to(ImageView view) throws IOException;
+  }
+
+  // The step that loads an image. It keeps the full size image and gives back the proxy, which
+  // is the image itself when that fits in the view. A load that is dropped before it is shown
+  // closes its full size image, since nothing else will.
+  private final class Loader implements OperationRunner.Step {
+    private final String path;
+    private ImageModel full;
+    private boolean dropped;
+
+    Loader(String path) {
+      this.path = path;
+    }
+
+    @Override
+    public ImageModel apply(ImageModel image) throws IOException {
+      ImageModel loaded = GUIManager.this.imageController.loadImageFile(this.path);
+      ImageModel proxy;
+      try {
+        // the halved copies of the full image are only needed to make the proxy, so they
+        // aren't kept
+        proxy = new ImagePyramid(loaded).fit(VIEW_SIZE, VIEW_SIZE);
+      } catch (RuntimeException e) {
+        closeQuietly(loaded);
+        throw e;
+      }
+      synchronized (this) {
+        if (this.dropped) {
+          closeQuietly(loaded);
         } else {
-          JOptionPane.showMessageDialog(GUIManager.this,
-                  "The file you submitted is not supported by us, please see the USEME " +
-                          "for more details",
-                  "Not a valid file", JOptionPane.ERROR_MESSAGE);
-          return;
+          this.full = loaded;
         }
-
-      } catch (IOException ex) {
-        this.showIOError();
       }
-      this.setHistogram();
-      this.pack();
+      return proxy;
     }
-  }
 
-  // Takes in a scanner and a string builder and sets the image on screen
-  private void setImage(Scanner sc, StringBuilder stringBuilder) {
-    sc = new Scanner(stringBuilder.toString());
-    Scanner sc2 = new Scanner(stringBuilder.toString());
-    imageToBeMutated = new ImageModelImpl(sc);
-    originalImage = new ImageModelImpl(sc2);
-    imageOnScreen.setIcon(new ImageIcon(imageToBeMutated.returnAsBufferedImage()));
-  }
+    // Gets the full size image, or null if it hasn't been loaded.
+    synchronized ImageModel getFull() {
+      return this.full;
+    }
 
+    // Closes the full size image if it has been loaded, or as soon as it is.
+    synchronized void drop() {
+      this.dropped = true;
+      closeQuietly(this.full);
+      this.full = null;
+    }
+  }
 
 }
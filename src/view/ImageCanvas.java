@@ -0,0 +1,308 @@
+package view;
+
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+
+import javax.swing.JComponent;
+import javax.swing.JViewport;
+
+import model.BufferedImageConverter;
+import model.ImagePyramid;
+
+/**
+ * Shows an image in the GUI, drawing straight from a buffered image that shares the raster of
+ * the image (see {@link model.BufferedImageConverter#view(model.ImageModel)}), so showing a new
+ * image doesn't copy its pixels or make a new icon. Only the part of the image that is on screen
+ * and needs painting is drawn. When a new image of the same size is shown, only the rectangle
+ * around the pixels that changed is repainted.
+ *
+ * <p>The image can be zoomed, which only changes how big it is drawn, and when the canvas is in
+ * a scroll pane it can be panned by dragging it with the mouse as well as with the scroll bars.
+ * When it is zoomed out and the pyramid of the image was given with it, the image is drawn from
+ * the smallest level of the pyramid that is still at least as big as it is drawn, so zooming out
+ * far averages the pixels instead of skipping most of them.
+ */
+public class ImageCanvas extends JComponent {
+  /**
+   * The smallest zoom there can be.
+   */
+  public static final double MIN_ZOOM = 1.0 / 16;
+  /**
+   * The biggest zoom there can be.
+   */
+  public static final double MAX_ZOOM = 16;
+  private static final long serialVersionUID = 1L;
+
+  private BufferedImage picture;
+  private ImagePyramid pyramid;
+  private double zoom;
+  private Rectangle lastDirty;
+  // The level of the pyramid that was drawn last, so it isn't wrapped again for every repaint
+  private int shownLevel;
+  private BufferedImage levelPicture;
+
+  /**
+   * Constructor that makes an empty canvas at 100% zoom.
+   */
+  public ImageCanvas() {
+    this.zoom = 1;
+    this.setOpaque(true);
+    MouseAdapter panner = new MouseAdapter() {
+      private Point start;
+
+      @Override
+      public void mousePressed(MouseEvent e) {
+        this.start = e.getPoint();
+      }
+
+      @Override
+      public void mouseDragged(MouseEvent e) {
+        if (this.start == null || !(getParent() instanceof JViewport)) {
+          return;
+        }
+        // move the view the other way to the mouse, so the image follows it
+        JViewport viewport = (JViewport) getParent();
+        Rectangle visible = viewport.getViewRect();
+        visible.translate(this.start.x - e.getX(), this.start.y - e.getY());
+        scrollRectToVisible(visible);
+      }
+    };
+    this.addMouseListener(panner);
+    this.addMouseMotionListener(panner);
+  }
+
+  /**
+   * Shows a new image. If it is the same size as the last one, only the part that changed is
+   * repainted, otherwise the canvas is laid out and painted again.
+   *
+   * @param picture the image to show, which is not copied and must not change afterwards, or
+   *                null to show nothing
+   */
+  public void setPicture(BufferedImage picture) {
+    this.setPicture(picture, null);
+  }
+
+  /**
+   * Shows a new image, drawing it from the levels of its pyramid when it is zoomed out.
+   *
+   * @param picture the image to show, which is not copied and must not change afterwards, or
+   *                null to show nothing
+   * @param pyramid the pyramid of the same image, or null to always draw the picture itself
+   */
+  public void setPicture(BufferedImage picture, ImagePyramid pyramid) {
+    BufferedImage old = this.picture;
+    this.picture = picture;
+    this.pyramid = picture == null ? null : pyramid;
+    this.levelPicture = null;
+    if (old == null || picture == null || old.getWidth() != picture.getWidth()
+            || old.getHeight() != picture.getHeight()) {
+      this.lastDirty = null;
+      this.revalidate();
+      this.repaint();
+      return;
+    }
+    Rectangle changed = changedRegion(old, picture);
+    this.lastDirty = changed;
+    if (changed != null) {
+      // averaged pixels of a smaller level can reach a little past the pixels that changed
+      this.repaint(this.toScreen(this.pyramid == null || this.zoom >= 1 ? changed
+              : this.grow(changed)));
+    }
+  }
+
+  /**
+   * Gets the image that is shown.
+   *
+   * @return the image, or null if nothing is shown
+   */
+  public BufferedImage getPicture() {
+    return this.picture;
+  }
+
+  /**
+   * Gets the part of the image that was repainted the last time a new image of the same size
+   * was shown.
+   *
+   * @return the rectangle of the image that changed, in pixels of the image, or null if nothing
+   *         changed or the whole canvas was repainted
+   */
+  public Rectangle getLastDirtyRegion() {
+    return this.lastDirty == null ? null : new Rectangle(this.lastDirty);
+  }
+
+  /**
+   * Sets how big the image is drawn. The pixels aren't copied or scaled, they are just drawn
+   * bigger or smaller.
+   *
+   * @param zoom how many pixels on screen one pixel of the image takes in each direction
+   * @throws IllegalArgumentException if the zoom is outside {@link #MIN_ZOOM} and
+   *                                  {@link #MAX_ZOOM}
+   */
+  public void setZoom(double zoom) throws IllegalArgumentException {
+    if (!(zoom >= MIN_ZOOM && zoom <= MAX_ZOOM)) {
+      throw new IllegalArgumentException("Zoom must be between " + MIN_ZOOM + " and " + MAX_ZOOM);
+    }
+    this.zoom = zoom;
+    this.revalidate();
+    this.repaint();
+  }
+
+  /**
+   * Gets how big the image is drawn.
+   *
+   * @return how many pixels on screen one pixel of the image takes in each direction
+   */
+  public double getZoom() {
+    return this.zoom;
+  }
+
+  @Override
+  public Dimension getPreferredSize() {
+    if (this.isPreferredSizeSet() || this.picture == null) {
+      return super.getPreferredSize();
+    }
+    return new Dimension((int) Math.ceil(this.picture.getWidth() * this.zoom),
+            (int) Math.ceil(this.picture.getHeight() * this.zoom));
+  }
+
+  @Override
+  protected void paintComponent(Graphics g) {
+    Rectangle clip = g.getClipBounds();
+    if (clip == null) {
+      clip = new Rectangle(0, 0, this.getWidth(), this.getHeight());
+    }
+    g.setColor(this.getBackground());
+    g.fillRect(clip.x, clip.y, clip.width, clip.height);
+    if (this.picture == null) {
+      return;
+    }
+    BufferedImage source = this.source();
+    // how many pixels on screen one pixel of the source takes, which is more than the zoom for
+    // a smaller level
+    double scaleX = this.zoom * this.picture.getWidth() / source.getWidth();
+    double scaleY = this.zoom * this.picture.getHeight() / source.getHeight();
+    // only the pixels of the source under the clip are drawn
+    int firstX = Math.max(0, (int) Math.floor(clip.x / scaleX));
+    int firstY = Math.max(0, (int) Math.floor(clip.y / scaleY));
+    int lastX = Math.min(source.getWidth(), (int) Math.ceil(clip.getMaxX() / scaleX));
+    int lastY = Math.min(source.getHeight(), (int) Math.ceil(clip.getMaxY() / scaleY));
+    if (firstX >= lastX || firstY >= lastY) {
+      return;
+    }
+    Graphics2D g2d = (Graphics2D) g;
+    // zoomed in pixels are shown as squares, zoomed out ones are smoothed a little
+    g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, scaleX >= 1 && scaleY >= 1
+            ? RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR
+            : RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+    g2d.drawImage(source,
+            (int) Math.floor(firstX * scaleX), (int) Math.floor(firstY * scaleY),
+            (int) Math.ceil(lastX * scaleX), (int) Math.ceil(lastY * scaleY),
+            firstX, firstY, lastX, lastY, null);
+  }
+
+  // Gets the image to draw from, which is a level of the pyramid when the image is zoomed out
+  // and there is one, and the picture itself otherwise.
+  private BufferedImage source() {
+    int level = this.pyramid == null ? 0 : this.pyramid.levelForScale(this.zoom);
+    if (level == 0) {
+      return this.picture;
+    }
+    if (this.levelPicture == null || this.shownLevel != level) {
+      this.levelPicture = BufferedImageConverter.view(this.pyramid.getLevel(level));
+      this.shownLevel = level;
+    }
+    return this.levelPicture;
+  }
+
+  // Grows a rectangle of pixels of the image to the whole blocks of the level that is drawn,
+  // and one more block on each side, since a level that was rounded up is drawn a little
+  // stretched.
+  private Rectangle grow(Rectangle region) {
+    int block = 1 << this.pyramid.levelForScale(this.zoom);
+    int x = Math.max(0, (region.x / block - 1) * block);
+    int y = Math.max(0, (region.y / block - 1) * block);
+    return new Rectangle(x, y, ((int) region.getMaxX() / block + 2) * block - x,
+            ((int) region.getMaxY() / block + 2) * block - y);
+  }
+
+  // Turns a rectangle of pixels of the image into the rectangle it covers on screen.
+  private Rectangle toScreen(Rectangle region) {
+    int x = (int) Math.floor(region.x * this.zoom);
+    int y = (int) Math.floor(region.y * this.zoom);
+    return new Rectangle(x, y, (int) Math.ceil(region.getMaxX() * this.zoom) - x,
+            (int) Math.ceil(region.getMaxY() * this.zoom) - y);
+  }
+
+  // Finds the smallest rectangle that holds every pixel that is different in the two images,
+  // which are the same size, or null if no pixel is. Images that share their array with a raster
+  // are compared straight from the arrays, others one row at a time.
+  private static Rectangle changedRegion(BufferedImage old, BufferedImage picture) {
+    int width = picture.getWidth();
+    int height = picture.getHeight();
+    int[] oldRow = new int[width];
+    int[] newRow = new int[width];
+    int[] oldData = packedData(old);
+    int[] newData = packedData(picture);
+    if (oldData != null && oldData == newData) {
+      return null;
+    }
+    int minX = width;
+    int maxX = -1;
+    int minY = -1;
+    int maxY = -1;
+    for (int y = 0; y < height; y++) {
+      int[] a = oldRow;
+      int[] b = newRow;
+      int offset = 0;
+      if (oldData != null && newData != null) {
+        a = oldData;
+        b = newData;
+        offset = y * width;
+      } else {
+        old.getRGB(0, y, width, 1, oldRow, 0, width);
+        picture.getRGB(0, y, width, 1, newRow, 0, width);
+      }
+      int left = 0;
+      while (left < width && a[offset + left] == b[offset + left]) {
+        left++;
+      }
+      if (left == width) {
+        continue;
+      }
+      int right = width - 1;
+      while (a[offset + right] == b[offset + right]) {
+        right--;
+      }
+      minX = Math.min(minX, left);
+      maxX = Math.max(maxX, right);
+      if (minY < 0) {
+        minY = y;
+      }
+      maxY = y;
+    }
+    if (minY < 0) {
+      return null;
+    }
+    return new Rectangle(minX, minY, maxX - minX + 1, maxY - minY + 1);
+  }
+
+  // Gets the array behind an RGB image laid out like a packed raster, or null if it isn't one.
+  private static int[] packedData(BufferedImage image) {
+    if (image.getType() != BufferedImage.TYPE_INT_RGB
+            || !(image.getRaster().getDataBuffer() instanceof DataBufferInt)
+            || image.getRaster().getDataBuffer().getOffset() != 0
+            || image.getRaster().getParent() != null) {
+      return null;
+    }
+    int[] data = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+    return data.length == image.getWidth() * image.getHeight() ? data : null;
+  }
+}
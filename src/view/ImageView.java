@@ -17,6 +17,16 @@ public interface ImageView {
    */
   void saveFile(BufferedWriter writer) throws IOException;
 
+  /**
+   * Saves a ppm file with the given name. The file is written row by row straight from the
+   * image, so this is the fast way to save a ppm.
+   *
+   * @param fileName name the user wants to call the file
+   * @param raw      true to save a raw (P6) ppm, false to save a plain (P3) ppm
+   * @throws IOException if an IO error occurs
+   */
+  void savePPM(String fileName, boolean raw) throws IOException;
+
   /**
    * Saves a buffered image to the directory this program is operating on in the user's computer.
    *
@@ -36,6 +36,11 @@ public class ImageViewImpl implements ImageView {
     writer.close();
   }
 
+  @Override
+  public void savePPM(String fileName, boolean raw) throws IOException {
+    PPMWriter.write(this.model, fileName, raw);
+  }
+
   @Override
   public boolean saveBufferedImage(String fileType, String fileName) throws IOException {
     BufferedImage imageToReturn = this.model.returnAsBufferedImage();
@@ -0,0 +1,303 @@
+package view;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.swing.SwingUtilities;
+
+import model.BufferedImageConverter;
+import model.ColorFrequencies;
+import model.HistogramService;
+import model.ImageModel;
+
+/**
+ * Runs the operations the GUI asks for on a pool of worker threads, so the window keeps
+ * responding while an image is loaded, blurred or sharpened. Operations are done one job at a
+ * time, in the order they were asked for. Operations that are asked for while a job is running
+ * wait, and the next job does all of them together and only shows the last image, so choosing
+ * five operations quickly doesn't draw four images nobody looks at.
+ *
+ * <p>When a job is done the new image, the picture of it and its histograms are given to the
+ * listener together on the event dispatch thread, so the screen never shows an image with the
+ * histograms of another one. Big images get estimated histograms then, and the exact ones are
+ * counted on another worker afterwards. Cancelling drops the running job and everything that is
+ * waiting, and the last image that was shown stays the current one. An operation that has already
+ * started can't be stopped half way, but its result is thrown away, and so is anything about it
+ * that was already on its way to the event dispatch thread.
+ */
+public class OperationRunner {
+  private static final int WORKERS = 2;
+
+  private final ExecutorService pool;
+  private final HistogramService histogramService;
+  private final Listener listener;
+  private final List<Step> waiting;
+  private ImageModel latest;
+  private Future<?> running;
+  // Goes up every time jobs are cancelled or an image is loaded, so older jobs know they are stale
+  private int generation;
+
+  /**
+   * Something that is told what the runner is doing. Every method is called on the event
+   * dispatch thread.
+   */
+  public interface Listener {
+    /**
+     * Called when a job has got further, and with 0 and 0 when nothing is running anymore.
+     *
+     * @param done  how many parts of the job are done
+     * @param total how many parts the job has
+     */
+    void progress(int done, int total);
+
+    /**
+     * Called when a job is done, with everything needed to show its image.
+     *
+     * @param image       the new current image
+     * @param picture     the image as a buffered image, which may share its pixels with the image
+     * @param frequencies the histograms of the image, which might only be estimated
+     * @param steps       the steps the job did, in order
+     * @param loaded      true if the image was just loaded, rather than made from the last one
+     */
+    void published(ImageModel image, BufferedImage picture, ColorFrequencies frequencies,
+                   List<Step> steps, boolean loaded);
+
+    /**
+     * Called when the exact histograms of an image have been counted, after estimated ones were
+     * published with it.
+     *
+     * @param image       the image that was counted
+     * @param frequencies its exact histograms
+     */
+    void histogramsCounted(ImageModel image, ColorFrequencies frequencies);
+
+    /**
+     * Called when an operation failed. The job it was in and everything waiting are dropped.
+     *
+     * @param e what went wrong
+     */
+    void failed(Exception e);
+  }
+
+  /**
+   * One operation for the runner to do.
+   */
+  public interface Step {
+    /**
+     * Does the operation.
+     *
+     * @param image the current image, which is null before one has been loaded
+     * @return the new image
+     * @throws IOException if the operation reads a file and that fails
+     */
+    ImageModel apply(ImageModel image) throws IOException;
+
+    /**
+     * Gets a step that undoes this one cheaply, without keeping the image from before it.
+     *
+     * @return the step that undoes this one, or null if there isn't one
+     */
+    default Step inverse() {
+      return null;
+    }
+  }
+
+  /**
+   * Constructor that makes a runner with its own worker threads.
+   *
+   * @param histogramService what gets the histograms of every new image
+   * @param listener         what is told about the jobs
+   * @throws IllegalArgumentException if either is null
+   */
+  public OperationRunner(HistogramService histogramService, Listener listener)
+          throws IllegalArgumentException {
+    if (histogramService == null || listener == null) {
+      throw new IllegalArgumentException("Histogram service and listener can't be null");
+    }
+    this.histogramService = histogramService;
+    this.listener = listener;
+    this.waiting = new ArrayList<>();
+    this.pool = Executors.newFixedThreadPool(WORKERS, runnable -> {
+      Thread thread = new Thread(runnable, "image-worker");
+      // workers shouldn't keep the program running after the window is closed
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  /**
+   * Loads a new image. Everything running or waiting is cancelled, and operations asked for
+   * after this are done to the loaded image.
+   *
+   * @param loader the step that loads the image and ignores the image it is given
+   * @throws IllegalArgumentException if the loader is null
+   */
+  public synchronized void load(Step loader) throws IllegalArgumentException {
+    if (loader == null) {
+      throw new IllegalArgumentException("Loader can't be null");
+    }
+    this.cancel();
+    this.latest = null;
+    List<Step> steps = new ArrayList<>();
+    steps.add(loader);
+    this.start(steps, true);
+  }
+
+  /**
+   * Makes an image the current one again, like after a reset. Everything running or waiting is
+   * cancelled, and the image is published as if a job with no steps made it.
+   *
+   * @param image the image to go back to
+   * @throws IllegalArgumentException if the image is null
+   */
+  public synchronized void restart(ImageModel image) throws IllegalArgumentException {
+    if (image == null) {
+      throw new IllegalArgumentException("Image can't be null");
+    }
+    this.cancel();
+    this.latest = image;
+    this.start(new ArrayList<>(), false);
+  }
+
+  /**
+   * Asks for an operation to be done to the current image. It starts right away if nothing is
+   * running, otherwise it waits and is done together with the others that waited.
+   *
+   * @param step the operation
+   * @throws IllegalArgumentException if the step is null
+   */
+  public synchronized void submit(Step step) throws IllegalArgumentException {
+    if (step == null) {
+      throw new IllegalArgumentException("Step can't be null");
+    }
+    this.waiting.add(step);
+    if (this.running == null) {
+      this.startWaiting();
+    }
+  }
+
+  /**
+   * Cancels the running job and everything waiting. Nothing from them is published.
+   */
+  public synchronized void cancel() {
+    this.generation++;
+    this.waiting.clear();
+    if (this.running != null) {
+      this.running.cancel(true);
+      this.running = null;
+      this.publishProgress(0, 0);
+    }
+  }
+
+  /**
+   * Checks if a job is running.
+   *
+   * @return true if a job is running
+   */
+  public synchronized boolean isBusy() {
+    return this.running != null;
+  }
+
+  /**
+   * Cancels everything and stops the worker threads. The runner can't be used afterwards.
+   */
+  public synchronized void shutdown() {
+    this.cancel();
+    this.pool.shutdownNow();
+  }
+
+  // Starts a job with all the steps that are waiting, if there are any.
+  private void startWaiting() {
+    if (this.waiting.isEmpty()) {
+      return;
+    }
+    List<Step> steps = new ArrayList<>(this.waiting);
+    this.waiting.clear();
+    this.start(steps, false);
+  }
+
+  // Starts a job doing the steps to the latest image.
+  private void start(List<Step> steps, boolean loading) {
+    int job = this.generation;
+    ImageModel image = this.latest;
+    this.running = this.pool.submit(() -> this.run(job, image, steps, loading));
+  }
+
+  // Does a job on a worker and publishes what it made, if it hasn't been cancelled meanwhile.
+  private void run(int job, ImageModel image, List<Step> steps, boolean loading) {
+    // one part for every step and one for drawing the picture and counting the histograms
+    int total = steps.size() + 1;
+    ImageModel result = image;
+    BufferedImage picture;
+    ColorFrequencies frequencies;
+    try {
+      for (int i = 0; i < steps.size(); i++) {
+        if (this.isStale(job)) {
+          return;
+        }
+        this.publishProgress(i, total);
+        result = steps.get(i).apply(result);
+      }
+      this.publishProgress(steps.size(), total);
+      // shares the raster of the image when it can, so nothing is copied to show it
+      picture = BufferedImageConverter.view(result);
+      frequencies = this.histogramService.approximate(result);
+    } catch (IOException | RuntimeException e) {
+      synchronized (this) {
+        if (job == this.generation) {
+          this.waiting.clear();
+          this.running = null;
+          this.publishProgress(0, 0);
+          this.publish(job, () -> this.listener.failed(e));
+        }
+      }
+      return;
+    }
+    ImageModel done = result;
+    synchronized (this) {
+      if (job != this.generation) {
+        return;
+      }
+      this.latest = done;
+      this.publish(job, () -> this.listener.published(done, picture, frequencies,
+              Collections.unmodifiableList(steps), loading));
+      this.running = null;
+      this.publishProgress(0, 0);
+      this.startWaiting();
+    }
+    if (!frequencies.isExact()) {
+      // the next job may already be running on the other worker while these are counted
+      ColorFrequencies exact = this.histogramService.exact(done);
+      SwingUtilities.invokeLater(() -> this.listener.histogramsCounted(done, exact));
+    }
+  }
+
+  // Checks if a job has been cancelled, or the worker doing it was interrupted.
+  private synchronized boolean isStale(int job) {
+    return job != this.generation || Thread.currentThread().isInterrupted();
+  }
+
+  // Tells the listener something on the event dispatch thread, unless the job it is about has
+  // been cancelled by the time it gets there.
+  private void publish(int job, Runnable message) {
+    SwingUtilities.invokeLater(() -> {
+      synchronized (this) {
+        if (job != this.generation) {
+          return;
+        }
+      }
+      message.run();
+    });
+  }
+
+  // Tells the listener how far the running job has got.
+  private void publishProgress(int done, int total) {
+    SwingUtilities.invokeLater(() -> this.listener.progress(done, total));
+  }
+}
@@ -0,0 +1,126 @@
+package view;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import model.ImageModel;
+
+/**
+ * Writes images as ppm files. The image is read one row at a time and the bytes of the file are
+ * put straight into a buffer that is handed to a channel whenever it fills up, so saving an
+ * image never builds the whole file (or a string per value) in memory. Images can be written
+ * as raw (P6) files, with one byte per channel, or as plain (P3) files with one value per line
+ * like the rest of our ppm files.
+ */
+public final class PPMWriter {
+  private static final int BUFFER_SIZE = 1 << 16;
+  private static final String COMMENT = "# Created by Aditya Pathak and Anna Dendas\n";
+
+  // The digits of every channel value followed by a new line, 4 bytes per value
+  private static final byte[] DIGITS = new byte[256 * 4];
+  // How many of the 4 bytes of every channel value are used
+  private static final byte[] DIGIT_COUNTS = new byte[256];
+
+  static {
+    for (int value = 0; value < 256; value++) {
+      byte[] text = (value + "\n").getBytes(StandardCharsets.US_ASCII);
+      System.arraycopy(text, 0, DIGITS, value * 4, text.length);
+      DIGIT_COUNTS[value] = (byte) text.length;
+    }
+  }
+
+  private PPMWriter() {
+    // Only has static methods.
+  }
+
+  /**
+   * Saves the image as a ppm file with the given name, replacing the file if it exists.
+   *
+   * @param model    the image to save
+   * @param fileName the path of the file
+   * @param raw      true to save a raw (P6) file, false to save a plain (P3) file
+   * @throws IOException if the file can't be written
+   */
+  public static void write(ImageModel model, String fileName, boolean raw) throws IOException {
+    try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.WRITE,
+            StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+      write(model, channel, raw);
+    }
+  }
+
+  /**
+   * Writes the image as a ppm to the given channel. The channel is not closed.
+   *
+   * @param model   the image to save
+   * @param channel the channel to write to
+   * @param raw     true to write a raw (P6) file, false to write a plain (P3) file
+   * @throws IOException if the channel can't be written to
+   */
+  public static void write(ImageModel model, WritableByteChannel channel, boolean raw)
+          throws IOException {
+    if (model == null || channel == null) {
+      throw new IllegalArgumentException("Image and channel can't be null");
+    }
+    int width = model.getWidth();
+    int height = model.getHeight();
+    byte[] bytes = new byte[BUFFER_SIZE];
+    ByteBuffer buffer = ByteBuffer.wrap(bytes);
+    String header = (raw ? "P6\n" : "P3\n") + COMMENT + width + " " + height + "\n"
+            + model.getMaxValue() + "\n";
+    byte[] headerBytes = header.getBytes(StandardCharsets.US_ASCII);
+    System.arraycopy(headerBytes, 0, bytes, 0, headerBytes.length);
+    int position = headerBytes.length;
+    // a pixel takes at most 3 bytes raw or 12 bytes plain
+    int flushAt = BUFFER_SIZE - 12;
+    int[] row = new int[width];
+    for (int i = 0; i < height; i++) {
+      model.getRow(i, row);
+      for (int j = 0; j < width; j++) {
+        if (position > flushAt) {
+          flush(channel, buffer, position);
+          position = 0;
+        }
+        int rgb = row[j];
+        int red = (rgb >> 16) & 0xFF;
+        int green = (rgb >> 8) & 0xFF;
+        int blue = rgb & 0xFF;
+        if (raw) {
+          bytes[position] = (byte) red;
+          bytes[position + 1] = (byte) green;
+          bytes[position + 2] = (byte) blue;
+          position += 3;
+        } else {
+          position = putValue(bytes, position, red);
+          position = putValue(bytes, position, green);
+          position = putValue(bytes, position, blue);
+        }
+      }
+    }
+    flush(channel, buffer, position);
+  }
+
+  // Puts the digits of the value and a new line in the array, returning the next position.
+  private static int putValue(byte[] bytes, int position, int value) {
+    int start = value * 4;
+    int count = DIGIT_COUNTS[value];
+    for (int k = 0; k < count; k++) {
+      bytes[position + k] = DIGITS[start + k];
+    }
+    return position + count;
+  }
+
+  // Writes the first length bytes of the buffer to the channel.
+  private static void flush(WritableByteChannel channel, ByteBuffer buffer, int length)
+          throws IOException {
+    buffer.clear();
+    buffer.limit(length);
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+  }
+}
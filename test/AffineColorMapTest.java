@@ -0,0 +1,127 @@
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Random;
+
+import model.AffineColorMap;
+import model.ColorTransformer;
+import model.Matrix;
+import model.PointOperation;
+
+/**
+ * Tests for color transformation matrices with shifts folded in.
+ */
+public class AffineColorMapTest {
+  int[] pixels = null;
+
+  @Before
+  public void init() {
+    this.pixels = new int[4096];
+    Random random = new Random(13);
+    for (int i = 0; i < this.pixels.length; i++) {
+      this.pixels[i] = random.nextInt(1 << 24);
+    }
+    // the corners of the color cube, where clamping matters most
+    this.pixels[0] = 0x000000;
+    this.pixels[1] = 0xFFFFFF;
+    this.pixels[2] = 0xFF0000;
+    this.pixels[3] = 0x00FF00;
+    this.pixels[4] = 0x0000FF;
+  }
+
+  // Applies the matrix and then every operation one at a time
+  private int[] oneAtATime(double[][] matrix, PointOperation... operations) {
+    int[] result = new ColorTransformer().transform(this.pixels, matrix);
+    for (PointOperation operation : operations) {
+      result = operation.apply(result);
+    }
+    return result;
+  }
+
+  // Folds every operation into the map, failing if one of them can't be folded
+  private static AffineColorMap fold(double[][] matrix, PointOperation... operations) {
+    AffineColorMap map = AffineColorMap.of(matrix);
+    for (PointOperation operation : operations) {
+      map = map.then(operation);
+      Assert.assertNotNull(map);
+    }
+    return map;
+  }
+
+  // Applies a map to every pixel
+  private int[] apply(AffineColorMap map) {
+    int[] result = new int[this.pixels.length];
+    map.apply(this.pixels, result, 0, this.pixels.length);
+    return result;
+  }
+
+  @Test
+  public void testPlainMatrix() {
+    AffineColorMap map = AffineColorMap.of(Matrix.SEPIA);
+    Assert.assertTrue(map.isPlainMatrix());
+    Assert.assertArrayEquals(this.oneAtATime(Matrix.SEPIA), this.apply(map));
+  }
+
+  @Test
+  public void testBrightenAndDarkenAfterMatrix() {
+    PointOperation[] operations = {PointOperation.exposure(40), PointOperation.exposure(-90),
+        PointOperation.exposure(25)};
+    AffineColorMap map = fold(Matrix.SEPIA, operations);
+    Assert.assertFalse(map.isPlainMatrix());
+    Assert.assertArrayEquals(this.oneAtATime(Matrix.SEPIA, operations), this.apply(map));
+    // each exposure clamps, so the bounds aren't just 0 and 255 anymore
+    Assert.assertEquals(25, map.getLow(0));
+    Assert.assertEquals(190, map.getHigh(0));
+    Assert.assertEquals(-25, map.getMatrix()[0][3], 0);
+  }
+
+  @Test
+  public void testDarkenAfterLuma() {
+    PointOperation darken = PointOperation.exposure(-30);
+    Assert.assertArrayEquals(this.oneAtATime(Matrix.LUMA, darken),
+            this.apply(fold(Matrix.LUMA, darken)));
+  }
+
+  @Test
+  public void testChannelGreyscaleAfterMatrix() {
+    PointOperation[] operations = {PointOperation.greyScale("red"), PointOperation.exposure(60),
+        PointOperation.greyScale("blue")};
+    Assert.assertArrayEquals(this.oneAtATime(Matrix.SEPIA, operations),
+            this.apply(fold(Matrix.SEPIA, operations)));
+  }
+
+  @Test
+  public void testNegativeWeights() {
+    double[][] matrix = {{1.5, -0.7, 0.2}, {-1, 2, 0}, {0.3, 0.3, -0.4}};
+    PointOperation[] operations = {PointOperation.exposure(-20), PointOperation.exposure(300),
+        PointOperation.exposure(-280)};
+    Assert.assertArrayEquals(this.oneAtATime(matrix, operations),
+            this.apply(fold(matrix, operations)));
+  }
+
+  @Test
+  public void testOperationsThatCantBeFolded() {
+    AffineColorMap map = AffineColorMap.of(Matrix.SEPIA);
+    Assert.assertNull(map.then(PointOperation.greyScale("luma")));
+    Assert.assertNull(map.then(PointOperation.greyScale("value")));
+    int[] invert = new int[256];
+    for (int i = 0; i < 256; i++) {
+      invert[i] = 255 - i;
+    }
+    Assert.assertNull(map.then(PointOperation.of(invert, invert, invert)));
+  }
+
+  @Test
+  public void testMatrixIsCopied() {
+    double[][] matrix = {{1, 0, 0}, {0, 1, 0}, {0, 0, 1}};
+    AffineColorMap map = AffineColorMap.of(matrix);
+    matrix[0][0] = 0;
+    Assert.assertArrayEquals(this.pixels, this.apply(map));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testBadMatrix() {
+    AffineColorMap.of(new double[][]{{1, 0}, {0, 1}});
+  }
+}
@@ -0,0 +1,70 @@
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import javax.imageio.ImageIO;
+
+import model.BufferedImageConverter;
+import model.ImageModel;
+import model.PPMReader;
+
+/**
+ * Tests that copying buffered images in bulk gives the same pixels as getRGB/setRGB.
+ */
+public class BufferedImageConverterTest {
+
+  // Checks every pixel of the model against getRGB of the buffered image
+  private void assertSamePixels(BufferedImage expected, ImageModel actual) {
+    Assert.assertEquals(expected.getWidth(), actual.getWidth());
+    Assert.assertEquals(expected.getHeight(), actual.getHeight());
+    int[] row = new int[actual.getWidth()];
+    for (int y = 0; y < actual.getHeight(); y++) {
+      actual.getRow(y, row);
+      for (int x = 0; x < actual.getWidth(); x++) {
+        Assert.assertEquals(expected.getRGB(x, y) & 0xFFFFFF, row[x]);
+      }
+    }
+  }
+
+  // Makes a random image of the given type
+  private BufferedImage randomImage(int type) {
+    BufferedImage image = new BufferedImage(7, 5, type);
+    Random random = new Random(type);
+    for (int y = 0; y < image.getHeight(); y++) {
+      for (int x = 0; x < image.getWidth(); x++) {
+        image.setRGB(x, y, random.nextInt() | 0xFF000000);
+      }
+    }
+    return image;
+  }
+
+  @Test
+  public void testImportCommonTypes() {
+    int[] types = {BufferedImage.TYPE_INT_RGB, BufferedImage.TYPE_INT_ARGB,
+        BufferedImage.TYPE_INT_BGR, BufferedImage.TYPE_3BYTE_BGR, BufferedImage.TYPE_4BYTE_ABGR,
+        BufferedImage.TYPE_BYTE_GRAY, BufferedImage.TYPE_USHORT_565_RGB};
+    for (int type : types) {
+      BufferedImage image = this.randomImage(type);
+      this.assertSamePixels(image, BufferedImageConverter.toPackedImage(image));
+    }
+  }
+
+  @Test
+  public void testImportFiles() throws IOException {
+    for (String name : new String[]{"test.jpg", "test.png", "test.bmp"}) {
+      BufferedImage image = ImageIO.read(new File("test/input/" + name));
+      this.assertSamePixels(image, BufferedImageConverter.toPackedImage(image));
+    }
+  }
+
+  @Test
+  public void testExport() throws IOException {
+    ImageModel image = PPMReader.read("test/input/Test5x5.ppm");
+    this.assertSamePixels(image.returnAsBufferedImage(), image);
+    this.assertSamePixels(BufferedImageConverter.toBufferedImage(image), image);
+  }
+}
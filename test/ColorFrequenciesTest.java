@@ -0,0 +1,227 @@
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Map;
+import java.util.Random;
+
+import model.ColorFrequencies;
+import model.ImageModel;
+import model.ImageModelImpl;
+import model.LazyImageModel;
+import model.Matrix;
+import model.OrientedImageModel;
+import model.PackedImageModel;
+import model.PointOperation;
+
+/**
+ * Tests for counting all the histograms of an image in one pass.
+ */
+public class ColorFrequenciesTest {
+  // big enough to be split into bands that are counted separately
+  int width = 613;
+  int height = 311;
+  int[] pixels = null;
+
+  @Before
+  public void init() {
+    this.pixels = new int[this.width * this.height];
+    Random random = new Random(19);
+    for (int i = 0; i < this.pixels.length; i++) {
+      // skewed so some values are a lot more common than others
+      int r = random.nextInt(256);
+      int g = Math.min(255, random.nextInt(64) * random.nextInt(5));
+      int b = random.nextInt(2) * 255;
+      this.pixels[i] = (r << 16) | (g << 8) | b;
+    }
+  }
+
+  // Counts one histogram the slow way
+  private int[] countSlowly(String type) {
+    int[] counts = new int[256];
+    for (int rgb : this.pixels) {
+      int r = (rgb >> 16) & 0xFF;
+      int g = (rgb >> 8) & 0xFF;
+      int b = rgb & 0xFF;
+      switch (type) {
+        case "red":
+          counts[r]++;
+          break;
+        case "green":
+          counts[g]++;
+          break;
+        case "blue":
+          counts[b]++;
+          break;
+        default:
+          counts[(r + g + b) / 3]++;
+      }
+    }
+    return counts;
+  }
+
+  @Test
+  public void testCounts() {
+    ColorFrequencies frequencies = ColorFrequencies.of(this.pixels, this.width, this.height, 255);
+    for (String type : new String[]{"red", "green", "blue", "intensity"}) {
+      int[] expected = this.countSlowly(type);
+      Assert.assertArrayEquals(expected, frequencies.get(type));
+      int max = 0;
+      for (int i = 0; i < 256; i++) {
+        Assert.assertEquals(expected[i], frequencies.getCount(type, i));
+        max = Math.max(max, expected[i]);
+      }
+      Assert.assertEquals(max, frequencies.getMaxCount(type));
+    }
+  }
+
+  @Test
+  public void testImageRows() {
+    PackedImageModel packed = new PackedImageModel(this.width, this.height, 255, this.pixels);
+    ColorFrequencies fromRows = ColorFrequencies.of(ImageModelImpl.fromPackedImage(packed));
+    for (String type : new String[]{"red", "green", "blue", "intensity"}) {
+      Assert.assertArrayEquals(this.countSlowly(type), fromRows.get(type));
+    }
+  }
+
+  @Test
+  public void testMap() {
+    int[] small = {0x0A0B0C, 0x0A0000, 0xFFFFFF};
+    ColorFrequencies frequencies = ColorFrequencies.of(small, 3, 1, 100);
+    Map<Integer, Integer> red = frequencies.toMap("red");
+    // every value up to the max value, and the 255 that one pixel has anyway
+    Assert.assertEquals(102, red.size());
+    Assert.assertEquals(2, (int) red.get(10));
+    Assert.assertEquals(0, (int) red.get(11));
+    Assert.assertEquals(1, (int) red.get(255));
+    Assert.assertEquals(100, frequencies.getMaxValue());
+  }
+
+  @Test
+  public void testCopies() {
+    ColorFrequencies frequencies = ColorFrequencies.of(this.pixels, this.width, this.height, 255);
+    int before = frequencies.getCount("red", 0);
+    frequencies.get("red")[0] += 10;
+    Assert.assertEquals(before, frequencies.getCount("red", 0));
+  }
+
+  // Checks that histograms worked out some other way match counting the image
+  private static void assertCounted(ImageModel image, ColorFrequencies frequencies) {
+    Assert.assertNotNull(frequencies);
+    int[] raster = new int[image.getWidth() * image.getHeight()];
+    int[] row = new int[image.getWidth()];
+    for (int i = 0; i < image.getHeight(); i++) {
+      image.getRow(i, row);
+      System.arraycopy(row, 0, raster, i * image.getWidth(), image.getWidth());
+    }
+    ColorFrequencies counted = ColorFrequencies.of(raster, image.getWidth(), image.getHeight(),
+            image.getMaxValue());
+    for (String type : new String[]{"red", "green", "blue", "intensity"}) {
+      Assert.assertArrayEquals(type, counted.get(type), frequencies.get(type));
+    }
+  }
+
+  @Test
+  public void testAfterPointOperations() {
+    ColorFrequencies frequencies = ColorFrequencies.of(this.pixels, this.width, this.height, 255);
+    PointOperation[] derivable = {PointOperation.greyScale("red"),
+        PointOperation.greyScale("green"), PointOperation.greyScale("blue"),
+        PointOperation.greyScale("intensity"), PointOperation.identity(),
+        PointOperation.greyScale("red").then(PointOperation.exposure(40))};
+    for (PointOperation operation : derivable) {
+      PackedImageModel after = new PackedImageModel(this.width, this.height, 255,
+              operation.apply(this.pixels));
+      assertCounted(after, frequencies.after(operation));
+    }
+    // blue is 0 or 255 in every pixel, so any brighten or darken clamps some of them
+    Assert.assertNull(frequencies.after(PointOperation.exposure(10)));
+    Assert.assertNull(frequencies.after(PointOperation.greyScale("luma")));
+    Assert.assertNull(frequencies.after(PointOperation.greyScale("value")));
+  }
+
+  @Test
+  public void testAfterExposureWithoutClamping() {
+    int[] small = {0x102030, 0x405060, 0x708090, 0x111111};
+    ColorFrequencies frequencies = ColorFrequencies.of(small, 2, 2, 255);
+    for (int amount : new int[]{-16, 0, 25, 111}) {
+      PointOperation exposure = PointOperation.exposure(amount);
+      assertCounted(new PackedImageModel(2, 2, 255, exposure.apply(small)),
+              frequencies.after(exposure));
+    }
+    Assert.assertNull(frequencies.after(PointOperation.exposure(112)));
+    Assert.assertNull(frequencies.after(PointOperation.exposure(-17)));
+  }
+
+  @Test
+  public void testModelsPassHistogramsOn() {
+    PackedImageModel packed = new PackedImageModel(this.width, this.height, 255, this.pixels);
+    Assert.assertNull(packed.getKnownColorFrequencies());
+    packed.colorFrequencies();
+    Assert.assertNotNull(packed.getKnownColorFrequencies());
+    OrientedImageModel flipped = (OrientedImageModel) packed.horizontalFlip().verticalFlip();
+    assertCounted(flipped, flipped.getKnownColorFrequencies());
+    // green goes from 0 to 255, so darkening after this clamps and has to be counted again
+    ImageModel grey = flipped.greyScale("green").greyScale("intensity");
+    assertCounted(grey, ((PackedImageModel) grey).getKnownColorFrequencies());
+    ImageModel darker = grey.changeExposure("darken", 30);
+    Assert.assertNull(((PackedImageModel) darker).getKnownColorFrequencies());
+    assertCounted(darker, darker.colorFrequencies());
+    // a matrix or a filter needs the image to be counted again
+    ImageModel sepia = grey.colorTransformation(Matrix.SEPIA);
+    Assert.assertNull(((PackedImageModel) sepia).getKnownColorFrequencies());
+    ImageModel blurred = grey.filter(Matrix.GAUSSIAN_BLUR);
+    Assert.assertNull(((PackedImageModel) blurred).getKnownColorFrequencies());
+    // a deferred plan of point operations passes them on when it is run
+    ImageModel lazy = new LazyImageModel(packed).greyScale("red").horizontalFlip();
+    lazy.getRow(0, new int[this.width]);
+    assertCounted(lazy, lazy.colorFrequencies());
+  }
+
+  @Test
+  public void testSample() {
+    // 1500 x 1000 is more than twice the pixels a 1% error needs, so this one is sampled
+    int[] big = new int[1500 * 1000];
+    Random random = new Random(23);
+    for (int i = 0; i < big.length; i++) {
+      int r = (int) Math.min(255, Math.abs(random.nextGaussian() * 60));
+      big[i] = (r << 16) | (random.nextInt(256) << 8) | (i % 1500 < 300 ? 255 : 0);
+    }
+    PackedImageModel image = new PackedImageModel(1500, 1000, 255, big);
+    ColorFrequencies estimate = ColorFrequencies.sample(image, 0.01);
+    ColorFrequencies exact = ColorFrequencies.of(big, 1500, 1000, 255);
+    Assert.assertFalse(estimate.isExact());
+    Assert.assertEquals(0.01, estimate.getError(), 0);
+    for (String type : new String[]{"red", "green", "blue", "intensity"}) {
+      for (int i = 0; i < 256; i++) {
+        Assert.assertEquals(type + " " + i, exact.getCount(type, i),
+                estimate.getCount(type, i), 0.01 * big.length);
+      }
+    }
+    // the same pixels are picked every time
+    Assert.assertArrayEquals(estimate.get("red"), ColorFrequencies.sample(image, 0.01).get("red"));
+    Assert.assertNull(estimate.after(PointOperation.greyScale("red")));
+  }
+
+  @Test
+  public void testSmallImagesAreNotSampled() {
+    ColorFrequencies frequencies = ColorFrequencies.sample(
+            new PackedImageModel(this.width, this.height, 255, this.pixels), 0.01);
+    Assert.assertTrue(frequencies.isExact());
+    Assert.assertArrayEquals(this.countSlowly("intensity"), frequencies.get("intensity"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testBadError() {
+    ColorFrequencies.sample(new PackedImageModel(this.width, this.height, 255, this.pixels), 1);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testBadType() {
+    ColorFrequencies.of(this.pixels, this.width, this.height, 255).get("luma");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testBadRaster() {
+    ColorFrequencies.of(this.pixels, this.width + 1, this.height, 255);
+  }
+}
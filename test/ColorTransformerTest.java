@@ -0,0 +1,90 @@
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.util.Random;
+
+import model.ColorTransformer;
+import model.Matrix;
+
+/**
+ * Tests for the color transformer, and that the vector version gives the same result as the one
+ * pixel at a time version.
+ */
+public class ColorTransformerTest {
+
+  // Makes a raster of random pixels, with a length that doesn't fill the last vector
+  private int[] randomPixels() {
+    int[] pixels = new int[1003];
+    Random random = new Random(3);
+    for (int i = 0; i < pixels.length; i++) {
+      pixels[i] = random.nextInt(1 << 24);
+    }
+    return pixels;
+  }
+
+  // Makes some matrices to compare with, including ones with negative weights and ones whose
+  // sums land right on a half
+  private double[][][] matrices() {
+    Random random = new Random(5);
+    double[][] randomMatrix = new double[3][3];
+    for (double[] row : randomMatrix) {
+      for (int j = 0; j < 3; j++) {
+        row[j] = random.nextDouble() * 4 - 2;
+      }
+    }
+    double[][] halves = {{0.5, 0, 0}, {0, 1.5, 0}, {-0.5, 0, 0.5}};
+    double[][] justBelowHalf = {{0.49999999999999994 / 255, 0, 0}, {0, 0, 0},
+        {0, 0, Math.nextDown(0.5)}};
+    return new double[][][]{Matrix.SEPIA, Matrix.LUMA, randomMatrix, halves, justBelowHalf};
+  }
+
+  @Test
+  public void testTransformsPixels() {
+    int[] pixels = {0x102030, 0xFFFFFF, 0x000000};
+    int[] result = new ColorTransformer().transform(pixels, Matrix.SEPIA);
+    // 16 * 0.393 + 32 * 0.769 + 48 * 0.189 = 39.968 for red
+    Assert.assertEquals(40, (result[0] >> 16) & 0xFF);
+    // 255 * (0.272 + 0.534 + 0.131) = 238.9 for blue
+    Assert.assertEquals(0xFFFFEF, result[1]);
+    Assert.assertEquals(0, result[2]);
+  }
+
+  @Test
+  public void testVectorMatchesScalar() {
+    ColorTransformer vector = ColorTransformer.vectorized();
+    // without the incubator module there is nothing to compare, so the test is skipped
+    Assume.assumeNotNull(vector);
+    Assert.assertTrue(vector.isVectorized());
+    ColorTransformer scalar = new ColorTransformer();
+    int[] pixels = this.randomPixels();
+    for (double[][] matrix : this.matrices()) {
+      Assert.assertArrayEquals(scalar.transform(pixels, matrix),
+              vector.transform(pixels, matrix));
+    }
+    // every value of every channel
+    int[] greys = new int[256 * 3];
+    for (int i = 0; i < 256; i++) {
+      greys[i] = i << 16;
+      greys[256 + i] = i << 8;
+      greys[512 + i] = i;
+    }
+    for (double[][] matrix : this.matrices()) {
+      Assert.assertArrayEquals(scalar.transform(greys, matrix), vector.transform(greys, matrix));
+    }
+  }
+
+  @Test
+  public void testSharedTransformer() {
+    ColorTransformer old = ColorTransformer.getShared();
+    ColorTransformer scalar = new ColorTransformer();
+    ColorTransformer.setShared(scalar);
+    Assert.assertSame(scalar, ColorTransformer.getShared());
+    ColorTransformer.setShared(old);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testWrongSizeMatrix() {
+    new ColorTransformer().transform(new int[1], new double[][]{{1, 0, 0}, {0, 1}, {0, 0, 1}});
+  }
+}
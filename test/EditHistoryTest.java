@@ -0,0 +1,119 @@
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import model.ImageModel;
+import model.Matrix;
+import model.Orientation;
+import model.PackedImageModel;
+import view.EditHistory;
+import view.OperationRunner;
+
+/**
+ * Tests for undoing and redoing jobs of the GUI under a budget of bytes.
+ */
+public class EditHistoryTest {
+  // 40 by 30 pixels take 4800 bytes as an image
+  PackedImageModel image = null;
+  OperationRunner.Step blur = image -> image.filter(Matrix.GAUSSIAN_BLUR);
+  OperationRunner.Step sepia = image -> image.colorTransformation(Matrix.SEPIA);
+  OperationRunner.Step turn = EditHistory.reversible(image -> image.orient(Orientation.ROTATE_90),
+      image -> image.orient(Orientation.ROTATE_270));
+
+  @Before
+  public void init() {
+    int[] pixels = new int[40 * 30];
+    Random random = new Random(31);
+    for (int i = 0; i < pixels.length; i++) {
+      pixels[i] = random.nextInt(1 << 24);
+    }
+    this.image = new PackedImageModel(40, 30, 255, pixels);
+  }
+
+  // Does the steps of a job to an image and records it
+  private static ImageModel doJob(EditHistory history, ImageModel image,
+                                  OperationRunner.Step... steps) throws IOException {
+    ImageModel result = image;
+    for (OperationRunner.Step step : steps) {
+      result = step.apply(result);
+    }
+    history.record(image, Arrays.asList(steps));
+    return result;
+  }
+
+  @Test
+  public void testUndoAndRedo() throws IOException {
+    EditHistory history = new EditHistory();
+    ImageModel blurred = doJob(history, this.image, this.blur);
+    ImageModel turned = doJob(history, blurred, this.turn, this.turn);
+    // turning can be undone by turning back, so only the blur keeps a snapshot
+    Assert.assertEquals(4800, history.getUsedBytes());
+    EditHistory.Change change = history.undo(turned);
+    ImageAssert.assertSameImage(blurred, change.getImage());
+    Assert.assertEquals(Arrays.asList(this.turn, this.turn), change.getSteps());
+    change = history.undo(change.getImage());
+    Assert.assertSame(this.image, change.getImage());
+    Assert.assertFalse(history.canUndo());
+    // now the blurred image is kept for the redo instead
+    Assert.assertEquals(4800, history.getUsedBytes());
+    change = history.redo(change.getImage());
+    ImageAssert.assertSameImage(blurred, change.getImage());
+    change = history.redo(change.getImage());
+    ImageAssert.assertSameImage(turned, change.getImage());
+    Assert.assertFalse(history.canRedo());
+    Assert.assertTrue(history.canUndo());
+  }
+
+  @Test
+  public void testNewJobDropsTheRedos() throws IOException {
+    EditHistory history = new EditHistory();
+    ImageModel sepia = doJob(history, this.image, this.sepia);
+    history.undo(sepia);
+    Assert.assertTrue(history.canRedo());
+    doJob(history, this.image, this.blur);
+    Assert.assertFalse(history.canRedo());
+    Assert.assertEquals(4800, history.getUsedBytes());
+  }
+
+  @Test
+  public void testBudgetCompressesAndForgets() throws IOException {
+    // a flat image compresses to almost nothing, unlike the random one
+    ImageModel flat = new PackedImageModel(40, 30, 255, new int[40 * 30]);
+    EditHistory history = new EditHistory(8000);
+    ImageModel sepia = doJob(history, flat, this.sepia);
+    ImageModel blurred = doJob(history, sepia, this.blur);
+    // two snapshots would be 9600 bytes, so the older one, of the flat image, was compressed
+    Assert.assertTrue(history.getUsedBytes() < 8000);
+    EditHistory.Change change = history.undo(blurred);
+    Assert.assertSame(sepia, change.getImage());
+    change = history.undo(change.getImage());
+    ImageAssert.assertSameImage(flat, change.getImage());
+    // a budget smaller than one snapshot that won't compress forgets the oldest entries
+    EditHistory tiny = new EditHistory(5000);
+    ImageModel first = doJob(tiny, this.image, this.blur);
+    Assert.assertTrue(tiny.canUndo());
+    doJob(tiny, first, this.sepia);
+    Assert.assertTrue(tiny.getUsedBytes() <= 5000);
+    tiny.undo(first);
+    Assert.assertFalse(tiny.canUndo());
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testNothingToUndo() throws IOException {
+    new EditHistory().undo(this.image);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testBadBudget() {
+    new EditHistory(0);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testNullSteps() {
+    new EditHistory().record(this.image, null);
+  }
+}
@@ -0,0 +1,278 @@
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import model.BorderMode;
+import model.FilterEngine;
+import model.Kernel;
+import model.Matrix;
+
+/**
+ * Tests for the engine that applies filter matrices.
+ */
+public class FilterEngineTest {
+  int width = 0;
+  int height = 0;
+  int[] pixels = null;
+
+  @Before
+  public void init() {
+    // big enough to be split into several bands
+    this.width = 301;
+    this.height = 257;
+    this.pixels = new int[this.width * this.height];
+    Random random = new Random(7);
+    for (int i = 0; i < this.pixels.length; i++) {
+      this.pixels[i] = random.nextInt(1 << 24);
+    }
+  }
+
+  @Test
+  public void testParallelMatchesSingleThread() {
+    FilterEngine single = new FilterEngine(1);
+    FilterEngine parallel = new FilterEngine(4);
+    try {
+      for (double[][] matrix : new double[][][]{Matrix.GAUSSIAN_BLUR, Matrix.SHARPEN}) {
+        Assert.assertArrayEquals(single.filter(this.pixels, this.width, this.height, matrix),
+                parallel.filter(this.pixels, this.width, this.height, matrix));
+      }
+    } finally {
+      parallel.shutdown();
+    }
+  }
+
+  @Test
+  public void testCornerOfBlur() {
+    // only 4 of the 9 neighbours of the corner are in the image
+    int[] image = {0x101010, 0x202020, 0x303030, 0x404040};
+    int[] result = new FilterEngine(1).filter(image, 2, 2, Matrix.GAUSSIAN_BLUR);
+    // 16 * 0.25 + 32 * 0.125 + 48 * 0.125 + 64 * 0.0625 = 18
+    Assert.assertEquals(0x121212, result[0]);
+  }
+
+  @Test
+  public void testSharedParallelism() {
+    int old = FilterEngine.getShared().getParallelism();
+    FilterEngine.setSharedParallelism(2);
+    Assert.assertEquals(2, FilterEngine.getShared().getParallelism());
+    FilterEngine.setSharedParallelism(old);
+  }
+
+  @Test
+  public void testBorderModeMapping() {
+    Assert.assertEquals(-1, BorderMode.ZERO.map(-1, 5));
+    Assert.assertEquals(4, BorderMode.ZERO.map(4, 5));
+    Assert.assertEquals(0, BorderMode.CLAMP.map(-2, 5));
+    Assert.assertEquals(4, BorderMode.CLAMP.map(6, 5));
+    Assert.assertEquals(2, BorderMode.MIRROR.map(-2, 5));
+    Assert.assertEquals(3, BorderMode.MIRROR.map(5, 5));
+    Assert.assertEquals(0, BorderMode.MIRROR.map(-3, 1));
+    Assert.assertEquals(4, BorderMode.WRAP.map(-1, 5));
+    Assert.assertEquals(1, BorderMode.WRAP.map(6, 5));
+  }
+
+  @Test
+  public void testBorderModesOnFlatImage() {
+    int[] image = new int[6 * 4];
+    Arrays.fill(image, 0x808080);
+    FilterEngine engine = new FilterEngine(1);
+    for (BorderMode mode : new BorderMode[]{BorderMode.CLAMP, BorderMode.MIRROR,
+        BorderMode.WRAP}) {
+      // the blur matrix adds up to 1, so a flat image stays the same if nothing counts as 0
+      Assert.assertArrayEquals(image, engine.filter(image, 6, 4, Matrix.GAUSSIAN_BLUR, mode));
+    }
+    // 128 * (0.25 + 2 * 0.125 + 0.0625) = 72 in the corner
+    Assert.assertEquals(0x484848, engine.filter(image, 6, 4, Matrix.GAUSSIAN_BLUR)[0]);
+  }
+
+  @Test
+  public void testWrapMatchesShiftedImage() {
+    // with wrap, filtering a tiled copy of the image gives the same middle tile
+    int[] tiled = new int[this.width * 3 * this.height * 3];
+    for (int row = 0; row < this.height * 3; row++) {
+      for (int col = 0; col < this.width * 3; col++) {
+        tiled[row * this.width * 3 + col] =
+                this.pixels[(row % this.height) * this.width + col % this.width];
+      }
+    }
+    FilterEngine engine = new FilterEngine(1);
+    int[] wrapped = engine.filter(this.pixels, this.width, this.height, Matrix.SHARPEN,
+            BorderMode.WRAP);
+    int[] tiledResult = engine.filter(tiled, this.width * 3, this.height * 3, Matrix.SHARPEN);
+    for (int row = 0; row < this.height; row++) {
+      for (int col = 0; col < this.width; col++) {
+        Assert.assertEquals(tiledResult[(row + this.height) * this.width * 3 + col + this.width],
+                wrapped[row * this.width + col]);
+      }
+    }
+  }
+
+  // Filters the image the slow way, one neighbour at a time
+  private int[] filterDirectly(double[][] matrix, BorderMode mode) {
+    int[] result = new int[this.pixels.length];
+    for (int row = 0; row < this.height; row++) {
+      for (int col = 0; col < this.width; col++) {
+        double[] sums = new double[3];
+        for (int i = 0; i < matrix.length; i++) {
+          for (int j = 0; j < matrix[i].length; j++) {
+            int sourceRow = mode.map(row - matrix.length / 2 + i, this.height);
+            int sourceCol = mode.map(col - matrix[i].length / 2 + j, this.width);
+            if (sourceRow < 0 || sourceCol < 0) {
+              continue;
+            }
+            int rgb = this.pixels[sourceRow * this.width + sourceCol];
+            for (int c = 0; c < 3; c++) {
+              sums[c] += matrix[i][j] * ((rgb >> (16 - 8 * c)) & 0xFF);
+            }
+          }
+        }
+        int packed = 0;
+        for (int c = 0; c < 3; c++) {
+          packed = (packed << 8) | Math.max(0, Math.min(255, (int) sums[c]));
+        }
+        result[row * this.width + col] = packed;
+      }
+    }
+    return result;
+  }
+
+  @Test
+  public void testFindsSeparableKernels() {
+    Assert.assertTrue(Kernel.of(Matrix.GAUSSIAN_BLUR).isSeparable());
+    Assert.assertFalse(Kernel.of(Matrix.SHARPEN).isSeparable());
+    Assert.assertTrue(Kernel.of(new double[][]{{1, 2, 3}, {-2, -4, -6}, {0, 0, 0}})
+            .isSeparable());
+    Assert.assertFalse(Kernel.of(new double[][]{{1, 0, 0}, {0, 1, 0}, {0, 0, 1}})
+            .isSeparable());
+    Assert.assertFalse(Kernel.of(new double[][]{{0, 0, 0}}).isSeparable());
+  }
+
+  @Test
+  public void testSeparableMatchesDirectFilter() {
+    double[] binomial = {1, 4, 6, 4, 1};
+    double[][] bigBlur = new double[5][5];
+    for (int i = 0; i < 5; i++) {
+      for (int j = 0; j < 5; j++) {
+        bigBlur[i][j] = binomial[i] * binomial[j] / 256;
+      }
+    }
+    // a box blur that is wider than it is tall
+    double[][] box = new double[3][5];
+    for (double[] row : box) {
+      Arrays.fill(row, 0.0625);
+    }
+    FilterEngine single = new FilterEngine(1);
+    FilterEngine parallel = new FilterEngine(3);
+    try {
+      for (double[][] matrix : new double[][][]{Matrix.GAUSSIAN_BLUR, bigBlur, box}) {
+        Assert.assertTrue(Kernel.of(matrix).isSeparable());
+        for (BorderMode mode : BorderMode.values()) {
+          int[] expected = this.filterDirectly(matrix, mode);
+          Assert.assertArrayEquals(expected,
+                  single.filter(this.pixels, this.width, this.height, matrix, mode));
+          Assert.assertArrayEquals(expected,
+                  parallel.filter(this.pixels, this.width, this.height, matrix, mode));
+        }
+      }
+    } finally {
+      parallel.shutdown();
+    }
+  }
+
+  @Test
+  public void testNonBinarySeparableMatchesDirectFilter() {
+    // these split into a column and a row, but two passes would round the sums differently
+    double[][] box = new double[3][3];
+    for (double[] row : box) {
+      Arrays.fill(row, 1.0 / 9);
+    }
+    double[] tenths = {0.1, 0.2, 0.1};
+    double[] hundredths = {0.01, 0.02, 0.03};
+    double[][] outerTenths = new double[3][3];
+    double[][] outerHundredths = new double[3][3];
+    for (int i = 0; i < 3; i++) {
+      for (int j = 0; j < 3; j++) {
+        outerTenths[i][j] = tenths[i] * tenths[j];
+        outerHundredths[i][j] = hundredths[i] * hundredths[j] * 100;
+      }
+    }
+    FilterEngine single = new FilterEngine(1);
+    FilterEngine parallel = new FilterEngine(3);
+    try {
+      for (double[][] matrix : new double[][][]{box, outerTenths, outerHundredths}) {
+        Assert.assertTrue(Kernel.of(matrix).isSeparable());
+        Assert.assertFalse(Kernel.of(matrix).isFixedPoint());
+        for (BorderMode mode : BorderMode.values()) {
+          int[] expected = this.filterDirectly(matrix, mode);
+          Assert.assertArrayEquals(expected,
+                  single.filter(this.pixels, this.width, this.height, matrix, mode));
+          Assert.assertArrayEquals(expected,
+                  parallel.filter(this.pixels, this.width, this.height, matrix, mode));
+        }
+      }
+    } finally {
+      parallel.shutdown();
+    }
+  }
+
+  @Test
+  public void testNearlySeparableMatchesDirectFilter() {
+    // separable within the tolerance, but the corner is a little less than the blur's
+    double[][] nearBlur = new double[3][];
+    for (int i = 0; i < 3; i++) {
+      nearBlur[i] = Matrix.GAUSSIAN_BLUR[i].clone();
+    }
+    nearBlur[0][0] = 0.0625 - Math.scalb(1.0, -50);
+    Assert.assertTrue(Kernel.of(nearBlur).isSeparable());
+    FilterEngine engine = new FilterEngine(1);
+    // the sums on a flat image of 64 are a little under 64, so they truncate to 63
+    int[] flat = new int[5 * 5];
+    Arrays.fill(flat, 0x404040);
+    Assert.assertEquals(0x3F3F3F, engine.filter(flat, 5, 5, nearBlur, BorderMode.CLAMP)[12]);
+    for (BorderMode mode : BorderMode.values()) {
+      Assert.assertArrayEquals(this.filterDirectly(nearBlur, mode),
+              engine.filter(this.pixels, this.width, this.height, nearBlur, mode));
+    }
+  }
+
+  @Test
+  public void testFindsFixedPointKernels() {
+    Assert.assertTrue(Kernel.of(Matrix.GAUSSIAN_BLUR).isFixedPoint());
+    Assert.assertTrue(Kernel.of(Matrix.SHARPEN).isFixedPoint());
+    Assert.assertFalse(Kernel.of(Matrix.LUMA).isFixedPoint());
+    Assert.assertFalse(Kernel.of(new double[][]{{0.1, 0.1, 0.1}}).isFixedPoint());
+  }
+
+  @Test
+  public void testFixedPointMatchesDoubleFilter() {
+    // the weights of the middle row need too many bits for whole numbers, so this kernel goes
+    // through the whole matrix with doubles, and sharpen goes through the whole number single
+    // pass
+    double tiny = Math.scalb(1.0, -36);
+    double[][] notFixed = {{0.0625, 0.0625 + tiny, 0.0625}, {0.125, 0.125 + 2 * tiny, 0.125},
+        {0.0625, 0.0625 + tiny, 0.0625}};
+    Assert.assertTrue(Kernel.of(notFixed).isSeparable());
+    Assert.assertFalse(Kernel.of(notFixed).isFixedPoint());
+    FilterEngine engine = new FilterEngine(1);
+    for (double[][] matrix : new double[][][]{Matrix.SHARPEN, notFixed,
+        {{-0.5, 1.5, -0.25}}}) {
+      for (BorderMode mode : BorderMode.values()) {
+        Assert.assertArrayEquals(this.filterDirectly(matrix, mode),
+                engine.filter(this.pixels, this.width, this.height, matrix, mode));
+      }
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testEvenMatrix() {
+    new FilterEngine(1).filter(this.pixels, this.width, this.height, new double[][]{{1, 1}});
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testNoThreads() {
+    new FilterEngine(0);
+  }
+}
@@ -0,0 +1,75 @@
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import model.ColorFrequencies;
+import model.HistogramService;
+import model.ImageModel;
+import model.ImageModelImpl;
+import model.PackedImageModel;
+
+/**
+ * Tests for getting estimated histograms right away and exact ones later.
+ */
+public class HistogramServiceTest {
+  HistogramService service = new HistogramService(0.02);
+  PackedImageModel image = null;
+
+  @Before
+  public void init() {
+    // big enough to be sampled with a 2% error
+    int width = 800;
+    int height = 500;
+    int[] pixels = new int[width * height];
+    Random random = new Random(29);
+    for (int i = 0; i < pixels.length; i++) {
+      pixels[i] = random.nextInt(1 << 24);
+    }
+    this.image = new PackedImageModel(width, height, 255, pixels);
+  }
+
+  @Test
+  public void testEstimateThenExact() throws Exception {
+    List<ColorFrequencies> given = Collections.synchronizedList(new ArrayList<>());
+    ColorFrequencies exact = this.service.request(this.image, given::add).get();
+    Assert.assertEquals(2, given.size());
+    Assert.assertFalse(given.get(0).isExact());
+    Assert.assertEquals(0.02, given.get(0).getError(), 0);
+    Assert.assertSame(exact, given.get(1));
+    Assert.assertArrayEquals(ColorFrequencies.of(this.image).get("blue"), exact.get("blue"));
+  }
+
+  @Test
+  public void testKnownHistogramsAreGivenOnce() throws Exception {
+    this.image.colorFrequencies();
+    List<ColorFrequencies> given = new ArrayList<>();
+    ColorFrequencies exact = this.service.request(this.image.horizontalFlip(), given::add).get();
+    Assert.assertEquals(1, given.size());
+    Assert.assertTrue(exact.isExact());
+    Assert.assertSame(exact, this.service.approximate(this.image));
+  }
+
+  @Test
+  public void testAnyModel() {
+    ImageModel pixels = ImageModelImpl.fromPackedImage(this.image);
+    Assert.assertArrayEquals(this.service.approximate(this.image).get("green"),
+            this.service.approximate(pixels).get("green"));
+    Assert.assertArrayEquals(this.image.colorFrequencies().get("green"),
+            this.service.exact(pixels).get("green"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testBadError() {
+    new HistogramService(0);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testNullImage() {
+    this.service.request(null, frequencies -> { });
+  }
+}
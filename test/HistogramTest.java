@@ -0,0 +1,81 @@
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+
+import model.ColorFrequencies;
+import model.Histogram;
+import model.HistogramPanel;
+
+/**
+ * Tests for drawing histograms from arrays of counts.
+ */
+public class HistogramTest {
+  // 10 pixels with red 5, and one with red 200, green 200 and blue 7
+  ColorFrequencies frequencies = ColorFrequencies.of(new int[]{
+      0x050000, 0x050000, 0x050000, 0x050000, 0x050000, 0x050000, 0x050000, 0x050000, 0x050000,
+      0x050000, 0xC8C807}, 11, 1, 255);
+
+  // Paints a histogram at 300 by 300 and gives back what it drew
+  private static BufferedImage paint(Histogram histogram) {
+    histogram.setSize(300, 300);
+    BufferedImage image = new BufferedImage(300, 300, BufferedImage.TYPE_INT_ARGB);
+    Graphics g = image.getGraphics();
+    histogram.paintComponent(g);
+    g.dispose();
+    return image;
+  }
+
+  // Counts how many pixels of a column of a drawing have the color
+  private static int barHeight(BufferedImage image, int column, Color color) {
+    int height = 0;
+    for (int row = 0; row < image.getHeight(); row++) {
+      if (image.getRGB(column, row) == color.getRGB()) {
+        height++;
+      }
+    }
+    return height;
+  }
+
+  @Test
+  public void testBars() {
+    Histogram red = new Histogram(this.frequencies, "red");
+    BufferedImage drawn = paint(red);
+    // the tallest bar is 30% of the height, plus the pixel it starts on
+    Assert.assertEquals(91, barHeight(drawn, 5, Color.RED));
+    Assert.assertEquals(10, barHeight(drawn, 200, Color.RED));
+    Assert.assertEquals(1, barHeight(drawn, 100, Color.RED));
+    Assert.assertEquals(9.0, red.getScalingFactor(), 1e-9);
+  }
+
+  @Test
+  public void testEveryHistogramHasItsOwnScale() {
+    Histogram red = new Histogram(this.frequencies, "red");
+    Histogram blue = new Histogram(this.frequencies, "blue");
+    paint(red);
+    BufferedImage drawn = paint(blue);
+    Assert.assertEquals(9.0, red.getScalingFactor(), 1e-9);
+    Assert.assertEquals(9.0, blue.getScalingFactor(), 1e-9);
+    Assert.assertEquals(10, barHeight(drawn, 7, Color.BLUE));
+  }
+
+  @Test
+  public void testUpdateInPlace() {
+    Histogram green = new Histogram(this.frequencies, "green");
+    HistogramPanel panel = new HistogramPanel(new Histogram[]{green});
+    Color color = new Color(24, 173, 24);
+    Assert.assertEquals(91, barHeight(paint(green), 0, color));
+    panel.update(ColorFrequencies.of(new int[]{0x00C800, 0x00C800}, 2, 1, 255));
+    BufferedImage drawn = paint(green);
+    Assert.assertEquals(1, barHeight(drawn, 0, color));
+    Assert.assertEquals(91, barHeight(drawn, 200, color));
+    Assert.assertEquals(1, panel.getComponentCount());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testBadType() {
+    new Histogram(this.frequencies, "luma");
+  }
+}
@@ -0,0 +1,33 @@
+import org.junit.Assert;
+
+import model.ImageModel;
+
+/**
+ * Checks the tests share for comparing images of any kind, one row at a time so big images don't
+ * have to be printed out to be compared.
+ */
+public final class ImageAssert {
+
+  private ImageAssert() {
+    // Only has static methods.
+  }
+
+  /**
+   * Checks that two images have the same size, max value and pixels.
+   *
+   * @param expected the image that is right
+   * @param actual   the image being checked
+   */
+  public static void assertSameImage(ImageModel expected, ImageModel actual) {
+    Assert.assertEquals(expected.getWidth(), actual.getWidth());
+    Assert.assertEquals(expected.getHeight(), actual.getHeight());
+    Assert.assertEquals(expected.getMaxValue(), actual.getMaxValue());
+    int[] expectedRow = new int[expected.getWidth()];
+    int[] actualRow = new int[actual.getWidth()];
+    for (int i = 0; i < expected.getHeight(); i++) {
+      expected.getRow(i, expectedRow);
+      actual.getRow(i, actualRow);
+      Assert.assertArrayEquals("row " + i, expectedRow, actualRow);
+    }
+  }
+}
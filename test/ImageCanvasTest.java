@@ -0,0 +1,101 @@
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+
+import model.BufferedImageConverter;
+import model.ImageModel;
+import model.Orientation;
+import model.PackedImageModel;
+import view.ImageCanvas;
+
+/**
+ * Tests for showing images straight from their rasters.
+ */
+public class ImageCanvasTest {
+  int[] pixels = {0x102030, 0x405060, 0x708090,
+      0xA0B0C0, 0xD0E0F0, 0x010203};
+  PackedImageModel image = new PackedImageModel(3, 2, 255, this.pixels);
+
+  @Test
+  public void testViewSharesTheRaster() {
+    BufferedImage picture = BufferedImageConverter.view(this.image);
+    Assert.assertEquals(BufferedImage.TYPE_INT_RGB, picture.getType());
+    Assert.assertEquals(0xFF708090, picture.getRGB(2, 0));
+    // the array behind the buffered image is the raster of the image
+    this.pixels[2] = 0x0000FF;
+    Assert.assertEquals(0xFF0000FF, picture.getRGB(2, 0));
+    // a turned view is laid out once, and shown from that
+    ImageModel turned = this.image.orient(Orientation.ROTATE_90);
+    BufferedImage turnedPicture = BufferedImageConverter.view(turned);
+    Assert.assertEquals(2, turnedPicture.getWidth());
+    Assert.assertEquals(turned.returnAsBufferedImage().getRGB(1, 2), turnedPicture.getRGB(1, 2));
+  }
+
+  @Test
+  public void testOnlyChangesAreRepainted() {
+    ImageCanvas canvas = new ImageCanvas();
+    canvas.setPicture(BufferedImageConverter.view(this.image));
+    Assert.assertNull(canvas.getLastDirtyRegion());
+    int[] changed = this.pixels.clone();
+    changed[1] = 0;
+    changed[4] = 0xFFFFFF;
+    canvas.setPicture(BufferedImageConverter.wrap(3, 2, changed));
+    Assert.assertEquals(new Rectangle(1, 0, 1, 2), canvas.getLastDirtyRegion());
+    // the same pixels again change nothing, even when they come from a copy
+    canvas.setPicture(new PackedImageModel(3, 2, 255, changed.clone()).returnAsBufferedImage());
+    Assert.assertNull(canvas.getLastDirtyRegion());
+  }
+
+  @Test
+  public void testZoom() {
+    ImageCanvas canvas = new ImageCanvas();
+    canvas.setPicture(BufferedImageConverter.view(this.image));
+    canvas.setZoom(4);
+    Assert.assertEquals(new Dimension(12, 8), canvas.getPreferredSize());
+    canvas.setSize(12, 8);
+    BufferedImage screen = new BufferedImage(12, 8, BufferedImage.TYPE_INT_RGB);
+    Graphics g = screen.getGraphics();
+    g.setClip(4, 4, 8, 4);
+    canvas.paint(g);
+    g.dispose();
+    // every pixel is drawn as a 4 by 4 square, and only the part in the clip is drawn
+    Assert.assertEquals(0xD0E0F0, screen.getRGB(7, 7) & 0xFFFFFF);
+    Assert.assertEquals(0x010203, screen.getRGB(8, 4) & 0xFFFFFF);
+    Assert.assertEquals(0, screen.getRGB(0, 0) & 0xFFFFFF);
+  }
+
+  @Test
+  public void testZoomedOutFromThePyramid() {
+    // two stripes of 1 pixel, which a quarter of the size should show as the grey between them
+    int[] stripes = new int[8 * 8];
+    for (int i = 0; i < stripes.length; i++) {
+      stripes[i] = i % 2 == 0 ? 0xFFFFFF : 0;
+    }
+    PackedImageModel striped = new PackedImageModel(8, 8, 255, stripes);
+    ImageCanvas canvas = new ImageCanvas();
+    canvas.setPicture(BufferedImageConverter.view(striped), striped.pyramid());
+    canvas.setZoom(0.25);
+    Assert.assertEquals(new Dimension(2, 2), canvas.getPreferredSize());
+    canvas.setSize(2, 2);
+    BufferedImage screen = new BufferedImage(2, 2, BufferedImage.TYPE_INT_RGB);
+    Graphics g = screen.getGraphics();
+    canvas.paint(g);
+    g.dispose();
+    Assert.assertEquals(3, striped.pyramid().getBuiltLevels());
+    Assert.assertEquals(0x808080, screen.getRGB(1, 1) & 0xFFFFFF);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testBadZoom() {
+    new ImageCanvas().setZoom(0);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testBadWrap() {
+    BufferedImageConverter.wrap(2, 2, new int[3]);
+  }
+}
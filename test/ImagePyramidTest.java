@@ -0,0 +1,152 @@
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Scanner;
+
+import controller.ImageController;
+import controller.ImageControllerImpl;
+import model.ImageModel;
+import model.ImagePyramid;
+import model.ImageScaler;
+import model.Orientation;
+import model.PackedImageModel;
+
+/**
+ * Tests for the halved copies of an image.
+ */
+public class ImagePyramidTest {
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  // Makes an image where every pixel has a different value
+  private static PackedImageModel gradient(int width, int height) {
+    int[] pixels = new int[width * height];
+    for (int i = 0; i < pixels.length; i++) {
+      pixels[i] = ((i * 7) & 0xFF) << 16 | ((i * 3) & 0xFF) << 8 | (i & 0xFF);
+    }
+    return new PackedImageModel(width, height, 255, pixels);
+  }
+
+  // Gets the pixels of an image in order
+  private static int[] pixels(ImageModel image) {
+    int[] result = new int[image.getWidth() * image.getHeight()];
+    int[] row = new int[image.getWidth()];
+    for (int i = 0; i < image.getHeight(); i++) {
+      image.getRow(i, row);
+      System.arraycopy(row, 0, result, i * image.getWidth(), row.length);
+    }
+    return result;
+  }
+
+  @Test
+  public void testLevels() {
+    PackedImageModel image = gradient(10, 3);
+    ImagePyramid pyramid = new ImagePyramid(image);
+    // 10 by 3, 5 by 2, 3 by 1, 2 by 1 and 1 by 1
+    Assert.assertEquals(5, pyramid.getLevelCount());
+    Assert.assertSame(image, pyramid.getLevel(0));
+    // nothing is made until it is asked for
+    Assert.assertEquals(1, pyramid.getBuiltLevels());
+    ImageModel third = pyramid.getLevel(2);
+    Assert.assertEquals(3, pyramid.getBuiltLevels());
+    Assert.assertEquals(3, third.getWidth());
+    Assert.assertEquals(1, third.getHeight());
+    // every level is the one before it halved
+    Assert.assertArrayEquals(pixels(ImageScaler.shrink(pyramid.getLevel(1), 2)), pixels(third));
+    Assert.assertArrayEquals(pixels(ImageScaler.shrink(image, 2)), pixels(pyramid.getLevel(1)));
+    Assert.assertSame(third, pyramid.getLevel(2));
+    ImageModel last = pyramid.getLevel(4);
+    Assert.assertEquals(1, last.getWidth());
+    Assert.assertEquals(1, last.getHeight());
+  }
+
+  @Test
+  public void testLevelForScale() {
+    ImagePyramid pyramid = new ImagePyramid(gradient(64, 64));
+    Assert.assertEquals(7, pyramid.getLevelCount());
+    Assert.assertEquals(0, pyramid.levelForScale(2));
+    Assert.assertEquals(0, pyramid.levelForScale(0.75));
+    Assert.assertEquals(1, pyramid.levelForScale(0.5));
+    Assert.assertEquals(1, pyramid.levelForScale(0.3));
+    Assert.assertEquals(2, pyramid.levelForScale(0.25));
+    Assert.assertEquals(6, pyramid.levelForScale(0.001));
+  }
+
+  @Test
+  public void testThumbnail() {
+    PackedImageModel image = gradient(40, 20);
+    Assert.assertSame(image, image.pyramid().thumbnail(40));
+    ImageModel thumbnail = image.pyramid().thumbnail(15);
+    // half the size is still too big, and a quarter is too small, so the half is shrunk again
+    Assert.assertEquals(10, thumbnail.getWidth());
+    Assert.assertEquals(5, thumbnail.getHeight());
+    Assert.assertEquals(2, image.pyramid().getBuiltLevels());
+    Assert.assertArrayEquals(pixels(ImageScaler.shrink(image.pyramid().getLevel(1), 2)),
+            pixels(thumbnail));
+    // a size between levels starts from the smallest one that is big enough
+    ImageModel half = image.pyramid().fit(20, 20);
+    Assert.assertEquals(20, half.getWidth());
+    Assert.assertSame(image.pyramid().getLevel(1), half);
+  }
+
+  @Test
+  public void testImagesKeepTheirPyramid() {
+    PackedImageModel image = gradient(8, 8);
+    Assert.assertSame(image.pyramid(), image.pyramid());
+    Assert.assertSame(image.pyramid(), ImagePyramid.of(image));
+    // a new image gets a new pyramid, since our images never change
+    ImageModel flipped = image.horizontalFlip();
+    Assert.assertNotSame(image.pyramid(), ImagePyramid.of(flipped));
+    ImageModel turned = image.orient(Orientation.ROTATE_90);
+    Assert.assertSame(ImagePyramid.of(turned), ImagePyramid.of(turned));
+    Assert.assertArrayEquals(pixels(ImageScaler.shrink(turned, 2)),
+            pixels(ImagePyramid.of(turned).getLevel(1)));
+  }
+
+  @Test
+  public void testLoadingDropsThePyramid() {
+    PackedImageModel image = new PackedImageModel(new Scanner("P3 2 2 255 " + "0 ".repeat(12)));
+    Assert.assertEquals(0, pixels(image.pyramid().getLevel(1))[0]);
+    StringBuilder white = new StringBuilder("P3 4 4 255");
+    for (int i = 0; i < 16 * 3; i++) {
+      white.append(" 255");
+    }
+    image.loadImage(new Scanner(white.toString()));
+    ImageModel level = image.pyramid().getLevel(1);
+    Assert.assertEquals(2, level.getWidth());
+    Assert.assertEquals(0xFFFFFF, pixels(level)[0]);
+  }
+
+  @Test
+  public void testThumbnailCommand() throws IOException {
+    ImageController controller = new ImageControllerImpl();
+    File saved = new File(this.folder.getRoot(), "thumbnail.ppm");
+    String[] script = {"load test/input/TestImage.ppm a", "thumbnail 1 a b",
+        "save " + saved.getPath() + " b"};
+    for (String line : script) {
+      controller.performOperation(controller.parseInputs(line));
+    }
+    ImageModel thumbnail = controller.loadImageFile(saved.getPath());
+    Assert.assertEquals(1, thumbnail.getWidth());
+    Assert.assertEquals(1, thumbnail.getHeight());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testBadLevel() {
+    new ImagePyramid(gradient(4, 4)).getLevel(3);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testBadThumbnail() {
+    new ImagePyramid(gradient(4, 4)).thumbnail(0);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testNullImage() {
+    new ImagePyramid(null);
+  }
+}
@@ -0,0 +1,68 @@
+import org.junit.Assert;
+import org.junit.Test;
+
+import model.ImageModel;
+import model.ImageModelImpl;
+import model.ImageScaler;
+import model.PackedImageModel;
+
+/**
+ * Tests for shrinking images with a box filter.
+ */
+public class ImageScalerTest {
+  // a 5 by 3 image, so blocks of 2 leave a column and a row over at the edges
+  PackedImageModel image = new PackedImageModel(5, 3, 255, new int[]{
+      0x000000, 0x020406, 0x0A0A0A, 0x141414, 0xFF0000,
+      0x040404, 0x060606, 0x0A0A0A, 0x1E1E1E, 0x00FF00,
+      0x101010, 0x202020, 0x303030, 0x404040, 0x0000FF});
+
+  // Gets the pixel at a row and column of an image
+  private static int at(ImageModel image, int row, int col) {
+    int[] rgb = new int[image.getWidth()];
+    image.getRow(row, rgb);
+    return rgb[col];
+  }
+
+  @Test
+  public void testShrink() {
+    PackedImageModel small = ImageScaler.shrink(this.image, 2);
+    Assert.assertEquals(3, small.getWidth());
+    Assert.assertEquals(2, small.getHeight());
+    // (0 + 2 + 4 + 6) / 4 = 3 red, (0 + 4 + 4 + 6) / 4 = 3.5 green which rounds up
+    Assert.assertEquals(0x030404, at(small, 0, 0));
+    Assert.assertEquals(0x121212, at(small, 0, 1));
+    // the last column only has 2 pixels in its block, and the last row only 2 in its blocks
+    Assert.assertEquals(0x808000, at(small, 0, 2));
+    Assert.assertEquals(0x181818, at(small, 1, 0));
+    Assert.assertEquals(0x0000FF, at(small, 1, 2));
+    Assert.assertEquals(255, small.getMaxValue());
+  }
+
+  @Test
+  public void testAnyModel() {
+    ImageModel pixels = ImageModelImpl.fromPackedImage(this.image);
+    Assert.assertEquals(ImageScaler.shrink(this.image, 2).toStringBuilder().toString(),
+            ImageScaler.shrink(pixels, 2).toStringBuilder().toString());
+  }
+
+  @Test
+  public void testFit() {
+    Assert.assertSame(this.image, ImageScaler.fit(this.image, 5, 3));
+    ImageModel fitted = ImageScaler.fit(this.image, 2, 3);
+    // 5 wide needs a factor of 3 to get down to 2
+    Assert.assertEquals(2, fitted.getWidth());
+    Assert.assertEquals(1, fitted.getHeight());
+    Assert.assertEquals(this.image.toStringBuilder().toString(),
+            ImageScaler.shrink(this.image, 1).toStringBuilder().toString());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testBadFactor() {
+    ImageScaler.shrink(this.image, 0);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testEmptyBox() {
+    ImageScaler.fit(this.image, 0, 10);
+  }
+}
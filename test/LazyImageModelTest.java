@@ -0,0 +1,137 @@
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+
+import controller.ImageController;
+import controller.ImageControllerImpl;
+import model.ImageModel;
+import model.LazyImageModel;
+import model.Matrix;
+import model.PackedImageModel;
+
+/**
+ * Tests that deferred images give the same result as images that are worked out right away.
+ */
+public class LazyImageModelTest {
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+  ImageModel eager = null;
+  LazyImageModel lazy = null;
+
+  @Before
+  public void init() {
+    int width = 37;
+    int height = 23;
+    int[] pixels = new int[width * height];
+    Random random = new Random(17);
+    for (int i = 0; i < pixels.length; i++) {
+      pixels[i] = random.nextInt(1 << 24);
+    }
+    this.eager = new PackedImageModel(width, height, 255, pixels);
+    this.lazy = new LazyImageModel(this.eager);
+  }
+
+  @Test
+  public void testChainIsDeferred() {
+    ImageModel result = this.lazy.changeExposure("brighten", 10).colorTransformation(Matrix.SEPIA)
+            .verticalFlip().greyScale("luma").horizontalFlip().changeExposure("darken", 5);
+    LazyImageModel lazyResult = (LazyImageModel) result;
+    Assert.assertFalse(lazyResult.isEvaluated());
+    // the first brighten and the sepia matrix, then the greyscale and darken composed together,
+    // and the two flips composed into one rotation
+    Assert.assertEquals(4, lazyResult.getPendingSteps());
+    Assert.assertEquals(37, result.getWidth());
+    Assert.assertFalse(lazyResult.isEvaluated());
+    ImageAssert.assertSameImage(this.eager.changeExposure("brighten", 10)
+            .colorTransformation(Matrix.SEPIA).verticalFlip().greyScale("luma").horizontalFlip()
+            .changeExposure("darken", 5), result);
+    Assert.assertTrue(lazyResult.isEvaluated());
+  }
+
+  @Test
+  public void testShiftsFoldIntoMatrix() {
+    ImageModel result = this.lazy.colorTransformation(Matrix.SEPIA).changeExposure("brighten", 20)
+            .horizontalFlip().greyScale("green").changeExposure("darken", 70);
+    LazyImageModel lazyResult = (LazyImageModel) result;
+    // the matrix with everything after it folded in, and the flip
+    Assert.assertEquals(2, lazyResult.getPendingSteps());
+    Assert.assertEquals(5, lazyResult.getRecordedSteps());
+    ImageAssert.assertSameImage(this.eager.colorTransformation(Matrix.SEPIA)
+            .changeExposure("brighten", 20).horizontalFlip().greyScale("green")
+            .changeExposure("darken", 70), result);
+    Assert.assertEquals(0, lazyResult.getRecordedSteps());
+    // a matrix after a matrix is its own step
+    lazyResult = (LazyImageModel) this.lazy.colorTransformation(Matrix.SEPIA)
+            .colorTransformation(Matrix.LUMA);
+    Assert.assertEquals(2, lazyResult.getPendingSteps());
+  }
+
+  @Test
+  public void testEveryStepOnItsOwn() {
+    ImageAssert.assertSameImage(this.eager.horizontalFlip(), this.lazy.horizontalFlip());
+    ImageAssert.assertSameImage(this.eager.verticalFlip(), this.lazy.verticalFlip());
+    ImageAssert.assertSameImage(this.eager.horizontalFlip().verticalFlip(),
+            this.lazy.verticalFlip().horizontalFlip());
+    ImageAssert.assertSameImage(this.eager, this.lazy.verticalFlip().verticalFlip());
+    for (String type : new String[]{"red", "green", "blue", "value", "intensity", "luma"}) {
+      ImageAssert.assertSameImage(this.eager.greyScale(type), this.lazy.greyScale(type));
+    }
+    ImageAssert.assertSameImage(this.eager.colorTransformation(Matrix.LUMA),
+            this.lazy.colorTransformation(Matrix.LUMA));
+  }
+
+  @Test
+  public void testFilterInTheMiddle() {
+    ImageModel expected = this.eager.greyScale("value").horizontalFlip()
+            .filter(Matrix.SHARPEN).changeExposure("brighten", 20).verticalFlip();
+    ImageModel actual = this.lazy.greyScale("value").horizontalFlip()
+            .filter(Matrix.SHARPEN).changeExposure("brighten", 20).verticalFlip();
+    ImageAssert.assertSameImage(expected, actual);
+  }
+
+  @Test
+  public void testMatrixIsCopied() {
+    double[][] matrix = {{1, 0, 0}, {0, 1, 0}, {0, 0, 1}};
+    ImageModel result = this.lazy.colorTransformation(matrix);
+    matrix[0][0] = 0;
+    ImageAssert.assertSameImage(this.eager, result);
+  }
+
+  @Test
+  public void testIntermediateImagesStayTheSame() {
+    ImageModel brighter = this.lazy.changeExposure("brighten", 30);
+    ImageModel flipped = brighter.horizontalFlip();
+    ImageAssert.assertSameImage(this.eager.changeExposure("brighten", 30).horizontalFlip(),
+            flipped);
+    ImageAssert.assertSameImage(this.eager.changeExposure("brighten", 30), brighter);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testBadMatrixRightAway() {
+    this.lazy.colorTransformation(new double[][]{{1, 0}, {0, 1}});
+  }
+
+  @Test
+  public void testDeferredController() throws IOException {
+    File saved = new File(this.folder.getRoot(), "deferred.ppm");
+    String[] script = {"load test/input/Test5x5.ppm a", "brighten 10 a b", "sepia b c",
+        "vertical-flip c d", "greyscale-red d e", "save " + saved.getPath() + " e"};
+    ImageController deferred = new ImageControllerImpl(true, true);
+    for (String line : script) {
+      deferred.performOperation(deferred.parseInputs(line));
+    }
+    String deferredFile = new String(Files.readAllBytes(saved.toPath()));
+    ImageController eagerController = new ImageControllerImpl(true, false);
+    for (String line : script) {
+      eagerController.performOperation(eagerController.parseInputs(line));
+    }
+    Assert.assertEquals(new String(Files.readAllBytes(saved.toPath())), deferredFile);
+  }
+}
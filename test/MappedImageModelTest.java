@@ -0,0 +1,163 @@
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Random;
+
+import model.BorderMode;
+import model.ImageModel;
+import model.MappedImageModel;
+import model.Matrix;
+import model.Orientation;
+import model.PPMReader;
+import model.PackedImageModel;
+import model.PointOperation;
+import view.PPMWriter;
+
+/**
+ * Tests that mapped images give exactly the same pixels as images kept in memory.
+ */
+public class MappedImageModelTest {
+  private PackedImageModel packed;
+  private MappedImageModel mapped;
+  private File file;
+
+  @Before
+  public void setUp() throws IOException {
+    Random random = new Random(25);
+    int[] pixels = new int[31 * 19];
+    for (int i = 0; i < pixels.length; i++) {
+      pixels[i] = random.nextInt(1 << 24);
+    }
+    this.packed = new PackedImageModel(31, 19, 255, pixels);
+    this.file = File.createTempFile("mapped", ".ppm");
+    PPMWriter.write(this.packed, this.file.getPath(), true);
+    this.mapped = MappedImageModel.open(this.file.getPath());
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    this.mapped.close();
+    this.file.delete();
+  }
+
+  @Test
+  public void testOpen() throws IOException {
+    Assert.assertTrue(MappedImageModel.canMap(this.file.getPath()));
+    Assert.assertTrue(this.mapped.isMappedInPlace());
+    ImageAssert.assertSameImage(this.packed, this.mapped);
+    Assert.assertEquals(this.packed.colorFrequencies().toMap("blue"),
+            this.mapped.returnColorFrequencies("blue"));
+    // a plain file can't be mapped, so it is copied to a temporary file
+    File plain = File.createTempFile("mapped", ".ppm");
+    PPMWriter.write(this.packed, plain.getPath(), false);
+    try (MappedImageModel copy = MappedImageModel.open(plain.getPath())) {
+      Assert.assertFalse(MappedImageModel.canMap(plain.getPath()));
+      Assert.assertFalse(copy.isMappedInPlace());
+      ImageAssert.assertSameImage(this.packed, copy);
+    } finally {
+      plain.delete();
+    }
+  }
+
+  @Test
+  public void testOpenWideFile() throws IOException {
+    // a 16 bit file is read one row at a time and scaled down to 8 bits
+    File wide = File.createTempFile("mapped", ".ppm");
+    byte[] header = "P6\n3 2\n65535\n".getBytes(StandardCharsets.US_ASCII);
+    byte[] data = new byte[header.length + 3 * 2 * 6];
+    System.arraycopy(header, 0, data, 0, header.length);
+    for (int i = header.length; i < data.length; i++) {
+      data[i] = (byte) (i * 37);
+    }
+    Files.write(wide.toPath(), data);
+    try (MappedImageModel copy = MappedImageModel.open(wide.getPath())) {
+      Assert.assertFalse(copy.isMappedInPlace());
+      ImageAssert.assertSameImage(PPMReader.read(wide.getPath()), copy);
+    } finally {
+      wide.delete();
+    }
+  }
+
+  @Test
+  public void testFiltersMatchTheWholeImage() {
+    double[][] uneven = {{0.1, -0.3, 0.05}, {0.7, 0.2, 0.3}, {0, 0.05, 0.4}, {0.2, 0, -0.1},
+        {0.15, 0.25, 0}};
+    for (BorderMode mode : BorderMode.values()) {
+      for (double[][] matrix : new double[][][]{Matrix.GAUSSIAN_BLUR, Matrix.SHARPEN, uneven}) {
+        ImageAssert.assertSameImage(this.packed.filter(matrix, mode),
+                this.mapped.filter(matrix, mode));
+      }
+    }
+  }
+
+  @Test
+  public void testOperations() {
+    ImageAssert.assertSameImage(this.packed.greyScale("value"), this.mapped.greyScale("value"));
+    ImageAssert.assertSameImage(this.packed.changeExposure("darken", 25),
+            this.mapped.changeExposure("darken", 25));
+    ImageAssert.assertSameImage(this.packed.colorTransformation(Matrix.SEPIA),
+            this.mapped.colorTransformation(Matrix.SEPIA));
+    PointOperation brighten = PointOperation.exposure(60);
+    ImageAssert.assertSameImage(this.packed.pointOperation(brighten),
+            this.mapped.pointOperation(brighten));
+    for (Orientation orientation : Orientation.values()) {
+      ImageAssert.assertSameImage(this.packed.orient(orientation), this.mapped.orient(orientation));
+    }
+    Assert.assertEquals(this.packed.toStringBuilder().toString(),
+            this.mapped.toStringBuilder().toString());
+  }
+
+  @Test
+  public void testOrientAcrossBlocks() throws IOException {
+    // big enough that the result is turned a few blocks at a time in both directions
+    int width = 1300;
+    int height = 1100;
+    int[] pixels = new int[width * height];
+    for (int i = 0; i < pixels.length; i++) {
+      pixels[i] = (int) (i * 2654435761L) & 0xFFFFFF;
+    }
+    PackedImageModel big = new PackedImageModel(width, height, 255, pixels);
+    try (MappedImageModel copy = MappedImageModel.of(big)) {
+      for (Orientation orientation : Orientation.values()) {
+        ImageModel turned = copy.orient(orientation);
+        ImageAssert.assertSameImage(big.orient(orientation), turned);
+        if (turned != copy) {
+          ((MappedImageModel) turned).close();
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testCloseDeletesTheTemporaryFile() throws IOException {
+    MappedImageModel copy = MappedImageModel.of(this.packed.horizontalFlip());
+    MappedImageModel flipped = (MappedImageModel) copy.horizontalFlip();
+    ImageAssert.assertSameImage(this.packed, flipped);
+    copy.close();
+    copy.close();
+    Assert.assertTrue(copy.isClosed());
+    // the flipped image has its own file, so it can still be read
+    ImageAssert.assertSameImage(this.packed, flipped);
+    flipped.close();
+    try {
+      flipped.getRow(0, new int[31]);
+      Assert.fail("A closed image can't be read");
+    } catch (IllegalStateException e) {
+      // expected
+    }
+    // closing an opened file leaves the file alone
+    this.mapped.close();
+    Assert.assertTrue(this.file.exists());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testNullImage() {
+    MappedImageModel.of(null);
+  }
+}
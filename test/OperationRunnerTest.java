@@ -0,0 +1,197 @@
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.FileNotFoundException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.swing.SwingUtilities;
+
+import model.ColorFrequencies;
+import model.HistogramService;
+import model.ImageModel;
+import model.PackedImageModel;
+import view.OperationRunner;
+
+/**
+ * Tests for running the operations of the GUI on worker threads.
+ */
+public class OperationRunnerTest {
+  List<ImageModel> published = null;
+  List<Boolean> loaded = null;
+  List<Exception> failures = null;
+  List<Integer> totals = null;
+  List<Integer> jobSizes = null;
+  List<String> problems = null;
+  OperationRunner runner = null;
+  PackedImageModel image = null;
+
+  @Before
+  public void init() {
+    this.published = Collections.synchronizedList(new ArrayList<>());
+    this.loaded = Collections.synchronizedList(new ArrayList<>());
+    this.failures = Collections.synchronizedList(new ArrayList<>());
+    this.totals = Collections.synchronizedList(new ArrayList<>());
+    this.jobSizes = Collections.synchronizedList(new ArrayList<>());
+    this.problems = Collections.synchronizedList(new ArrayList<>());
+    this.runner = new OperationRunner(new HistogramService(), new OperationRunner.Listener() {
+      @Override
+      public void progress(int done, int total) {
+        OperationRunnerTest.this.checkThread("progress");
+        OperationRunnerTest.this.totals.add(total);
+      }
+
+      @Override
+      public void published(ImageModel image, BufferedImage picture,
+                            ColorFrequencies frequencies, List<OperationRunner.Step> steps,
+                            boolean loaded) {
+        OperationRunnerTest.this.checkThread("published");
+        if (image.getWidth() != picture.getWidth()) {
+          OperationRunnerTest.this.problems.add("picture is " + picture.getWidth()
+                  + " wide but the image is " + image.getWidth());
+        }
+        if (!Arrays.equals(image.colorFrequencies().get("red"), frequencies.get("red"))) {
+          OperationRunnerTest.this.problems.add("published frequencies do not match the image");
+        }
+        OperationRunnerTest.this.published.add(image);
+        OperationRunnerTest.this.jobSizes.add(steps.size());
+        OperationRunnerTest.this.loaded.add(loaded);
+      }
+
+      @Override
+      public void histogramsCounted(ImageModel image, ColorFrequencies frequencies) {
+        OperationRunnerTest.this.problems.add(
+                "small images are counted exactly straight away");
+      }
+
+      @Override
+      public void failed(Exception e) {
+        OperationRunnerTest.this.failures.add(e);
+      }
+    });
+    this.image = new PackedImageModel(4, 3, 255, new int[]{0x102030, 0x405060, 0x708090,
+        0xA0B0C0, 0x112233, 0x445566, 0x778899, 0xAABBCC, 0x000000, 0xFFFFFF, 0x808080,
+        0x123456});
+  }
+
+  @After
+  public void stop() {
+    this.runner.shutdown();
+  }
+
+  // Notes a listener call that did not come in on the event dispatch thread
+  private void checkThread(String call) {
+    if (!SwingUtilities.isEventDispatchThread()) {
+      this.problems.add(call + " was not called on the event dispatch thread");
+    }
+  }
+
+  // Waits for the runner to finish and for everything it sent to the event dispatch thread,
+  // then checks on this thread that the listener saw nothing wrong
+  private void waitForRunner() throws Exception {
+    for (int i = 0; i < 500 && this.runner.isBusy(); i++) {
+      Thread.sleep(10);
+    }
+    Assert.assertFalse(this.runner.isBusy());
+    SwingUtilities.invokeAndWait(() -> { });
+    Assert.assertEquals(Collections.emptyList(), new ArrayList<>(this.problems));
+  }
+
+  // Blocks a step until the test lets it go, or the worker doing it is interrupted
+  private static void waitFor(CountDownLatch latch) {
+    try {
+      latch.await(5, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  @Test
+  public void testQueuedStepsAreDoneTogether() throws Exception {
+    this.runner.load(image -> this.image);
+    this.waitForRunner();
+    CountDownLatch release = new CountDownLatch(1);
+    this.runner.submit(image -> {
+      waitFor(release);
+      return image.greyScale("red");
+    });
+    this.runner.submit(image -> image.changeExposure("brighten", 10));
+    this.runner.submit(ImageModel::horizontalFlip);
+    this.runner.submit(image -> image.changeExposure("darken", 5));
+    release.countDown();
+    this.waitForRunner();
+    // the load, the step that was blocked, and the three that waited for it
+    Assert.assertEquals(3, this.published.size());
+    Assert.assertEquals(Arrays.asList(true, false, false), this.loaded);
+    Assert.assertEquals(Arrays.asList(1, 1, 3), this.jobSizes);
+    Assert.assertTrue(this.totals.contains(4));
+    ImageModel expected = this.image.greyScale("red").changeExposure("brighten", 10)
+            .horizontalFlip().changeExposure("darken", 5);
+    Assert.assertEquals(expected.toStringBuilder().toString(),
+            this.published.get(2).toStringBuilder().toString());
+  }
+
+  @Test
+  public void testCancel() throws Exception {
+    this.runner.load(image -> this.image);
+    this.waitForRunner();
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    this.runner.submit(image -> {
+      started.countDown();
+      waitFor(release);
+      return image.greyScale("blue");
+    });
+    this.runner.submit(ImageModel::verticalFlip);
+    started.await(5, TimeUnit.SECONDS);
+    this.runner.cancel();
+    release.countDown();
+    this.waitForRunner();
+    Assert.assertEquals(1, this.published.size());
+    // later steps start from the last image that was published
+    this.runner.submit(ImageModel::verticalFlip);
+    this.waitForRunner();
+    Assert.assertEquals(this.image.verticalFlip().toStringBuilder().toString(),
+            this.published.get(1).toStringBuilder().toString());
+  }
+
+  @Test
+  public void testRestart() throws Exception {
+    this.runner.load(image -> this.image);
+    this.waitForRunner();
+    this.runner.submit(ImageModel::horizontalFlip);
+    this.runner.restart(this.image);
+    this.waitForRunner();
+    ImageModel last = this.published.get(this.published.size() - 1);
+    Assert.assertSame(this.image, last);
+    Assert.assertEquals(0, (int) this.jobSizes.get(this.jobSizes.size() - 1));
+  }
+
+  @Test
+  public void testFailure() throws Exception {
+    this.runner.load(image -> {
+      throw new FileNotFoundException("nothing.ppm");
+    });
+    this.waitForRunner();
+    Assert.assertEquals(1, this.failures.size());
+    Assert.assertTrue(this.failures.get(0) instanceof FileNotFoundException);
+    Assert.assertTrue(this.published.isEmpty());
+    this.runner.load(image -> this.image);
+    this.runner.submit(image -> image.changeExposure("sideways", 1));
+    this.waitForRunner();
+    Assert.assertEquals(2, this.failures.size());
+    Assert.assertEquals(1, this.published.size());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testNullStep() {
+    this.runner.submit(null);
+  }
+}
@@ -0,0 +1,144 @@
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Random;
+
+import model.Orientation;
+
+/**
+ * Tests for flipping, rotating and transposing packed rasters.
+ */
+public class OrientationTest {
+  // big enough to have tiles cut off at the right and bottom edges
+  int width = 150;
+  int height = 71;
+  int[] pixels = null;
+
+  @Before
+  public void init() {
+    this.pixels = new int[this.width * this.height];
+    Random random = new Random(5);
+    for (int i = 0; i < this.pixels.length; i++) {
+      this.pixels[i] = random.nextInt(1 << 24);
+    }
+  }
+
+  // Gets the pixel at a row and column of a raster
+  private static int at(int[] pixels, int width, int row, int col) {
+    return pixels[row * width + col];
+  }
+
+  @Test
+  public void testRotate90() {
+    int[] result = Orientation.ROTATE_90.apply(this.pixels, this.width, this.height);
+    // the left column turns into the top row, read from the bottom up
+    for (int r = 0; r < this.width; r++) {
+      for (int c = 0; c < this.height; c++) {
+        Assert.assertEquals(at(this.pixels, this.width, this.height - 1 - c, r),
+                at(result, this.height, r, c));
+      }
+    }
+  }
+
+  @Test
+  public void testRotate270() {
+    int[] result = Orientation.ROTATE_270.apply(this.pixels, this.width, this.height);
+    for (int r = 0; r < this.width; r++) {
+      for (int c = 0; c < this.height; c++) {
+        Assert.assertEquals(at(this.pixels, this.width, c, this.width - 1 - r),
+                at(result, this.height, r, c));
+      }
+    }
+  }
+
+  @Test
+  public void testTranspose() {
+    int[] result = Orientation.TRANSPOSE.apply(this.pixels, this.width, this.height);
+    for (int r = 0; r < this.width; r++) {
+      for (int c = 0; c < this.height; c++) {
+        Assert.assertEquals(at(this.pixels, this.width, c, r), at(result, this.height, r, c));
+      }
+    }
+  }
+
+  @Test
+  public void testFlips() {
+    int[] horizontal = Orientation.FLIP_HORIZONTAL.apply(this.pixels, this.width, this.height);
+    int[] vertical = Orientation.FLIP_VERTICAL.apply(this.pixels, this.width, this.height);
+    int[] upsideDown = Orientation.ROTATE_180.apply(this.pixels, this.width, this.height);
+    for (int r = 0; r < this.height; r++) {
+      for (int c = 0; c < this.width; c++) {
+        int pixel = at(this.pixels, this.width, r, c);
+        Assert.assertEquals(pixel, at(horizontal, this.width, r, this.width - 1 - c));
+        Assert.assertEquals(pixel, at(vertical, this.width, this.height - 1 - r, c));
+        Assert.assertEquals(pixel,
+                at(upsideDown, this.width, this.height - 1 - r, this.width - 1 - c));
+      }
+    }
+    Assert.assertArrayEquals(this.pixels,
+            Orientation.IDENTITY.apply(this.pixels, this.width, this.height));
+  }
+
+  @Test
+  public void testComposingIsTheSameAsApplyingBoth() {
+    for (Orientation first : Orientation.values()) {
+      int[] once = first.apply(this.pixels, this.width, this.height);
+      int onceWidth = first.getWidth(this.width, this.height);
+      int onceHeight = first.getHeight(this.width, this.height);
+      for (Orientation second : Orientation.values()) {
+        Assert.assertArrayEquals(first + " then " + second,
+                second.apply(once, onceWidth, onceHeight),
+                first.then(second).apply(this.pixels, this.width, this.height));
+      }
+    }
+  }
+
+  @Test
+  public void testCopyRow() {
+    int[] row = new int[this.height];
+    for (Orientation orientation : Orientation.values()) {
+      int[] result = orientation.apply(this.pixels, this.width, this.height);
+      int resultWidth = orientation.getWidth(this.width, this.height);
+      int resultHeight = orientation.getHeight(this.width, this.height);
+      row = new int[resultWidth];
+      for (int r = 0; r < resultHeight; r++) {
+        orientation.copyRow(this.pixels, this.width, this.height, r, row);
+        for (int c = 0; c < resultWidth; c++) {
+          Assert.assertEquals(at(result, resultWidth, r, c), row[c]);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testRotation() {
+    Assert.assertEquals(Orientation.ROTATE_90, Orientation.rotation(90));
+    Assert.assertEquals(Orientation.ROTATE_180, Orientation.rotation(180));
+    Assert.assertEquals(Orientation.ROTATE_270, Orientation.rotation(270));
+    Assert.assertEquals(Orientation.ROTATE_270, Orientation.rotation(-90));
+    Assert.assertEquals(Orientation.IDENTITY, Orientation.rotation(360));
+    Assert.assertEquals(Orientation.ROTATE_180,
+            Orientation.ROTATE_90.then(Orientation.ROTATE_90));
+    Assert.assertEquals(Orientation.IDENTITY,
+            Orientation.TRANSPOSE.then(Orientation.TRANSPOSE));
+  }
+
+  @Test
+  public void testInverse() {
+    for (Orientation orientation : Orientation.values()) {
+      Assert.assertEquals(Orientation.IDENTITY, orientation.then(orientation.inverse()));
+      Assert.assertEquals(Orientation.IDENTITY, orientation.inverse().then(orientation));
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testBadRotation() {
+    Orientation.rotation(45);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testBadRaster() {
+    Orientation.ROTATE_90.apply(new int[5], 2, 2);
+  }
+}
@@ -0,0 +1,117 @@
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+
+import controller.ImageController;
+import controller.ImageControllerImpl;
+import model.ImageModel;
+import model.ImageModelImpl;
+import model.LazyImageModel;
+import model.Matrix;
+import model.Orientation;
+import model.OrientedImageModel;
+import model.PackedImageModel;
+
+/**
+ * Tests that flipped, rotated and transposed views show the same images as copying the pixels.
+ */
+public class OrientedImageModelTest {
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+  PackedImageModel packedImage = null;
+  ImageModel pixelImage = null;
+
+  @Before
+  public void init() {
+    int width = 13;
+    int height = 7;
+    int[] pixels = new int[width * height];
+    Random random = new Random(3);
+    for (int i = 0; i < pixels.length; i++) {
+      pixels[i] = random.nextInt(1 << 24);
+    }
+    this.packedImage = new PackedImageModel(width, height, 255, pixels);
+    this.pixelImage = ImageModelImpl.fromPackedImage(this.packedImage);
+  }
+
+  @Test
+  public void testEveryOrientation() {
+    for (Orientation orientation : Orientation.values()) {
+      ImageModel expected = this.pixelImage.orient(orientation);
+      ImageModel view = this.packedImage.orient(orientation);
+      Assert.assertEquals(expected.getWidth(), view.getWidth());
+      Assert.assertEquals(expected.getHeight(), view.getHeight());
+      ImageAssert.assertSameImage(expected, view);
+      ImageAssert.assertSameImage(expected,
+              new LazyImageModel(this.packedImage).orient(orientation));
+      Assert.assertEquals(expected.returnAsBufferedImage().getRGB(2, 5),
+              view.returnAsBufferedImage().getRGB(2, 5));
+    }
+  }
+
+  @Test
+  public void testFlipsDontCopy() {
+    OrientedImageModel view = (OrientedImageModel) this.packedImage.verticalFlip()
+            .horizontalFlip();
+    Assert.assertEquals(Orientation.ROTATE_180, view.getOrientation());
+    int[] row = new int[13];
+    view.getRow(0, row);
+    int[] expected = new int[13];
+    this.pixelImage.verticalFlip().horizontalFlip().getRow(0, expected);
+    Assert.assertArrayEquals(expected, row);
+    Assert.assertFalse(view.isMaterialized());
+    // reading a row of a transposed image copies the whole image once
+    OrientedImageModel turned = (OrientedImageModel) view.orient(Orientation.ROTATE_90);
+    Assert.assertEquals(Orientation.ROTATE_270, turned.getOrientation());
+    turned.getRow(0, new int[7]);
+    Assert.assertTrue(turned.isMaterialized());
+  }
+
+  @Test
+  public void testTurningBackGivesThePackedImage() {
+    ImageModel image = this.packedImage.orient(Orientation.ROTATE_90).orient(Orientation.ROTATE_90)
+            .orient(Orientation.ROTATE_180);
+    Assert.assertTrue(image instanceof PackedImageModel);
+    ImageAssert.assertSameImage(this.packedImage, image);
+  }
+
+  @Test
+  public void testOperationsOnAView() {
+    ImageAssert.assertSameImage(this.pixelImage.orient(Orientation.TRANSPOSE).filter(Matrix.SHARPEN)
+                    .colorTransformation(Matrix.SEPIA).changeExposure("brighten", 20),
+            this.packedImage.orient(Orientation.TRANSPOSE).filter(Matrix.SHARPEN)
+                    .colorTransformation(Matrix.SEPIA).changeExposure("brighten", 20));
+    for (String type : new String[]{"red", "green", "blue", "intensity"}) {
+      Assert.assertEquals(this.pixelImage.returnColorFrequencies(type),
+              this.packedImage.orient(Orientation.ROTATE_270).returnColorFrequencies(type));
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testNullOrientation() {
+    this.packedImage.orient(null);
+  }
+
+  @Test
+  public void testRotateCommand() throws IOException {
+    ImageController controller = new ImageControllerImpl();
+    File rotated = new File(this.folder.getRoot(), "rotated.ppm");
+    File flipped = new File(this.folder.getRoot(), "flipped.ppm");
+    String[] script = {"load test/input/TestImage.ppm a", "rotate 90 a b", "transpose b c",
+        "rotate 45 c d", "save " + rotated.getPath() + " c", "vertical-flip a e",
+        "save " + flipped.getPath() + " e"};
+    for (String line : script) {
+      controller.performOperation(controller.parseInputs(line));
+    }
+    // turning clockwise and then flipping over the diagonal is the same as a vertical flip
+    Assert.assertEquals(new String(Files.readAllBytes(flipped.toPath())),
+            new String(Files.readAllBytes(rotated.toPath())));
+  }
+}
@@ -0,0 +1,88 @@
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import model.ImageModel;
+import model.PPMReader;
+
+/**
+ * Tests for reading plain and raw ppm files.
+ */
+public class PPMReaderTest {
+
+  // Reads an image out of the given bytes
+  private ImageModel read(byte[] bytes) throws IOException {
+    return PPMReader.read(new ByteArrayInputStream(bytes));
+  }
+
+  // Reads an image out of the given text
+  private ImageModel read(String text) throws IOException {
+    return this.read(text.getBytes(StandardCharsets.US_ASCII));
+  }
+
+  @Test
+  public void testReadPlainFile() throws IOException {
+    ImageModel image = PPMReader.read("test/input/TestImage.ppm");
+    Assert.assertEquals("2 2\n" +
+            "255\n" +
+            "240\n" +
+            "120\n" +
+            "80\n" +
+            "111\n" +
+            "23\n" +
+            "88\n" +
+            "243\n" +
+            "11\n" +
+            "99\n" +
+            "0\n" +
+            "255\n" +
+            "255\n", image.toStringBuilder().toString());
+  }
+
+  @Test
+  public void testCommentsAnywhere() throws IOException {
+    ImageModel image = this.read("P3# magic\n2 # width\n#height next\n1\n255 # max\n"
+            + "1 2 3 # first pixel\n4 5 6");
+    Assert.assertEquals("2 1\n255\n1\n2\n3\n4\n5\n6\n", image.toStringBuilder().toString());
+  }
+
+  @Test
+  public void testReadRawFile() throws IOException {
+    byte[] header = "P6\n# raw\n2 1\n255\n".getBytes(StandardCharsets.US_ASCII);
+    byte[] bytes = new byte[header.length + 6];
+    System.arraycopy(header, 0, bytes, 0, header.length);
+    byte[] body = {(byte) 200, 10, 0, (byte) 255, (byte) 128, 35};
+    System.arraycopy(body, 0, bytes, header.length, body.length);
+    ImageModel image = this.read(bytes);
+    Assert.assertEquals("2 1\n255\n200\n10\n0\n255\n128\n35\n", image.toStringBuilder().toString());
+  }
+
+  @Test
+  public void testReadWideRawFile() throws IOException {
+    byte[] header = "P6 1 1 65535\n".getBytes(StandardCharsets.US_ASCII);
+    byte[] bytes = new byte[header.length + 6];
+    System.arraycopy(header, 0, bytes, 0, header.length);
+    byte[] body = {(byte) 0xFF, (byte) 0xFF, 0, 0, (byte) 0x80, 0};
+    System.arraycopy(body, 0, bytes, header.length, body.length);
+    ImageModel image = this.read(bytes);
+    Assert.assertEquals("1 1\n255\n255\n0\n128\n", image.toStringBuilder().toString());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testBadMagicNumber() throws IOException {
+    this.read("P2\n1 1\n255\n0 0 0\n");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testValueAboveMax() throws IOException {
+    this.read("P3\n1 1\n15\n0 16 0\n");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testMissingData() throws IOException {
+    this.read("P6\n2 2\n255\nabc");
+  }
+}
@@ -0,0 +1,55 @@
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import model.ImageModel;
+import model.Matrix;
+import model.PPMReader;
+import view.ImageViewImpl;
+import view.PPMWriter;
+
+/**
+ * Tests for saving images as plain and raw ppm files.
+ */
+public class PPMWriterTest {
+  ImageModel image = null;
+  File file = null;
+
+  @Before
+  public void init() throws IOException {
+    this.image = PPMReader.read("test/input/Test5x5.ppm");
+    this.file = File.createTempFile("ppm-writer", ".ppm");
+    this.file.deleteOnExit();
+  }
+
+  @Test
+  public void testPlainMatchesOldFormat() throws IOException {
+    PPMWriter.write(this.image, this.file.getPath(), false);
+    String saved = new String(Files.readAllBytes(this.file.toPath()), StandardCharsets.US_ASCII);
+    Assert.assertEquals("P3\n# Created by Aditya Pathak and Anna Dendas\n"
+            + this.image.toStringBuilder().toString(), saved);
+  }
+
+  @Test
+  public void testRawRoundTrip() throws IOException {
+    new ImageViewImpl(this.image).savePPM(this.file.getPath(), true);
+    Assert.assertEquals(this.image.toStringBuilder().toString(),
+            PPMReader.read(this.file.getPath()).toStringBuilder().toString());
+    // header plus 3 bytes for each of the 25 pixels
+    Assert.assertEquals("P6\n# Created by Aditya Pathak and Anna Dendas\n5 5\n255\n".length()
+            + 75, this.file.length());
+  }
+
+  @Test
+  public void testPlainRoundTrip() throws IOException {
+    ImageModel sepia = this.image.colorTransformation(Matrix.SEPIA);
+    new ImageViewImpl(sepia).savePPM(this.file.getPath(), false);
+    Assert.assertEquals(sepia.toStringBuilder().toString(),
+            PPMReader.read(this.file.getPath()).toStringBuilder().toString());
+  }
+}
@@ -0,0 +1,114 @@
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.util.Scanner;
+
+import model.ImageModel;
+import model.ImageModelImpl;
+import model.Matrix;
+import model.PackedImageModel;
+import model.PointOperation;
+import model.Pixel;
+
+/**
+ * Tests that the packed raster model gives the exact same images as our pixel model.
+ */
+public class PackedImageModelTest {
+  ImageModel pixelImage = null;
+  ImageModel packedImage = null;
+
+  @Before
+  public void init() throws FileNotFoundException {
+    String imageFileName = "test/input/Test5x5.ppm";
+    Scanner sc = new Scanner(new FileInputStream(imageFileName));
+    StringBuilder builder = new StringBuilder();
+    //read the file line by line, and populate a string. This will throw away any comment lines
+    while (sc.hasNextLine()) {
+      String s = sc.nextLine();
+      if (s.charAt(0) != '#') {
+        builder.append(s + System.lineSeparator());
+      }
+    }
+    this.pixelImage = new ImageModelImpl(new Scanner(builder.toString()));
+    this.packedImage = new PackedImageModel(new Scanner(builder.toString()));
+  }
+
+  @Test
+  public void testLoad() {
+    ImageAssert.assertSameImage(this.pixelImage, this.packedImage);
+  }
+
+  @Test
+  public void testExposure() {
+    ImageAssert.assertSameImage(this.pixelImage.changeExposure("brighten", 50),
+            this.packedImage.changeExposure("brighten", 50));
+    ImageAssert.assertSameImage(this.pixelImage.changeExposure("darken", 50),
+            this.packedImage.changeExposure("darken", 50));
+  }
+
+  @Test
+  public void testGreyScale() {
+    for (String type : new String[]{"red", "green", "blue", "value", "intensity", "luma"}) {
+      ImageAssert.assertSameImage(this.pixelImage.greyScale(type),
+              this.packedImage.greyScale(type));
+    }
+  }
+
+  @Test
+  public void testFilter() {
+    ImageAssert.assertSameImage(this.pixelImage.filter(Matrix.GAUSSIAN_BLUR),
+            this.packedImage.filter(Matrix.GAUSSIAN_BLUR));
+    ImageAssert.assertSameImage(this.pixelImage.filter(Matrix.SHARPEN),
+            this.packedImage.filter(Matrix.SHARPEN));
+  }
+
+  @Test
+  public void testPointOperation() {
+    PointOperation operation = PointOperation.exposure(30).then(PointOperation.greyScale("red"));
+    ImageAssert.assertSameImage(this.pixelImage.pointOperation(operation),
+            this.packedImage.pointOperation(operation));
+    ImageAssert.assertSameImage(this.pixelImage.changeExposure("brighten", 30).greyScale("red"),
+            this.packedImage.pointOperation(operation));
+  }
+
+  @Test
+  public void testColorTransformation() {
+    ImageAssert.assertSameImage(this.pixelImage.colorTransformation(Matrix.SEPIA),
+            this.packedImage.colorTransformation(Matrix.SEPIA));
+    ImageAssert.assertSameImage(this.pixelImage.colorTransformation(Matrix.LUMA),
+            this.packedImage.colorTransformation(Matrix.LUMA));
+  }
+
+  @Test
+  public void testFlips() {
+    ImageAssert.assertSameImage(this.pixelImage.verticalFlip(), this.packedImage.verticalFlip());
+    ImageAssert.assertSameImage(this.pixelImage.horizontalFlip(),
+            this.packedImage.horizontalFlip());
+  }
+
+  @Test
+  public void testBufferedImage() {
+    Assert.assertEquals(this.pixelImage.returnAsBufferedImage().getRGB(3, 2),
+            this.packedImage.returnAsBufferedImage().getRGB(3, 2));
+  }
+
+  @Test
+  public void testColorFrequencies() {
+    for (String type : new String[]{"red", "green", "blue", "intensity"}) {
+      Assert.assertEquals(this.pixelImage.returnColorFrequencies(type),
+              this.packedImage.returnColorFrequencies(type));
+    }
+  }
+
+  @Test
+  public void testGetImageView() {
+    Pixel pixel = ((PackedImageModel) this.packedImage).getImage().get(2).get(3);
+    Pixel expected = ((ImageModelImpl) this.pixelImage).getImage().get(2).get(3);
+    Assert.assertEquals(expected.getColor(), pixel.getColor());
+    Assert.assertEquals(2, pixel.getPixelRow());
+    Assert.assertEquals(3, pixel.getPixelCol());
+  }
+}
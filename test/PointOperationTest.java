@@ -0,0 +1,145 @@
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import model.PointOperation;
+
+/**
+ * Tests for the lookup table point operations.
+ */
+public class PointOperationTest {
+  int[] pixels = null;
+
+  @Before
+  public void init() {
+    this.pixels = new int[4096];
+    Random random = new Random(11);
+    for (int i = 0; i < this.pixels.length; i++) {
+      this.pixels[i] = random.nextInt(1 << 24);
+    }
+  }
+
+  // Packs a grey value into all three channels
+  private static int grey(int value) {
+    return (value << 16) | (value << 8) | value;
+  }
+
+  @Test
+  public void testExposure() {
+    int[] result = PointOperation.exposure(50).apply(new int[]{0x10C8FF, 0x000000});
+    Assert.assertEquals(0x42FAFF, result[0]);
+    Assert.assertEquals(0x323232, result[1]);
+    result = PointOperation.exposure(-50).apply(new int[]{0x10C8FF});
+    Assert.assertEquals(0x0096CD, result[0]);
+  }
+
+  @Test
+  public void testGreyScale() {
+    int rgb = (200 << 16) | (100 << 8) | 30;
+    Assert.assertEquals(grey(200), PointOperation.greyScale("red").applyToPixel(rgb));
+    Assert.assertEquals(grey(100), PointOperation.greyScale("green").applyToPixel(rgb));
+    Assert.assertEquals(grey(30), PointOperation.greyScale("blue").applyToPixel(rgb));
+    Assert.assertEquals(grey(200), PointOperation.greyScale("value").applyToPixel(rgb));
+    Assert.assertEquals(grey(110), PointOperation.greyScale("intensity").applyToPixel(rgb));
+    // 43 + 72 + 2
+    Assert.assertEquals(grey(117), PointOperation.greyScale("luma").applyToPixel(rgb));
+  }
+
+  @Test
+  public void testApplyMatchesApplyToPixel() {
+    for (PointOperation operation : this.operations()) {
+      int[] result = operation.apply(this.pixels);
+      for (int i = 0; i < this.pixels.length; i++) {
+        Assert.assertEquals(operation.applyToPixel(this.pixels[i]), result[i]);
+      }
+    }
+  }
+
+  @Test
+  public void testComposition() {
+    List<PointOperation> operations = this.operations();
+    int composed = 0;
+    for (PointOperation first : operations) {
+      for (PointOperation second : operations) {
+        PointOperation both = first.then(second);
+        if (both == null) {
+          continue;
+        }
+        composed++;
+        Assert.assertArrayEquals(second.apply(first.apply(this.pixels)),
+                both.apply(this.pixels));
+      }
+    }
+    // only the pairs that mix channels after tables that don't reduce are left out
+    Assert.assertTrue(composed > operations.size() * operations.size() / 2);
+  }
+
+  @Test
+  public void testWhatCantBeComposed() {
+    Assert.assertNull(PointOperation.exposure(10).then(PointOperation.greyScale("luma")));
+    Assert.assertNull(PointOperation.exposure(10).then(PointOperation.greyScale("intensity")));
+    Assert.assertNotNull(PointOperation.exposure(10).then(PointOperation.greyScale("value")));
+    Assert.assertNotNull(PointOperation.greyScale("luma").then(PointOperation.greyScale("luma")));
+    Assert.assertNotNull(PointOperation.exposure(10).then(PointOperation.greyScale("green")));
+  }
+
+  @Test
+  public void testInverse() {
+    int[] inverted = new int[256];
+    int[] swapped = new int[256];
+    for (int i = 0; i < 256; i++) {
+      inverted[i] = 255 - i;
+      swapped[i] = i ^ 1;
+    }
+    PointOperation operation = PointOperation.of(inverted, swapped, inverted);
+    PointOperation inverse = operation.inverse();
+    Assert.assertArrayEquals(this.pixels, inverse.apply(operation.apply(this.pixels)));
+    Assert.assertArrayEquals(this.pixels, PointOperation.exposure(0).inverse().apply(this.pixels));
+    // clamping and greyscale lose information
+    Assert.assertNull(PointOperation.exposure(1).inverse());
+    Assert.assertNull(PointOperation.greyScale("red").inverse());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testBadTable() {
+    int[] table = new int[256];
+    table[3] = 256;
+    PointOperation.of(table, table, table);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testUnknownGreyScale() {
+    PointOperation.greyScale("purple");
+  }
+
+  // Makes a mix of operations to test with
+  private List<PointOperation> operations() {
+    List<PointOperation> operations = new ArrayList<>();
+    operations.add(PointOperation.identity());
+    operations.add(PointOperation.exposure(40));
+    operations.add(PointOperation.exposure(-70));
+    for (String type : new String[]{"red", "green", "blue", "value", "intensity", "luma"}) {
+      operations.add(PointOperation.greyScale(type));
+    }
+    Random random = new Random(13);
+    int[][] tables = new int[3][256];
+    for (int[] table : tables) {
+      for (int i = 0; i < 256; i++) {
+        table[i] = random.nextInt(256);
+      }
+    }
+    operations.add(PointOperation.of(tables[0], tables[1], tables[2]));
+    operations.add(PointOperation.of(PointOperation.Reducer.LUMA, tables[0], tables[1],
+            tables[2]));
+    int[] curve = new int[256];
+    for (int i = 0; i < 256; i++) {
+      curve[i] = (int) Math.round(255 * Math.pow(i / 255.0, 0.5));
+    }
+    operations.add(PointOperation.of(curve, curve, curve));
+    return operations;
+  }
+}
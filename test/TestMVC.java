@@ -94,6 +94,17 @@ public class TestMVC {
     }
   }
 
+  // Tests that the controller turns jpg, png and bmp images into the same ppm text as reading
+  // them one pixel at a time does
+  @Test
+  public void testControllerImageAsStringBuilder() throws IOException {
+    for (String name : new String[]{"test/input/test.jpg", "test/input/test.png",
+        "test/input/test.bmp"}) {
+      Assert.assertEquals(this.getImageAsStringBuilder(name).toString(),
+              this.controller.getImageAsStringBuilder(name).toString());
+    }
+  }
+
   // Tests if we can load in a ppm image and save it as a jpg, png, bmp, or ppm and checking if any
   // IO exceptions were thrown
   @Test
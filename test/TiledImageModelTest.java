@@ -0,0 +1,167 @@
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Random;
+
+import model.BorderMode;
+import model.ImageModel;
+import model.Matrix;
+import model.Orientation;
+import model.PPMReader;
+import model.PackedImageModel;
+import model.PointOperation;
+import model.TiledImageModel;
+import view.PPMWriter;
+
+/**
+ * Tests that tiled images give exactly the same pixels as images kept in memory.
+ */
+public class TiledImageModelTest {
+  // 23 by 17, so tiles of 5 leave smaller tiles at the right and bottom edges
+  private PackedImageModel packed;
+  private TiledImageModel tiled;
+  private File file;
+
+  @Before
+  public void setUp() throws IOException {
+    Random random = new Random(24);
+    int[] pixels = new int[23 * 17];
+    for (int i = 0; i < pixels.length; i++) {
+      pixels[i] = random.nextInt(1 << 24);
+    }
+    this.packed = new PackedImageModel(23, 17, 255, pixels);
+    this.file = File.createTempFile("tiled", ".ppm");
+    PPMWriter.write(this.packed, this.file.getPath(), true);
+    this.tiled = TiledImageModel.open(this.file.getPath(), 5, 4);
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    this.tiled.close();
+    this.file.delete();
+  }
+
+  @Test
+  public void testOpen() throws IOException {
+    ImageAssert.assertSameImage(this.packed, this.tiled);
+    Assert.assertEquals(5, this.tiled.getTileSize());
+    // reading rows goes straight to the file, without loading whole tiles
+    Assert.assertEquals(0, this.tiled.getTileLoads());
+    Assert.assertEquals(this.packed.colorFrequencies().toMap("red"),
+            this.tiled.returnColorFrequencies("red"));
+    // a plain file can't be read from the middle, so it is copied to a cache file
+    File plain = File.createTempFile("tiled", ".ppm");
+    PPMWriter.write(this.packed, plain.getPath(), false);
+    try (TiledImageModel copy = TiledImageModel.open(plain.getPath(), 8, 2)) {
+      ImageAssert.assertSameImage(this.packed, copy);
+    } finally {
+      plain.delete();
+    }
+  }
+
+  @Test
+  public void testOnlyTheLastTilesAreKept() {
+    // filtering loads every tile, but only 4 are ever in memory
+    ImageModel blurred = this.tiled.filter(Matrix.GAUSSIAN_BLUR);
+    Assert.assertEquals(4, this.tiled.getCachedTileCount());
+    Assert.assertTrue(this.tiled.getTileLoads() >= 5 * 4);
+    ImageAssert.assertSameImage(this.packed.filter(Matrix.GAUSSIAN_BLUR), blurred);
+  }
+
+  @Test
+  public void testFiltersMatchTheWholeImage() {
+    double[][] uneven = {{0.1, -0.3, 0.05, 0.2, 0}, {0.7, 0.2, 0.3, -0.1, 0.25},
+        {0, 0.05, 0.4, 0.15, -0.2}};
+    for (BorderMode mode : BorderMode.values()) {
+      for (double[][] matrix : new double[][][]{Matrix.GAUSSIAN_BLUR, Matrix.SHARPEN, uneven}) {
+        ImageAssert.assertSameImage(this.packed.filter(matrix, mode),
+                this.tiled.filter(matrix, mode));
+      }
+    }
+    ImageAssert.assertSameImage(this.packed.filter(Matrix.SHARPEN),
+            this.tiled.filter(Matrix.SHARPEN));
+  }
+
+  @Test
+  public void testColorOperations() {
+    ImageAssert.assertSameImage(this.packed.greyScale("luma"), this.tiled.greyScale("luma"));
+    ImageAssert.assertSameImage(this.packed.changeExposure("brighten", 40),
+            this.tiled.changeExposure("brighten", 40));
+    ImageAssert.assertSameImage(this.packed.colorTransformation(Matrix.SEPIA),
+            this.tiled.colorTransformation(Matrix.SEPIA));
+    PointOperation darken = PointOperation.exposure(-30);
+    ImageAssert.assertSameImage(this.packed.pointOperation(darken),
+            this.tiled.pointOperation(darken));
+  }
+
+  @Test
+  public void testOrientations() {
+    for (Orientation orientation : Orientation.values()) {
+      ImageAssert.assertSameImage(this.packed.orient(orientation), this.tiled.orient(orientation));
+    }
+    ImageAssert.assertSameImage(this.packed.verticalFlip().orient(Orientation.ROTATE_90),
+            this.tiled.verticalFlip().orient(Orientation.ROTATE_90));
+  }
+
+  @Test
+  public void testCopy() throws IOException {
+    try (TiledImageModel copy = TiledImageModel.of(this.packed.orient(Orientation.TRANSPOSE),
+            4, 1)) {
+      ImageAssert.assertSameImage(this.packed.orient(Orientation.TRANSPOSE), copy);
+      Assert.assertEquals(this.packed.orient(Orientation.TRANSPOSE).toStringBuilder().toString(),
+              copy.toStringBuilder().toString());
+    }
+  }
+
+  @Test
+  public void testOpenWideFile() throws IOException {
+    // a 16 bit file is read one row at a time and scaled down to 8 bits
+    File wide = File.createTempFile("tiled", ".ppm");
+    byte[] header = "P6\n3 2\n65535\n".getBytes(StandardCharsets.US_ASCII);
+    byte[] data = new byte[header.length + 3 * 2 * 6];
+    System.arraycopy(header, 0, data, 0, header.length);
+    for (int i = header.length; i < data.length; i++) {
+      data[i] = (byte) (i * 37);
+    }
+    Files.write(wide.toPath(), data);
+    try (TiledImageModel copy = TiledImageModel.open(wide.getPath(), 2, 1)) {
+      ImageAssert.assertSameImage(PPMReader.read(wide.getPath()), copy);
+    } finally {
+      wide.delete();
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testOpenShortPlainFile() throws IOException {
+    File plain = File.createTempFile("tiled", ".ppm");
+    Files.write(plain.toPath(), "P3\n2 2\n255\n1 2 3 4 5 6\n".getBytes(StandardCharsets.US_ASCII));
+    try {
+      TiledImageModel.open(plain.getPath(), 2, 1);
+    } finally {
+      plain.delete();
+    }
+  }
+
+  @Test(expected = UncheckedIOException.class)
+  public void testClosed() throws IOException {
+    this.tiled.close();
+    this.tiled.getRow(0, new int[23]);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testBadTileSize() throws IOException {
+    TiledImageModel.open(this.file.getPath(), 0, 4);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testNullImage() {
+    TiledImageModel.of(null);
+  }
+}